@@ -0,0 +1,291 @@
+package org.reso.upi;
+
+import org.reso.upi.jfr.RuleEvent;
+import org.reso.upi.jfr.UpiEvents;
+import org.reso.upi.validation.CompiledRuleSet;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+
+import java.util.ArrayList;
+
+/**
+ * The last validation result of a {@link Upi} for one strict mode.
+ *
+ * <p>
+ * Messages are kept per rule, along with the fields each rule reads. When a setter
+ * changes some fields, only the rules that read them have to run again; the messages
+ * of the other rules are merged in from the previous run. Rules that do not apply to
+ * this strict mode are left out when the rule set is first seen, or up front for a
+ * shared {@link Partition} such as the default rules.
+ * </p>
+ */
+final class CachedValidation {
+    private static final int ALL_FIELDS = -1;
+
+    private ArrayList<ValidationRuleInterface> ruleSet;
+    private int ruleSetSize;
+
+    // The rules of the set that apply to this strict mode, and the fields each reads.
+    // Shared with a Partition, or owned when sharedRules is false.
+    private ValidationRuleInterface[] rules;
+    private int[] dependencies;
+    private int ruleCount;
+    private boolean sharedRules;
+
+    // Messages of each rule from its last run, null until a rule reports something
+    private ArrayList<ValidationMessage>[] ruleMessages;
+
+    private ArrayList<ValidationMessage> messages;
+    private boolean valid;
+    private int changedFields = ALL_FIELDS;
+
+    /**
+     * @param ruleSet rule set about to be validated against
+     * @return true if the stored result answers for this rule set
+     */
+    boolean isCurrent(ArrayList<ValidationRuleInterface> ruleSet) {
+        return this.changedFields == 0 && this.ruleSet == ruleSet && this.ruleSetSize == ruleSet.size();
+    }
+
+    /**
+     * Runs the rules that are out of date and merges all rule messages into the given list
+     *
+     * @param upi      UPI being validated
+     * @param strict   strict mode
+     * @param ruleSet  rule set to validate against
+     * @param shared   precomputed partition for this strict mode, used if it is for the same rule set
+     * @param messages empty list to merge the messages into
+     */
+    void validate(UpiInterface upi, boolean strict, ArrayList<ValidationRuleInterface> ruleSet, Partition shared, ArrayList<ValidationMessage> messages) {
+        if (this.ruleSet != ruleSet || this.ruleSetSize != ruleSet.size()) {
+            if (shared != null && shared.ruleSet == ruleSet && shared.ruleSetSize == ruleSet.size()) {
+                this.share(shared);
+            } else {
+                this.prepare(strict, ruleSet);
+            }
+        }
+
+        int changedFields = this.changedFields;
+
+        for (int i = 0, size = this.ruleCount; i < size; i++) {
+            // Everything runs when all fields changed, so a rule reading no field still runs once per rule set or record
+            if (changedFields != ALL_FIELDS && (this.dependencies[i] & changedFields) == 0) {
+                this.appendRuleMessages(i, messages);
+                continue;
+            }
+
+            ValidationRuleInterface rule = this.rules[i];
+            RuleEvent event = UpiEvents.AVAILABLE ? new RuleEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+
+            // Straight into the result, only copied aside if the rule reports something
+            int before = messages.size();
+            rule.validate(upi, strict, messages);
+            this.keepRuleMessages(i, messages, before);
+
+            // A compiled rule set records each of its own rules, so it is not recorded again here
+            if (event != null && event.shouldCommit() && !(rule instanceof CompiledRuleSet)) {
+                event.ruleClass = rule.getClass();
+                event.country = UpiEvents.country(upi);
+                event.strict = strict;
+                event.messageCount = messages.size() - before;
+                event.passed = messages.size() == before;
+                event.commit();
+            }
+        }
+
+        this.messages = messages;
+        this.valid = messages.size() <= 0;
+        this.changedFields = 0;
+    }
+
+    /**
+     * Merges the stored rule messages into a fresh list, so callers never share the stored ones
+     *
+     * @param messages empty list to merge the messages into
+     */
+    void copyMessages(ArrayList<ValidationMessage> messages) {
+        for (int i = 0, size = this.ruleCount; i < size; i++) {
+            this.appendRuleMessages(i, messages);
+        }
+
+        this.messages = messages;
+    }
+
+    private void appendRuleMessages(int rule, ArrayList<ValidationMessage> messages) {
+        ArrayList<ValidationMessage> ruleMessages = this.ruleMessages[rule];
+
+        if (ruleMessages != null) {
+            // Indexed copy, addAll() would allocate an array
+            for (int j = 0, count = ruleMessages.size(); j < count; j++) {
+                messages.add(ruleMessages.get(j));
+            }
+        }
+    }
+
+    private void keepRuleMessages(int rule, ArrayList<ValidationMessage> messages, int from) {
+        ArrayList<ValidationMessage> ruleMessages = this.ruleMessages[rule];
+
+        if (ruleMessages != null) {
+            ruleMessages.clear();
+        } else if (messages.size() > from) {
+            ruleMessages = new ArrayList<ValidationMessage>(messages.size() - from);
+            this.ruleMessages[rule] = ruleMessages;
+        }
+
+        for (int j = from, count = messages.size(); j < count; j++) {
+            ruleMessages.add(messages.get(j));
+        }
+    }
+
+    /**
+     * Uses a partition computed once for a rule set shared by many UPIs, so nothing is allocated
+     * beyond the per-rule message slots
+     */
+    private void share(Partition partition) {
+        this.ruleSet = partition.ruleSet;
+        this.ruleSetSize = partition.ruleSetSize;
+        this.rules = partition.rules;
+        this.dependencies = partition.dependencies;
+        this.ruleCount = partition.rules.length;
+        this.sharedRules = true;
+        this.changedFields = ALL_FIELDS;
+        this.sizeRuleMessages(this.ruleCount);
+    }
+
+    /**
+     * Keeps the rules that apply to this strict mode, reads their field dependencies
+     * and sizes the per-rule lists
+     *
+     * @param strict  strict mode
+     * @param ruleSet rule set to validate against
+     */
+    private void prepare(boolean strict, ArrayList<ValidationRuleInterface> ruleSet) {
+        int size = ruleSet.size();
+
+        this.ruleSet = ruleSet;
+        this.ruleSetSize = size;
+        this.ruleCount = 0;
+        this.changedFields = ALL_FIELDS;
+
+        // Shared arrays are never written, and the owned ones are reused for smaller rule sets
+        if (this.sharedRules || this.rules == null || this.rules.length < size) {
+            this.rules = new ValidationRuleInterface[size];
+            this.dependencies = new int[size];
+            this.sharedRules = false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            ValidationRuleInterface rule = ruleSet.get(i);
+
+            // Rules that do nothing in this mode are never called
+            if (!rule.appliesTo(strict)) {
+                continue;
+            }
+
+            int index = this.ruleCount++;
+            this.rules[index] = rule;
+            this.dependencies[index] = rule.getDependencyMask();
+        }
+
+        // Drop rules left over from a bigger rule set
+        for (int i = this.ruleCount; i < this.rules.length; i++) {
+            this.rules[i] = null;
+        }
+
+        this.sizeRuleMessages(this.ruleCount);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void sizeRuleMessages(int count) {
+        // Every rule runs next, which clears its slot, so old slots can be kept
+        if (this.ruleMessages == null || this.ruleMessages.length < count) {
+            this.ruleMessages = new ArrayList[count];
+        }
+    }
+
+    /**
+     * @param field field changed by a setter
+     */
+    void fieldChanged(UpiField field) {
+        this.changedFields |= field.mask();
+    }
+
+    /**
+     * Forgets the result and the rule set dependencies, so every rule runs on the next validation
+     */
+    void invalidate() {
+        this.ruleSet = null;
+        this.changedFields = ALL_FIELDS;
+    }
+
+    /**
+     * Marks the result as out of date, keeping the rule set dependencies
+     * since the next record uses the same rules
+     */
+    void allFieldsChanged() {
+        this.changedFields = ALL_FIELDS;
+    }
+
+    /**
+     * Marks the result as out of date and empties the message list for reuse
+     */
+    void recycle() {
+        this.allFieldsChanged();
+
+        if (this.messages != null) {
+            this.messages.clear();
+        }
+    }
+
+    /**
+     * @return the stored messages, or null if nothing was validated yet
+     */
+    ArrayList<ValidationMessage> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return the stored pass/fail
+     */
+    boolean isValid() {
+        return this.valid;
+    }
+
+    /**
+     * The rules of a rule set that apply to one strict mode, with their dependency masks.
+     * Immutable, so it is computed once and shared by every UPI validating against that
+     * rule set, as long as nobody changes the rule set.
+     */
+    static final class Partition {
+        private final ArrayList<ValidationRuleInterface> ruleSet;
+        private final int ruleSetSize;
+        private final ValidationRuleInterface[] rules;
+        private final int[] dependencies;
+
+        /**
+         * @param ruleSet rule set nobody changes afterwards
+         * @param strict  strict mode
+         */
+        Partition(ArrayList<ValidationRuleInterface> ruleSet, boolean strict) {
+            ArrayList<ValidationRuleInterface> applying = new ArrayList<ValidationRuleInterface>();
+
+            for (ValidationRuleInterface rule : ruleSet) {
+                if (rule.appliesTo(strict)) {
+                    applying.add(rule);
+                }
+            }
+
+            this.ruleSet = ruleSet;
+            this.ruleSetSize = ruleSet.size();
+            this.rules = applying.toArray(new ValidationRuleInterface[0]);
+            this.dependencies = new int[this.rules.length];
+
+            for (int i = 0; i < this.rules.length; i++) {
+                this.dependencies[i] = this.rules[i].getDependencyMask();
+            }
+        }
+    }
+}
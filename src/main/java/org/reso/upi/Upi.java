@@ -1,7 +1,13 @@
 package org.reso.upi;
 
 import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.jfr.ParseEvent;
+import org.reso.upi.jfr.ToUpiEvent;
+import org.reso.upi.jfr.UpiEvents;
+import org.reso.upi.jfr.ValidateEvent;
+import org.reso.upi.jmx.UpiStats;
 import org.reso.upi.property_type_code.PropertyTypeCode;
+import org.reso.upi.validation.BatchingValidationRule;
 import org.reso.upi.validation.ValidationMessage;
 import org.reso.upi.validation.ValidationRuleInterface;
 import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
@@ -9,19 +15,49 @@ import org.reso.upi.validation.rules.ResoValidCountryCodeRule;
 import org.reso.upi.validation.rules.ResoValidPropertyTypeCodeRule;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Base UPI class that implements and UpiInterfaces
+ *
+ * <p>
+ * A single instance can be reused for a stream of records by calling {@link #reset()}
+ * before each {@link #parseUpi(String)}. With {@link #setReuseBuffers(boolean)} turned on,
+ * validation writes into one recycled message list, so a parse / validate loop allocates
+ * nothing beyond the segment strings (and messages for failing rules).
+ * </p>
+ *
+ * <p>
+ * After the next parse or reset, the strings and enums returned by the segment getters,
+ * {@link #getRawUpiText()} and {@link #getDescription()} stay valid, since they are immutable.
+ * The list returned by {@link #validate()} and {@link #getValidationMessages()} does not
+ * when buffers are reused: it is cleared and refilled by the next validation or reset.
+ * Copy it if you need to keep it. Note that {@link PropertyTypeCode#NON_STANDARD} is a shared
+ * enum value, so its code is overwritten by the next non-standard parse anywhere; use
+ * {@link #getPropertyTypeCodeText()} for the code of this instance.
+ * </p>
  */
 public class Upi implements UpiInterface {
+    // Shared by every instance that keeps the default rules, and never handed out,
+    // so the strict and non-strict partitions are computed once
+    private static final ArrayList<ValidationRuleInterface> DEFAULT_RULES = Upi.getDefaultValidationRules();
+    private static final CachedValidation.Partition DEFAULT_LOOSE = new CachedValidation.Partition(DEFAULT_RULES, false);
+    private static final CachedValidation.Partition DEFAULT_STRICT = new CachedValidation.Partition(DEFAULT_RULES, true);
 
     private String upiText;
     private String description;
     private boolean valid;
+    private boolean reuseBuffers;
+    private UpiCanonicalizer canonicalizer;
 
     private ArrayList<ValidationMessage> validationMessages;
+    // Null while the instance uses the shared default rules
     private ArrayList<ValidationRuleInterface> validationRules;
 
+    // Last results per strict mode, dropped whenever a setter runs; created on first use
+    private CachedValidation looseValidation;
+    private CachedValidation strictValidation;
+
     private String undefinedCountryCode;
 
     private CountryCode countryCode;
@@ -29,6 +65,8 @@ public class Upi implements UpiInterface {
     private String subCountyCode;
     private String propertyId;
     private PropertyTypeCode propertyTypeCode;
+    // Kept per instance, since the code of the shared NON_STANDARD value changes with every parse
+    private String propertyTypeCodeText;
     private String subProperty;
 
 
@@ -37,7 +75,6 @@ public class Upi implements UpiInterface {
      * Creates an Empty UPI instance
      */
     public Upi() {
-        this.setValidationRules(getDefaultValidationRules());
     }
 
     /**
@@ -124,25 +161,25 @@ public class Upi implements UpiInterface {
      * @throws MalformedUpiTextException if upi text is incomplete
      */
     public String toUpi() throws MalformedUpiTextException {
-        this.throwExceptionIfIncompleteUpi();
-
-        // Now that we have all the right pieces, get the right Country Code
-        String countryCode = (this.getCountryCode() == CountryCode.UNDEFINED)
-                ? this.getUndefinedCountryCode()
-                : this.getCountryCode().getAlpha2();
+        ToUpiEvent event = UpiEvents.AVAILABLE ? new ToUpiEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        String upiText = null;
 
-        // And build the string
-        return String.valueOf(countryCode) +
-                "-" +
-                this.subCountryCode +
-                "-" +
-                this.subCountyCode +
-                "-" +
-                this.propertyId +
-                "-" +
-                this.propertyTypeCode +
-                "-" +
-                this.subProperty;
+        try {
+            this.throwExceptionIfIncompleteUpi();
+            upiText = this.buildUpiText();
+
+            return upiText;
+        } finally {
+            if (event != null && event.shouldCommit()) {
+                event.length = UpiEvents.length(upiText);
+                event.country = UpiEvents.country(this);
+                event.built = upiText != null;
+                event.commit();
+            }
+        }
     }
 
     /**
@@ -164,25 +201,76 @@ public class Upi implements UpiInterface {
      * @param upiText Hopefully complete UPI `US-36061-N-010237502R1-S-113`
      */
     public void parseUpi(String upiText) throws MalformedUpiTextException {
-        String[] upiPieces = upiText.split("-");
+        ParseEvent event = UpiEvents.AVAILABLE ? new ParseEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        boolean parsed = false;
+
+        try {
+            if (this.canonicalizer != null && upiText != null) {
+                upiText = this.canonicalizer.canonicalize(upiText);
+            }
+
+            this.parsePieces(upiText);
+            parsed = true;
+        } finally {
+            UpiStats stats = UpiStats.current();
+            if (stats != null) {
+                this.countParse(stats, parsed);
+            }
+
+            if (event != null && event.shouldCommit()) {
+                event.length = UpiEvents.length(upiText);
+                event.country = parsed ? UpiEvents.country(this) : null;
+                event.parsed = parsed;
+                event.commit();
+            }
+        }
+    }
+
+    private void countParse(UpiStats stats, boolean parsed) {
+        if (!parsed) {
+            stats.malformed();
+            return;
+        }
+
+        stats.parsed(
+                (this.countryCode == CountryCode.UNDEFINED) ? this.undefinedCountryCode : null,
+                (this.propertyTypeCode == PropertyTypeCode.NON_STANDARD) ? this.propertyTypeCodeText : null
+        );
+    }
+
+    private void parsePieces(String upiText) throws MalformedUpiTextException {
+        // Find the dashes between the six pieces without splitting into an array
+        int countryCodeEnd = upiText.indexOf('-');
+        int subCountryCodeEnd = nextDash(upiText, countryCodeEnd);
+        int subCountyCodeEnd = nextDash(upiText, subCountryCodeEnd);
+        int propertyIdEnd = nextDash(upiText, subCountyCodeEnd);
+        int propertyTypeCodeEnd = nextDash(upiText, propertyIdEnd);
 
         // If we weren't given a full UPI, it can't be valid
-        if (upiPieces.length < 6) {
+        if (propertyTypeCodeEnd < 0 || !hasTrailingPiece(upiText, propertyTypeCodeEnd + 1)) {
             throw new MalformedUpiTextException(new ValidationMessage(500, "The given UPI is missing pieces"));
         }
 
+        int subPropertyEnd = upiText.indexOf('-', propertyTypeCodeEnd + 1);
+        if (subPropertyEnd < 0) {
+            subPropertyEnd = upiText.length();
+        }
+
         // Set the text whether its valid or not
         this.setUpiText(upiText);
 
-        this.setCountryCode(upiPieces[0]); // The Country’s ALPHA-2 code, as published under ISO 3166.
-        this.setSubCountryCode(upiPieces[1]); // // eg FIPS code or Int'l equivalent
-        this.setSubCountyCode(upiPieces[2]); // A string defined and maintained by the subcountry region
+        this.setCountryCode(upiText.substring(0, countryCodeEnd)); // The Country’s ALPHA-2 code, as published under ISO 3166.
+        this.setSubCountryCode(upiText.substring(countryCodeEnd + 1, subCountryCodeEnd)); // // eg FIPS code or Int'l equivalent
+        this.setSubCountyCode(upiText.substring(subCountryCodeEnd + 1, subCountyCodeEnd)); // A string defined and maintained by the subcountry region
 
         // @todo: these are switched in tims
-        this.setPropertyTypeCode(upiPieces[4]); // PropertyType Code defined for any sub property type. These types are available in the UPI Specification.
-        this.setPropertyId(upiPieces[3]); // Assigned from tax authority
+        this.setPropertyTypeCode(upiText.substring(propertyIdEnd + 1, propertyTypeCodeEnd)); // PropertyType Code defined for any sub property type. These types are available in the UPI Specification.
+        this.setPropertyId(upiText.substring(subCountyCodeEnd + 1, propertyIdEnd)); // Assigned from tax authority
 
-        this.setSubProperty(upiPieces[5]);
+        this.setSubProperty(upiText.substring(propertyTypeCodeEnd + 1, subPropertyEnd));
     }
 
     /**
@@ -200,30 +288,119 @@ public class Upi implements UpiInterface {
      * @return the validation messages arraylist
      */
     public ArrayList<ValidationMessage> validate(boolean strict) {
-        return this.validate(strict, this.getValidationRules());
+        return this.validate(strict, this.rules());
     }
 
     /**
      * Validate a built UPI instance against a given ruleset
      *
+     * <p>
+     * The result is remembered per strict mode. Validating again with the same rule set
+     * before any setter has run returns the remembered messages without running the rules.
+     * The list returned is always a copy, so changing it does not change later results;
+     * with {@link #setReuseBuffers(boolean)} it is recycled by the next validation, though.
+     * After a setter, only the rules that depend on the changed field run again
+     * (see {@link ValidationRuleInterface#getDependencies()}).
+     * If you change a rule set in place, call {@link #invalidateValidation()} first.
+     * </p>
+     *
      * @return the validation messages arraylist
      */
     public ArrayList<ValidationMessage> validate(boolean strict, ArrayList<ValidationRuleInterface> ruleSet) {
-        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
-
-        for (ValidationRuleInterface rule : ruleSet) {
-            ArrayList<ValidationMessage> ruleMessages = rule.validate(this, strict);
-            errors.addAll(ruleMessages);
+        ValidateEvent event = UpiEvents.AVAILABLE ? new ValidateEvent() : null;
+        if (event != null) {
+            event.begin();
         }
 
+        CachedValidation cached = this.cachedValidation(strict);
+        boolean hit = cached.isCurrent(ruleSet);
+
+        ArrayList<ValidationMessage> errors = this.getMessageBuffer(cached);
+
+        if (hit) {
+            // Nothing changed since the last validation, so the rules would say the same thing
+            cached.copyMessages(errors);
+        } else {
+            // Only the rules reading a changed field run, the rest keep their last messages
+            cached.validate(this, strict, ruleSet, strict ? DEFAULT_STRICT : DEFAULT_LOOSE, errors);
+        }
 
-        this.setValid(errors.size() <= 0);
+        this.setValid(hit ? cached.isValid() : errors.size() <= 0);
         this.setValidationMessages(errors);
 
+        UpiStats stats = UpiStats.current();
+        if (stats != null) {
+            stats.validated(strict, hit, errors);
+        }
+
+        if (event != null && event.shouldCommit()) {
+            event.length = UpiEvents.length(this.upiText);
+            event.country = UpiEvents.country(this);
+            event.strict = strict;
+            event.ruleCount = ruleSet.size();
+            event.cached = hit;
+            event.messageCount = errors.size();
+            event.valid = this.valid;
+            event.commit();
+        }
+
         return errors;
     }
 
 
+    /**
+     * Validate against the default rules, sending batching rules' lookups along with other UPIs'
+     *
+     * @return future holding the validation messages
+     */
+    public CompletableFuture<ArrayList<ValidationMessage>> validateAsync(boolean strict) {
+        return this.validateAsync(strict, this.rules());
+    }
+
+    /**
+     * Validate against a rule set holding {@link BatchingValidationRule}s
+     *
+     * <p>
+     * Plain rules run right away, on the calling thread. Batching rules get a copy of this UPI
+     * queued for their next batch. The messages are merged in rule set order once every batch
+     * has answered. The result is not remembered and this instance is not changed when it
+     * completes, so the instance can be reset and reused for the next record straight away.
+     * </p>
+     *
+     * @return future holding the validation messages
+     */
+    public CompletableFuture<ArrayList<ValidationMessage>> validateAsync(boolean strict, ArrayList<ValidationRuleInterface> ruleSet) {
+        final ArrayList<CompletableFuture<ArrayList<ValidationMessage>>> results = new ArrayList<CompletableFuture<ArrayList<ValidationMessage>>>(ruleSet.size());
+        ArrayList<ValidationMessage> syncErrors = new ArrayList<ValidationMessage>();
+
+        for (ValidationRuleInterface rule : ruleSet) {
+            if (!rule.appliesTo(strict)) {
+                continue;
+            }
+
+            if (rule instanceof BatchingValidationRule) {
+                // Keep sync messages that came before this rule in front of its messages
+                results.add(CompletableFuture.completedFuture(syncErrors));
+                results.add(((BatchingValidationRule) rule).submit(this, strict));
+                syncErrors = new ArrayList<ValidationMessage>();
+            } else {
+                rule.validate(this, strict, syncErrors);
+            }
+        }
+
+        results.add(CompletableFuture.completedFuture(syncErrors));
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+
+            for (CompletableFuture<ArrayList<ValidationMessage>> result : results) {
+                errors.addAll(result.join());
+            }
+
+            return errors;
+        });
+    }
+
     /* Special Getter */
 
     /**
@@ -239,7 +416,7 @@ public class Upi implements UpiInterface {
      * given strict mode
      */
     public boolean isValid(boolean strict) {
-        return this.isValid(strict, this.getValidationRules());
+        return this.isValid(strict, this.rules());
     }
 
     /**
@@ -272,6 +449,7 @@ public class Upi implements UpiInterface {
      */
     public void setUpiText(String upiText) {
         this.upiText = upiText;
+        this.fieldChanged(UpiField.UPI_TEXT);
     }
 
     /**
@@ -286,6 +464,7 @@ public class Upi implements UpiInterface {
      */
     public void setDescription(String description) {
         this.description = description;
+        this.fieldChanged(UpiField.DESCRIPTION);
     }
 
     /**
@@ -337,6 +516,7 @@ public class Upi implements UpiInterface {
      */
     public void setCountryCode(CountryCode countryCode) {
         this.countryCode = countryCode;
+        this.fieldChanged(UpiField.COUNTRY_CODE);
     }
 
     /**
@@ -351,6 +531,7 @@ public class Upi implements UpiInterface {
      */
     public void setSubCountryCode(String subCountryCode) {
         this.subCountryCode = subCountryCode;
+        this.fieldChanged(UpiField.SUB_COUNTRY_CODE);
     }
 
     /**
@@ -365,6 +546,7 @@ public class Upi implements UpiInterface {
      */
     public void setSubCountyCode(String subCountyCode) {
         this.subCountyCode = subCountyCode;
+        this.fieldChanged(UpiField.SUB_COUNTY_CODE);
     }
 
     /**
@@ -379,6 +561,7 @@ public class Upi implements UpiInterface {
      */
     public void setPropertyId(String propertyId) {
         this.propertyId = propertyId;
+        this.fieldChanged(UpiField.PROPERTY_ID);
     }
 
     /**
@@ -388,18 +571,36 @@ public class Upi implements UpiInterface {
         return this.propertyTypeCode;
     }
 
+    /**
+     * Unlike {@code getPropertyTypeCode().getCode()}, this is safe for non-standard codes
+     * while other threads are parsing.
+     *
+     * @return property type code as set on this instance, standard codes upper-cased
+     */
+    public String getPropertyTypeCodeText() {
+        return this.propertyTypeCodeText;
+    }
+
     /**
      * @param propertyTypeCode Code as a string
      */
     public void setPropertyTypeCode(String propertyTypeCode) {
-        this.setPropertyTypeCode(PropertyTypeCode.getByCodeIgnoreCase(propertyTypeCode));
+        PropertyTypeCode propertyType = PropertyTypeCode.getByCodeIgnoreCase(propertyTypeCode);
+
+        this.propertyTypeCode = propertyType;
+        this.propertyTypeCodeText = (propertyType == PropertyTypeCode.NON_STANDARD)
+                ? propertyTypeCode
+                : (propertyType == null) ? null : propertyType.getCode();
+        this.fieldChanged(UpiField.PROPERTY_TYPE_CODE);
     }
 
     /**
-     * @param propertyType Property type code enum
+     * @param propertyType Property type code enum, a non-standard code is read once here
      */
     public void setPropertyTypeCode(PropertyTypeCode propertyType) {
         this.propertyTypeCode = propertyType;
+        this.propertyTypeCodeText = (propertyType == null) ? null : propertyType.getCode();
+        this.fieldChanged(UpiField.PROPERTY_TYPE_CODE);
     }
 
     /**
@@ -414,6 +615,7 @@ public class Upi implements UpiInterface {
      */
     public void setSubProperty(String subProperty) {
         this.subProperty = subProperty;
+        this.fieldChanged(UpiField.SUB_PROPERTY);
     }
 
     /**
@@ -428,45 +630,186 @@ public class Upi implements UpiInterface {
      */
     public void setUndefinedCountryCode(String undefinedCountryCode) {
         this.undefinedCountryCode = undefinedCountryCode;
+        this.fieldChanged(UpiField.COUNTRY_CODE);
     }
 
     /**
+     * The default rules are shared between instances until this is first called,
+     * which gives the instance its own copy to change.
+     *
      * @return current validation rules
      */
     public ArrayList<ValidationRuleInterface> getValidationRules() {
-        return validationRules;
+        if (this.validationRules == null) {
+            this.validationRules = new ArrayList<ValidationRuleInterface>(DEFAULT_RULES);
+        }
+
+        return this.validationRules;
     }
 
     /**
-     * @param validationRules Current validation rules
+     * @param validationRules Current validation rules, null for the default rules
      */
     public void setValidationRules(ArrayList<ValidationRuleInterface> validationRules) {
         this.validationRules = validationRules;
+        this.invalidateValidation();
     }
 
     /**
      * Clears the current UPI object
      */
     public void clear() {
-        this.setValidationRules(getDefaultValidationRules());
+        this.setValidationRules(null);
 
         this.countryCode = null;
         this.subCountryCode = null;
         this.subCountyCode = null;
         this.propertyId = null;
         this.propertyTypeCode = null;
+        this.propertyTypeCodeText = null;
         this.subProperty = null;
 
         this.valid = false;
         this.upiText = null;
         this.validationMessages = null;
         this.undefinedCountryCode = null;
+
+        this.invalidateValidation();
+    }
+
+    /**
+     * Resets the UPI pieces so the instance can be reused for the next record.
+     * Unlike {@link #clear()}, the current validation rules are kept, and the message
+     * list is recycled when buffers are reused.
+     */
+    public void reset() {
+        this.countryCode = null;
+        this.subCountryCode = null;
+        this.subCountyCode = null;
+        this.propertyId = null;
+        this.propertyTypeCode = null;
+        this.propertyTypeCodeText = null;
+        this.subProperty = null;
+
+        this.valid = false;
+        this.upiText = null;
+        this.description = null;
+        this.undefinedCountryCode = null;
+
+        if (this.reuseBuffers) {
+            if (this.looseValidation != null) {
+                this.looseValidation.recycle();
+            }
+
+            if (this.strictValidation != null) {
+                this.strictValidation.recycle();
+            }
+        } else {
+            if (this.looseValidation != null) {
+                this.looseValidation.allFieldsChanged();
+            }
+
+            if (this.strictValidation != null) {
+                this.strictValidation.allFieldsChanged();
+            }
+
+            this.validationMessages = null;
+        }
+    }
+
+    /**
+     * Forgets the remembered validation results, so the next validation runs every rule.
+     * Setters do this for you; call it after changing a rule set in place.
+     */
+    public void invalidateValidation() {
+        if (this.looseValidation != null) {
+            this.looseValidation.invalidate();
+        }
+
+        if (this.strictValidation != null) {
+            this.strictValidation.invalidate();
+        }
+    }
+
+    /**
+     * @param field field changed by a setter
+     */
+    private void fieldChanged(UpiField field) {
+        if (this.looseValidation != null) {
+            this.looseValidation.fieldChanged(field);
+        }
+
+        if (this.strictValidation != null) {
+            this.strictValidation.fieldChanged(field);
+        }
+    }
+
+    /**
+     * @return the rules validate() uses, without copying the shared defaults
+     */
+    private ArrayList<ValidationRuleInterface> rules() {
+        return (this.validationRules == null) ? DEFAULT_RULES : this.validationRules;
+    }
+
+    /**
+     * @param strict strict mode
+     * @return the remembered result for the mode, created on first use
+     */
+    private CachedValidation cachedValidation(boolean strict) {
+        if (strict) {
+            if (this.strictValidation == null) {
+                this.strictValidation = new CachedValidation();
+            }
+
+            return this.strictValidation;
+        }
+
+        if (this.looseValidation == null) {
+            this.looseValidation = new CachedValidation();
+        }
+
+        return this.looseValidation;
+    }
+
+    /**
+     * @return true if validation recycles one message list
+     */
+    public boolean isReuseBuffers() {
+        return this.reuseBuffers;
+    }
+
+    /**
+     * When true, every validation clears and refills the same message list instead
+     * of returning a new one. Lists returned earlier are then only valid until the
+     * next validation or reset.
+     *
+     * @param reuseBuffers recycle the validation message list
+     */
+    public void setReuseBuffers(boolean reuseBuffers) {
+        this.reuseBuffers = reuseBuffers;
+    }
+
+    /**
+     * @return canonicalizer applied before parsing, or null
+     */
+    public UpiCanonicalizer getCanonicalizer() {
+        return this.canonicalizer;
+    }
+
+    /**
+     * When set, {@link #parseUpi(String)} canonicalizes the text first, so the raw text and
+     * the pieces are in canonical form. Kept across {@link #reset()}.
+     *
+     * @param canonicalizer canonicalizer, or null to parse text as given
+     */
+    public void setCanonicalizer(UpiCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
     }
 
     /**
      * @return ArrayList of default rules
      */
-    private ArrayList<ValidationRuleInterface> getDefaultValidationRules() {
+    private static ArrayList<ValidationRuleInterface> getDefaultValidationRules() {
         ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
 
         rules.add(new ResoAllPiecesRequiredRule());
@@ -475,6 +818,48 @@ public class Upi implements UpiInterface {
         return rules;
     }
 
+    /**
+     * @param cached result being replaced
+     * @return an empty list for the next validation, recycled when buffers are reused
+     */
+    private ArrayList<ValidationMessage> getMessageBuffer(CachedValidation cached) {
+        ArrayList<ValidationMessage> messages = cached.getMessages();
+
+        if (!this.reuseBuffers || messages == null) {
+            return new ArrayList<ValidationMessage>();
+        }
+
+        messages.clear();
+        return messages;
+    }
+
+    /**
+     * @param upiText text being parsed
+     * @param previousDash index of the previous dash, or -1 if it was not found
+     * @return index of the next dash, or -1
+     */
+    private static int nextDash(String upiText, int previousDash) {
+        return (previousDash < 0) ? -1 : upiText.indexOf('-', previousDash + 1);
+    }
+
+    /**
+     * Mirrors `String.split("-")`, which drops trailing empty pieces:
+     * the sixth piece only counts if something other than dashes follows.
+     *
+     * @param upiText text being parsed
+     * @param start   start of the sixth piece
+     * @return true if the sixth piece (or a later one) has content
+     */
+    private static boolean hasTrailingPiece(String upiText, int start) {
+        for (int i = start, length = upiText.length(); i < length; i++) {
+            if (upiText.charAt(i) != '-') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * @throws MalformedUpiTextException if the UPI Text is incomplete
      */
@@ -489,13 +874,47 @@ public class Upi implements UpiInterface {
     }
 
     /**
+     * Concatenates the pieces, assuming they are all there
+     *
      * @return the built UPI text
      */
+    private String buildUpiText() {
+        // Now that we have all the right pieces, get the right Country Code
+        String countryCode = (this.getCountryCode() == CountryCode.UNDEFINED)
+                ? this.getUndefinedCountryCode()
+                : this.getCountryCode().getAlpha2();
+
+        // And build the string
+        return String.valueOf(countryCode) +
+                "-" +
+                this.subCountryCode +
+                "-" +
+                this.subCountyCode +
+                "-" +
+                this.propertyId +
+                "-" +
+                this.propertyTypeCodeText +
+                "-" +
+                this.subProperty;
+    }
+
+    /**
+     * @return true if all six pieces are set
+     */
+    private boolean hasAllPieces() {
+        return this.countryCode != null
+                && this.subCountryCode != null
+                && this.subCountyCode != null
+                && this.propertyId != null
+                && this.propertyTypeCode != null
+                && this.subProperty != null;
+    }
+
+    /**
+     * @return the built UPI text, or an empty string if incomplete
+     */
     public String toString() {
-        try {
-            return this.toUpi();
-        } catch (MalformedUpiTextException e) {
-            return "";
-        }
+        // Check directly rather than catching the toUpi() exception
+        return this.hasAllPieces() ? this.buildUpiText() : "";
     }
 }
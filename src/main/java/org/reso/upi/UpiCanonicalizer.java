@@ -0,0 +1,272 @@
+package org.reso.upi;
+
+import org.reso.upi.country_code.CountryCode;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites vendor UPI text into its canonical form: surrounding whitespace trimmed from the
+ * text and from each piece, the country and property type codes in upper case, and numeric
+ * sub country codes left-padded with zeros to the length configured for their country.
+ *
+ * <pre>
+ * UpiCanonicalizer canonicalizer = UpiCanonicalizer.standard().withSubCountryCodeLength(CountryCode.US, 5);
+ * canonicalizer.canonicalize(" us-4015-N-11022331-r-N ");   // US-04015-N-11022331-R-N
+ *
+ * Upi upi = new Upi();
+ * upi.setCanonicalizer(canonicalizer);                      // parseUpi canonicalizes first
+ * </pre>
+ *
+ * <p>
+ * The text is checked and rewritten by the same single pass over its chars. Checking writes
+ * nothing and stops at the first char that would change, so canonical input, the common
+ * case, comes back as the same instance without allocating. Otherwise the pass runs again
+ * into one char array, which becomes the result. Instances are immutable and thread-safe.
+ * </p>
+ */
+public final class UpiCanonicalizer {
+    private static final int COUNTRY_PIECE = 0;
+    private static final int SUB_COUNTRY_PIECE = 1;
+    private static final int PROPERTY_TYPE_PIECE = 4;
+    private static final int NOT_CANONICAL = -1;
+
+    private static final UpiCanonicalizer STANDARD = new UpiCanonicalizer(new byte[26 * 26]);
+
+    // Sub country code length by two-letter country code, (first - 'A') * 26 + (second - 'A'); 0 for no padding
+    private final byte[] subCountryCodeLengths;
+    private final int maxPadding;
+
+    private UpiCanonicalizer(byte[] subCountryCodeLengths) {
+        this.subCountryCodeLengths = subCountryCodeLengths;
+
+        int max = 0;
+        for (byte length : subCountryCodeLengths) {
+            max = Math.max(max, length);
+        }
+        this.maxPadding = max;
+    }
+
+    /**
+     * @return trims and upper-cases, without padding
+     */
+    public static UpiCanonicalizer standard() {
+        return STANDARD;
+    }
+
+    /**
+     * @param country country whose numeric sub country codes are padded, eg US with 5 for county FIPS codes
+     * @param length  length to pad to with leading zeros, 0 for none
+     * @return copy of this canonicalizer that also pads the country's sub country codes
+     */
+    public UpiCanonicalizer withSubCountryCodeLength(CountryCode country, int length) {
+        String code = (country == null) ? null : country.getAlpha2();
+
+        if (code == null || code.length() != 2) {
+            throw new IllegalArgumentException("Padding needs a country with a two-letter code");
+        }
+
+        if (length < 0 || length > 32) {
+            throw new IllegalArgumentException("Sub country code length must be between 0 and 32");
+        }
+
+        byte[] lengths = Arrays.copyOf(this.subCountryCodeLengths, this.subCountryCodeLengths.length);
+        lengths[UpiCanonicalizer.countryIndex(code, 0, 2)] = (byte) length;
+
+        return new UpiCanonicalizer(lengths);
+    }
+
+    /**
+     * @param upiText UPI text as received, may be null
+     * @return canonical text; the same instance if it was canonical already
+     */
+    public String canonicalize(String upiText) {
+        if (upiText == null || this.isCanonical(upiText)) {
+            return upiText;
+        }
+
+        char[] out = new char[upiText.length() + this.maxPadding];
+        int length = this.process(upiText, out);
+
+        return new String(out, 0, length);
+    }
+
+    /**
+     * @param upiText UPI text
+     * @return true if {@link #canonicalize(String)} would return it unchanged
+     */
+    public boolean isCanonical(String upiText) {
+        return this.process(upiText, null) != NOT_CANONICAL;
+    }
+
+    /**
+     * @param countryCode country piece
+     * @return trimmed, upper case country code; the same instance if it was canonical already
+     */
+    public String canonicalizeCountryCode(String countryCode) {
+        return this.canonicalizePiece(COUNTRY_PIECE, null, countryCode);
+    }
+
+    /**
+     * @param countryCode    country code the sub country code belongs to, decides the padding
+     * @param subCountryCode sub country piece
+     * @return trimmed, padded sub country code; the same instance if it was canonical already
+     */
+    public String canonicalizeSubCountryCode(String countryCode, String subCountryCode) {
+        return this.canonicalizePiece(SUB_COUNTRY_PIECE, countryCode, subCountryCode);
+    }
+
+    /**
+     * @param propertyTypeCode property type piece
+     * @return trimmed, upper case property type code; the same instance if it was canonical already
+     */
+    public String canonicalizePropertyTypeCode(String propertyTypeCode) {
+        return this.canonicalizePiece(PROPERTY_TYPE_PIECE, null, propertyTypeCode);
+    }
+
+    private String canonicalizePiece(int piece, String countryCode, String text) {
+        if (text == null) {
+            return null;
+        }
+
+        int country = (countryCode == null) ? -1 : UpiCanonicalizer.countryIndex(countryCode, 0, countryCode.length());
+
+        if (this.piece(piece, country, text, 0, text.length(), null, 0) == text.length()) {
+            return text;
+        }
+
+        char[] out = new char[text.length() + this.maxPadding];
+        int length = this.piece(piece, country, text, 0, text.length(), out, 0);
+
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Writes the canonical text, or only checks it
+     *
+     * @param out output, or null to check whether the text is canonical
+     * @return output length, or NOT_CANONICAL when checking and the text would change
+     */
+    private int process(String text, char[] out) {
+        int start = 0;
+        int end = text.length();
+
+        while (start < end && UpiCanonicalizer.isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && UpiCanonicalizer.isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        int o = 0;
+        int piece = 0;
+        int country = -1;
+        int pieceStart = start;
+
+        while (true) {
+            int dash = pieceStart;
+            while (dash < end && text.charAt(dash) != '-') {
+                dash++;
+            }
+
+            if (piece == COUNTRY_PIECE) {
+                country = UpiCanonicalizer.countryIndex(text, pieceStart, dash);
+            }
+
+            o = this.piece(piece, country, text, pieceStart, dash, out, o);
+            if (o == NOT_CANONICAL || dash == end) {
+                break;
+            }
+
+            o = UpiCanonicalizer.put(text, out, o, '-');
+            if (o == NOT_CANONICAL) {
+                break;
+            }
+
+            piece++;
+            pieceStart = dash + 1;
+        }
+
+        // Checking: trimmed text is shorter than the input, so it is not canonical
+        return (out == null && o != text.length()) ? NOT_CANONICAL : o;
+    }
+
+    /**
+     * Writes one canonical piece, from text[start, end)
+     *
+     * @return output position after the piece, or NOT_CANONICAL
+     */
+    private int piece(int piece, int country, String text, int start, int end, char[] out, int o) {
+        while (start < end && UpiCanonicalizer.isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && UpiCanonicalizer.isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        boolean upperCase = piece == COUNTRY_PIECE || piece == PROPERTY_TYPE_PIECE;
+
+        if (piece == SUB_COUNTRY_PIECE && country >= 0) {
+            int padding = this.subCountryCodeLengths[country] - (end - start);
+
+            if (padding > 0 && end > start && UpiCanonicalizer.isDigits(text, start, end)) {
+                for (int i = 0; i < padding && o != NOT_CANONICAL; i++) {
+                    o = UpiCanonicalizer.put(text, out, o, '0');
+                }
+            }
+        }
+
+        for (int i = start; i < end && o != NOT_CANONICAL; i++) {
+            char c = text.charAt(i);
+            o = UpiCanonicalizer.put(text, out, o, (upperCase && c >= 'a' && c <= 'z') ? (char) (c - 32) : c);
+        }
+
+        return o;
+    }
+
+    /**
+     * Writes a char, or when checking, compares it with the input at the same position
+     */
+    private static int put(String text, char[] out, int o, char c) {
+        if (out != null) {
+            out[o] = c;
+            return o + 1;
+        }
+
+        return (o < text.length() && text.charAt(o) == c) ? o + 1 : NOT_CANONICAL;
+    }
+
+    /**
+     * @return index into the padding table for a two-letter code in either case, ignoring surrounding spaces, or -1
+     */
+    private static int countryIndex(String text, int start, int end) {
+        while (start < end && UpiCanonicalizer.isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && UpiCanonicalizer.isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        if (end - start != 2) {
+            return -1;
+        }
+
+        int first = Character.toUpperCase(text.charAt(start)) - 'A';
+        int second = Character.toUpperCase(text.charAt(start + 1)) - 'A';
+
+        return (first < 0 || first >= 26 || second < 0 || second >= 26) ? -1 : first * 26 + second;
+    }
+
+    private static boolean isDigits(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        return c <= ' ' || Character.isWhitespace(c);
+    }
+}
@@ -0,0 +1,40 @@
+package org.reso.upi;
+
+import java.util.Set;
+
+/**
+ * The parts of a UPI that a validation rule can read.
+ * Rules declare the fields they depend on, so that {@link Upi} only re-runs
+ * the rules affected by a change.
+ */
+public enum UpiField {
+    COUNTRY_CODE,
+    SUB_COUNTRY_CODE,
+    SUB_COUNTY_CODE,
+    PROPERTY_ID,
+    PROPERTY_TYPE_CODE,
+    SUB_PROPERTY,
+    DESCRIPTION,
+    UPI_TEXT;
+
+    /**
+     * @return single bit for this field
+     */
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+
+    /**
+     * @param fields fields to combine
+     * @return the single bits of the fields or-ed together
+     */
+    public static int mask(Set<UpiField> fields) {
+        int mask = 0;
+
+        for (UpiField field : fields) {
+            mask |= field.mask();
+        }
+
+        return mask;
+    }
+}
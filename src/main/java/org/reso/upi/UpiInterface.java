@@ -6,6 +6,7 @@ import org.reso.upi.validation.ValidationMessage;
 import org.reso.upi.validation.ValidationRuleInterface;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 public interface UpiInterface {
     String toUpi() throws MalformedUpiTextException;
@@ -20,6 +21,10 @@ public interface UpiInterface {
 
     ArrayList<ValidationMessage> validate(boolean strict, ArrayList<ValidationRuleInterface> ruleSet);
 
+    CompletableFuture<ArrayList<ValidationMessage>> validateAsync(boolean strict);
+
+    CompletableFuture<ArrayList<ValidationMessage>> validateAsync(boolean strict, ArrayList<ValidationRuleInterface> ruleSet);
+
     boolean isValid(boolean strict, ArrayList<ValidationRuleInterface> ruleSet);
 
     boolean isValid(boolean strict);
@@ -60,6 +65,8 @@ public interface UpiInterface {
 
     PropertyTypeCode getPropertyTypeCode();
 
+    String getPropertyTypeCodeText();
+
     void setPropertyTypeCode(PropertyTypeCode propertyType);
 
     void setPropertyTypeCode(String propertyTypeCode);
@@ -77,4 +84,12 @@ public interface UpiInterface {
     void setValidationRules(ArrayList<ValidationRuleInterface> validationRules);
 
     void clear();
+
+    void reset();
+
+    void invalidateValidation();
+
+    boolean isReuseBuffers();
+
+    void setReuseBuffers(boolean reuseBuffers);
 }
@@ -0,0 +1,413 @@
+package org.reso.upi;
+
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.property_type_code.PropertyTypeCode;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
+
+import java.util.ArrayList;
+
+/**
+ * Immutable, thread-safe UPI value.
+ *
+ * <p>
+ * Unlike {@link Upi}, an instance can be shared between threads and used as a map key
+ * without copying. The hash code is computed once on construction and the canonical
+ * text is built at most once, on the first call to {@link #toUpi()}.
+ * </p>
+ *
+ * <p>
+ * Equality is based on the six UPI pieces only. The description is carried along,
+ * but two values with the same UPI and different descriptions are equal.
+ * </p>
+ *
+ * <pre>
+ * UpiValue value = UpiValue.parse("US-04015-N-11022331-R-N");
+ * UpiValue built = new UpiValue.Builder()
+ *         .countryCode(CountryCode.US)
+ *         .subCountryCode("04015")
+ *         .subCountyCode("N")
+ *         .propertyId("11022331")
+ *         .propertyTypeCode(PropertyTypeCode.R)
+ *         .subProperty("N")
+ *         .build();
+ * </pre>
+ */
+public final class UpiValue {
+    private final CountryCode countryCode;
+    private final String countryCodeText;
+    private final String subCountryCode;
+    private final String subCountyCode;
+    private final String propertyId;
+    private final String propertyTypeCode;
+    private final String subProperty;
+    private final String description;
+
+    private final int hash;
+
+    // Racy single-check cache, like String.hash: every thread builds the same immutable string
+    private String upiText;
+
+    private UpiValue(Builder builder) {
+        this.countryCode = builder.countryCode;
+        this.countryCodeText = builder.countryCodeText;
+        this.subCountryCode = builder.subCountryCode;
+        this.subCountyCode = builder.subCountyCode;
+        this.propertyId = builder.propertyId;
+        this.propertyTypeCode = builder.propertyTypeCode;
+        this.subProperty = builder.subProperty;
+        this.description = builder.description;
+
+        int hash = this.countryCodeText.hashCode();
+        hash = 31 * hash + this.subCountryCode.hashCode();
+        hash = 31 * hash + this.subCountyCode.hashCode();
+        hash = 31 * hash + this.propertyId.hashCode();
+        hash = 31 * hash + this.propertyTypeCode.hashCode();
+        hash = 31 * hash + this.subProperty.hashCode();
+        this.hash = hash;
+    }
+
+
+    /* Conversions */
+
+    /**
+     * Parses UPI text into a value, without validation beyond the six pieces
+     *
+     * @param upiText complete upi text
+     * @return immutable value
+     * @throws MalformedUpiTextException if the UPI text is incomplete
+     */
+    public static UpiValue parse(String upiText) throws MalformedUpiTextException {
+        return UpiValue.of(new Upi(upiText));
+    }
+
+    /**
+     * Parses UPI text in canonical form, so values from differently formatted vendor text compare equal
+     * without normalising again on every comparison
+     *
+     * @param upiText       complete upi text
+     * @param canonicalizer canonicalizer applied before parsing
+     * @return immutable value
+     * @throws MalformedUpiTextException if the UPI text is incomplete
+     */
+    public static UpiValue parse(String upiText, UpiCanonicalizer canonicalizer) throws MalformedUpiTextException {
+        Upi upi = new Upi();
+        upi.setCanonicalizer(canonicalizer);
+        upi.parseUpi(upiText);
+
+        return UpiValue.of(upi);
+    }
+
+    /**
+     * Takes a snapshot of a (mutable) UPI
+     *
+     * @param upi UPI with all six pieces
+     * @return immutable value
+     * @throws MalformedUpiTextException if the UPI is incomplete
+     */
+    public static UpiValue of(UpiInterface upi) throws MalformedUpiTextException {
+        Builder builder = new Builder()
+                .subCountryCode(upi.getSubCountryCode())
+                .subCountyCode(upi.getSubCountyCode())
+                .propertyId(upi.getPropertyId())
+                .subProperty(upi.getSubProperty())
+                .description(upi.getDescription());
+
+        if (upi.getCountryCode() == CountryCode.UNDEFINED) {
+            builder.countryCode(upi.getUndefinedCountryCode());
+        } else {
+            builder.countryCode(upi.getCountryCode());
+        }
+
+        // Not getPropertyTypeCode().getCode(): another thread may have changed NON_STANDARD since the parse
+        builder.propertyTypeCode(upi.getPropertyTypeCodeText());
+
+        return builder.build();
+    }
+
+    /**
+     * @return a new mutable UPI with the same pieces and description
+     */
+    public Upi toMutable() {
+        Upi upi = new Upi();
+
+        upi.setCountryCode(this.countryCodeText);
+        upi.setSubCountryCode(this.subCountryCode);
+        upi.setSubCountyCode(this.subCountyCode);
+        upi.setPropertyId(this.propertyId);
+        upi.setPropertyTypeCode(this.propertyTypeCode);
+        upi.setSubProperty(this.subProperty);
+        upi.setDescription(this.description);
+
+        return upi;
+    }
+
+    /**
+     * @return canonical UPI text, built once and then cached
+     */
+    public String toUpi() {
+        String upiText = this.upiText;
+
+        if (upiText == null) {
+            upiText = new StringBuilder(this.countryCodeText.length()
+                    + this.subCountryCode.length()
+                    + this.subCountyCode.length()
+                    + this.propertyId.length()
+                    + this.propertyTypeCode.length()
+                    + this.subProperty.length()
+                    + 5)
+                    .append(this.countryCodeText).append('-')
+                    .append(this.subCountryCode).append('-')
+                    .append(this.subCountyCode).append('-')
+                    .append(this.propertyId).append('-')
+                    .append(this.propertyTypeCode).append('-')
+                    .append(this.subProperty)
+                    .toString();
+            this.upiText = upiText;
+        }
+
+        return upiText;
+    }
+
+
+    /* Getters */
+
+    /**
+     * @return country code enum, `UNDEFINED` if not recognized
+     */
+    public CountryCode getCountryCode() {
+        return this.countryCode;
+    }
+
+    /**
+     * @return country code as used in the UPI text
+     */
+    public String getCountryCodeText() {
+        return this.countryCodeText;
+    }
+
+    /**
+     * @return sub country code
+     */
+    public String getSubCountryCode() {
+        return this.subCountryCode;
+    }
+
+    /**
+     * @return sub county code
+     */
+    public String getSubCountyCode() {
+        return this.subCountyCode;
+    }
+
+    /**
+     * @return property id
+     */
+    public String getPropertyId() {
+        return this.propertyId;
+    }
+
+    /**
+     * The text is kept rather than the enum, since `NON_STANDARD` is shared and mutable.
+     *
+     * @return property type code as used in the UPI text
+     */
+    public String getPropertyTypeCodeText() {
+        return this.propertyTypeCode;
+    }
+
+    /**
+     * @return sub property
+     */
+    public String getSubProperty() {
+        return this.subProperty;
+    }
+
+    /**
+     * @return The human-readable description (not part of equality)
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof UpiValue)) {
+            return false;
+        }
+
+        UpiValue that = (UpiValue) other;
+
+        return this.hash == that.hash
+                && this.countryCodeText.equals(that.countryCodeText)
+                && this.subCountryCode.equals(that.subCountryCode)
+                && this.subCountyCode.equals(that.subCountyCode)
+                && this.propertyId.equals(that.propertyId)
+                && this.propertyTypeCode.equals(that.propertyTypeCode)
+                && this.subProperty.equals(that.subProperty);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /**
+     * @return the canonical UPI text
+     */
+    @Override
+    public String toString() {
+        return this.toUpi();
+    }
+
+
+    /**
+     * Collects the pieces for an immutable {@link UpiValue}
+     */
+    public static final class Builder {
+        private CountryCode countryCode;
+        private String countryCodeText;
+        private String subCountryCode;
+        private String subCountyCode;
+        private String propertyId;
+        private String propertyTypeCode;
+        private String subProperty;
+        private String description;
+
+        /**
+         * @param countryCode country code enum
+         * @return this builder
+         */
+        public Builder countryCode(CountryCode countryCode) {
+            this.countryCode = countryCode;
+            this.countryCodeText = (countryCode == null) ? null : countryCode.getAlpha2();
+            return this;
+        }
+
+        /**
+         * @param countryCode country code text, kept as given if not recognized
+         * @return this builder
+         */
+        public Builder countryCode(String countryCode) {
+            CountryCode enumCode = CountryCode.getByCodeIgnoreCase(countryCode);
+
+            if (enumCode == null || enumCode == CountryCode.UNDEFINED) {
+                this.countryCode = (countryCode == null) ? null : CountryCode.UNDEFINED;
+                this.countryCodeText = countryCode;
+            } else {
+                this.countryCode(enumCode);
+            }
+
+            return this;
+        }
+
+        /**
+         * @param subCountryCode sub country code
+         * @return this builder
+         */
+        public Builder subCountryCode(String subCountryCode) {
+            this.subCountryCode = subCountryCode;
+            return this;
+        }
+
+        /**
+         * @param subCountyCode sub county code
+         * @return this builder
+         */
+        public Builder subCountyCode(String subCountyCode) {
+            this.subCountyCode = subCountyCode;
+            return this;
+        }
+
+        /**
+         * @param propertyId property id
+         * @return this builder
+         */
+        public Builder propertyId(String propertyId) {
+            this.propertyId = propertyId;
+            return this;
+        }
+
+        /**
+         * @param propertyTypeCode property type code enum
+         * @return this builder
+         */
+        public Builder propertyTypeCode(PropertyTypeCode propertyTypeCode) {
+            this.propertyTypeCode = (propertyTypeCode == null) ? null : propertyTypeCode.getCode();
+            return this;
+        }
+
+        /**
+         * @param propertyTypeCode property type code text, standard codes are upper-cased
+         * @return this builder
+         */
+        public Builder propertyTypeCode(String propertyTypeCode) {
+            PropertyTypeCode enumCode = PropertyTypeCode.getByCodeIgnoreCase(propertyTypeCode);
+
+            this.propertyTypeCode = (enumCode == null || enumCode == PropertyTypeCode.NON_STANDARD)
+                    ? propertyTypeCode
+                    : enumCode.getCode();
+            return this;
+        }
+
+        /**
+         * @param subProperty sub property
+         * @return this builder
+         */
+        public Builder subProperty(String subProperty) {
+            this.subProperty = subProperty;
+            return this;
+        }
+
+        /**
+         * @param description human readable description
+         * @return this builder
+         */
+        public Builder description(String description) {
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * @return immutable value
+         * @throws MalformedUpiTextException if any of the six pieces is missing
+         */
+        public UpiValue build() throws MalformedUpiTextException {
+            ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+
+            if (this.countryCodeText == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingCountryCodeMessage());
+            }
+
+            if (this.subCountryCode == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingSubCountryCodeMessage());
+            }
+
+            if (this.subCountyCode == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingCountyCodeMessage());
+            }
+
+            if (this.propertyId == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingPropertyIdMessage());
+            }
+
+            if (this.propertyTypeCode == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingPropertyTypeCodeMessage());
+            }
+
+            if (this.subProperty == null) {
+                errors.add(ResoAllPiecesRequiredRule.getMissingSubPropertyMessage());
+            }
+
+            if (errors.size() > 0) {
+                throw new MalformedUpiTextException(errors);
+            }
+
+            return new UpiValue(this);
+        }
+    }
+}
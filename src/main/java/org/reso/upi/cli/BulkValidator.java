@@ -0,0 +1,699 @@
+package org.reso.upi.cli;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.UpiCanonicalizer;
+import org.reso.upi.csv.CsvColumnMapping;
+import org.reso.upi.csv.CsvField;
+import org.reso.upi.csv.CsvUpiReader;
+import org.reso.upi.csv.CsvUpiValidator;
+import org.reso.upi.json.UpiJsonReader;
+import org.reso.upi.report.ReportCollector;
+import org.reso.upi.report.ValidationReportWriter;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.metrics.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command line bulk validator, the main class of the executable jar.
+ *
+ * <pre>
+ * java -jar upi.jar --threads 8 --progress 5 parcels.txt
+ * java -jar upi.jar --format csv --column UPI --all listings.csv &gt; validated.csv
+ * cat upis.ndjson | java -jar upi.jar --format ndjson --non-strict
+ * </pre>
+ *
+ * <p>
+ * The calling thread reads records in batches and hands them to a pool of workers, each
+ * with its own reused {@link Upi}. Results are written in input order: a record, a tab (or
+ * the CSV delimiter) and `VALID` or its message codes, as {@link CsvUpiValidator} does.
+ * Only a few batches per thread are in flight, so memory stays flat on any input size.
+ * Progress lines on stderr show the records per second and the latency percentiles of
+ * parsing and validating one record since the last line.
+ * </p>
+ *
+ * <p>
+ * Exits with 0 if every record was valid, 1 if any was malformed or invalid, 2 on a usage
+ * or read error.
+ * </p>
+ */
+public final class BulkValidator {
+    public static final int EXIT_VALID = 0;
+    public static final int EXIT_INVALID = 1;
+    public static final int EXIT_ERROR = 2;
+
+    public static final String TEXT = "text";
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int BATCHES_PER_THREAD = 4;
+
+    // NDJSON readers get a line at a time, so a small buffer does; one is made after every bad line
+    private static final int JSON_BUFFER_SIZE = 1024;
+
+    static final String USAGE = String.join("\n",
+            "Usage: java -jar upi.jar [options] [file...]",
+            "Validates UPIs from the files, or from stdin if there are none or the file is -.",
+            "",
+            "  -s, --strict           strict mode (default)",
+            "  -n, --non-strict       non-strict mode",
+            "  -t, --threads N        worker threads (default: available processors)",
+            "  -f, --format FORMAT    text, csv or ndjson (default: by file extension, else text)",
+            "  -c, --column COLUMN    CSV column holding the UPI, by header name or zero-based index (default: UPI)",
+            "  -d, --delimiter CHAR   CSV delimiter, or tab (default: ,)",
+            "      --no-header        the CSV file has no header row",
+            "  -a, --all              write every result, not only failures",
+            "      --canonicalize     trim and upper-case UPI text before parsing",
+            "  -r, --report FILE      write a CSV summary of failures by code, country and property type",
+            "  -p, --progress SECONDS seconds between progress lines on stderr, 0 for none (default: 5)",
+            "  -q, --quiet            no progress lines or summary",
+            "  -h, --help             show this help");
+
+    private final Options options;
+    private final PrintStream err;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final ReportCollector collector;
+    private final ThreadLocal<Upi> upis;
+
+    private BulkValidator(Options options, PrintStream err) {
+        this.options = options;
+        this.err = err;
+        this.collector = (options.report == null) ? null : new ReportCollector(5, 100000);
+        this.upis = ThreadLocal.withInitial(() -> {
+            Upi upi = new Upi();
+            upi.setReuseBuffers(true);
+
+            if (options.canonicalize) {
+                upi.setCanonicalizer(UpiCanonicalizer.standard());
+            }
+
+            return upi;
+        });
+    }
+
+    public static void main(String[] args) {
+        System.exit(BulkValidator.run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs the validator as the command line would
+     *
+     * @param args  command line arguments
+     * @param stdin input read when no file is given or a file is `-`
+     * @param out   results
+     * @param err   usage, errors, progress and summary
+     * @return exit code: {@link #EXIT_VALID}, {@link #EXIT_INVALID} or {@link #EXIT_ERROR}
+     */
+    public static int run(String[] args, InputStream stdin, PrintStream out, PrintStream err) {
+        Options options;
+
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println("upi: " + e.getMessage());
+            err.println(USAGE);
+            return EXIT_ERROR;
+        }
+
+        if (options.help) {
+            out.println(USAGE);
+            return EXIT_VALID;
+        }
+
+        return new BulkValidator(options, err).run(stdin, out);
+    }
+
+    private int run(InputStream stdin, PrintStream out) {
+        ExecutorService executor = Executors.newFixedThreadPool(this.options.threads, runnable -> {
+            Thread thread = new Thread(runnable, "upi-validator");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        ScheduledExecutorService progress = null;
+        long start = System.nanoTime();
+
+        if (!this.options.quiet && this.options.progress > 0) {
+            progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "upi-validator-progress");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
+            Progress reporter = new Progress(start);
+            progress.scheduleAtFixedRate(reporter::report, this.options.progress, this.options.progress, TimeUnit.SECONDS);
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        String current = null;
+
+        try {
+            for (String file : this.options.files) {
+                current = file;
+
+                if (file.equals("-")) {
+                    // stdin is left open for the caller
+                    this.validate(this.format(file), new InputStreamReader(stdin, StandardCharsets.UTF_8), writer, executor);
+                } else {
+                    try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                        this.validate(this.format(file), reader, writer, executor);
+                    }
+                }
+            }
+
+            current = null;
+            writer.flush();
+
+            if (this.collector != null) {
+                current = this.options.report;
+
+                try (Writer report = Files.newBufferedWriter(Paths.get(this.options.report), StandardCharsets.UTF_8)) {
+                    new ValidationReportWriter(report).write(this.collector.merge());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Also failures on the workers, such as a format resource that does not load or a rule that throws
+            String message = (e.getMessage() == null) ? e.toString() : e.getMessage();
+            this.err.println("upi: " + ((current == null) ? "" : current + ": ") + message);
+
+            return EXIT_ERROR;
+        } finally {
+            executor.shutdownNow();
+
+            if (progress != null) {
+                progress.shutdownNow();
+            }
+        }
+
+        if (!this.options.quiet) {
+            this.err.println(this.summary(start));
+        }
+
+        return (this.invalid.sum() > 0) ? EXIT_INVALID : EXIT_VALID;
+    }
+
+    /**
+     * Reads batches on this thread, validates them on the workers and writes the results in order
+     */
+    private void validate(String format, Reader in, Writer out, ExecutorService executor) throws IOException {
+        BufferedReader lines = null;
+        CsvUpiReader csv = null;
+        int column = -1;
+        char delimiter = '\t';
+
+        if (format.equals(CSV)) {
+            boolean index = BulkValidator.isIndex(this.options.column);
+            CsvColumnMapping mapping = index ? CsvColumnMapping.upiColumn(Integer.parseInt(this.options.column)) : CsvColumnMapping.upiColumn(this.options.column);
+
+            // The reader checks a named column is in the header
+            csv = new CsvUpiReader(in, mapping, this.options.delimiter, this.options.header);
+            column = index ? Integer.parseInt(this.options.column) : csv.getHeader().indexOf(this.options.column);
+            delimiter = this.options.delimiter;
+
+            if (csv.getHeader() != null) {
+                csv.writeRecord(out);
+                out.write(delimiter);
+                out.write(CsvUpiValidator.RESULT_COLUMN);
+                out.write('\n');
+            }
+        } else {
+            lines = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in, 64 * 1024);
+        }
+
+        boolean json = format.equals(NDJSON);
+        ArrayDeque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+        StringWriter record = new StringWriter();
+
+        while (true) {
+            Batch batch = new Batch();
+
+            while (batch.size < BATCH_SIZE) {
+                if (csv != null) {
+                    if (!csv.next()) {
+                        break;
+                    }
+
+                    record.getBuffer().setLength(0);
+                    csv.writeRecord(record);
+                    CsvField field = csv.getField(column);
+                    batch.add(record.toString(), (field == null) ? null : field.toString());
+                } else {
+                    String line = lines.readLine();
+
+                    if (line == null) {
+                        break;
+                    }
+
+                    if (!line.trim().isEmpty()) {
+                        // A text line is the UPI and an optional tab and description, as the sorter and diff read them
+                        int tab = json ? -1 : line.indexOf('\t');
+                        batch.add(line, json ? null : (tab < 0) ? line : line.substring(0, tab));
+                    }
+                }
+            }
+
+            if (batch.size > 0) {
+                pending.add(executor.submit(() -> json ? this.validateJson(batch) : this.validateText(batch)));
+            }
+
+            // Bounds the batches in flight, so reading waits for writing
+            while (!pending.isEmpty() && (batch.size == 0 || pending.size() > this.options.threads * BATCHES_PER_THREAD)) {
+                BulkValidator.await(pending.poll()).write(out, delimiter, this.options.all);
+            }
+
+            if (batch.size == 0) {
+                return;
+            }
+        }
+    }
+
+    private Batch validateText(Batch batch) {
+        Upi upi = this.upis.get();
+
+        for (int i = 0; i < batch.size; i++) {
+            long start = System.nanoTime();
+            ArrayList<ValidationMessage> messages;
+            boolean parsed = false;
+
+            try {
+                if (batch.upiTexts[i] == null) {
+                    throw new MalformedUpiTextException(CsvUpiReader.getMissingColumnMessage());
+                }
+
+                upi.reset();
+                upi.parseUpi(batch.upiTexts[i]);
+                parsed = true;
+                messages = upi.validate(this.options.strict);
+            } catch (MalformedUpiTextException e) {
+                messages = e.getValidationMessages();
+            }
+
+            this.record(batch, i, parsed ? upi : null, messages, start);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Reads the batch's lines with one JSON reader; after a line that is not a UPI object,
+     * starts a new reader on the next line
+     */
+    private Batch validateJson(Batch batch) {
+        Upi upi = this.upis.get();
+        UpiJsonReader json = null;
+
+        for (int i = 0; i < batch.size; i++) {
+            long start = System.nanoTime();
+            ArrayList<ValidationMessage> messages;
+            boolean parsed = false;
+
+            if (json == null) {
+                json = new UpiJsonReader(batch.reader(i), JSON_BUFFER_SIZE);
+            }
+
+            try {
+                if (!json.read(upi)) {
+                    throw new IOException("Expected a UPI object");
+                }
+
+                parsed = true;
+                messages = upi.validate(this.options.strict);
+            } catch (MalformedUpiTextException e) {
+                messages = e.getValidationMessages();
+            } catch (IOException e) {
+                messages = new ArrayList<ValidationMessage>();
+                messages.add(new ValidationMessage(500, "The line is not a UPI object: " + e.getMessage()));
+                json = null;
+            }
+
+            this.record(batch, i, parsed ? upi : null, messages, start);
+        }
+
+        return batch;
+    }
+
+    private void record(Batch batch, int i, Upi upi, ArrayList<ValidationMessage> messages, long start) {
+        this.latencies.record(System.nanoTime() - start);
+        this.records.increment();
+
+        if (!messages.isEmpty()) {
+            this.invalid.increment();
+
+            if (upi == null) {
+                this.malformed.increment();
+            }
+
+            StringBuilder codes = new StringBuilder();
+            for (int m = 0, size = messages.size(); m < size; m++) {
+                if (m > 0) {
+                    codes.append(' ');
+                }
+
+                codes.append(messages.get(m).getCode());
+            }
+
+            batch.results[i] = codes.toString();
+        }
+
+        if (this.collector != null) {
+            this.collector.add(upi, messages, batch.lines[i]);
+        }
+    }
+
+    private String format(String file) {
+        if (this.options.format != null) {
+            return this.options.format;
+        }
+
+        String name = file.toLowerCase(Locale.ROOT);
+
+        if (name.endsWith(".csv") || name.endsWith(".tsv")) {
+            return CSV;
+        }
+
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+
+        return TEXT;
+    }
+
+    private String summary(long start) {
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+        long records = this.records.sum();
+
+        return String.format(Locale.ROOT, "done: %d records, %d invalid, %d malformed in %.1f s, %.0f records/s, %s",
+                records, this.invalid.sum(), this.malformed.sum(), seconds, records / seconds,
+                BulkValidator.percentiles(this.latencies.counts()));
+    }
+
+    private static String percentiles(long[] counts) {
+        return String.format(Locale.ROOT, "p50 %.1f us, p99 %.1f us, p99.9 %.1f us",
+                LatencyHistogram.percentile(counts, 50) / 1e3,
+                LatencyHistogram.percentile(counts, 99) / 1e3,
+                LatencyHistogram.percentile(counts, 99.9) / 1e3);
+    }
+
+    private static boolean isIndex(String column) {
+        if (column.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < column.length(); i++) {
+            if (column.charAt(i) < '0' || column.charAt(i) > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Batch await(Future<Batch> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Prints records per second and latency percentiles since the previous line
+     */
+    private final class Progress {
+        private long lastTime;
+        private long lastRecords;
+        private long[] lastCounts;
+
+        Progress(long start) {
+            this.lastTime = start;
+            this.lastCounts = BulkValidator.this.latencies.counts();
+        }
+
+        void report() {
+            long now = System.nanoTime();
+            long records = BulkValidator.this.records.sum();
+            long[] counts = BulkValidator.this.latencies.counts();
+            long[] interval = new long[counts.length];
+
+            for (int i = 0; i < counts.length; i++) {
+                interval[i] = counts[i] - this.lastCounts[i];
+            }
+
+            double seconds = Math.max(1, now - this.lastTime) / 1e9;
+
+            BulkValidator.this.err.println(String.format(Locale.ROOT, "progress: %d records, %d invalid, %.0f records/s, %s",
+                    records, BulkValidator.this.invalid.sum(), (records - this.lastRecords) / seconds, BulkValidator.percentiles(interval)));
+
+            this.lastTime = now;
+            this.lastRecords = records;
+            this.lastCounts = counts;
+        }
+    }
+
+    /**
+     * Records read together, and their results once validated
+     */
+    private static final class Batch {
+        final String[] lines = new String[BATCH_SIZE];
+        final String[] upiTexts = new String[BATCH_SIZE];
+
+        // Message codes by record, null if valid
+        final String[] results = new String[BATCH_SIZE];
+        int size;
+
+        void add(String line, String upiText) {
+            this.lines[this.size] = line;
+            this.upiTexts[this.size] = upiText;
+            this.size++;
+        }
+
+        /**
+         * @return the lines from the index on, one per line, handed out no more than a line per read,
+         *         so a reader dropped after a bad line has not read the rest of the batch
+         */
+        Reader reader(int from) {
+            return new Reader() {
+                private int line = from;
+                private int position;
+
+                public int read(char[] buffer, int offset, int length) {
+                    if (length == 0) {
+                        return 0;
+                    }
+
+                    if (this.line >= Batch.this.size) {
+                        return -1;
+                    }
+
+                    String text = Batch.this.lines[this.line];
+                    int count = Math.min(length, text.length() - this.position);
+                    text.getChars(this.position, this.position + count, buffer, offset);
+                    this.position += count;
+
+                    if (this.position == text.length() && count < length) {
+                        buffer[offset + count++] = '\n';
+                        this.line++;
+                        this.position = 0;
+                    }
+
+                    return count;
+                }
+
+                public void close() {
+                }
+            };
+        }
+
+        void write(Writer out, char delimiter, boolean all) throws IOException {
+            for (int i = 0; i < this.size; i++) {
+                if (all || this.results[i] != null) {
+                    out.write(this.lines[i]);
+                    out.write(delimiter);
+                    out.write((this.results[i] == null) ? CsvUpiValidator.VALID : this.results[i]);
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Parsed command line
+     */
+    static final class Options {
+        boolean strict = true;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format;
+        String column = "UPI";
+        char delimiter = ',';
+        boolean header = true;
+        boolean all;
+        boolean canonicalize;
+        String report;
+        int progress = 5;
+        boolean quiet;
+        boolean help;
+        final List<String> files = new ArrayList<String>();
+
+        /**
+         * @throws IllegalArgumentException on an unknown option or a bad value
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            boolean filesOnly = false;
+
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+
+                if (filesOnly || arg.equals("-") || !arg.startsWith("-")) {
+                    options.files.add(arg);
+                    continue;
+                }
+
+                switch (arg) {
+                    case "--":
+                        filesOnly = true;
+                        break;
+                    case "-s":
+                    case "--strict":
+                        options.strict = true;
+                        break;
+                    case "-n":
+                    case "--non-strict":
+                        options.strict = false;
+                        break;
+                    case "-t":
+                    case "--threads":
+                        options.threads = Options.number(arg, Options.value(args, ++i, arg), 1);
+                        break;
+                    case "-f":
+                    case "--format":
+                        options.format = Options.value(args, ++i, arg).toLowerCase(Locale.ROOT);
+                        if (!options.format.equals(TEXT) && !options.format.equals(CSV) && !options.format.equals(NDJSON)) {
+                            throw new IllegalArgumentException("Unknown format " + options.format);
+                        }
+                        break;
+                    case "-c":
+                    case "--column":
+                        options.column = Options.value(args, ++i, arg);
+                        break;
+                    case "-d":
+                    case "--delimiter":
+                        String delimiter = Options.value(args, ++i, arg);
+                        if (delimiter.equals("tab") || delimiter.equals("\\t")) {
+                            options.delimiter = '\t';
+                        } else if (delimiter.length() == 1) {
+                            options.delimiter = delimiter.charAt(0);
+                        } else {
+                            throw new IllegalArgumentException("The delimiter must be one char");
+                        }
+                        break;
+                    case "--no-header":
+                        options.header = false;
+                        break;
+                    case "-a":
+                    case "--all":
+                        options.all = true;
+                        break;
+                    case "--canonicalize":
+                        options.canonicalize = true;
+                        break;
+                    case "-r":
+                    case "--report":
+                        options.report = Options.value(args, ++i, arg);
+                        break;
+                    case "-p":
+                    case "--progress":
+                        options.progress = Options.number(arg, Options.value(args, ++i, arg), 0);
+                        break;
+                    case "-q":
+                    case "--quiet":
+                        options.quiet = true;
+                        break;
+                    case "-h":
+                    case "--help":
+                        options.help = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+
+            if (!options.header && !BulkValidator.isIndex(options.column)) {
+                throw new IllegalArgumentException("Without a header the column must be an index");
+            }
+
+            if (options.files.isEmpty()) {
+                options.files.add("-");
+            }
+
+            return options;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException(option + " needs a value");
+            }
+
+            return args[i];
+        }
+
+        private static int number(String option, String value, int min) {
+            int number;
+
+            try {
+                number = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(option + " needs a number, got " + value);
+            }
+
+            if (number < min) {
+                throw new IllegalArgumentException(option + " must be at least " + min);
+            }
+
+            return number;
+        }
+    }
+}
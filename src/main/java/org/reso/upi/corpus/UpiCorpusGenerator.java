@@ -0,0 +1,565 @@
+package org.reso.upi.corpus;
+
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.fips.FipsRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates a reproducible synthetic UPI corpus for benchmarks and load tests, without
+ * production data.
+ *
+ * <p>
+ * Most UPIs are US parcels in real county FIPS codes from {@link FipsRegistry}; the rest
+ * are spread over the officially assigned {@link CountryCode}s with FIPS-like five digit
+ * sub country codes. Set ratios mix in the kinds of bad input vendors send: non-standard
+ * property types, undefined country codes, missing or extra segments, very long property
+ * IDs and lower case text. Records missing segments fail to parse; an extra segment is
+ * dropped by the parser.
+ * </p>
+ *
+ * <p>
+ * Each record is drawn from its own generator, seeded by the corpus seed and the record
+ * index, so {@link #get(long)} is random access and a file is the same whatever the thread
+ * count. {@link #write(Path, long)} renders blocks of records straight to ASCII bytes on
+ * worker threads and appends them in order, so writing runs at close to disk speed.
+ * </p>
+ *
+ * <pre>
+ * UpiCorpusGenerator generator = new UpiCorpusGenerator(42);
+ * generator.setThreads(8);
+ * generator.setMalformedRatio(0.01);
+ * generator.write(Paths.get("corpus.txt"), 100000000L);   // about 2.5 GB
+ * </pre>
+ */
+public final class UpiCorpusGenerator {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final double US_SHARE = 0.9;
+    private static final double SUB_COUNTY_SHARE = 0.1;
+    private static final double SUB_PROPERTY_SHARE = 0.2;
+
+    private static final String[] PROPERTY_TYPES = {"R", "R", "R", "R", "R", "L", "L", "C"};
+    private static final String[] NON_STANDARD_PROPERTY_TYPES = {"BO", "MF", "IND", "AG", "X", "RES", "CND", "MH"};
+
+    private static final String[] COUNTRIES = UpiCorpusGenerator.countries();
+    private static final String[] UNDEFINED_COUNTRIES = UpiCorpusGenerator.undefinedCountries();
+    private static final int[] US_COUNTIES = FipsRegistry.getDefault().getCountyCodes();
+
+    private final long seed;
+    private int threads = 1;
+    private double nonStandardPropertyTypeRatio;
+    private double undefinedCountryRatio;
+    private double malformedRatio;
+    private double longPropertyIdRatio;
+    private double lowercaseRatio;
+
+    /**
+     * All ratios start at 0, so every UPI is well formed
+     *
+     * @param seed corpus seed; the same seed and ratios give the same corpus
+     */
+    public UpiCorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @param threads workers rendering blocks in {@link #write(Path, long)}, default 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @param ratio share of UPIs with a property type other than R, L or C, 0 to 1
+     */
+    public void setNonStandardPropertyTypeRatio(double ratio) {
+        this.nonStandardPropertyTypeRatio = UpiCorpusGenerator.ratio(ratio);
+    }
+
+    public double getNonStandardPropertyTypeRatio() {
+        return this.nonStandardPropertyTypeRatio;
+    }
+
+    /**
+     * @param ratio share of UPIs with a two-letter country code that is not an ISO 3166 code, 0 to 1
+     */
+    public void setUndefinedCountryRatio(double ratio) {
+        this.undefinedCountryRatio = UpiCorpusGenerator.ratio(ratio);
+    }
+
+    public double getUndefinedCountryRatio() {
+        return this.undefinedCountryRatio;
+    }
+
+    /**
+     * @param ratio share of UPIs missing trailing segments (three in four) or with an extra one, 0 to 1
+     */
+    public void setMalformedRatio(double ratio) {
+        this.malformedRatio = UpiCorpusGenerator.ratio(ratio);
+    }
+
+    public double getMalformedRatio() {
+        return this.malformedRatio;
+    }
+
+    /**
+     * @param ratio share of UPIs with a property ID of 40 to 200 chars, 0 to 1
+     */
+    public void setLongPropertyIdRatio(double ratio) {
+        this.longPropertyIdRatio = UpiCorpusGenerator.ratio(ratio);
+    }
+
+    public double getLongPropertyIdRatio() {
+        return this.longPropertyIdRatio;
+    }
+
+    /**
+     * @param ratio share of UPIs written in lower case, 0 to 1
+     */
+    public void setLowercaseRatio(double ratio) {
+        this.lowercaseRatio = UpiCorpusGenerator.ratio(ratio);
+    }
+
+    public double getLowercaseRatio() {
+        return this.lowercaseRatio;
+    }
+
+    /**
+     * @param index record index, from 0
+     * @return UPI text of the record
+     */
+    public String get(long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Negative index");
+        }
+
+        Bytes out = new Bytes(64);
+        this.render(index, new SplitMix(), out);
+
+        return new String(out.data, 0, out.length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes records 0 to count - 1, one per line
+     *
+     * @param path  file, replaced if it exists
+     * @param count number of records
+     * @return number of bytes written
+     * @throws IOException if writing fails or is interrupted
+     */
+    public long write(Path path, long count) throws IOException {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "upi-corpus");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        // Blocks in flight, so rendering stays a little ahead of writing without filling the heap
+        ArrayDeque<Future<Bytes>> pending = new ArrayDeque<Future<Bytes>>();
+        long written = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long first = 0; first < count || !pending.isEmpty(); first += BLOCK_SIZE) {
+                if (first < count) {
+                    final long from = first;
+                    final long to = Math.min(count, first + BLOCK_SIZE);
+                    pending.add(executor.submit(() -> this.renderBlock(from, to)));
+                }
+
+                while (!pending.isEmpty() && (first >= count || pending.size() > 2 * this.threads)) {
+                    Bytes block = UpiCorpusGenerator.await(pending.poll());
+                    ByteBuffer buffer = ByteBuffer.wrap(block.data, 0, block.length);
+
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+
+                    written += block.length;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return written;
+    }
+
+    /**
+     * Command line: `[--seed N] [--threads N] [--non-standard-types R] [--undefined-countries R]
+     * [--malformed R] [--long-ids R] [--lowercase R] count file`
+     */
+    public static void main(String[] args) throws IOException {
+        ArrayList<String> positional = new ArrayList<String>();
+        ArrayList<String[]> options = new ArrayList<String[]>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                positional.add(args[i]);
+            } else if (i + 1 < args.length) {
+                options.add(new String[]{args[i], args[++i]});
+            } else {
+                UpiCorpusGenerator.exit(args[i] + " needs a value");
+            }
+        }
+
+        if (positional.size() != 2) {
+            UpiCorpusGenerator.exit("Expected a count and a file");
+        }
+
+        try {
+            long seed = 1;
+            for (String[] option : options) {
+                if (option[0].equals("--seed")) {
+                    seed = Long.parseLong(option[1]);
+                }
+            }
+
+            UpiCorpusGenerator generator = new UpiCorpusGenerator(seed);
+
+            for (String[] option : options) {
+                switch (option[0]) {
+                    case "--seed":
+                        break;
+                    case "--threads":
+                        generator.setThreads(Integer.parseInt(option[1]));
+                        break;
+                    case "--non-standard-types":
+                        generator.setNonStandardPropertyTypeRatio(Double.parseDouble(option[1]));
+                        break;
+                    case "--undefined-countries":
+                        generator.setUndefinedCountryRatio(Double.parseDouble(option[1]));
+                        break;
+                    case "--malformed":
+                        generator.setMalformedRatio(Double.parseDouble(option[1]));
+                        break;
+                    case "--long-ids":
+                        generator.setLongPropertyIdRatio(Double.parseDouble(option[1]));
+                        break;
+                    case "--lowercase":
+                        generator.setLowercaseRatio(Double.parseDouble(option[1]));
+                        break;
+                    default:
+                        UpiCorpusGenerator.exit("Unknown option " + option[0]);
+                }
+            }
+
+            long count = Long.parseLong(positional.get(0));
+            long start = System.nanoTime();
+            long bytes = generator.write(Paths.get(positional.get(1)), count);
+            double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+
+            System.err.println(String.format(Locale.ROOT, "%d records, %d bytes in %.1f s, %.0f MB/s", count, bytes, seconds, bytes / seconds / 1e6));
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            UpiCorpusGenerator.exit(e.getMessage());
+        }
+    }
+
+    private Bytes renderBlock(long from, long to) {
+        Bytes out = new Bytes((int) (to - from) * 32);
+        SplitMix random = new SplitMix();
+
+        for (long index = from; index < to; index++) {
+            this.render(index, random, out);
+            out.append('\n');
+        }
+
+        return out;
+    }
+
+    /**
+     * Appends one record. Every choice is drawn in the same order whatever the ratios, so
+     * changing one ratio only changes the records it applies to.
+     */
+    private void render(long index, SplitMix random, Bytes out) {
+        random.seed(this.seed, index);
+        int start = out.length;
+
+        boolean undefined = random.nextDouble() < this.undefinedCountryRatio;
+        boolean us = random.nextDouble() < US_SHARE;
+        int country = random.nextInt(undefined ? UNDEFINED_COUNTRIES.length : COUNTRIES.length);
+        int county = random.nextInt(1 << 30);
+        boolean subCounty = random.nextDouble() < SUB_COUNTY_SHARE;
+        int subCountyCode = 1 + random.nextInt(999);
+        boolean longId = random.nextDouble() < this.longPropertyIdRatio;
+        int idLength = longId ? 40 + random.nextInt(161) : 6 + random.nextInt(7);
+        boolean nonStandard = random.nextDouble() < this.nonStandardPropertyTypeRatio;
+        int propertyType = random.nextInt(8);
+        boolean subProperty = random.nextDouble() < SUB_PROPERTY_SHARE;
+        int unit = 1 + random.nextInt(999);
+        boolean malformed = random.nextDouble() < this.malformedRatio;
+        int segments = (random.nextInt(4) < 3) ? 1 + random.nextInt(5) : 7;
+        boolean lowercase = random.nextDouble() < this.lowercaseRatio;
+
+        if (!malformed) {
+            segments = 6;
+        }
+
+        // Country
+        if (undefined) {
+            out.append(UNDEFINED_COUNTRIES[country]);
+        } else {
+            out.append(us ? "US" : COUNTRIES[country]);
+        }
+
+        // Sub country: a real county for the US, else a FIPS-like state and odd county number
+        if (segments > 1) {
+            out.append('-');
+
+            if (us && !undefined && US_COUNTIES.length > 0) {
+                out.appendNumber(US_COUNTIES[county % US_COUNTIES.length], 5);
+            } else {
+                out.appendNumber((1 + county % 56) * 1000 + 1 + 2 * ((county >>> 8) % 100), 5);
+            }
+        }
+
+        if (segments > 2) {
+            out.append('-');
+
+            if (subCounty) {
+                out.appendNumber(subCountyCode, 1);
+            } else {
+                out.append('N');
+            }
+        }
+
+        // Property ID: digits with the odd letter, like assessor parcel numbers
+        if (segments > 3) {
+            out.append('-');
+            out.append((char) ('1' + random.nextInt(9)));
+
+            // Six bits a char, ten chars a draw; 1 in 32 is a letter
+            long bits = 0;
+            for (int i = 1; i < idLength; i++) {
+                if (i % 10 == 1) {
+                    bits = random.nextLong();
+                }
+
+                int r = (int) (bits & 63);
+                bits >>>= 6;
+                out.append((r < 62) ? (char) ('0' + r % 10) : (char) ('A' + random.nextInt(26)));
+            }
+        }
+
+        if (segments > 4) {
+            out.append('-');
+            out.append(nonStandard ? NON_STANDARD_PROPERTY_TYPES[propertyType] : PROPERTY_TYPES[propertyType]);
+        }
+
+        if (segments > 5) {
+            out.append('-');
+
+            if (subProperty) {
+                out.appendNumber(unit, 1);
+            } else {
+                out.append('N');
+            }
+        }
+
+        if (segments > 6) {
+            out.append("-X");
+        }
+
+        if (lowercase) {
+            out.toLowerCase(start);
+        }
+    }
+
+    private static double ratio(double ratio) {
+        if (!(ratio >= 0 && ratio <= 1)) {
+            throw new IllegalArgumentException("A ratio must be between 0 and 1");
+        }
+
+        return ratio;
+    }
+
+    private static void exit(String message) {
+        System.err.println("upi-corpus: " + message);
+        System.err.println("Usage: [--seed N] [--threads N] [--non-standard-types R] [--undefined-countries R] "
+                + "[--malformed R] [--long-ids R] [--lowercase R] count file");
+        System.exit(2);
+    }
+
+    private static Bytes await(Future<Bytes> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return alpha-2 codes of the officially assigned countries
+     */
+    private static String[] countries() {
+        ArrayList<String> codes = new ArrayList<String>();
+
+        for (CountryCode code : CountryCode.values()) {
+            if (code != CountryCode.UNDEFINED && code.getAssignment() == CountryCode.Assignment.OFFICIALLY_ASSIGNED) {
+                codes.add(code.getAlpha2());
+            }
+        }
+
+        return codes.toArray(new String[0]);
+    }
+
+    /**
+     * @return two-letter codes that are no country code at all
+     */
+    private static String[] undefinedCountries() {
+        HashSet<String> defined = new HashSet<String>();
+        for (CountryCode code : CountryCode.values()) {
+            defined.add(code.getAlpha2());
+        }
+
+        ArrayList<String> codes = new ArrayList<String>();
+        char[] pair = new char[2];
+
+        for (pair[0] = 'A'; pair[0] <= 'Z'; pair[0]++) {
+            for (pair[1] = 'A'; pair[1] <= 'Z'; pair[1]++) {
+                String code = new String(pair);
+
+                if (!defined.contains(code)) {
+                    codes.add(code);
+                }
+            }
+        }
+
+        return codes.toArray(new String[0]);
+    }
+
+    /**
+     * SplitMix64, reseeded for each record
+     */
+    private static final class SplitMix {
+        private long state;
+
+        void seed(long seed, long index) {
+            this.state = SplitMix.mix(seed ^ SplitMix.mix(index + 0x9E3779B97F4A7C15L));
+        }
+
+        long nextLong() {
+            this.state += 0x9E3779B97F4A7C15L;
+
+            return SplitMix.mix(this.state);
+        }
+
+        int nextInt(int bound) {
+            return (int) (((this.nextLong() >>> 33) * bound) >>> 31);
+        }
+
+        double nextDouble() {
+            return (this.nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Growable ASCII byte buffer
+     */
+    private static final class Bytes {
+        byte[] data;
+        int length;
+
+        Bytes(int capacity) {
+            this.data = new byte[Math.max(16, capacity)];
+        }
+
+        void append(char c) {
+            if (this.length == this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.length * 2);
+            }
+
+            this.data[this.length++] = (byte) c;
+        }
+
+        void append(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                this.append(text.charAt(i));
+            }
+        }
+
+        /**
+         * Appends the number left-padded with zeros to at least the given digits
+         */
+        void appendNumber(int number, int digits) {
+            int length = 1;
+            for (int n = number; n >= 10; n /= 10) {
+                length++;
+            }
+
+            for (int i = length; i < digits; i++) {
+                this.append('0');
+            }
+
+            int end = this.length + length;
+            while (this.length < end) {
+                this.append('0');
+            }
+
+            for (int i = end - 1; i >= end - length; i--) {
+                this.data[i] = (byte) ('0' + number % 10);
+                number /= 10;
+            }
+        }
+
+        void toLowerCase(int start) {
+            for (int i = start; i < this.length; i++) {
+                if (this.data[i] >= 'A' && this.data[i] <= 'Z') {
+                    this.data[i] += 32;
+                }
+            }
+        }
+    }
+}
@@ -2165,11 +2165,17 @@ public enum CountryCode
     private static final Map<String, CountryCode> alpha3Map = new HashMap<String, CountryCode>();
     private static final Map<String, CountryCode> alpha4Map = new HashMap<String, CountryCode>();
     private static final Map<Integer, CountryCode> numericMap = new HashMap<Integer, CountryCode>();
+    private static final CountryCode[] alpha2Table = new CountryCode[26 * 26];
 
     static
     {
         for (CountryCode cc : values())
         {
+            if (cc != UNDEFINED)
+            {
+                alpha2Table[alpha2Index(cc.name())] = cc;
+            }
+
             if (cc.getAlpha3() != null)
             {
                 alpha3Map.put(cc.getAlpha3(), cc);
@@ -2409,14 +2415,29 @@ public enum CountryCode
 
     private static CountryCode getByAlpha2Code(String code)
     {
-        try
-        {
-            return Enum.valueOf(CountryCode.class, code);
-        }
-        catch (IllegalArgumentException e)
+        int index = alpha2Index(code);
+
+        return (index < 0) ? null : alpha2Table[index];
+    }
+
+    /**
+     * Index of an upper-case alpha-2 code in the lookup table, so parsing
+     * does not pay for an exception on every unknown code.
+     *
+     * @return
+     *         The table index, or -1 if the code is not two upper-case letters.
+     */
+    private static int alpha2Index(String code)
+    {
+        char first = code.charAt(0);
+        char second = code.charAt(1);
+
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z')
         {
-            return null;
+            return -1;
         }
+
+        return (first - 'A') * 26 + (second - 'A');
     }
 
     private static CountryCode getByAlpha3Code(String code)
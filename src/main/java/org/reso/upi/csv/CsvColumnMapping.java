@@ -0,0 +1,174 @@
+package org.reso.upi.csv;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Where the UPI is in a CSV record: one column holding the whole UPI text, or six columns
+ * holding its pieces. Columns are given by header name or by zero-based index.
+ *
+ * <pre>
+ * CsvColumnMapping.upiColumn("UPI").withDescription("Address");
+ * CsvColumnMapping.segmentColumns("Country", "State", "County", "APN", "Type", "Unit");
+ * CsvColumnMapping.upiColumn(0);
+ * </pre>
+ */
+public final class CsvColumnMapping {
+    static final int UPI = 0;
+    static final int DESCRIPTION = 7;
+    private static final int COLUMNS = 8;
+
+    // Slot 0 is the whole UPI, 1-6 the pieces in UPI order, 7 the description
+    private final String[] names;
+    private final int[] indexes;
+
+    private CsvColumnMapping(String[] names, int[] indexes) {
+        this.names = names;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @param name header of the column holding the whole UPI text
+     * @return mapping
+     */
+    public static CsvColumnMapping upiColumn(String name) {
+        return CsvColumnMapping.empty().withName(UPI, name);
+    }
+
+    /**
+     * @param index zero-based column holding the whole UPI text
+     * @return mapping
+     */
+    public static CsvColumnMapping upiColumn(int index) {
+        return CsvColumnMapping.empty().withIndex(UPI, index);
+    }
+
+    /**
+     * @param names headers of the country, sub country, sub county, property ID,
+     *              property type and sub property columns
+     * @return mapping
+     */
+    public static CsvColumnMapping segmentColumns(String... names) {
+        if (names.length != 6) {
+            throw new IllegalArgumentException("Expected 6 columns, got " + names.length);
+        }
+
+        CsvColumnMapping mapping = CsvColumnMapping.empty();
+        for (int i = 0; i < 6; i++) {
+            mapping = mapping.withName(i + 1, names[i]);
+        }
+
+        return mapping;
+    }
+
+    /**
+     * @param indexes zero-based country, sub country, sub county, property ID,
+     *                property type and sub property columns
+     * @return mapping
+     */
+    public static CsvColumnMapping segmentColumns(int... indexes) {
+        if (indexes.length != 6) {
+            throw new IllegalArgumentException("Expected 6 columns, got " + indexes.length);
+        }
+
+        CsvColumnMapping mapping = CsvColumnMapping.empty();
+        for (int i = 0; i < 6; i++) {
+            mapping = mapping.withIndex(i + 1, indexes[i]);
+        }
+
+        return mapping;
+    }
+
+    /**
+     * @param name header of the description column
+     * @return a copy reading the description too
+     */
+    public CsvColumnMapping withDescription(String name) {
+        return this.withName(DESCRIPTION, name);
+    }
+
+    /**
+     * @param index zero-based description column
+     * @return a copy reading the description too
+     */
+    public CsvColumnMapping withDescription(int index) {
+        return this.withIndex(DESCRIPTION, index);
+    }
+
+    /**
+     * @return true if the UPI is in one column
+     */
+    public boolean isWholeUpi() {
+        return this.names[UPI] != null || this.indexes[UPI] >= 0;
+    }
+
+    /**
+     * @return true if any column is given by name, so the file needs a header
+     */
+    boolean needsHeader() {
+        for (String name : this.names) {
+            if (name != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param header header names, or null if the file has none
+     * @return column index per slot, -1 where unmapped
+     * @throws IllegalArgumentException if a named column is not in the header
+     */
+    int[] resolve(List<String> header) {
+        int[] columns = this.indexes.clone();
+
+        for (int slot = 0; slot < COLUMNS; slot++) {
+            if (this.names[slot] == null) {
+                continue;
+            }
+
+            int index = (header == null) ? -1 : header.indexOf(this.names[slot]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Column `" + this.names[slot] + "` is not in the header");
+            }
+
+            columns[slot] = index;
+        }
+
+        return columns;
+    }
+
+    private static CsvColumnMapping empty() {
+        int[] indexes = new int[COLUMNS];
+        Arrays.fill(indexes, -1);
+
+        return new CsvColumnMapping(new String[COLUMNS], indexes);
+    }
+
+    private CsvColumnMapping withName(int slot, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Column name is required");
+        }
+
+        String[] names = this.names.clone();
+        int[] indexes = this.indexes.clone();
+        names[slot] = name;
+        indexes[slot] = -1;
+
+        return new CsvColumnMapping(names, indexes);
+    }
+
+    private CsvColumnMapping withIndex(int slot, int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Column index must not be negative");
+        }
+
+        String[] names = this.names.clone();
+        int[] indexes = this.indexes.clone();
+        names[slot] = null;
+        indexes[slot] = index;
+
+        return new CsvColumnMapping(names, indexes);
+    }
+}
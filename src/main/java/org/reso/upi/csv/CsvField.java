@@ -0,0 +1,86 @@
+package org.reso.upi.csv;
+
+/**
+ * One field of the current CSV record, read straight from the reader's buffer.
+ * Only valid until the reader moves to the next record: call {@link #toString()} to keep it.
+ */
+public final class CsvField implements CharSequence {
+    private char[] chars;
+    private int offset;
+    private int length;
+
+    // Fields with doubled quotes are unescaped here, the buffer keeps the raw record
+    private char[] unescaped = new char[0];
+
+    void set(char[] chars, int offset, int length) {
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    void setQuoted(char[] chars, int offset, int length) {
+        if (this.unescaped.length < length) {
+            this.unescaped = new char[Math.max(length, this.unescaped.length * 2)];
+        }
+
+        int unescapedLength = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            char c = chars[i];
+            this.unescaped[unescapedLength++] = c;
+
+            // "" stands for one quote
+            if (c == '"') {
+                i++;
+            }
+        }
+
+        this.set(this.unescaped, 0, unescapedLength);
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException("Index " + index + ", length " + this.length);
+        }
+
+        return this.chars[this.offset + index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return this.toString().substring(start, end);
+    }
+
+    /**
+     * @return true if the field is empty
+     */
+    public boolean isEmpty() {
+        return this.length == 0;
+    }
+
+    /**
+     * @param text text to compare with
+     * @return true if the field holds exactly this text, without allocating
+     */
+    public boolean contentEquals(CharSequence text) {
+        if (text.length() != this.length) {
+            return false;
+        }
+
+        for (int i = 0; i < this.length; i++) {
+            if (this.chars[this.offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.chars, this.offset, this.length);
+    }
+}
@@ -0,0 +1,419 @@
+package org.reso.upi.csv;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams UPIs out of a CSV file (RFC 4180: quoted fields, doubled quotes, CRLF or LF).
+ *
+ * <p>
+ * Records are parsed in place in one char buffer: the reader only remembers where each
+ * field starts and ends, and {@link #getField(int)} returns a view over the buffer, so no
+ * row array or field strings are built. Memory stays constant however big the file is;
+ * the buffer only grows for a record longer than itself, up to a limit.
+ * </p>
+ *
+ * <pre>
+ * CsvUpiReader csv = new CsvUpiReader(reader, CsvColumnMapping.upiColumn("UPI"), ',', true);
+ * Upi upi = new Upi();
+ * upi.setReuseBuffers(true);
+ *
+ * while (csv.next()) {
+ *     try {
+ *         csv.parseInto(upi);
+ *         upi.validate(true);
+ *     } catch (MalformedUpiTextException e) {
+ *         // code 500
+ *     }
+ * }
+ * </pre>
+ */
+public class CsvUpiReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private final Reader reader;
+    private final char delimiter;
+    private final List<String> header;
+    private final int[] columns;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // The current record
+    private int recordStart;
+    private int recordEnd;
+    private int fieldCount;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private boolean[] fieldQuoted = new boolean[16];
+    private CsvField[] fields = new CsvField[0];
+    private long lineNumber;
+    private long recordLineNumber;
+
+    /**
+     * Comma separated, with a header
+     *
+     * @param reader  CSV input, closed by the caller
+     * @param mapping UPI columns
+     * @throws IOException if the header cannot be read
+     */
+    public CsvUpiReader(Reader reader, CsvColumnMapping mapping) throws IOException {
+        this(reader, mapping, ',', true);
+    }
+
+    /**
+     * @param reader    CSV input, closed by the caller
+     * @param mapping   UPI columns
+     * @param delimiter field delimiter, eg `,` or `\t`
+     * @param hasHeader true if the first record holds column names
+     * @throws IOException              if the header cannot be read
+     * @throws IllegalArgumentException if a mapped column name is not in the header
+     */
+    public CsvUpiReader(Reader reader, CsvColumnMapping mapping, char delimiter, boolean hasHeader) throws IOException {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("Invalid delimiter");
+        }
+
+        this.reader = reader;
+        this.delimiter = delimiter;
+
+        if (!hasHeader && mapping.needsHeader()) {
+            throw new IllegalArgumentException("Columns given by name need a header");
+        }
+
+        if (hasHeader && this.next()) {
+            ArrayList<String> names = new ArrayList<String>(this.fieldCount);
+            for (int i = 0; i < this.fieldCount; i++) {
+                names.add(this.getField(i).toString().trim());
+            }
+            this.header = names;
+        } else {
+            this.header = null;
+        }
+
+        this.columns = mapping.resolve(this.header);
+    }
+
+    /**
+     * Moves to the next record, skipping blank lines
+     *
+     * @return false at the end of the input
+     * @throws IOException if reading fails, a quote is not closed or a record is too long
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int status = this.parseRecord();
+
+            if (status < 0) {
+                return false;
+            }
+
+            if (status > 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Fills the UPI from the mapped columns of the current record, after a {@link UpiInterface#reset()}
+     *
+     * @param upi UPI to fill
+     * @throws MalformedUpiTextException if the UPI column is malformed or a mapped column is missing
+     */
+    public void parseInto(UpiInterface upi) throws MalformedUpiTextException {
+        upi.reset();
+
+        if (this.columns[CsvColumnMapping.UPI] >= 0) {
+            CsvField upiText = this.getMappedField(CsvColumnMapping.UPI);
+
+            if (upiText == null) {
+                throw new MalformedUpiTextException(CsvUpiReader.getMissingColumnMessage());
+            }
+
+            upi.parseUpi(upiText.toString());
+        } else {
+            for (int slot = 1; slot <= 6; slot++) {
+                if (this.getMappedField(slot) == null) {
+                    throw new MalformedUpiTextException(CsvUpiReader.getMissingColumnMessage());
+                }
+            }
+
+            String countryCode = CsvUpiReader.text(this.getMappedField(1));
+            if (countryCode == null) {
+                upi.setCountryCode((CountryCode) null);
+            } else {
+                upi.setCountryCode(countryCode);
+            }
+
+            upi.setSubCountryCode(CsvUpiReader.text(this.getMappedField(2)));
+            upi.setSubCountyCode(CsvUpiReader.text(this.getMappedField(3)));
+            upi.setPropertyId(CsvUpiReader.text(this.getMappedField(4)));
+
+            String propertyTypeCode = CsvUpiReader.text(this.getMappedField(5));
+            if (propertyTypeCode != null) {
+                upi.setPropertyTypeCode(propertyTypeCode);
+            }
+
+            upi.setSubProperty(CsvUpiReader.text(this.getMappedField(6)));
+        }
+
+        if (this.columns[CsvColumnMapping.DESCRIPTION] >= 0) {
+            upi.setDescription(CsvUpiReader.text(this.getMappedField(CsvColumnMapping.DESCRIPTION)));
+        }
+    }
+
+    public static ValidationMessage getMissingColumnMessage() {
+        return new ValidationMessage(500, "The CSV record is missing a UPI column");
+    }
+
+    /**
+     * @param index zero-based column
+     * @return view of the field, valid until {@link #next()}; null if the record is shorter
+     */
+    public CsvField getField(int index) {
+        if (index < 0 || index >= this.fieldCount) {
+            return null;
+        }
+
+        CsvField field = this.fields[index];
+        int start = this.fieldStarts[index];
+        int end = this.fieldEnds[index];
+
+        if (this.fieldQuoted[index]) {
+            field.setQuoted(this.buffer, start, end - start);
+        } else {
+            field.set(this.buffer, start, end - start);
+        }
+
+        return field;
+    }
+
+    /**
+     * @return number of fields in the current record
+     */
+    public int getFieldCount() {
+        return this.fieldCount;
+    }
+
+    /**
+     * @return header names, or null if the file has none
+     */
+    public List<String> getHeader() {
+        return this.header;
+    }
+
+    /**
+     * @return line number where the current record starts, from 1
+     */
+    public long getLineNumber() {
+        return this.recordLineNumber;
+    }
+
+    /**
+     * Writes the current record exactly as read, without its line break
+     *
+     * @param writer output
+     * @throws IOException if writing fails
+     */
+    public void writeRecord(Writer writer) throws IOException {
+        writer.write(this.buffer, this.recordStart, this.recordEnd - this.recordStart);
+    }
+
+    private CsvField getMappedField(int slot) {
+        return this.getField(this.columns[slot]);
+    }
+
+    /**
+     * Parses one record from the buffer, refilling it as needed
+     *
+     * @return 1 for a record, 0 for a blank line, -1 at the end of the input
+     */
+    private int parseRecord() throws IOException {
+        while (true) {
+            int result = this.tryParseRecord();
+
+            if (result != Integer.MIN_VALUE) {
+                return result;
+            }
+
+            // The record runs past the buffered input: keep its start and read more
+            this.fill();
+        }
+    }
+
+    /**
+     * @return as {@link #parseRecord()}, or Integer.MIN_VALUE if more input is needed
+     */
+    private int tryParseRecord() throws IOException {
+        char[] buffer = this.buffer;
+        int limit = this.limit;
+        int i = this.position;
+        long lines = 0;
+
+        if (i >= limit) {
+            return this.endOfInput ? -1 : Integer.MIN_VALUE;
+        }
+
+        this.fieldCount = 0;
+
+        while (true) {
+            int fieldStart = i;
+            int fieldEnd;
+            boolean quoted = false;
+
+            if (i < limit && buffer[i] == '"') {
+                // Quoted field, may hold delimiters, line breaks and doubled quotes
+                boolean escaped = false;
+                i++;
+
+                while (true) {
+                    if (i >= limit) {
+                        if (this.endOfInput) {
+                            throw new IOException("Unclosed quote in CSV record at line " + (this.lineNumber + 1));
+                        }
+                        return Integer.MIN_VALUE;
+                    }
+
+                    char c = buffer[i];
+
+                    if (c == '"') {
+                        if (i + 1 >= limit && !this.endOfInput) {
+                            return Integer.MIN_VALUE;
+                        }
+
+                        if (i + 1 < limit && buffer[i + 1] == '"') {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+
+                        break;
+                    }
+
+                    if (c == '\n') {
+                        lines++;
+                    }
+
+                    i++;
+                }
+
+                fieldStart++;
+                fieldEnd = i;
+                quoted = escaped;
+                i++;
+
+                // Anything between the closing quote and the delimiter is kept out of the field
+                while (i < limit && buffer[i] != this.delimiter && buffer[i] != '\n' && buffer[i] != '\r') {
+                    i++;
+                }
+            } else {
+                while (i < limit && buffer[i] != this.delimiter && buffer[i] != '\n' && buffer[i] != '\r') {
+                    i++;
+                }
+
+                fieldEnd = i;
+            }
+
+            if (i >= limit && !this.endOfInput) {
+                return Integer.MIN_VALUE;
+            }
+
+            this.addField(fieldStart, fieldEnd, quoted);
+
+            if (i < limit && buffer[i] == this.delimiter) {
+                i++;
+                continue;
+            }
+
+            // End of the record: line break or end of input
+            int recordEnd = i;
+
+            if (i < limit && buffer[i] == '\r') {
+                if (i + 1 >= limit && !this.endOfInput) {
+                    return Integer.MIN_VALUE;
+                }
+                i++;
+            }
+
+            if (i < limit && buffer[i] == '\n') {
+                i++;
+            }
+
+            this.recordStart = this.position;
+            this.recordEnd = recordEnd;
+            this.recordLineNumber = this.lineNumber + 1;
+            this.lineNumber += lines + 1;
+            this.position = i;
+
+            // A blank line has one empty, unquoted field
+            boolean blank = recordEnd == this.recordStart;
+
+            return blank ? 0 : 1;
+        }
+    }
+
+    private void addField(int start, int end, boolean quoted) {
+        int index = this.fieldCount++;
+
+        if (index == this.fieldStarts.length) {
+            this.fieldStarts = Arrays.copyOf(this.fieldStarts, index * 2);
+            this.fieldEnds = Arrays.copyOf(this.fieldEnds, index * 2);
+            this.fieldQuoted = Arrays.copyOf(this.fieldQuoted, index * 2);
+        }
+
+        if (index == this.fields.length) {
+            this.fields = Arrays.copyOf(this.fields, Math.max(16, index * 2));
+            for (int i = index; i < this.fields.length; i++) {
+                this.fields[i] = new CsvField();
+            }
+        }
+
+        this.fieldStarts[index] = start;
+        this.fieldEnds[index] = end;
+        this.fieldQuoted[index] = quoted;
+    }
+
+    /**
+     * Moves the unfinished record to the front of the buffer and reads more input behind it
+     */
+    private void fill() throws IOException {
+        int kept = this.limit - this.position;
+
+        if (this.position > 0) {
+            System.arraycopy(this.buffer, this.position, this.buffer, 0, kept);
+        } else if (kept == this.buffer.length) {
+            if (this.buffer.length >= MAX_RECORD_LENGTH) {
+                throw new IOException("CSV record at line " + (this.lineNumber + 1) + " is longer than " + MAX_RECORD_LENGTH + " characters");
+            }
+
+            this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+
+        this.position = 0;
+        this.limit = kept;
+
+        int read = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+        if (read < 0) {
+            this.endOfInput = true;
+        } else {
+            this.limit += read;
+        }
+    }
+
+    private static String text(CsvField field) {
+        return field.isEmpty() ? null : field.toString();
+    }
+}
@@ -0,0 +1,138 @@
+package org.reso.upi.csv;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Validates every record of a CSV file and writes it back out with a result column appended.
+ *
+ * <p>
+ * Each record is copied to the output as it was read, followed by the result: `VALID`, or the
+ * message codes separated by spaces, eg `400 410`. A malformed UPI gives `500`. One {@link Upi}
+ * is reused for all records, so memory stays constant. Wrap the output in a
+ * {@link java.io.BufferedWriter}.
+ * </p>
+ *
+ * <pre>
+ * CsvUpiValidator validator = new CsvUpiValidator(CsvColumnMapping.upiColumn("UPI"), true, ruleSet);
+ * long invalid = validator.validate(reader, writer);
+ * </pre>
+ */
+public class CsvUpiValidator {
+    public static final String RESULT_COLUMN = "UPI_VALIDATION";
+    public static final String VALID = "VALID";
+
+    private final CsvColumnMapping mapping;
+    private final boolean strict;
+    private final ArrayList<ValidationRuleInterface> ruleSet;
+    private final char delimiter;
+    private final boolean hasHeader;
+
+    private final char[] digits = new char[11];
+
+    /**
+     * Comma separated, with a header
+     *
+     * @param mapping UPI columns
+     * @param strict  strict mode
+     * @param ruleSet rules to validate against
+     */
+    public CsvUpiValidator(CsvColumnMapping mapping, boolean strict, ArrayList<ValidationRuleInterface> ruleSet) {
+        this(mapping, strict, ruleSet, ',', true);
+    }
+
+    /**
+     * @param mapping   UPI columns
+     * @param strict    strict mode
+     * @param ruleSet   rules to validate against
+     * @param delimiter field delimiter
+     * @param hasHeader true if the first record holds column names, which is copied with the result column added
+     */
+    public CsvUpiValidator(CsvColumnMapping mapping, boolean strict, ArrayList<ValidationRuleInterface> ruleSet, char delimiter, boolean hasHeader) {
+        this.mapping = mapping;
+        this.strict = strict;
+        this.ruleSet = ruleSet;
+        this.delimiter = delimiter;
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * @param in  CSV input, closed by the caller
+     * @param out output, closed by the caller
+     * @return number of records that were malformed or failed validation
+     * @throws IOException if reading or writing fails
+     */
+    public long validate(Reader in, Writer out) throws IOException {
+        CsvUpiReader csv = new CsvUpiReader(in, this.mapping, this.delimiter, this.hasHeader);
+        Upi upi = new Upi();
+        upi.setReuseBuffers(true);
+        long invalid = 0;
+
+        if (csv.getHeader() != null) {
+            csv.writeRecord(out);
+            out.write(this.delimiter);
+            out.write(RESULT_COLUMN);
+            out.write('\n');
+        }
+
+        while (csv.next()) {
+            csv.writeRecord(out);
+            out.write(this.delimiter);
+
+            ArrayList<ValidationMessage> messages;
+
+            try {
+                csv.parseInto(upi);
+                messages = upi.validate(this.strict, this.ruleSet);
+            } catch (MalformedUpiTextException e) {
+                messages = e.getValidationMessages();
+            }
+
+            if (messages.isEmpty()) {
+                out.write(VALID);
+            } else {
+                invalid++;
+
+                for (int i = 0, size = messages.size(); i < size; i++) {
+                    if (i > 0) {
+                        out.write(' ');
+                    }
+
+                    this.writeCode(out, messages.get(i).getCode());
+                }
+            }
+
+            out.write('\n');
+        }
+
+        out.flush();
+
+        return invalid;
+    }
+
+    /**
+     * Writes a message code without going through a String
+     */
+    private void writeCode(Writer out, int code) throws IOException {
+        if (code < 0) {
+            out.write(Integer.toString(code));
+            return;
+        }
+
+        int position = this.digits.length;
+
+        do {
+            this.digits[--position] = (char) ('0' + code % 10);
+            code /= 10;
+        } while (code > 0);
+
+        out.write(this.digits, position, this.digits.length - position);
+    }
+}
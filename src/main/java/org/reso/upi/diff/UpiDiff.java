@@ -0,0 +1,524 @@
+package org.reso.upi.diff;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.sort.UpiSortKey;
+import org.reso.upi.sort.UpiSorter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares two snapshots of UPI text files, eg yesterday's feed and today's.
+ *
+ * <p>
+ * Lines hold a UPI, optionally followed by a tab and a description. A parcel is the UPI
+ * without its sub property. Records of the same parcel are paired by sub property; a
+ * pair with different descriptions is changed, and a parcel left with one unpaired record
+ * on each side changed its sub property. Everything else unpaired is removed or added.
+ * </p>
+ *
+ * <p>
+ * Unsorted snapshots are split into partitions by a hash of the sub country code, each
+ * partition is sorted with {@link UpiSorter} within its share of the memory budget, and
+ * the partitions are merge-joined in parallel. Snapshots already in {@link UpiSortKey}
+ * order are merge-joined in one streaming pass. Either way only one parcel per snapshot
+ * is held in memory during the join.
+ * </p>
+ *
+ * <pre>
+ * UpiDiff diff = new UpiDiff(temporaryDirectory, 512L * 1024 * 1024, 8);
+ * UpiDiff.Summary summary = diff.diff(yesterday, today, handler);
+ * </pre>
+ */
+public final class UpiDiff {
+    private final Path temporaryDirectory;
+    private final long memoryBudget;
+    private final int threads;
+    private boolean sorted;
+
+    /**
+     * @param temporaryDirectory where partitions and sort runs are written, and deleted afterwards
+     * @param memoryBudget       bytes of heap shared by the partition sorts
+     * @param threads            partitions sorted and joined at once
+     */
+    public UpiDiff(Path temporaryDirectory, long memoryBudget, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        this.temporaryDirectory = temporaryDirectory;
+        this.memoryBudget = memoryBudget;
+        this.threads = threads;
+    }
+
+    /**
+     * @param sorted true if both snapshots are already in {@link UpiSortKey} order, to skip sorting
+     */
+    public void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    /**
+     * @param oldSnapshot earlier snapshot (UTF-8)
+     * @param newSnapshot later snapshot (UTF-8)
+     * @param handler     receives the differences; called from several threads unless the snapshots are sorted
+     * @return counts of the differences
+     * @throws IOException if reading or writing fails, or sorted snapshots are out of order
+     */
+    public Summary diff(Path oldSnapshot, Path newSnapshot, Handler handler) throws IOException {
+        if (this.sorted) {
+            Summary summary = new Summary();
+            UpiDiff.join(oldSnapshot, newSnapshot, handler, summary);
+
+            return summary;
+        }
+
+        int partitions = this.threads;
+        Path[] oldPartitions = this.partition(oldSnapshot, "old", partitions);
+        Path[] newPartitions = null;
+        ExecutorService executor = null;
+
+        try {
+            newPartitions = this.partition(newSnapshot, "new", partitions);
+            executor = Executors.newFixedThreadPool(this.threads);
+
+            final Path[] olds = oldPartitions;
+            final Path[] news = newPartitions;
+            final long budget = Math.max(1024 * 1024, this.memoryBudget / this.threads);
+            ArrayList<Future<Summary>> futures = new ArrayList<Future<Summary>>();
+
+            for (int p = 0; p < partitions; p++) {
+                final int partition = p;
+
+                futures.add(executor.submit(() -> this.diffPartition(olds[partition], news[partition], budget, handler)));
+            }
+
+            Summary summary = new Summary();
+
+            for (Future<Summary> future : futures) {
+                summary.add(UpiDiff.await(future));
+            }
+
+            return summary;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            UpiDiff.delete(oldPartitions);
+            UpiDiff.delete(newPartitions);
+        }
+    }
+
+    private Summary diffPartition(Path oldPartition, Path newPartition, long budget, Handler handler) throws IOException {
+        UpiSorter sorter = new UpiSorter(this.temporaryDirectory, budget);
+        Path oldSorted = Files.createTempFile(this.temporaryDirectory, "upi-diff-", ".txt");
+        Path newSorted = Files.createTempFile(this.temporaryDirectory, "upi-diff-", ".txt");
+
+        try {
+            sorter.sort(oldPartition, oldSorted);
+            Files.delete(oldPartition);
+            sorter.sort(newPartition, newSorted);
+            Files.delete(newPartition);
+
+            Summary summary = new Summary();
+            UpiDiff.join(oldSorted, newSorted, handler, summary);
+
+            return summary;
+        } finally {
+            Files.deleteIfExists(oldSorted);
+            Files.deleteIfExists(newSorted);
+        }
+    }
+
+    /**
+     * Splits a snapshot by a hash of the sub country code, read straight from the text
+     */
+    private Path[] partition(Path snapshot, String name, int partitions) throws IOException {
+        Path[] paths = new Path[partitions];
+        BufferedWriter[] writers = new BufferedWriter[partitions];
+
+        try {
+            for (int p = 0; p < partitions; p++) {
+                paths[p] = Files.createTempFile(this.temporaryDirectory, "upi-" + name + "-" + p + "-", ".txt");
+                writers[p] = Files.newBufferedWriter(paths[p], StandardCharsets.UTF_8);
+            }
+
+            try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+
+                    BufferedWriter writer = writers[Math.floorMod(UpiDiff.subCountryHash(line), partitions)];
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            UpiDiff.close(writers);
+            UpiDiff.delete(paths);
+            throw e;
+        }
+
+        UpiDiff.close(writers);
+
+        return paths;
+    }
+
+    /**
+     * Hash of the text between the first and second dash, without a substring
+     */
+    private static int subCountryHash(String line) {
+        int start = line.indexOf('-') + 1;
+        int hash = 0;
+
+        if (start > 0) {
+            for (int i = start; i < line.length(); i++) {
+                char c = line.charAt(i);
+
+                if (c == '-' || c == '\t') {
+                    break;
+                }
+
+                hash = 31 * hash + c;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Merge-joins two sorted snapshots one parcel at a time
+     */
+    private static void join(Path oldSnapshot, Path newSnapshot, Handler handler, Summary summary) throws IOException {
+        try (BufferedReader oldReader = Files.newBufferedReader(oldSnapshot, StandardCharsets.UTF_8);
+             BufferedReader newReader = Files.newBufferedReader(newSnapshot, StandardCharsets.UTF_8)) {
+            Source olds = new Source(oldReader, true, handler, summary);
+            Source news = new Source(newReader, false, handler, summary);
+            ArrayList<Entry> oldLeft = new ArrayList<Entry>();
+            ArrayList<Entry> newLeft = new ArrayList<Entry>();
+
+            boolean hasOld = olds.nextGroup();
+            boolean hasNew = news.nextGroup();
+
+            while (hasOld || hasNew) {
+                int difference = !hasOld ? 1 : !hasNew ? -1 : UpiSortKey.compare(olds.parcel, news.parcel);
+
+                if (difference < 0) {
+                    for (Entry entry : olds.group) {
+                        UpiDiff.removed(entry, handler, summary);
+                    }
+                    hasOld = olds.nextGroup();
+                } else if (difference > 0) {
+                    for (Entry entry : news.group) {
+                        UpiDiff.added(entry, handler, summary);
+                    }
+                    hasNew = news.nextGroup();
+                } else {
+                    UpiDiff.match(olds.group, news.group, oldLeft, newLeft, handler, summary);
+                    hasOld = olds.nextGroup();
+                    hasNew = news.nextGroup();
+                }
+            }
+        }
+    }
+
+    /**
+     * Pairs the records of one parcel by sub property
+     */
+    private static void match(ArrayList<Entry> olds, ArrayList<Entry> news, ArrayList<Entry> oldLeft, ArrayList<Entry> newLeft,
+                              Handler handler, Summary summary) {
+        oldLeft.clear();
+        newLeft.clear();
+        int i = 0;
+        int j = 0;
+
+        while (i < olds.size() || j < news.size()) {
+            int difference = (i == olds.size()) ? 1 : (j == news.size()) ? -1 : UpiSortKey.compare(olds.get(i).key, news.get(j).key);
+
+            if (difference < 0) {
+                oldLeft.add(olds.get(i++));
+            } else if (difference > 0) {
+                newLeft.add(news.get(j++));
+            } else {
+                Entry before = olds.get(i++);
+                Entry after = news.get(j++);
+
+                if (Objects.equals(before.description, after.description) && before.upiText.equals(after.upiText)) {
+                    summary.unchanged++;
+                } else {
+                    UpiDiff.changed(before, after, handler, summary);
+                }
+            }
+        }
+
+        if (oldLeft.size() == 1 && newLeft.size() == 1) {
+            UpiDiff.changed(oldLeft.get(0), newLeft.get(0), handler, summary);
+            return;
+        }
+
+        for (Entry entry : oldLeft) {
+            UpiDiff.removed(entry, handler, summary);
+        }
+
+        for (Entry entry : newLeft) {
+            UpiDiff.added(entry, handler, summary);
+        }
+    }
+
+    private static void added(Entry entry, Handler handler, Summary summary) {
+        summary.added++;
+        handler.added(entry.upiText, entry.description);
+    }
+
+    private static void removed(Entry entry, Handler handler, Summary summary) {
+        summary.removed++;
+        handler.removed(entry.upiText, entry.description);
+    }
+
+    private static void changed(Entry before, Entry after, Handler handler, Summary summary) {
+        summary.changed++;
+        handler.changed(before.upiText, before.description, after.upiText, after.description);
+    }
+
+    private static Summary await(Future<Summary> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    private static void close(BufferedWriter[] writers) throws IOException {
+        IOException failure = null;
+
+        for (BufferedWriter writer : writers) {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void delete(Path[] paths) throws IOException {
+        if (paths == null) {
+            return;
+        }
+
+        for (Path path : paths) {
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Receives the differences between two snapshots
+     */
+    public interface Handler {
+        void added(String upiText, String description);
+
+        void removed(String upiText, String description);
+
+        void changed(String oldUpiText, String oldDescription, String newUpiText, String newDescription);
+
+        /**
+         * A line whose UPI does not parse, left out of the comparison
+         *
+         * @param line line as read
+         * @param old  true if it is from the earlier snapshot
+         */
+        default void malformed(String line, boolean old) {
+        }
+    }
+
+    /**
+     * Counts of the differences
+     */
+    public static final class Summary {
+        private long added;
+        private long removed;
+        private long changed;
+        private long unchanged;
+        private long malformed;
+
+        public long getAdded() {
+            return this.added;
+        }
+
+        public long getRemoved() {
+            return this.removed;
+        }
+
+        public long getChanged() {
+            return this.changed;
+        }
+
+        public long getUnchanged() {
+            return this.unchanged;
+        }
+
+        public long getMalformed() {
+            return this.malformed;
+        }
+
+        private void add(Summary other) {
+            this.added += other.added;
+            this.removed += other.removed;
+            this.changed += other.changed;
+            this.unchanged += other.unchanged;
+            this.malformed += other.malformed;
+        }
+
+        public String toString() {
+            return "added " + this.added + ", removed " + this.removed + ", changed " + this.changed
+                    + ", unchanged " + this.unchanged + ", malformed " + this.malformed;
+        }
+    }
+
+    /**
+     * One record of a snapshot
+     */
+    private static final class Entry {
+        final byte[] key;
+        final String upiText;
+        final String description;
+
+        Entry(byte[] key, String upiText, String description) {
+            this.key = key;
+            this.upiText = upiText;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Reads a sorted snapshot one parcel at a time
+     */
+    private static final class Source {
+        private final BufferedReader reader;
+        private final boolean old;
+        private final Handler handler;
+        private final Summary summary;
+        private final Upi upi = new Upi();
+        private final UpiSortKey sortKey = new UpiSortKey();
+
+        final ArrayList<Entry> group = new ArrayList<Entry>();
+        byte[] parcel;
+        private Entry pending;
+        private byte[] pendingParcel;
+        private long lineNumber;
+
+        Source(BufferedReader reader, boolean old, Handler handler, Summary summary) {
+            this.reader = reader;
+            this.old = old;
+            this.handler = handler;
+            this.summary = summary;
+            this.upi.setReuseBuffers(true);
+        }
+
+        /**
+         * @return false at the end of the snapshot
+         */
+        boolean nextGroup() throws IOException {
+            this.group.clear();
+
+            if (this.pending == null && !this.read()) {
+                return false;
+            }
+
+            byte[] previous = this.parcel;
+            this.parcel = this.pendingParcel;
+
+            if (previous != null && UpiSortKey.compare(previous, this.parcel) > 0) {
+                throw new IOException((this.old ? "Earlier" : "Later") + " snapshot is not sorted at line " + this.lineNumber);
+            }
+
+            do {
+                this.group.add(this.pending);
+                this.pending = null;
+            } while (this.read() && Arrays.equals(this.pendingParcel, this.parcel));
+
+            return true;
+        }
+
+        /**
+         * Reads the next well-formed record into pending
+         */
+        private boolean read() throws IOException {
+            String line;
+
+            while ((line = this.reader.readLine()) != null) {
+                this.lineNumber++;
+
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                int tab = line.indexOf('\t');
+                String upiText = (tab < 0) ? line : line.substring(0, tab);
+
+                try {
+                    this.upi.reset();
+                    this.upi.parseUpi(upiText);
+                } catch (MalformedUpiTextException e) {
+                    this.summary.malformed++;
+                    this.handler.malformed(line, this.old);
+                    continue;
+                }
+
+                this.sortKey.encode(this.upi, 5);
+                this.pendingParcel = this.sortKey.toByteArray();
+                this.sortKey.encode(this.upi);
+                this.pending = new Entry(this.sortKey.toByteArray(), upiText, (tab < 0) ? null : line.substring(tab + 1));
+
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.reso.upi.fips;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+
+/**
+ * US state and county FIPS codes.
+ *
+ * <p>
+ * County codes are kept in a bitset over 00000-99999 (12.5 KB), so checking a code is a
+ * single array read. County names sit in one array, indexed by the rank of the code's bit,
+ * which is found with a per-word running count and one {@link Long#bitCount(long)}.
+ * States are kept in arrays indexed by their two digit code.
+ * </p>
+ *
+ * <p>
+ * {@link #getDefault()} loads the bundled registry once. It lists every state and territory,
+ * but county lists only for some states: use {@link #hasCounties(int)} to tell whether a
+ * state's counties can be checked, or load the Census Bureau national county file with
+ * {@link #load(Path)}. Instances are immutable and can be shared between threads.
+ * </p>
+ */
+public final class FipsRegistry {
+    private static final String RESOURCE = "/org/reso/upi/fips/fips.txt";
+    private static final int CODES = 100000;
+
+    private final long[] counties;
+    private final int[] ranks;
+    private final String[] countyNames;
+
+    private final String[] stateNames;
+    private final String[] stateAbbreviations;
+    private final boolean[] statesWithCounties;
+
+    private FipsRegistry(TreeMap<Integer, String> counties, String[] stateNames, String[] stateAbbreviations) {
+        this.counties = new long[(CODES + 63) / 64];
+        this.ranks = new int[this.counties.length];
+        this.countyNames = counties.values().toArray(new String[0]);
+        this.stateNames = stateNames;
+        this.stateAbbreviations = stateAbbreviations;
+        this.statesWithCounties = new boolean[100];
+
+        for (Integer code : counties.keySet()) {
+            this.counties[code >>> 6] |= 1L << code;
+            this.statesWithCounties[code / 1000] = true;
+        }
+
+        int rank = 0;
+        for (int word = 0; word < this.counties.length; word++) {
+            this.ranks[word] = rank;
+            rank += Long.bitCount(this.counties[word]);
+        }
+    }
+
+    /**
+     * @return the bundled registry, loaded on first use
+     */
+    public static FipsRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads the bundled format (`04|Arizona|AZ` and `04013|Maricopa County` lines) or the
+     * Census Bureau national county file (`AZ|04|013|...|Maricopa County|...`).
+     *
+     * @param path local FIPS file (UTF-8)
+     * @return registry
+     * @throws IOException if the file cannot be read
+     */
+    public static FipsRegistry load(Path path) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+
+        try {
+            return FipsRegistry.load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param reader FIPS lines, closed by the caller
+     * @return registry
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static FipsRegistry load(Reader reader) throws IOException {
+        BufferedReader lines = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        TreeMap<Integer, String> counties = new TreeMap<Integer, String>();
+        String[] stateNames = new String[100];
+        String[] stateAbbreviations = new String[100];
+        int lineNumber = 0;
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] columns = line.split("\\|");
+
+            // Header of the Census file
+            if ("STATE".equals(columns[0])) {
+                continue;
+            }
+
+            if (columns.length >= 5 && columns[0].length() == 2 && !Character.isDigit(columns[0].charAt(0))) {
+                // Census national county file: STATE|STATEFP|COUNTYFP|COUNTYNS|COUNTYNAME|...
+                int state = FipsRegistry.parseCode(columns[1], 2, lineNumber);
+                counties.put(state * 1000 + FipsRegistry.parseCode(columns[2], 3, lineNumber), columns[4]);
+
+                if (stateAbbreviations[state] == null) {
+                    stateAbbreviations[state] = columns[0];
+                }
+            } else if (columns[0].length() == 2) {
+                int state = FipsRegistry.parseCode(columns[0], 2, lineNumber);
+                stateNames[state] = (columns.length > 1) ? columns[1] : null;
+                stateAbbreviations[state] = (columns.length > 2) ? columns[2] : null;
+            } else if (columns[0].length() == 5) {
+                counties.put(FipsRegistry.parseCode(columns[0], 5, lineNumber), (columns.length > 1) ? columns[1] : null);
+            } else {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected a 2 or 5 digit FIPS code");
+            }
+        }
+
+        // Counties imply their state, even if the file has no state lines
+        for (Integer code : counties.keySet()) {
+            int state = code / 1000;
+            if (stateNames[state] == null && stateAbbreviations[state] == null) {
+                stateAbbreviations[state] = "";
+            }
+        }
+
+        return new FipsRegistry(counties, stateNames, stateAbbreviations);
+    }
+
+    /**
+     * Parses a five digit code without allocating
+     *
+     * @param code text such as `04013`
+     * @return the code as a number, or -1 if it is not exactly five digits
+     */
+    public static int parseCountyCode(CharSequence code) {
+        if (code == null || code.length() != 5) {
+            return -1;
+        }
+
+        int value = 0;
+
+        for (int i = 0; i < 5; i++) {
+            char c = code.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * A five digit sub country code is valid if its state is known and,
+     * where the state's counties are known, its county is one of them
+     *
+     * @param subCountryCode text such as `04013`
+     * @return true if valid
+     */
+    public boolean isValidSubCountryCode(CharSequence subCountryCode) {
+        int code = FipsRegistry.parseCountyCode(subCountryCode);
+
+        if (code < 0 || !this.isState(code / 1000)) {
+            return false;
+        }
+
+        return !this.statesWithCounties[code / 1000] || this.isCounty(code);
+    }
+
+    /**
+     * @param code five digit county code as a number
+     * @return true if the county is known
+     */
+    public boolean isCounty(int code) {
+        return code >= 0 && code < CODES && (this.counties[code >>> 6] & (1L << code)) != 0;
+    }
+
+    /**
+     * @param code five digit county code as a number
+     * @return county name, or null if unknown
+     */
+    public String getCountyName(int code) {
+        if (!this.isCounty(code)) {
+            return null;
+        }
+
+        int word = code >>> 6;
+        long below = this.counties[word] & ((1L << code) - 1);
+
+        return this.countyNames[this.ranks[word] + Long.bitCount(below)];
+    }
+
+    /**
+     * @param state two digit state code as a number
+     * @return true if the state or territory is known
+     */
+    public boolean isState(int state) {
+        return state >= 0 && state < 100 && (this.stateNames[state] != null || this.stateAbbreviations[state] != null);
+    }
+
+    /**
+     * @param state two digit state code as a number
+     * @return true if the registry lists the state's counties
+     */
+    public boolean hasCounties(int state) {
+        return state >= 0 && state < 100 && this.statesWithCounties[state];
+    }
+
+    /**
+     * @param state two digit state code as a number
+     * @return state name, or null if unknown
+     */
+    public String getStateName(int state) {
+        return (state >= 0 && state < 100) ? this.stateNames[state] : null;
+    }
+
+    /**
+     * @param state two digit state code as a number
+     * @return postal abbreviation, eg `AZ`, or null if unknown
+     */
+    public String getStateAbbreviation(int state) {
+        return (state >= 0 && state < 100) ? this.stateAbbreviations[state] : null;
+    }
+
+    /**
+     * @return all known county codes, ascending
+     */
+    public int[] getCountyCodes() {
+        int[] codes = new int[this.countyNames.length];
+        int i = 0;
+
+        for (int word = 0; word < this.counties.length; word++) {
+            long bits = this.counties[word];
+
+            while (bits != 0) {
+                codes[i++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+
+        return codes;
+    }
+
+    /**
+     * @return number of known counties
+     */
+    public int getCountyCount() {
+        return this.countyNames.length;
+    }
+
+    private static int parseCode(String text, int digits, int lineNumber) {
+        String code = text.trim();
+
+        if (code.length() != digits) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected " + digits + " digits, got `" + code + "`");
+        }
+
+        int value = 0;
+        for (int i = 0; i < digits; i++) {
+            char c = code.charAt(i);
+
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected " + digits + " digits, got `" + code + "`");
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Loads the bundled registry on first access, thread-safe through class initialisation
+     */
+    private static final class DefaultHolder {
+        static final FipsRegistry INSTANCE = DefaultHolder.load();
+
+        private static FipsRegistry load() {
+            InputStream stream = FipsRegistry.class.getResourceAsStream(RESOURCE);
+            if (stream == null) {
+                throw new IllegalStateException("Missing resource " + RESOURCE);
+            }
+
+            try {
+                Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+
+                try {
+                    return FipsRegistry.load(reader);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.reso.upi.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded around {@link org.reso.upi.Upi#parseUpi(String)}
+ */
+@Name("org.reso.upi.Parse")
+@Label("UPI Parse")
+@Description("Parsing of a UPI text into its pieces")
+@Category({"RESO", "UPI"})
+@Enabled(false)
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+    @Label("Length")
+    public int length;
+
+    @Label("Country")
+    public String country;
+
+    @Label("Parsed")
+    @Description("False if the text was malformed")
+    public boolean parsed;
+}
@@ -0,0 +1,35 @@
+package org.reso.upi.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded around each rule invocation during validation.
+ * A compiled rule set is recorded as the rules it runs, never as itself.
+ */
+@Name("org.reso.upi.Rule")
+@Label("UPI Rule")
+@Description("One validation rule run against one UPI")
+@Category({"RESO", "UPI"})
+@Enabled(false)
+@StackTrace(false)
+public class RuleEvent extends jdk.jfr.Event {
+    @Label("Rule")
+    public Class<?> ruleClass;
+
+    @Label("Country")
+    public String country;
+
+    @Label("Strict")
+    public boolean strict;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Passed")
+    public boolean passed;
+}
@@ -0,0 +1,29 @@
+package org.reso.upi.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded around {@link org.reso.upi.Upi#toUpi()}
+ */
+@Name("org.reso.upi.ToUpi")
+@Label("UPI Build")
+@Description("Building of a UPI text from its pieces")
+@Category({"RESO", "UPI"})
+@Enabled(false)
+@StackTrace(false)
+public class ToUpiEvent extends jdk.jfr.Event {
+    @Label("Length")
+    public int length;
+
+    @Label("Country")
+    public String country;
+
+    @Label("Built")
+    @Description("False if pieces were missing")
+    public boolean built;
+}
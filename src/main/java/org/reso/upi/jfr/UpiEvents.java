@@ -0,0 +1,62 @@
+package org.reso.upi.jfr;
+
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+
+/**
+ * Helpers for filling in the UPI flight recorder events.
+ *
+ * <p>
+ * The events are disabled by default. Enable them in a recording settings file, or with
+ * `jcmd &lt;pid&gt; JFR.start settings=upi.jfc` where `upi.jfc` sets `enabled` for
+ * `org.reso.upi.Parse`, `org.reso.upi.Validate`, `org.reso.upi.ToUpi` and `org.reso.upi.Rule`.
+ * While disabled, the instrumented code only creates an event that the JIT can drop and
+ * checks {@link jdk.jfr.Event#shouldCommit()}.
+ * </p>
+ *
+ * <p>
+ * The event classes extend `jdk.jfr.Event`, which Java 8 does not have. The instrumented code
+ * only creates them when {@link #AVAILABLE} is true, so on Java 8 they are never loaded and
+ * parsing and validation run without them. This class itself does not link `jdk.jfr`.
+ * </p>
+ */
+public final class UpiEvents {
+    /**
+     * True if the runtime has the flight recorder, Java 11 or newer with the jdk.jfr module
+     */
+    public static final boolean AVAILABLE = UpiEvents.isFlightRecorderPresent();
+
+    private UpiEvents() {
+    }
+
+    private static boolean isFlightRecorderPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, UpiEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param upi UPI being recorded
+     * @return the country code, the raw code if it is undefined, or null
+     */
+    public static String country(UpiInterface upi) {
+        CountryCode countryCode = upi.getCountryCode();
+
+        if (countryCode == null) {
+            return null;
+        }
+
+        return (countryCode == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : countryCode.name();
+    }
+
+    /**
+     * @param text UPI text
+     * @return its length, or 0 for null
+     */
+    public static int length(String text) {
+        return (text == null) ? 0 : text.length();
+    }
+}
@@ -0,0 +1,41 @@
+package org.reso.upi.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded around {@link org.reso.upi.Upi#validate(boolean, java.util.ArrayList)}
+ */
+@Name("org.reso.upi.Validate")
+@Label("UPI Validate")
+@Description("Validation of a UPI against a rule set")
+@Category({"RESO", "UPI"})
+@Enabled(false)
+@StackTrace(false)
+public class ValidateEvent extends jdk.jfr.Event {
+    @Label("Length")
+    public int length;
+
+    @Label("Country")
+    public String country;
+
+    @Label("Strict")
+    public boolean strict;
+
+    @Label("Rules")
+    public int ruleCount;
+
+    @Label("Cached")
+    @Description("True if the remembered result was returned without running any rule")
+    public boolean cached;
+
+    @Label("Messages")
+    public int messageCount;
+
+    @Label("Valid")
+    public boolean valid;
+}
@@ -0,0 +1,343 @@
+package org.reso.upi.jmx;
+
+import org.reso.upi.validation.ValidationMessage;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters behind {@link UpiStatsMXBean}.
+ *
+ * <p>
+ * Nothing is counted until {@link #install()} is called. After that, {@link org.reso.upi.Upi}
+ * reports each parse and validation here. The counters are {@link LongAdder}s, so parallel
+ * parsing does not contend on them. Without an installed instance the hooks cost one
+ * volatile read.
+ * </p>
+ *
+ * <pre>
+ * UpiStats.install(); // visible in JConsole / VisualVM as org.reso.upi:type=UpiStats
+ * </pre>
+ */
+public final class UpiStats implements UpiStatsMXBean {
+    public static final String OBJECT_NAME = "org.reso.upi:type=UpiStats";
+
+    // Codes below this have their own counter, the rest share a map
+    private static final int INDEXED_CODES = 1000;
+    // Distinct codes remembered per top list, the rest are counted as OTHER
+    private static final int MAX_DISTINCT = 1000;
+    private static final int TOP = 10;
+    private static final String OTHER = "(other)";
+
+    private static volatile UpiStats current;
+
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder validated = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final AtomicReferenceArray<LongAdder> strictFailures = new AtomicReferenceArray<LongAdder>(INDEXED_CODES);
+    private final ConcurrentHashMap<Integer, LongAdder> otherStrictFailures = new ConcurrentHashMap<Integer, LongAdder>();
+    private final ConcurrentHashMap<String, LongAdder> undefinedCountryCodes = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentHashMap<String, LongAdder> nonStandardPropertyTypes = new ConcurrentHashMap<String, LongAdder>();
+
+    private final Rate parsedRate = new Rate();
+    private final Rate validatedRate = new Rate();
+
+    /**
+     * @return the installed instance, or null if statistics are off
+     */
+    public static UpiStats current() {
+        return current;
+    }
+
+    /**
+     * Starts counting and registers the MBean with the platform MBean server.
+     * Calling it again returns the installed instance.
+     *
+     * @return the installed instance
+     * @throws IllegalStateException if the MBean cannot be registered
+     */
+    public static synchronized UpiStats install() {
+        if (current != null) {
+            return current;
+        }
+
+        UpiStats stats = new UpiStats();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+
+            // Left behind by another class loader, eg a redeployed webapp
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                // Not registered, as expected
+            }
+
+            server.registerMBean(stats, name);
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Another UpiStats was registered concurrently", e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+
+        current = stats;
+
+        return stats;
+    }
+
+    /**
+     * Stops counting and unregisters the MBean
+     */
+    public static synchronized void uninstall() {
+        if (current == null) {
+            return;
+        }
+
+        current = null;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Already gone
+        }
+    }
+
+    /**
+     * @param undefinedCountryCode raw country code if it was not a known one, or null
+     * @param nonStandardPropertyType raw property type code if it was non-standard, or null
+     */
+    public void parsed(String undefinedCountryCode, String nonStandardPropertyType) {
+        this.parsed.increment();
+
+        if (undefinedCountryCode != null) {
+            UpiStats.count(this.undefinedCountryCodes, undefinedCountryCode);
+        }
+
+        if (nonStandardPropertyType != null) {
+            UpiStats.count(this.nonStandardPropertyTypes, nonStandardPropertyType);
+        }
+    }
+
+    /**
+     * Counts a text rejected as malformed
+     */
+    public void malformed() {
+        this.parsed.increment();
+        this.malformed.increment();
+    }
+
+    /**
+     * A cache hit only counts as a hit: no rules ran, so it is neither a validation
+     * nor a new set of strict failures.
+     *
+     * @param strict   strict mode
+     * @param cacheHit true if the remembered result was returned
+     * @param messages messages of the validation
+     */
+    public void validated(boolean strict, boolean cacheHit, List<ValidationMessage> messages) {
+        if (cacheHit) {
+            this.cacheHits.increment();
+            return;
+        }
+
+        this.validated.increment();
+
+        if (strict) {
+            for (int i = 0, size = messages.size(); i < size; i++) {
+                this.countStrictFailure(messages.get(i).getCode());
+            }
+        }
+    }
+
+    public long getRecordsParsed() {
+        return this.parsed.sum();
+    }
+
+    public long getRecordsValidated() {
+        return this.validated.sum();
+    }
+
+    public double getParsedPerSecond() {
+        return this.parsedRate.perSecond(this.parsed.sum());
+    }
+
+    public double getValidatedPerSecond() {
+        return this.validatedRate.perSecond(this.validated.sum());
+    }
+
+    public long getMalformedCount() {
+        return this.malformed.sum();
+    }
+
+    public double getMalformedRate() {
+        long parsed = this.parsed.sum();
+
+        return (parsed == 0) ? 0 : (double) this.malformed.sum() / parsed;
+    }
+
+    public Map<Integer, Long> getStrictFailuresByCode() {
+        TreeMap<Integer, Long> byCode = new TreeMap<Integer, Long>();
+
+        for (int code = 0; code < INDEXED_CODES; code++) {
+            LongAdder count = this.strictFailures.get(code);
+
+            if (count != null && count.sum() > 0) {
+                byCode.put(code, count.sum());
+            }
+        }
+
+        for (Map.Entry<Integer, LongAdder> entry : this.otherStrictFailures.entrySet()) {
+            if (entry.getValue().sum() > 0) {
+                byCode.put(entry.getKey(), entry.getValue().sum());
+            }
+        }
+
+        return byCode;
+    }
+
+    public Map<String, Long> getTopUndefinedCountryCodes() {
+        return UpiStats.top(this.undefinedCountryCodes);
+    }
+
+    public Map<String, Long> getTopNonStandardPropertyTypes() {
+        return UpiStats.top(this.nonStandardPropertyTypes);
+    }
+
+    public long getCacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return this.validated.sum();
+    }
+
+    public double getCacheHitRate() {
+        long hits = this.cacheHits.sum();
+        long calls = hits + this.validated.sum();
+
+        return (calls == 0) ? 0 : (double) hits / calls;
+    }
+
+    public void reset() {
+        this.parsed.reset();
+        this.malformed.reset();
+        this.validated.reset();
+        this.cacheHits.reset();
+        this.otherStrictFailures.clear();
+        this.undefinedCountryCodes.clear();
+        this.nonStandardPropertyTypes.clear();
+        this.parsedRate.reset();
+        this.validatedRate.reset();
+
+        for (int code = 0; code < INDEXED_CODES; code++) {
+            LongAdder count = this.strictFailures.get(code);
+
+            if (count != null) {
+                count.reset();
+            }
+        }
+    }
+
+    private void countStrictFailure(int code) {
+        if (code < 0 || code >= INDEXED_CODES) {
+            this.otherStrictFailures.computeIfAbsent(code, key -> new LongAdder()).increment();
+            return;
+        }
+
+        LongAdder count = this.strictFailures.get(code);
+
+        if (count == null) {
+            this.strictFailures.compareAndSet(code, null, new LongAdder());
+            count = this.strictFailures.get(code);
+        }
+
+        count.increment();
+    }
+
+    private static void count(ConcurrentHashMap<String, LongAdder> counts, String key) {
+        LongAdder count = counts.get(key);
+
+        if (count == null) {
+            // Bounded, so garbage input cannot grow the map without limit
+            count = counts.computeIfAbsent((counts.size() < MAX_DISTINCT) ? key : OTHER, k -> new LongAdder());
+        }
+
+        count.increment();
+    }
+
+    private static Map<String, Long> top(ConcurrentHashMap<String, LongAdder> counts) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+            entries.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+        }
+
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        LinkedHashMap<String, Long> top = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(TOP, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+
+        return Collections.unmodifiableMap(top);
+    }
+
+    /**
+     * Rate of a counter over its last samples, off the hot path.
+     * Reads take a sample at most once a second, so reading more often (or from
+     * several consoles) does not shorten the window.
+     */
+    private static final class Rate {
+        private static final long SAMPLE_NANOS = 1000000000L;
+        private static final int SAMPLES = 11;
+
+        // Ring of samples, the window runs from the oldest to now
+        private final long[] counts = new long[SAMPLES];
+        private final long[] nanos = new long[SAMPLES];
+        private int newest;
+        private int size;
+
+        Rate() {
+            this.reset();
+        }
+
+        synchronized double perSecond(long count) {
+            long now = System.nanoTime();
+
+            if (now - this.nanos[this.newest] >= SAMPLE_NANOS) {
+                this.newest = (this.newest + 1) % SAMPLES;
+                this.counts[this.newest] = count;
+                this.nanos[this.newest] = now;
+                this.size = Math.min(this.size + 1, SAMPLES);
+            }
+
+            int oldest = (this.newest - this.size + 1 + SAMPLES) % SAMPLES;
+            double seconds = (now - this.nanos[oldest]) / 1e9;
+
+            return (seconds <= 0 || count < this.counts[oldest]) ? 0 : (count - this.counts[oldest]) / seconds;
+        }
+
+        synchronized void reset() {
+            this.newest = 0;
+            this.size = 1;
+            this.counts[0] = 0;
+            this.nanos[0] = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.reso.upi.jmx;
+
+import java.util.Map;
+
+/**
+ * Live UPI parsing and validation statistics, registered as `org.reso.upi:type=UpiStats`
+ * by {@link UpiStats#install()}
+ */
+public interface UpiStatsMXBean {
+    /**
+     * @return UPI texts parsed, including malformed ones
+     */
+    long getRecordsParsed();
+
+    /**
+     * @return validations that ran rules, strict or not (cache hits are counted separately)
+     */
+    long getRecordsValidated();
+
+    /**
+     * @return UPI texts parsed per second, over about the last ten seconds of reads
+     */
+    double getParsedPerSecond();
+
+    /**
+     * @return validations per second, over about the last ten seconds of reads
+     */
+    double getValidatedPerSecond();
+
+    /**
+     * @return UPI texts rejected as malformed (code 500)
+     */
+    long getMalformedCount();
+
+    /**
+     * @return share of parsed texts that were malformed, 0 to 1
+     */
+    double getMalformedRate();
+
+    /**
+     * @return messages reported by strict validations that ran rules, by message code
+     */
+    Map<Integer, Long> getStrictFailuresByCode();
+
+    /**
+     * @return most frequent undefined country codes seen by the parser, with counts
+     */
+    Map<String, Long> getTopUndefinedCountryCodes();
+
+    /**
+     * @return most frequent non-standard property type codes seen by the parser, with counts
+     */
+    Map<String, Long> getTopNonStandardPropertyTypes();
+
+    /**
+     * @return validations answered from the remembered result
+     */
+    long getCacheHits();
+
+    /**
+     * @return validations that ran at least part of the rule set
+     */
+    long getCacheMisses();
+
+    /**
+     * @return share of validate calls answered from the remembered result, 0 to 1
+     */
+    double getCacheHitRate();
+
+    /**
+     * Zeroes all counters
+     */
+    void reset();
+}
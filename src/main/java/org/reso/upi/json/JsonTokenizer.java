@@ -0,0 +1,443 @@
+package org.reso.upi.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull tokenizer for JSON text, without building a document.
+ *
+ * <p>
+ * Input is read through one char buffer and each string or number is decoded into one
+ * reusable text buffer, so walking any amount of JSON allocates nothing unless the caller
+ * asks for a {@link #getText()} String. Commas and colons are checked loosely: a string
+ * followed by a colon is reported as a {@link #FIELD_NAME}.
+ * </p>
+ *
+ * <pre>
+ * JsonTokenizer json = new JsonTokenizer(reader);
+ * int token;
+ * while ((token = json.next()) != JsonTokenizer.END) {
+ *     if (token == JsonTokenizer.FIELD_NAME &amp;&amp; json.textEquals("UPI")) { ... }
+ * }
+ * </pre>
+ */
+public final class JsonTokenizer {
+    public static final int END = 0;
+    public static final int START_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int START_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int FIELD_NAME = 5;
+    public static final int STRING = 6;
+    public static final int NUMBER = 7;
+    public static final int TRUE = 8;
+    public static final int FALSE = 9;
+    public static final int NULL = 10;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+
+    private char[] text = new char[256];
+    private int textLength;
+    private int token = -1;
+    private int depth;
+    private long offset;
+
+    /**
+     * @param reader JSON input, closed by the caller
+     */
+    public JsonTokenizer(Reader reader) {
+        this(reader, BUFFER_SIZE);
+    }
+
+    /**
+     * @param reader     JSON input, closed by the caller
+     * @param bufferSize read buffer size, in chars
+     */
+    public JsonTokenizer(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(16, bufferSize)];
+    }
+
+    /**
+     * @return the next token, {@link #END} at the end of the input
+     * @throws IOException if reading fails or the input is not JSON
+     */
+    public int next() throws IOException {
+        int c = this.skipSeparators();
+
+        switch (c) {
+            case -1:
+                return this.token = END;
+            case '{':
+                this.position++;
+                this.depth++;
+                return this.token = START_OBJECT;
+            case '}':
+                this.position++;
+                this.depth--;
+                return this.token = END_OBJECT;
+            case '[':
+                this.position++;
+                this.depth++;
+                return this.token = START_ARRAY;
+            case ']':
+                this.position++;
+                this.depth--;
+                return this.token = END_ARRAY;
+            case '"':
+                this.position++;
+                this.readString();
+
+                if (this.skipWhitespace() == ':') {
+                    this.position++;
+                    return this.token = FIELD_NAME;
+                }
+
+                return this.token = STRING;
+            case 't':
+                this.expectWord("true");
+                return this.token = TRUE;
+            case 'f':
+                this.expectWord("false");
+                return this.token = FALSE;
+            case 'n':
+                this.expectWord("null");
+                return this.token = NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    this.readNumber();
+                    return this.token = NUMBER;
+                }
+
+                throw this.error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Skips the value that starts with the current token, including nested objects and arrays.
+     * On a field name, skips the field's value.
+     *
+     * @throws IOException if reading fails
+     */
+    public void skipValue() throws IOException {
+        if (this.token == FIELD_NAME) {
+            this.next();
+        }
+
+        if (this.token != START_OBJECT && this.token != START_ARRAY) {
+            return;
+        }
+
+        // Scan brackets and strings without decoding anything
+        int target = this.depth - 1;
+
+        while (this.depth > target) {
+            if (this.position >= this.limit && !this.fill()) {
+                throw this.error("Unexpected end of input");
+            }
+
+            char c = this.buffer[this.position++];
+
+            if (c == '"') {
+                this.skipString();
+            } else if (c == '{' || c == '[') {
+                this.depth++;
+            } else if (c == '}' || c == ']') {
+                this.depth--;
+            }
+        }
+
+        this.token = (this.buffer[this.position - 1] == '}') ? END_OBJECT : END_ARRAY;
+    }
+
+    /**
+     * @return the current token
+     */
+    public int getToken() {
+        return this.token;
+    }
+
+    /**
+     * @return nesting depth after the current token, 0 at the top level
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return characters consumed so far
+     */
+    public long getOffset() {
+        return this.offset + this.position;
+    }
+
+    /**
+     * @return text of the current string, field name or number
+     */
+    public String getText() {
+        return new String(this.text, 0, this.textLength);
+    }
+
+    /**
+     * @return text of the current string, or null for a null token
+     */
+    public String getTextOrNull() {
+        return (this.token == NULL) ? null : this.getText();
+    }
+
+    /**
+     * @param text text to compare with
+     * @return true if the current string or field name is exactly this text, without allocating
+     */
+    public boolean textEquals(String text) {
+        if (text.length() != this.textLength) {
+            return false;
+        }
+
+        for (int i = 0; i < this.textLength; i++) {
+            if (this.text[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the current number as an int
+     * @throws IOException if the number is not an integer that fits
+     */
+    public int getInt() throws IOException {
+        long value = this.getLong();
+
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw this.error("Number out of int range");
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * @return the current number as a long
+     * @throws IOException if the number is not an integer
+     */
+    public long getLong() throws IOException {
+        if (this.token != NUMBER || this.textLength == 0) {
+            throw this.error("Expected a number");
+        }
+
+        boolean negative = this.text[0] == '-';
+        long value = 0;
+
+        for (int i = negative ? 1 : 0; i < this.textLength; i++) {
+            char c = this.text[i];
+
+            if (c < '0' || c > '9') {
+                throw this.error("Expected an integer");
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    private int peek() throws IOException {
+        if (this.position >= this.limit && !this.fill()) {
+            return -1;
+        }
+
+        return this.buffer[this.position];
+    }
+
+    private boolean fill() throws IOException {
+        this.offset += this.limit;
+        this.position = 0;
+        this.limit = 0;
+
+        int read = this.reader.read(this.buffer, 0, this.buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+
+        this.limit = read;
+
+        return true;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = this.peek();
+
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+
+            this.position++;
+        }
+    }
+
+    private int skipSeparators() throws IOException {
+        while (true) {
+            int c = this.skipWhitespace();
+
+            if (c != ',') {
+                return c;
+            }
+
+            this.position++;
+        }
+    }
+
+    private void readString() throws IOException {
+        this.textLength = 0;
+
+        while (true) {
+            // Copy runs of plain characters straight from the buffer
+            int start = this.position;
+            int end = start;
+            char[] buffer = this.buffer;
+
+            while (end < this.limit) {
+                char c = buffer[end];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                end++;
+            }
+
+            this.appendText(buffer, start, end - start);
+            this.position = end;
+
+            int c = this.peek();
+
+            if (c == -1) {
+                throw this.error("Unterminated string");
+            }
+
+            if (c == '"') {
+                this.position++;
+                return;
+            }
+
+            if (c == '\\') {
+                this.position++;
+                this.appendText(this.readEscape());
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            if (this.position >= this.limit && !this.fill()) {
+                throw this.error("Unterminated string");
+            }
+
+            char c = this.buffer[this.position++];
+
+            if (c == '"') {
+                return;
+            }
+
+            if (c == '\\') {
+                if (this.position >= this.limit && !this.fill()) {
+                    throw this.error("Unterminated string");
+                }
+                this.position++;
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = this.peek();
+        this.position++;
+
+        switch (c) {
+            case '"':
+                return '"';
+            case '\\':
+                return '\\';
+            case '/':
+                return '/';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(this.peek(), 16);
+
+                    if (digit < 0) {
+                        throw this.error("Invalid \\u escape");
+                    }
+
+                    value = (value << 4) | digit;
+                    this.position++;
+                }
+
+                return (char) value;
+            default:
+                throw this.error("Invalid escape");
+        }
+    }
+
+    private void readNumber() throws IOException {
+        this.textLength = 0;
+
+        while (true) {
+            int c = this.peek();
+
+            if (!((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+                return;
+            }
+
+            this.appendText((char) c);
+            this.position++;
+        }
+    }
+
+    private void expectWord(String word) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (this.peek() != word.charAt(i)) {
+                throw this.error("Expected " + word);
+            }
+
+            this.position++;
+        }
+    }
+
+    private void appendText(char[] chars, int start, int length) {
+        if (this.textLength + length > this.text.length) {
+            this.text = Arrays.copyOf(this.text, Math.max(this.textLength + length, this.text.length * 2));
+        }
+
+        System.arraycopy(chars, start, this.text, this.textLength, length);
+        this.textLength += length;
+    }
+
+    private void appendText(char c) {
+        if (this.textLength == this.text.length) {
+            this.text = Arrays.copyOf(this.text, this.text.length * 2);
+        }
+
+        this.text[this.textLength++] = c;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at offset " + this.getOffset());
+    }
+}
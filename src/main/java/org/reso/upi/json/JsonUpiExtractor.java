@@ -0,0 +1,248 @@
+package org.reso.upi.json;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Pulls UPI fields out of large JSON documents, such as RESO Web API replication pages,
+ * without reading the document into memory.
+ *
+ * <p>
+ * Paths name the fields holding UPI texts: `.` separates field names, `[]` stands for every
+ * element of an array and `*` for any field name, eg `value[].UniversalPropertyId`. The
+ * document is walked token by token; subtrees that no path leads into are skipped, and each
+ * UPI found is parsed into one reused {@link Upi} and handed to the {@link Handler}.
+ * Memory stays bounded by the nesting depth and the longest string.
+ * </p>
+ *
+ * <pre>
+ * JsonUpiExtractor extractor = JsonUpiExtractor.reso();
+ * extractor.extract(reader, (upi, path) -&gt; {
+ *     if (!upi.isValid(true)) { ... }
+ * });
+ * </pre>
+ */
+public class JsonUpiExtractor {
+    public static final String RESO_UPI_PATH = "value[].UniversalPropertyId";
+
+    private static final String ARRAY = "[]";
+    private static final String ANY = "*";
+    private static final int MAX_PATHS = 64;
+
+    private final String[][] paths;
+
+    /**
+     * Receives each UPI found
+     */
+    public interface Handler {
+        /**
+         * @param upi  parsed UPI, reused for the next one
+         * @param path index of the matching path
+         * @throws IOException to stop the extraction
+         */
+        void upi(Upi upi, int path) throws IOException;
+
+        /**
+         * @param upiText text that could not be parsed
+         * @param path    index of the matching path
+         * @param e       parse error, with code 500
+         * @throws IOException to stop the extraction
+         */
+        default void malformed(String upiText, int path, MalformedUpiTextException e) throws IOException {
+        }
+    }
+
+    /**
+     * @param paths paths of the fields holding UPI texts
+     */
+    public JsonUpiExtractor(String... paths) {
+        if (paths.length == 0 || paths.length > MAX_PATHS) {
+            throw new IllegalArgumentException("Expected 1 to " + MAX_PATHS + " paths");
+        }
+
+        this.paths = new String[paths.length][];
+
+        for (int i = 0; i < paths.length; i++) {
+            this.paths[i] = JsonUpiExtractor.compile(paths[i]);
+        }
+    }
+
+    /**
+     * @return extractor for the UniversalPropertyId field of RESO Web API property records
+     */
+    public static JsonUpiExtractor reso() {
+        return new JsonUpiExtractor(RESO_UPI_PATH);
+    }
+
+    /**
+     * @param reader  JSON input, closed by the caller
+     * @param handler receives each UPI
+     * @return number of UPI fields found, malformed ones included
+     * @throws IOException if reading fails, the input is not JSON or the handler stops
+     */
+    public long extract(Reader reader, Handler handler) throws IOException {
+        JsonTokenizer json = new JsonTokenizer(reader);
+        Upi upi = new Upi();
+        upi.setReuseBuffers(true);
+
+        // Per open container: paths that lead into it, and whether it is an array
+        long[] masks = new long[16];
+        boolean[] arrays = new boolean[16];
+        int level = 0;
+        masks[0] = (this.paths.length == MAX_PATHS) ? -1L : (1L << this.paths.length) - 1;
+
+        long found = 0;
+        long fieldMask = 0;
+        int token;
+
+        while ((token = json.next()) != JsonTokenizer.END) {
+            if (token == JsonTokenizer.END_OBJECT || token == JsonTokenizer.END_ARRAY) {
+                level--;
+                continue;
+            }
+
+            if (token == JsonTokenizer.FIELD_NAME) {
+                fieldMask = this.match(masks[level], level - 1, json);
+                continue;
+            }
+
+            // A value: which paths does it sit on?
+            long mask;
+            if (level == 0) {
+                // A top-level value, several for concatenated documents
+                mask = masks[0];
+            } else if (arrays[level]) {
+                mask = this.matchArray(masks[level], level - 1);
+            } else {
+                mask = fieldMask;
+            }
+
+            if (token == JsonTokenizer.START_OBJECT || token == JsonTokenizer.START_ARRAY) {
+                long deeper = this.longerThan(mask, level);
+
+                if (deeper == 0) {
+                    json.skipValue();
+                    continue;
+                }
+
+                level++;
+                if (level == masks.length) {
+                    masks = Arrays.copyOf(masks, level * 2);
+                    arrays = Arrays.copyOf(arrays, level * 2);
+                }
+
+                masks[level] = deeper;
+                arrays[level] = token == JsonTokenizer.START_ARRAY;
+                continue;
+            }
+
+            long ends = mask & ~this.longerThan(mask, level);
+
+            if (ends != 0 && token == JsonTokenizer.STRING) {
+                int path = Long.numberOfTrailingZeros(ends);
+                found++;
+
+                try {
+                    upi.reset();
+                    upi.parseUpi(json.getText());
+                } catch (MalformedUpiTextException e) {
+                    handler.malformed(json.getText(), path, e);
+                    continue;
+                }
+
+                handler.upi(upi, path);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Paths whose segment at this index is the current field name or `*`
+     */
+    private long match(long mask, int segment, JsonTokenizer json) {
+        long matched = 0;
+
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            int path = Long.numberOfTrailingZeros(rest);
+            String name = this.paths[path][segment];
+
+            if (name != ARRAY && (name == ANY || json.textEquals(name))) {
+                matched |= 1L << path;
+            }
+        }
+
+        return matched;
+    }
+
+    /**
+     * Paths whose segment at this index is `[]`
+     */
+    private long matchArray(long mask, int segment) {
+        long matched = 0;
+
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            int path = Long.numberOfTrailingZeros(rest);
+
+            if (this.paths[path][segment] == ARRAY) {
+                matched |= 1L << path;
+            }
+        }
+
+        return matched;
+    }
+
+    /**
+     * Paths with more segments than the given count, so they lead into the value
+     */
+    private long longerThan(long mask, int segments) {
+        long longer = 0;
+
+        for (long rest = mask; rest != 0; rest &= rest - 1) {
+            int path = Long.numberOfTrailingZeros(rest);
+
+            if (this.paths[path].length > segments) {
+                longer |= 1L << path;
+            }
+        }
+
+        return longer;
+    }
+
+    /**
+     * Splits `value[].Field` into `value`, `[]`, `Field`, with `[]` and `*` interned
+     * so they can be told apart from field names by reference
+     */
+    private static String[] compile(String path) {
+        ArrayList<String> segments = new ArrayList<String>();
+
+        for (String part : path.split("\\.")) {
+            String name = part;
+            int arrays = 0;
+
+            while (name.endsWith(ARRAY)) {
+                name = name.substring(0, name.length() - ARRAY.length());
+                arrays++;
+            }
+
+            if (!name.isEmpty()) {
+                segments.add(ANY.equals(name) ? ANY : name);
+            }
+
+            for (int i = 0; i < arrays; i++) {
+                segments.add(ARRAY);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("Empty path");
+        }
+
+        return segments.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,225 @@
+package org.reso.upi.json;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Reads UPIs written by {@link UpiJsonWriter}, one JSON object at a time, straight off a
+ * {@link JsonTokenizer} without building a document. Unknown fields are skipped.
+ *
+ * <pre>
+ * UpiJsonReader json = new UpiJsonReader(reader);
+ * Upi upi = new Upi();
+ *
+ * while (json.read(upi)) {
+ *     boolean valid = json.isValid();
+ *     ArrayList&lt;ValidationMessage&gt; messages = json.getMessages();
+ * }
+ * </pre>
+ *
+ * <p>
+ * If an object has pieces, they are used as they are; otherwise its `upi` text is parsed.
+ * </p>
+ */
+public class UpiJsonReader {
+    private final JsonTokenizer json;
+    private final ArrayList<ValidationMessage> messages = new ArrayList<ValidationMessage>();
+    private boolean hasValidation;
+    private boolean valid;
+
+    /**
+     * @param reader JSON Lines input, closed by the caller
+     */
+    public UpiJsonReader(Reader reader) {
+        this.json = new JsonTokenizer(reader);
+    }
+
+    /**
+     * @param reader     JSON Lines input, closed by the caller
+     * @param bufferSize read buffer size, in chars; small for readers over a few lines
+     */
+    public UpiJsonReader(Reader reader, int bufferSize) {
+        this.json = new JsonTokenizer(reader, bufferSize);
+    }
+
+    /**
+     * Reads the next object into the UPI, after a {@link UpiInterface#reset()}
+     *
+     * @param upi UPI to fill
+     * @return false at the end of the input
+     * @throws IOException               if reading fails or the input is not a UPI object
+     * @throws MalformedUpiTextException if the object has only a `upi` text and it is malformed;
+     *                                   the reader is still positioned after the object
+     */
+    public boolean read(UpiInterface upi) throws IOException, MalformedUpiTextException {
+        int token = this.json.next();
+
+        if (token == JsonTokenizer.END) {
+            return false;
+        }
+
+        if (token != JsonTokenizer.START_OBJECT) {
+            throw new IOException("Expected a UPI object at offset " + this.json.getOffset());
+        }
+
+        upi.reset();
+        this.messages.clear();
+        this.hasValidation = false;
+        this.valid = false;
+
+        String upiText = null;
+        boolean hasPieces = false;
+
+        while ((token = this.json.next()) == JsonTokenizer.FIELD_NAME) {
+            JsonTokenizer json = this.json;
+
+            if (json.textEquals("messages")) {
+                this.readMessages();
+                continue;
+            }
+
+            if (json.textEquals("valid")) {
+                token = json.next();
+                this.hasValidation = true;
+                this.valid = token == JsonTokenizer.TRUE;
+                continue;
+            }
+
+            boolean upiField = json.textEquals("upi");
+            boolean descriptionField = json.textEquals("description");
+            int piece = this.pieceOf();
+
+            json.next();
+
+            if (json.getToken() == JsonTokenizer.START_OBJECT || json.getToken() == JsonTokenizer.START_ARRAY) {
+                json.skipValue();
+                continue;
+            }
+
+            String value = json.getTextOrNull();
+
+            if (upiField) {
+                upiText = value;
+            } else if (descriptionField) {
+                upi.setDescription(value);
+            } else if (piece >= 0 && value != null) {
+                hasPieces = true;
+                UpiJsonReader.setPiece(upi, piece, value);
+            }
+        }
+
+        if (token != JsonTokenizer.END_OBJECT) {
+            throw new IOException("Unterminated UPI object at offset " + this.json.getOffset());
+        }
+
+        if (hasPieces) {
+            upi.setUpiText(upiText);
+        } else if (upiText != null) {
+            String description = upi.getDescription();
+            upi.parseUpi(upiText);
+            upi.setDescription(description);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return messages of the last object read, reused by the next read
+     */
+    public ArrayList<ValidationMessage> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return true if the last object had a `valid` field
+     */
+    public boolean hasValidation() {
+        return this.hasValidation;
+    }
+
+    /**
+     * @return `valid` of the last object read, false if it had none
+     */
+    public boolean isValid() {
+        return this.valid;
+    }
+
+    private int pieceOf() {
+        JsonTokenizer json = this.json;
+
+        if (json.textEquals("countryCode")) {
+            return 0;
+        } else if (json.textEquals("subCountryCode")) {
+            return 1;
+        } else if (json.textEquals("subCountyCode")) {
+            return 2;
+        } else if (json.textEquals("propertyId")) {
+            return 3;
+        } else if (json.textEquals("propertyTypeCode")) {
+            return 4;
+        } else if (json.textEquals("subProperty")) {
+            return 5;
+        }
+
+        return -1;
+    }
+
+    private static void setPiece(UpiInterface upi, int piece, String value) {
+        switch (piece) {
+            case 0:
+                upi.setCountryCode(value);
+                break;
+            case 1:
+                upi.setSubCountryCode(value);
+                break;
+            case 2:
+                upi.setSubCountyCode(value);
+                break;
+            case 3:
+                upi.setPropertyId(value);
+                break;
+            case 4:
+                upi.setPropertyTypeCode(value);
+                break;
+            default:
+                upi.setSubProperty(value);
+        }
+    }
+
+    private void readMessages() throws IOException {
+        JsonTokenizer json = this.json;
+
+        if (json.next() != JsonTokenizer.START_ARRAY) {
+            json.skipValue();
+            return;
+        }
+
+        while (json.next() == JsonTokenizer.START_OBJECT) {
+            int code = 0;
+            String message = null;
+
+            while (json.next() == JsonTokenizer.FIELD_NAME) {
+                if (json.textEquals("code")) {
+                    json.next();
+                    code = json.getInt();
+                } else if (json.textEquals("message")) {
+                    json.next();
+                    message = json.getTextOrNull();
+                } else {
+                    json.skipValue();
+                }
+            }
+
+            this.messages.add(new ValidationMessage(code, message));
+        }
+
+        if (json.getToken() != JsonTokenizer.END_ARRAY) {
+            throw new IOException("Expected message objects at offset " + json.getOffset());
+        }
+    }
+}
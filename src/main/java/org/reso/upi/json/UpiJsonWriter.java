@@ -0,0 +1,217 @@
+package org.reso.upi.json;
+
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes UPIs as JSON Lines, one object per line:
+ *
+ * <pre>
+ * {"upi":"US-04015-N-11022331-R-N","countryCode":"US","subCountryCode":"04015","subCountyCode":"N",
+ *  "propertyId":"11022331","propertyTypeCode":"R","subProperty":"N","description":"...",
+ *  "valid":false,"messages":[{"code":400,"message":"..."}]}
+ * </pre>
+ *
+ * <p>
+ * Null pieces are left out. Each line is built in one reusable char buffer and handed to the
+ * writer in a single call, so writing allocates nothing. {@link UpiJsonReader} reads it back.
+ * </p>
+ */
+public class UpiJsonWriter {
+    private final Writer writer;
+    private char[] buffer = new char[1024];
+    private int length;
+
+    /**
+     * @param writer output, closed by the caller
+     */
+    public UpiJsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the UPI with the messages of its last validation, if any
+     *
+     * @param upi UPI to write
+     * @throws IOException if writing fails
+     */
+    public void write(UpiInterface upi) throws IOException {
+        List<ValidationMessage> messages = upi.getValidationMessages();
+        this.write(upi, messages, messages == null || messages.isEmpty());
+    }
+
+    /**
+     * @param upi      UPI to write
+     * @param messages validation messages, or null to leave out `valid` and `messages`
+     * @param valid    validation result
+     * @throws IOException if writing fails
+     */
+    public void write(UpiInterface upi, List<ValidationMessage> messages, boolean valid) throws IOException {
+        this.length = 0;
+        this.append('{');
+
+        boolean first = true;
+        first = this.field("upi", upi.getRawUpiText(), first);
+
+        CountryCode countryCode = upi.getCountryCode();
+        if (countryCode != null) {
+            String code = (countryCode == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : countryCode.name();
+            first = this.field("countryCode", code, first);
+        }
+
+        first = this.field("subCountryCode", upi.getSubCountryCode(), first);
+        first = this.field("subCountyCode", upi.getSubCountyCode(), first);
+        first = this.field("propertyId", upi.getPropertyId(), first);
+
+        if (upi.getPropertyTypeCode() != null) {
+            first = this.field("propertyTypeCode", upi.getPropertyTypeCodeText(), first);
+        }
+
+        first = this.field("subProperty", upi.getSubProperty(), first);
+        first = this.field("description", upi.getDescription(), first);
+
+        if (messages != null) {
+            this.name("valid", first);
+            this.append(valid ? "true" : "false");
+            this.append(",\"messages\":[");
+
+            for (int i = 0, size = messages.size(); i < size; i++) {
+                ValidationMessage message = messages.get(i);
+
+                if (i > 0) {
+                    this.append(',');
+                }
+
+                this.append("{\"code\":");
+                this.appendInt(message.getCode());
+                this.append(",\"message\":");
+                this.appendString(message.getMessage());
+                this.append('}');
+            }
+
+            this.append(']');
+        }
+
+        this.append('}');
+        this.append('\n');
+
+        this.writer.write(this.buffer, 0, this.length);
+    }
+
+    /**
+     * @throws IOException if flushing fails
+     */
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    private boolean field(String name, String value, boolean first) {
+        if (value == null) {
+            return first;
+        }
+
+        this.name(name, first);
+        this.appendString(value);
+
+        return false;
+    }
+
+    private void name(String name, boolean first) {
+        if (!first) {
+            this.append(',');
+        }
+
+        this.append('"');
+        this.append(name);
+        this.append("\":");
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            this.append("null");
+            return;
+        }
+
+        this.append('"');
+
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    this.append("\\\"");
+                    break;
+                case '\\':
+                    this.append("\\\\");
+                    break;
+                case '\n':
+                    this.append("\\n");
+                    break;
+                case '\r':
+                    this.append("\\r");
+                    break;
+                case '\t':
+                    this.append("\\t");
+                    break;
+                default:
+                    // Control characters, and the line separators some JavaScript parsers choke on
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        this.append("\\u");
+                        for (int shift = 12; shift >= 0; shift -= 4) {
+                            this.append(Character.forDigit((c >> shift) & 0xF, 16));
+                        }
+                    } else {
+                        this.append(c);
+                    }
+            }
+        }
+
+        this.append('"');
+    }
+
+    private void appendInt(int value) {
+        if (value < 0) {
+            this.append(Integer.toString(value));
+            return;
+        }
+
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        this.ensureCapacity(digits);
+        int position = this.length + digits;
+
+        do {
+            this.buffer[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+
+        this.length += digits;
+    }
+
+    private void append(String text) {
+        this.ensureCapacity(text.length());
+        text.getChars(0, text.length(), this.buffer, this.length);
+        this.length += text.length();
+    }
+
+    private void append(char c) {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (this.length + extra > this.buffer.length) {
+            char[] grown = new char[Math.max(this.length + extra, this.buffer.length * 2)];
+            System.arraycopy(this.buffer, 0, grown, 0, this.length);
+            this.buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.reso.upi.property_id;
+
+import org.reso.upi.validation.format.SegmentPattern;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The property ID (APN) format of one county: how to normalise an ID and what the
+ * normalised ID must look like.
+ *
+ * <p>
+ * Normalising strips punctuation, upper-cases letters and left-pads to a length.
+ * {@link #isValid(CharSequence)} checks the normalised form without building it, feeding
+ * the characters straight into a compiled {@link SegmentPattern}.
+ * </p>
+ *
+ * <p>
+ * Formats are read from `key=value` lines:
+ * </p>
+ *
+ * <pre>
+ * # Maricopa County, AZ: 123-45-678A
+ * strip=-.
+ * pad=8
+ * length=8-9
+ * pattern=\d{8}[A-Z]?
+ * </pre>
+ */
+public final class PropertyIdFormat {
+    private static final int ASCII = 128;
+
+    private final String description;
+    private final boolean[] strip;
+    private final char padCharacter;
+    private final int padLength;
+    private final int minLength;
+    private final int maxLength;
+    private final SegmentPattern pattern;
+
+    /**
+     * @param description  human readable description of the format
+     * @param strip        characters removed while normalising (ASCII)
+     * @param padCharacter character added on the left
+     * @param padLength    pad shorter IDs to this length, 0 for no padding
+     * @param minLength    minimum normalised length
+     * @param maxLength    maximum normalised length
+     * @param pattern      pattern the normalised ID must match, or null
+     */
+    public PropertyIdFormat(String description, String strip, char padCharacter, int padLength, int minLength, int maxLength, SegmentPattern pattern) {
+        this.description = description;
+        this.strip = new boolean[ASCII];
+        this.padCharacter = padCharacter;
+        this.padLength = padLength;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.pattern = pattern;
+
+        for (int i = 0; i < strip.length(); i++) {
+            char c = strip.charAt(i);
+
+            if (c >= ASCII) {
+                throw new IllegalArgumentException("Only ASCII characters can be stripped");
+            }
+
+            this.strip[c] = true;
+        }
+    }
+
+    /**
+     * @param reader format lines, closed by the caller
+     * @return compiled format
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static PropertyIdFormat parse(Reader reader) throws IOException {
+        BufferedReader lines = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        String description = null;
+        String strip = "";
+        char padCharacter = '0';
+        int padLength = 0;
+        int minLength = 1;
+        int maxLength = Integer.MAX_VALUE;
+        SegmentPattern pattern = null;
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            // The first comment describes the format
+            if (line.trim().startsWith("#")) {
+                if (description == null) {
+                    description = line.trim().substring(1).trim();
+                }
+                continue;
+            }
+
+            int equals = line.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value, got `" + line + "`");
+            }
+
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1);
+
+            if ("strip".equals(key)) {
+                // Not trimmed, so a space can be stripped
+                strip = value;
+            } else if ("pad".equals(key)) {
+                padLength = Integer.parseInt(value.trim());
+            } else if ("padCharacter".equals(key)) {
+                padCharacter = value.trim().charAt(0);
+            } else if ("length".equals(key)) {
+                String[] range = value.trim().split("-");
+                minLength = Integer.parseInt(range[0]);
+                maxLength = Integer.parseInt(range[range.length - 1]);
+            } else if ("pattern".equals(key)) {
+                pattern = SegmentPattern.compile(value.trim());
+            } else {
+                throw new IllegalArgumentException("Unknown key `" + key + "`");
+            }
+        }
+
+        return new PropertyIdFormat(description, strip, padCharacter, padLength, minLength, maxLength, pattern);
+    }
+
+    /**
+     * Checks the normalised form of the ID, without allocating
+     *
+     * @param propertyId property ID as given
+     * @return true if the normalised ID has the right length and matches the pattern
+     */
+    public boolean isValid(CharSequence propertyId) {
+        if (propertyId == null) {
+            return false;
+        }
+
+        // First pass: length after stripping
+        int kept = 0;
+        for (int i = 0, length = propertyId.length(); i < length; i++) {
+            if (!this.isStripped(propertyId.charAt(i))) {
+                kept++;
+            }
+        }
+
+        // Padding alone is not an ID
+        if (kept == 0) {
+            return false;
+        }
+
+        int padding = Math.max(0, this.padLength - kept);
+        int normalisedLength = kept + padding;
+
+        if (normalisedLength < this.minLength || normalisedLength > this.maxLength) {
+            return false;
+        }
+
+        if (this.pattern == null) {
+            return true;
+        }
+
+        // Second pass: feed the normalised characters to the automaton
+        int state = this.pattern.start();
+
+        for (int i = 0; i < padding; i++) {
+            state = this.pattern.step(state, this.padCharacter);
+        }
+
+        for (int i = 0, length = propertyId.length(); i < length && state >= 0; i++) {
+            char c = propertyId.charAt(i);
+
+            if (!this.isStripped(c)) {
+                state = this.pattern.step(state, PropertyIdFormat.toUpperCase(c));
+            }
+        }
+
+        return this.pattern.isAccepting(state);
+    }
+
+    /**
+     * @param propertyId property ID as given
+     * @return the normalised ID, the same instance if it already was normalised
+     */
+    public String normalize(String propertyId) {
+        if (propertyId == null) {
+            return null;
+        }
+
+        int length = propertyId.length();
+        int kept = 0;
+        boolean changed = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = propertyId.charAt(i);
+
+            if (this.isStripped(c)) {
+                changed = true;
+            } else {
+                kept++;
+                changed |= PropertyIdFormat.toUpperCase(c) != c;
+            }
+        }
+
+        int padding = Math.max(0, this.padLength - kept);
+        if (!changed && padding == 0) {
+            return propertyId;
+        }
+
+        char[] normalised = new char[kept + padding];
+        int position = 0;
+
+        while (position < padding) {
+            normalised[position++] = this.padCharacter;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = propertyId.charAt(i);
+
+            if (!this.isStripped(c)) {
+                normalised[position++] = PropertyIdFormat.toUpperCase(c);
+            }
+        }
+
+        return new String(normalised);
+    }
+
+    /**
+     * @return human readable description, or null
+     */
+    public String getDescription() {
+        return this.description;
+    }
+
+    /**
+     * @return pattern the normalised ID must match, or null
+     */
+    public SegmentPattern getPattern() {
+        return this.pattern;
+    }
+
+    private boolean isStripped(char c) {
+        return c < ASCII && this.strip[c];
+    }
+
+    private static char toUpperCase(char c) {
+        return (c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c;
+    }
+}
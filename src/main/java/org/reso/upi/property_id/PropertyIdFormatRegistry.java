@@ -0,0 +1,272 @@
+package org.reso.upi.property_id;
+
+import org.reso.upi.country_code.CountryCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Property ID formats by county, keyed by country and numeric sub country code.
+ *
+ * <p>
+ * An index (`formats.txt`) lists the counties that have a format, one `US 04013` line each.
+ * The keys are packed into a sorted `long[]` and found with a binary search; a county's own
+ * file (`US-04013.txt`, see {@link PropertyIdFormat}) is only read and compiled the first
+ * time that county is looked up. A county file that fails to load is reported by the first
+ * lookup only; afterwards the county is treated as having no format. Instances are thread-safe.
+ * </p>
+ */
+public final class PropertyIdFormatRegistry {
+    private static final String RESOURCE_DIRECTORY = "/org/reso/upi/property_id/";
+    private static final String INDEX = "formats.txt";
+
+    private final Source source;
+    private final long[] keys;
+    private final String[] names;
+    private final AtomicReferenceArray<PropertyIdFormat> formats;
+    // Set once a county file fails to load, so it is never read again
+    private final AtomicReferenceArray<RuntimeException> failures;
+
+    private PropertyIdFormatRegistry(Source source) throws IOException {
+        this.source = source;
+
+        Reader reader = source.open(INDEX);
+        if (reader == null) {
+            throw new IOException("Missing " + INDEX);
+        }
+
+        long[] keys = new long[16];
+        String[] names = new String[16];
+        int count = 0;
+
+        try {
+            BufferedReader lines = new BufferedReader(reader);
+            int lineNumber = 0;
+            String line;
+
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] columns = line.split("\\s+");
+                CountryCode country = (columns.length == 2) ? CountryCode.getByCode(columns[0]) : null;
+                long key = (country != null) ? PropertyIdFormatRegistry.key(country, columns[1]) : -1;
+
+                if (key < 0) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected `COUNTRY SUB_COUNTRY_CODE`, got `" + line + "`");
+                }
+
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    names = Arrays.copyOf(names, count * 2);
+                }
+
+                keys[count] = key;
+                names[count] = columns[0] + "-" + columns[1] + ".txt";
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+
+        // Sort names along with their keys
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        final long[] unsorted = keys;
+        Arrays.sort(order, (a, b) -> Long.compare(unsorted[a], unsorted[b]));
+
+        this.keys = new long[count];
+        this.names = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            this.keys[i] = keys[order[i]];
+            this.names[i] = names[order[i]];
+
+            if (i > 0 && this.keys[i] == this.keys[i - 1]) {
+                throw new IllegalArgumentException("Duplicate county " + this.names[i]);
+            }
+        }
+
+        this.formats = new AtomicReferenceArray<PropertyIdFormat>(count);
+        this.failures = new AtomicReferenceArray<RuntimeException>(count);
+    }
+
+    /**
+     * @return the bundled registry
+     */
+    public static PropertyIdFormatRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads `formats.txt` and the county files it lists from a directory
+     *
+     * @param directory directory holding the format files (UTF-8)
+     * @return registry
+     * @throws IOException if the index cannot be read
+     */
+    public static PropertyIdFormatRegistry load(final Path directory) throws IOException {
+        return new PropertyIdFormatRegistry(name -> {
+            Path path = directory.resolve(name);
+            return Files.exists(path) ? Files.newBufferedReader(path, StandardCharsets.UTF_8) : null;
+        });
+    }
+
+    /**
+     * @param country        country code
+     * @param subCountryCode sub country code, eg `04013`
+     * @return the county's format, or null if it has none or its file failed to load before
+     * @throws UncheckedIOException     if the county file cannot be read, on the first lookup
+     * @throws IllegalArgumentException if the county file is invalid, on the first lookup
+     * @see #getFailure(CountryCode, CharSequence)
+     */
+    public PropertyIdFormat getFormat(CountryCode country, CharSequence subCountryCode) {
+        if (country == null) {
+            return null;
+        }
+
+        long key = PropertyIdFormatRegistry.key(country, subCountryCode);
+        int index = (key < 0) ? -1 : Arrays.binarySearch(this.keys, key);
+
+        if (index < 0) {
+            return null;
+        }
+
+        PropertyIdFormat format = this.formats.get(index);
+
+        if (format == null) {
+            if (this.failures.get(index) != null) {
+                return null;
+            }
+
+            // Two threads may both compile the county, the first one wins
+            try {
+                this.formats.compareAndSet(index, null, this.read(this.names[index]));
+            } catch (RuntimeException e) {
+                this.failures.compareAndSet(index, null, e);
+                throw e;
+            }
+
+            format = this.formats.get(index);
+        }
+
+        return format;
+    }
+
+    /**
+     * @param country        country code
+     * @param subCountryCode sub country code, eg `04013`
+     * @return why the county's file failed to load, or null if it did not fail (or was not read yet)
+     */
+    public RuntimeException getFailure(CountryCode country, CharSequence subCountryCode) {
+        long key = (country == null) ? -1 : PropertyIdFormatRegistry.key(country, subCountryCode);
+        int index = (key < 0) ? -1 : Arrays.binarySearch(this.keys, key);
+
+        return (index < 0) ? null : this.failures.get(index);
+    }
+
+    /**
+     * @param country        country code
+     * @param subCountryCode sub country code, eg `04013`
+     * @return true if the county has a format
+     */
+    public boolean hasFormat(CountryCode country, CharSequence subCountryCode) {
+        long key = (country == null) ? -1 : PropertyIdFormatRegistry.key(country, subCountryCode);
+
+        return key >= 0 && Arrays.binarySearch(this.keys, key) >= 0;
+    }
+
+    /**
+     * @return number of counties with a format
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    private PropertyIdFormat read(String name) {
+        try {
+            Reader reader = this.source.open(name);
+            if (reader == null) {
+                throw new IOException("Missing " + name);
+            }
+
+            try {
+                return PropertyIdFormat.parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Packs the country and a numeric sub country code of up to nine digits, without allocating.
+     * The length is kept too, so `4013` and `04013` are different keys.
+     *
+     * @return the key, or -1 if the sub country code is not numeric
+     */
+    private static long key(CountryCode country, CharSequence subCountryCode) {
+        if (subCountryCode == null || subCountryCode.length() == 0 || subCountryCode.length() > 9) {
+            return -1;
+        }
+
+        long value = 0;
+
+        for (int i = 0, length = subCountryCode.length(); i < length; i++) {
+            char c = subCountryCode.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return ((long) country.ordinal() << 34) | ((long) subCountryCode.length() << 30) | value;
+    }
+
+    /**
+     * Opens format files by name
+     */
+    private interface Source {
+        /**
+         * @return reader, or null if there is no such file
+         */
+        Reader open(String name) throws IOException;
+    }
+
+    /**
+     * Reads the bundled index on first access, thread-safe through class initialisation
+     */
+    private static final class DefaultHolder {
+        static final PropertyIdFormatRegistry INSTANCE = DefaultHolder.load();
+
+        private static PropertyIdFormatRegistry load() {
+            try {
+                return new PropertyIdFormatRegistry(name -> {
+                    InputStream stream = PropertyIdFormatRegistry.class.getResourceAsStream(RESOURCE_DIRECTORY + name);
+                    return (stream == null) ? null : new InputStreamReader(stream, StandardCharsets.UTF_8);
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -10,6 +10,8 @@ public enum PropertyTypeCode {
 
     NON_STANDARD("Non Standard RESO Property Type");
 
+    private static final PropertyTypeCode[] VALUES = PropertyTypeCode.values();
+
     private final String description;
 
     private String nonStandardCode;
@@ -37,18 +39,14 @@ public enum PropertyTypeCode {
             return null;
         }
 
-        String testCode = code;
-
-        if (!caseSensitive) {
-            testCode = code.toUpperCase();
+        // Scan the few values directly instead of paying for an exception on every miss
+        for (PropertyTypeCode value : VALUES) {
+            if (caseSensitive ? value.name().equals(code) : value.name().equalsIgnoreCase(code)) {
+                return value;
+            }
         }
 
-        try {
-            return Enum.valueOf(PropertyTypeCode.class, testCode);
-
-        } catch (IllegalArgumentException e) {
-            return PropertyTypeCode.NON_STANDARD.setNonStandardCode(code);
-        }
+        return PropertyTypeCode.NON_STANDARD.setNonStandardCode(code);
     }
 
     /**
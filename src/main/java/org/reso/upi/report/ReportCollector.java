@@ -0,0 +1,71 @@
+package org.reso.upi.report;
+
+import org.reso.upi.UpiInterface;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects validation results from many threads into one {@link ValidationReport}.
+ *
+ * <p>
+ * Each thread adds to its own partial report, so recording takes no lock. Once the
+ * workers are done, {@link #merge()} adds the partial reports together.
+ * </p>
+ *
+ * <pre>
+ * ReportCollector collector = new ReportCollector(5, 100000);
+ * // in each worker
+ * collector.add(upi, upi.validate(true), line);
+ * // after the workers finished
+ * new ValidationReportWriter(writer).write(collector.merge());
+ * </pre>
+ */
+public class ReportCollector {
+    private final int maxSamples;
+    private final int maxBuckets;
+
+    private final ConcurrentLinkedQueue<ValidationReport> partials = new ConcurrentLinkedQueue<ValidationReport>();
+    private final ThreadLocal<ValidationReport> partial;
+
+    /**
+     * @param maxSamples offending lines kept per bucket
+     * @param maxBuckets distinct buckets kept per thread and in the merged report
+     */
+    public ReportCollector(int maxSamples, int maxBuckets) {
+        this.maxSamples = maxSamples;
+        this.maxBuckets = maxBuckets;
+        this.partial = ThreadLocal.withInitial(() -> {
+            ValidationReport report = new ValidationReport(this.maxSamples, this.maxBuckets);
+            this.partials.add(report);
+
+            return report;
+        });
+    }
+
+    /**
+     * @param upi      validated UPI, or null if the line was malformed
+     * @param messages its validation messages
+     * @param line     source line, may be null
+     * @see ValidationReport#add(UpiInterface, List, String)
+     */
+    public void add(UpiInterface upi, List<ValidationMessage> messages, String line) {
+        this.partial.get().add(upi, messages, line);
+    }
+
+    /**
+     * Call once every thread has stopped adding
+     *
+     * @return all partial reports added together
+     */
+    public ValidationReport merge() {
+        ValidationReport merged = new ValidationReport(this.maxSamples, this.maxBuckets);
+
+        for (ValidationReport report : this.partials) {
+            merged.merge(report);
+        }
+
+        return merged;
+    }
+}
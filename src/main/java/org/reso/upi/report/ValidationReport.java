@@ -0,0 +1,266 @@
+package org.reso.upi.report;
+
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Counts of validation messages by code, country, sub country and property type, with the
+ * first few offending lines of each bucket.
+ *
+ * <p>
+ * Only the buckets are kept, never the results, so memory depends on the number of distinct
+ * buckets and not on the number of records. Past `maxBuckets`, new combinations are counted
+ * in one overflow bucket per code. A report is not thread-safe: give each thread its own
+ * (see {@link ReportCollector}) and {@link #merge(ValidationReport)} them at the end.
+ * </p>
+ */
+public class ValidationReport {
+    public static final String OVERFLOW = "(other)";
+
+    private final int maxSamples;
+    private final int maxBuckets;
+
+    private final HashMap<Bucket, Bucket> buckets = new HashMap<Bucket, Bucket>();
+    private final Bucket probe = new Bucket();
+
+    private long records;
+    private long invalidRecords;
+
+    /**
+     * @param maxSamples offending lines kept per bucket
+     * @param maxBuckets distinct buckets kept before counting into overflow buckets
+     */
+    public ValidationReport(int maxSamples, int maxBuckets) {
+        this.maxSamples = maxSamples;
+        this.maxBuckets = maxBuckets;
+    }
+
+    /**
+     * @param upi      validated UPI, or null if the line was malformed
+     * @param messages its validation messages
+     * @param line     source line, kept as a sample of the buckets it falls into; may be null
+     */
+    public void add(UpiInterface upi, List<ValidationMessage> messages, String line) {
+        this.records++;
+
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        this.invalidRecords++;
+
+        String country = "";
+        String subCountryCode = "";
+        String propertyTypeCode = "";
+
+        if (upi != null) {
+            CountryCode countryCode = upi.getCountryCode();
+            if (countryCode != null) {
+                country = (countryCode == CountryCode.UNDEFINED) ? ValidationReport.text(upi.getUndefinedCountryCode()) : countryCode.name();
+            }
+
+            subCountryCode = ValidationReport.text(upi.getSubCountryCode());
+            // The record's own text: NON_STANDARD's code belongs to whichever thread parsed last
+            propertyTypeCode = ValidationReport.text(upi.getPropertyTypeCodeText());
+        }
+
+        for (int i = 0, size = messages.size(); i < size; i++) {
+            ValidationMessage message = messages.get(i);
+            Bucket bucket = this.bucket(message.getCode(), country, subCountryCode, propertyTypeCode);
+
+            bucket.count++;
+            bucket.addSample(line, this.maxSamples);
+
+            if (bucket.message == null) {
+                bucket.message = message.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Adds another report's counts and samples to this one
+     *
+     * @param other report to merge in, left unchanged
+     */
+    public void merge(ValidationReport other) {
+        this.records += other.records;
+        this.invalidRecords += other.invalidRecords;
+
+        for (Bucket theirs : other.buckets.values()) {
+            Bucket bucket = this.bucket(theirs.code, theirs.country, theirs.subCountryCode, theirs.propertyTypeCode);
+            bucket.count += theirs.count;
+
+            if (bucket.message == null) {
+                bucket.message = theirs.message;
+            }
+
+            for (int i = 0; i < theirs.sampleCount; i++) {
+                bucket.addSample(theirs.samples[i], this.maxSamples);
+            }
+        }
+    }
+
+    /**
+     * @return buckets ordered by code, country, sub country and property type
+     */
+    public List<Bucket> getBuckets() {
+        ArrayList<Bucket> sorted = new ArrayList<Bucket>(this.buckets.values());
+        Collections.sort(sorted);
+
+        return sorted;
+    }
+
+    /**
+     * @return number of results added
+     */
+    public long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @return number of results with at least one message
+     */
+    public long getInvalidRecords() {
+        return this.invalidRecords;
+    }
+
+    private Bucket bucket(int code, String country, String subCountryCode, String propertyTypeCode) {
+        // Look up with a reused key, only new buckets allocate
+        Bucket bucket = this.buckets.get(this.probe.set(code, country, subCountryCode, propertyTypeCode));
+
+        if (bucket == null) {
+            if (this.buckets.size() >= this.maxBuckets) {
+                bucket = this.buckets.get(this.probe.set(code, OVERFLOW, OVERFLOW, OVERFLOW));
+
+                if (bucket != null) {
+                    return bucket;
+                }
+            }
+
+            bucket = new Bucket().set(this.probe.code, this.probe.country, this.probe.subCountryCode, this.probe.propertyTypeCode);
+            bucket.samples = new String[this.maxSamples];
+            this.buckets.put(bucket, bucket);
+        }
+
+        return bucket;
+    }
+
+    private static String text(String value) {
+        return (value == null) ? "" : value;
+    }
+
+    /**
+     * Count and sample lines of one code, country, sub country and property type
+     */
+    public static final class Bucket implements Comparable<Bucket> {
+        private int code;
+        private String country;
+        private String subCountryCode;
+        private String propertyTypeCode;
+        private int hash;
+
+        private String message;
+        private long count;
+        private String[] samples;
+        private int sampleCount;
+
+        private Bucket set(int code, String country, String subCountryCode, String propertyTypeCode) {
+            this.code = code;
+            this.country = country;
+            this.subCountryCode = subCountryCode;
+            this.propertyTypeCode = propertyTypeCode;
+            this.hash = ((code * 31 + country.hashCode()) * 31 + subCountryCode.hashCode()) * 31 + propertyTypeCode.hashCode();
+
+            return this;
+        }
+
+        private void addSample(String line, int maxSamples) {
+            if (line != null && this.sampleCount < maxSamples) {
+                this.samples[this.sampleCount++] = line;
+            }
+        }
+
+        public int getCode() {
+            return this.code;
+        }
+
+        public String getCountry() {
+            return this.country;
+        }
+
+        public String getSubCountryCode() {
+            return this.subCountryCode;
+        }
+
+        public String getPropertyTypeCode() {
+            return this.propertyTypeCode;
+        }
+
+        /**
+         * @return the first message text seen for this bucket
+         */
+        public String getMessage() {
+            return this.message;
+        }
+
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the first lines that fell into this bucket
+         */
+        public List<String> getSamples() {
+            ArrayList<String> samples = new ArrayList<String>(this.sampleCount);
+
+            for (int i = 0; i < this.sampleCount; i++) {
+                samples.add(this.samples[i]);
+            }
+
+            return samples;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Bucket)) {
+                return false;
+            }
+
+            Bucket bucket = (Bucket) other;
+
+            return this.code == bucket.code
+                    && this.country.equals(bucket.country)
+                    && this.subCountryCode.equals(bucket.subCountryCode)
+                    && this.propertyTypeCode.equals(bucket.propertyTypeCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public int compareTo(Bucket other) {
+            int compared = Integer.compare(this.code, other.code);
+
+            if (compared == 0) {
+                compared = this.country.compareTo(other.country);
+            }
+
+            if (compared == 0) {
+                compared = this.subCountryCode.compareTo(other.subCountryCode);
+            }
+
+            if (compared == 0) {
+                compared = this.propertyTypeCode.compareTo(other.propertyTypeCode);
+            }
+
+            return compared;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.reso.upi.report;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a {@link ValidationReport} as CSV, one bucket per line as it goes:
+ *
+ * <pre>
+ * code,message,countryCode,subCountryCode,propertyTypeCode,count,samples
+ * 400,The Country Code is not recognized.,XX,04015,R,12,"XX-04015-N-1-R-N | XX-04015-N-2-R-N"
+ * </pre>
+ *
+ * <p>
+ * The totals follow on two `#` lines at the end.
+ * </p>
+ */
+public class ValidationReportWriter {
+    public static final String HEADER = "code,message,countryCode,subCountryCode,propertyTypeCode,count,samples";
+    private static final String SAMPLE_SEPARATOR = " | ";
+
+    private final Writer writer;
+
+    /**
+     * @param writer output, closed by the caller
+     */
+    public ValidationReportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @param report report to write
+     * @throws IOException if writing fails
+     */
+    public void write(ValidationReport report) throws IOException {
+        this.writer.write(HEADER);
+        this.writer.write('\n');
+
+        for (ValidationReport.Bucket bucket : report.getBuckets()) {
+            this.writer.write(Integer.toString(bucket.getCode()));
+            this.writer.write(',');
+            this.writeField(bucket.getMessage());
+            this.writer.write(',');
+            this.writeField(bucket.getCountry());
+            this.writer.write(',');
+            this.writeField(bucket.getSubCountryCode());
+            this.writer.write(',');
+            this.writeField(bucket.getPropertyTypeCode());
+            this.writer.write(',');
+            this.writer.write(Long.toString(bucket.getCount()));
+            this.writer.write(',');
+            this.writeField(String.join(SAMPLE_SEPARATOR, bucket.getSamples()));
+            this.writer.write('\n');
+        }
+
+        this.writer.write("# records," + report.getRecords() + '\n');
+        this.writer.write("# invalid," + report.getInvalidRecords() + '\n');
+        this.writer.flush();
+    }
+
+    /**
+     * Quotes the field if it holds a delimiter, quote or line break
+     */
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) {
+            this.writer.write(value);
+            return;
+        }
+
+        this.writer.write('"');
+        this.writer.write(value.replace("\"", "\"\""));
+        this.writer.write('"');
+    }
+}
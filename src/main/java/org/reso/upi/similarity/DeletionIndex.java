@@ -0,0 +1,302 @@
+package org.reso.upi.similarity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Symmetric-delete index of strings, for finding every term within a few edits of a query
+ * under Damerau-Levenshtein distance.
+ *
+ * <p>
+ * Two strings within d edits share a string made by deleting at most d characters from each:
+ * a substitution deletes the character on both sides, an insertion on one side, and a swap of
+ * adjacent characters one of the pair on both. Each term's deletion variants are hashed into
+ * one sorted long array next to the term's index, with a table of where each run of leading
+ * hash bits starts, so a lookup hashes the query's variants, goes straight to each one's few
+ * entries and checks the candidates with a bounded distance. The work
+ * depends on how many terms share a variant, not on how many terms there are; a BK-tree,
+ * which prunes by the triangle inequality, stops pruning when terms are dense, as in a county
+ * of consecutive parcel numbers, and then compares against most of the tree.
+ * </p>
+ *
+ * <p>
+ * A term of length L has up to C(L, 0) + ... + C(L, d) variants, one long each, so the index
+ * is meant for small distances: at distance 1 an 8-digit ID costs at most nine longs.
+ * </p>
+ *
+ * <p>
+ * Adding is not thread-safe; once built, an index can be searched from many threads.
+ * </p>
+ */
+public final class DeletionIndex {
+    private final int maxDistance;
+    private final HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+    private String[] terms = new String[16];
+    private int size;
+
+    // Variant hash in the high half, term index in the low half, sorted; null until built
+    private long[] variants;
+
+    // First variant of each bucket of leading hash bits, about one variant per bucket
+    private int[] buckets;
+    private int bucketShift;
+
+    /**
+     * @param maxDistance largest radius searched for, at least 1
+     */
+    public DeletionIndex(int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("Distance must be at least 1");
+        }
+
+        this.maxDistance = maxDistance;
+    }
+
+    public int getMaxDistance() {
+        return this.maxDistance;
+    }
+
+    /**
+     * @param term term to add
+     * @return index of the term, the existing one if it was added before
+     */
+    public int add(String term) {
+        Integer existing = this.indexes.get(term);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        if (this.size == this.terms.length) {
+            this.terms = Arrays.copyOf(this.terms, this.size * 2);
+        }
+
+        int index = this.size++;
+        this.terms[index] = term;
+        this.indexes.put(term, index);
+        this.variants = null;
+
+        return index;
+    }
+
+    /**
+     * Hashes and sorts the deletion variants of every term; needed before searching, and again after adding
+     */
+    public void build() {
+        EditDistance.Scratch scratch = EditDistance.scratch();
+        long[] variants = new long[Math.max(16, this.size * (this.maxDistance + 8))];
+        int count = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            int hashCount = DeletionIndex.hashVariants(this.terms[i], this.maxDistance, scratch);
+            int[] hashes = scratch.hashes(hashCount);
+
+            if (count + hashCount > variants.length) {
+                variants = Arrays.copyOf(variants, Math.max(count + hashCount, variants.length * 2));
+            }
+
+            for (int j = 0; j < hashCount; j++) {
+                variants[count++] = ((long) hashes[j] << 32) | i;
+            }
+        }
+
+        Arrays.sort(variants, 0, count);
+
+        // A term like 11 has the same variant twice
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || variants[unique - 1] != variants[i]) {
+                variants[unique++] = variants[i];
+            }
+        }
+
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(unique));
+        int[] buckets = new int[(1 << bits) + 1];
+        int at = 0;
+
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            while (at < unique && DeletionIndex.bucket((int) (variants[at] >>> 32), 32 - bits) < bucket) {
+                at++;
+            }
+            buckets[bucket] = at;
+        }
+
+        this.bucketShift = 32 - bits;
+        this.buckets = buckets;
+        this.variants = Arrays.copyOf(variants, unique);
+    }
+
+    /**
+     * Calls the visitor for every term within `radius` edits of the query, including the query itself if present
+     *
+     * @param query   term to look up
+     * @param radius  largest distance to report, at most the index's distance
+     * @param visitor receives matches, in index order
+     */
+    public void search(String query, int radius, Visitor visitor) {
+        this.search(query, radius, -1, visitor);
+    }
+
+    /**
+     * Calls the visitor for every term added after the given one and within `radius` edits of
+     * it, so a self-join that searches from every index sees each pair once
+     *
+     * @param index   index of the term to look up
+     * @param radius  largest distance to report, at most the index's distance
+     * @param visitor receives matches, in index order
+     */
+    public void searchAfter(int index, int radius, Visitor visitor) {
+        this.search(this.get(index), radius, index, visitor);
+    }
+
+    private void search(String query, int radius, int after, Visitor visitor) {
+        if (radius > this.maxDistance) {
+            throw new IllegalArgumentException("Radius " + radius + " above the index's distance " + this.maxDistance);
+        }
+
+        long[] variants = this.variants;
+        int[] buckets = this.buckets;
+        if (variants == null) {
+            if (this.size > 0) {
+                throw new IllegalStateException("Index is not built");
+            }
+
+            return;
+        }
+
+        EditDistance.Scratch scratch = EditDistance.scratch();
+        int hashCount = DeletionIndex.hashVariants(query, radius, scratch);
+        int[] hashes = scratch.hashes(hashCount);
+        int candidateCount = 0;
+
+        for (int i = 0; i < hashCount; i++) {
+            int hash = hashes[i];
+            int bucket = DeletionIndex.bucket(hash, this.bucketShift);
+
+            for (int at = buckets[bucket]; at < buckets[bucket + 1]; at++) {
+                if ((int) (variants[at] >>> 32) == hash && (int) variants[at] > after) {
+                    int[] candidates = scratch.candidates(candidateCount + 1);
+                    candidates[candidateCount++] = (int) variants[at];
+                }
+            }
+        }
+
+        int[] candidates = scratch.candidates(candidateCount);
+        Arrays.sort(candidates, 0, candidateCount);
+
+        for (int i = 0; i < candidateCount; i++) {
+            int index = candidates[i];
+
+            if (i > 0 && candidates[i - 1] == index) {
+                continue;
+            }
+
+            // Shared hashes are only candidates, the distance decides
+            String term = this.terms[index];
+            int distance = EditDistance.damerauLevenshtein(query, term, radius, scratch);
+
+            if (distance <= radius) {
+                visitor.visit(index, term, distance);
+            }
+        }
+    }
+
+    /**
+     * @param index term index
+     * @return the term
+     */
+    public String get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("No term " + index);
+        }
+
+        return this.terms[index];
+    }
+
+    /**
+     * @return number of distinct terms
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Hashes the term with every set of up to `deletions` characters left out into the scratch's hashes
+     *
+     * @return number of hashes
+     */
+    static int hashVariants(String term, int deletions, EditDistance.Scratch scratch) {
+        int length = term.length();
+        int count = 0;
+        int[] positions = scratch.positions(deletions);
+
+        for (int k = 0; k <= Math.min(deletions, length); k++) {
+            for (int i = 0; i < k; i++) {
+                positions[i] = i;
+            }
+
+            while (true) {
+                scratch.hashes(count + 1)[count++] = DeletionIndex.hash(term, positions, k);
+
+                // Next set of k positions in lexicographic order
+                int i = k - 1;
+                while (i >= 0 && positions[i] == length - k + i) {
+                    i--;
+                }
+
+                if (i < 0) {
+                    break;
+                }
+
+                positions[i]++;
+                for (int j = i + 1; j < k; j++) {
+                    positions[j] = positions[j - 1] + 1;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static int hash(String term, int[] positions, int deleted) {
+        int length = term.length();
+        int hash = length - deleted;
+        int next = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (next < deleted && positions[next] == i) {
+                next++;
+            } else {
+                hash = 31 * hash + term.charAt(i);
+            }
+        }
+
+        // Spread the bits, nearby IDs differ only in their last few characters
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return hash;
+    }
+
+    /**
+     * @return the hash's leading bits, in the order of the signed hashes the variants are sorted by
+     */
+    private static int bucket(int hash, int shift) {
+        return (hash ^ Integer.MIN_VALUE) >>> shift;
+    }
+
+    /**
+     * Receives search results
+     */
+    public interface Visitor {
+        /**
+         * @param index    index of the term, as returned by {@link #add(String)}
+         * @param term     the term
+         * @param distance Damerau-Levenshtein distance to the query
+         */
+        void visit(int index, String term, int distance);
+    }
+}
@@ -0,0 +1,265 @@
+package org.reso.upi.similarity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Bounded edit distances between IDs, with per-thread buffers so lookups from a pool do not
+ * allocate.
+ */
+final class EditDistance {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private EditDistance() {
+    }
+
+    /**
+     * @return the calling thread's distance buffers
+     */
+    static Scratch scratch() {
+        return SCRATCH.get();
+    }
+
+    /**
+     * Levenshtein distance, giving up once every alignment costs more than the bound
+     *
+     * @param bound largest distance of interest
+     * @return the distance, or bound + 1 if it is larger than the bound
+     */
+    static int levenshtein(String a, String b, int bound, Scratch scratch) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+
+        int start = EditDistance.commonPrefix(a, b);
+        int end = EditDistance.commonSuffix(a, b, start);
+        int aLength = a.length() - start - end;
+        int bLength = b.length() - start - end;
+
+        int[] previous = scratch.row(0, aLength + 1);
+        int[] current = scratch.row(1, aLength + 1);
+
+        for (int i = 0; i <= aLength; i++) {
+            previous[i] = i;
+        }
+
+        for (int j = 1; j <= bLength; j++) {
+            char c = b.charAt(start + j - 1);
+            current[0] = j;
+            int rowMin = j;
+
+            for (int i = 1; i <= aLength; i++) {
+                int cost = (a.charAt(start + i - 1) == c) ? 0 : 1;
+                int value = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                current[i] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return Math.min(previous[aLength], bound + 1);
+    }
+
+    /**
+     * Damerau-Levenshtein distance (Lowrance-Wagner), where a swap of adjacent characters is
+     * one edit, so `1234` and `1324` are one edit apart. Unlike the restricted optimal string
+     * alignment distance it obeys the triangle inequality. Row minimums never decrease, so it
+     * gives up like {@link #levenshtein(String, String, int, Scratch)}. A common prefix and
+     * suffix never change either distance, so both only align what lies between them.
+     *
+     * @param bound largest distance of interest
+     * @return the distance, or bound + 1 if it is larger than the bound
+     */
+    static int damerauLevenshtein(String a, String b, int bound, Scratch scratch) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+
+        int start = EditDistance.commonPrefix(a, b);
+        int end = EditDistance.commonSuffix(a, b, start);
+        int aLength = a.length() - start - end;
+        int bLength = b.length() - start - end;
+
+        // What is left starts and ends with a difference, so one char each or a swapped pair is one edit
+        if (aLength == 0 || bLength == 0) {
+            return Math.min(Math.max(aLength, bLength), bound + 1);
+        }
+        if (aLength == bLength && (aLength == 1 || (aLength == 2 && a.charAt(start) == b.charAt(start + 1) && a.charAt(start + 1) == b.charAt(start)))) {
+            return Math.min(1, bound + 1);
+        }
+
+        // (aLength + 2) x (bLength + 2), row and column 0 hold the infinity sentinel
+        int width = bLength + 2;
+        int[] d = scratch.matrix((aLength + 2) * width);
+        int infinity = aLength + bLength;
+
+        d[0] = infinity;
+        for (int i = 0; i <= aLength; i++) {
+            d[(i + 1) * width] = infinity;
+            d[(i + 1) * width + 1] = i;
+        }
+        for (int j = 0; j <= bLength; j++) {
+            d[j + 1] = infinity;
+            d[width + j + 1] = j;
+        }
+
+        int result = -1;
+
+        for (int i = 1; i <= aLength && result < 0; i++) {
+            char c = a.charAt(start + i - 1);
+            int lastColumn = 0;
+            int rowMin = i;
+
+            for (int j = 1; j <= bLength; j++) {
+                char other = b.charAt(start + j - 1);
+                int lastRow = scratch.lastRow(other);
+                int cost = (c == other) ? 0 : 1;
+
+                int value = Math.min(Math.min(d[i * width + j] + cost, d[(i + 1) * width + j] + 1), d[i * width + j + 1] + 1);
+                value = Math.min(value, d[lastRow * width + lastColumn] + (i - lastRow - 1) + 1 + (j - lastColumn - 1));
+
+                if (cost == 0) {
+                    lastColumn = j;
+                }
+
+                d[(i + 1) * width + j + 1] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            scratch.setLastRow(c, i);
+
+            if (rowMin > bound) {
+                result = bound + 1;
+            }
+        }
+
+        for (int i = 0; i < aLength; i++) {
+            scratch.setLastRow(a.charAt(start + i), 0);
+        }
+
+        return (result >= 0) ? result : Math.min(d[(aLength + 1) * width + bLength + 1], bound + 1);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int prefix = 0;
+
+        while (prefix < length && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+
+        return prefix;
+    }
+
+    /**
+     * @return length of the common suffix, not reaching into the first `prefix` characters
+     */
+    private static int commonSuffix(String a, String b, int prefix) {
+        int length = Math.min(a.length(), b.length()) - prefix;
+        int suffix = 0;
+
+        while (suffix < length && a.charAt(a.length() - 1 - suffix) == b.charAt(b.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        return suffix;
+    }
+
+    /**
+     * Reusable buffers for one thread's distance computations
+     */
+    static final class Scratch {
+        private final int[][] rows = new int[2][16];
+        private int[] matrix = new int[256];
+
+        // DeletionIndex: deleted positions, variant hashes and candidate terms
+        private int[] positions = new int[4];
+        private int[] hashes = new int[64];
+        private int[] candidates = new int[64];
+
+        // Damerau-Levenshtein: last row of a where each char was seen, 0 if not yet; other chars only when needed
+        private final int[] asciiLastRows = new int[128];
+        private HashMap<Character, Integer> otherLastRows;
+
+        int[] row(int index, int length) {
+            if (this.rows[index].length < length) {
+                this.rows[index] = new int[length * 2];
+            }
+
+            return this.rows[index];
+        }
+
+        int[] matrix(int length) {
+            if (this.matrix.length < length) {
+                this.matrix = new int[length * 2];
+            }
+
+            return this.matrix;
+        }
+
+        int[] positions(int length) {
+            if (this.positions.length < length) {
+                this.positions = new int[length];
+            }
+
+            return this.positions;
+        }
+
+        /**
+         * @return the hashes, keeping their contents when they grow
+         */
+        int[] hashes(int length) {
+            if (this.hashes.length < length) {
+                this.hashes = Arrays.copyOf(this.hashes, length * 2);
+            }
+
+            return this.hashes;
+        }
+
+        /**
+         * @return the candidates, keeping their contents when they grow
+         */
+        int[] candidates(int length) {
+            if (this.candidates.length < length) {
+                this.candidates = Arrays.copyOf(this.candidates, length * 2);
+            }
+
+            return this.candidates;
+        }
+
+        int lastRow(char c) {
+            if (c < 128) {
+                return this.asciiLastRows[c];
+            }
+
+            if (this.otherLastRows == null) {
+                return 0;
+            }
+
+            Integer row = this.otherLastRows.get(c);
+            return (row == null) ? 0 : row;
+        }
+
+        void setLastRow(char c, int row) {
+            if (c < 128) {
+                this.asciiLastRows[c] = row;
+            } else if (row == 0) {
+                if (this.otherLastRows != null) {
+                    this.otherLastRows.remove(c);
+                }
+            } else {
+                if (this.otherLastRows == null) {
+                    this.otherLastRows = new HashMap<Character, Integer>();
+                }
+                this.otherLastRows.put(c, row);
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package org.reso.upi.similarity;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds property IDs within a few edits of each other in the same county (country and sub
+ * country code), such as `11022331` and `11023231`, which are usually typos of one parcel.
+ *
+ * <p>
+ * UPIs are grouped by county and each county's distinct property IDs go into a
+ * {@link DeletionIndex}, so a lookup only checks the IDs that share a deletion variant with
+ * it, and the self-join grows with the county's size instead of its square, even where the
+ * IDs are dense runs of parcel numbers. {@link #findAll(Handler)} builds the indexes in
+ * parallel and then runs the self-join in chunks of each county's IDs, so one very large
+ * county still uses every thread. Each pair is reported once.
+ * </p>
+ *
+ * <p>
+ * With transpositions on (the default), swapping two adjacent characters counts as one
+ * edit, by Damerau-Levenshtein distance. The indexes always use it: it is never above the
+ * Levenshtein distance, so with transpositions off the same search finds every candidate
+ * and matches are only filtered by their Levenshtein distance.
+ * </p>
+ *
+ * <pre>
+ * NearDuplicateFinder finder = new NearDuplicateFinder(1);
+ * finder.setThreads(8);
+ * for (Upi upi : upis) {
+ *     finder.add(upi);
+ * }
+ * finder.findAll(match -&gt; System.out.println(match.getUpiText() + " ~ " + match.getOtherUpiText()));
+ * </pre>
+ */
+public final class NearDuplicateFinder {
+    private static final int CHUNK = 4096;
+
+    private final int maxDistance;
+    private int threads = 1;
+    private boolean transpositions = true;
+
+    // Guarded by this while adding
+    private final HashMap<String, County> counties = new HashMap<String, County>();
+
+    /**
+     * @param maxDistance largest number of edits between near duplicates, at least 1
+     */
+    public NearDuplicateFinder(int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("Distance must be at least 1");
+        }
+
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @param threads counties and chunks processed at once, default 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @param transpositions true to count a swap of adjacent characters as one edit, not two
+     */
+    public void setTranspositions(boolean transpositions) {
+        this.transpositions = transpositions;
+    }
+
+    public boolean isTranspositions() {
+        return this.transpositions;
+    }
+
+    /**
+     * Adds a UPI to its county. Property IDs already in the county are only counted once.
+     *
+     * @param upi complete UPI
+     * @throws MalformedUpiTextException if the UPI is missing pieces
+     */
+    public synchronized void add(UpiInterface upi) throws MalformedUpiTextException {
+        String upiText = upi.toUpi();
+        String country = (upi.getCountryCode() == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : upi.getCountryCode().getAlpha2();
+        String key = country + "-" + upi.getSubCountryCode();
+
+        County county = this.counties.get(key);
+        if (county == null) {
+            county = new County(country, upi.getSubCountryCode());
+            this.counties.put(key, county);
+        }
+
+        county.add(upi.getPropertyId(), upiText);
+    }
+
+    /**
+     * @return number of counties
+     */
+    public synchronized int getCountyCount() {
+        return this.counties.size();
+    }
+
+    /**
+     * Near duplicates of one UPI's property ID in its county, after the indexes are built by {@link #findAll(Handler)}
+     * or {@link #build()}
+     *
+     * @param upi UPI to look up
+     * @return matches, not including the property ID itself
+     */
+    public synchronized List<Match> find(UpiInterface upi) {
+        String country = (upi.getCountryCode() == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : upi.getCountryCode().getAlpha2();
+        County county = this.counties.get(country + "-" + upi.getSubCountryCode());
+        ArrayList<Match> matches = new ArrayList<Match>();
+
+        if (county != null && county.built && upi.getPropertyId() != null) {
+            String propertyId = upi.getPropertyId();
+            String upiText = upi.getRawUpiText();
+
+            county.index.search(propertyId, this.maxDistance, (index, term, distance) -> {
+                int edits = this.distance(propertyId, term, distance);
+
+                if (edits > 0 && edits <= this.maxDistance) {
+                    matches.add(new Match(county, upiText, county.upiTexts.get(index), propertyId, term, edits));
+                }
+            });
+        }
+
+        return matches;
+    }
+
+    /**
+     * Builds the county indexes in parallel
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public synchronized void build() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+
+            for (County county : this.counties.values()) {
+                futures.add(executor.submit(() -> county.build(this.maxDistance)));
+            }
+
+            NearDuplicateFinder.awaitAll(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reports every pair of near duplicates in every county
+     *
+     * @param handler receives each pair once; called from several threads
+     * @return number of pairs
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public synchronized long findAll(Handler handler) throws InterruptedException {
+        this.build();
+
+        // Largest counties first, so their chunks do not trail at the end
+        ArrayList<County> counties = new ArrayList<County>(this.counties.values());
+        Collections.sort(counties, (a, b) -> Integer.compare(b.index.size(), a.index.size()));
+
+        AtomicLong pairs = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+
+            for (County county : counties) {
+                for (int start = 0; start < county.index.size(); start += CHUNK) {
+                    final int from = start;
+                    final int to = Math.min(county.index.size(), start + CHUNK);
+
+                    futures.add(executor.submit(() -> pairs.addAndGet(this.selfJoin(county, from, to, handler))));
+                }
+            }
+
+            NearDuplicateFinder.awaitAll(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return pairs.get();
+    }
+
+    /**
+     * Looks up the county's property IDs from..to, reporting each pair from its lower index
+     */
+    private long selfJoin(County county, int from, int to, Handler handler) {
+        long[] count = new long[1];
+
+        for (int i = from; i < to; i++) {
+            final int index = i;
+            final String propertyId = county.index.get(i);
+
+            county.index.searchAfter(index, this.maxDistance, (other, term, distance) -> {
+                int edits = this.distance(propertyId, term, distance);
+
+                if (edits > 0 && edits <= this.maxDistance) {
+                    count[0]++;
+                    handler.nearDuplicate(new Match(county, county.upiTexts.get(index), county.upiTexts.get(other), propertyId, term, edits));
+                }
+            });
+        }
+
+        return count[0];
+    }
+
+    private int distance(String a, String b, int damerauLevenshtein) {
+        return this.transpositions ? damerauLevenshtein : EditDistance.levenshtein(a, b, this.maxDistance, EditDistance.scratch());
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Receives near-duplicate pairs
+     */
+    public interface Handler {
+        void nearDuplicate(Match match);
+    }
+
+    /**
+     * Two property IDs of one county within the distance, each with the first UPI seen for it
+     */
+    public static final class Match {
+        private final String countryCode;
+        private final String subCountryCode;
+        private final String upiText;
+        private final String otherUpiText;
+        private final String propertyId;
+        private final String otherPropertyId;
+        private final int distance;
+
+        Match(County county, String upiText, String otherUpiText, String propertyId, String otherPropertyId, int distance) {
+            this.countryCode = county.countryCode;
+            this.subCountryCode = county.subCountryCode;
+            this.upiText = upiText;
+            this.otherUpiText = otherUpiText;
+            this.propertyId = propertyId;
+            this.otherPropertyId = otherPropertyId;
+            this.distance = distance;
+        }
+
+        public String getCountryCode() {
+            return this.countryCode;
+        }
+
+        public String getSubCountryCode() {
+            return this.subCountryCode;
+        }
+
+        public String getUpiText() {
+            return this.upiText;
+        }
+
+        public String getOtherUpiText() {
+            return this.otherUpiText;
+        }
+
+        public String getPropertyId() {
+            return this.propertyId;
+        }
+
+        public String getOtherPropertyId() {
+            return this.otherPropertyId;
+        }
+
+        /**
+         * @return number of edits between the property IDs
+         */
+        public int getDistance() {
+            return this.distance;
+        }
+
+        public String toString() {
+            return this.upiText + " ~ " + this.otherUpiText + " (" + this.distance + ")";
+        }
+    }
+
+    /**
+     * The property IDs of one county, and their index once built
+     */
+    static final class County {
+        final String countryCode;
+        final String subCountryCode;
+        final ArrayList<String> propertyIds = new ArrayList<String>();
+        final ArrayList<String> pendingUpiTexts = new ArrayList<String>();
+
+        // By index position, the first UPI with that property ID
+        final ArrayList<String> upiTexts = new ArrayList<String>();
+        DeletionIndex index;
+        boolean built;
+
+        County(String countryCode, String subCountryCode) {
+            this.countryCode = countryCode;
+            this.subCountryCode = subCountryCode;
+        }
+
+        void add(String propertyId, String upiText) {
+            this.propertyIds.add(propertyId);
+            this.pendingUpiTexts.add(upiText);
+            this.built = false;
+        }
+
+        void build(int maxDistance) {
+            if (this.built) {
+                return;
+            }
+
+            DeletionIndex index = new DeletionIndex(maxDistance);
+            this.upiTexts.clear();
+
+            for (int i = 0; i < this.propertyIds.size(); i++) {
+                if (index.add(this.propertyIds.get(i)) == this.upiTexts.size()) {
+                    this.upiTexts.add(this.pendingUpiTexts.get(i));
+                }
+            }
+
+            index.build();
+            this.index = index;
+            this.built = true;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.reso.upi.sort;
+
+import java.io.IOException;
+
+/**
+ * Tournament tree of losers for a k-way merge of sorted runs.
+ *
+ * <p>
+ * Each inner node keeps the run that lost the match played there, and the overall winner
+ * sits on top. After the winner's run moves on, only the matches on the path from its
+ * leaf to the root are replayed, about log2(k) key comparisons against losers already in
+ * place, where a binary heap needs up to twice that to sift down.
+ * </p>
+ */
+final class LoserTree {
+    private final RunReader[] runs;
+    private final int[] tree;
+
+    /**
+     * @param runs runs already moved to their first record
+     */
+    LoserTree(RunReader[] runs) {
+        this.runs = runs;
+        this.tree = new int[Math.max(1, runs.length)];
+
+        if (runs.length > 1) {
+            this.tree[0] = this.build(1);
+        }
+    }
+
+    /**
+     * @return run holding the smallest record, or null once every run is exhausted
+     */
+    RunReader peek() {
+        if (this.runs.length == 0) {
+            return null;
+        }
+
+        RunReader winner = this.runs[this.tree[0]];
+
+        return winner.exhausted ? null : winner;
+    }
+
+    /**
+     * Moves the winning run to its next record and replays its path to the root
+     */
+    void advance() throws IOException {
+        int winner = this.tree[0];
+        this.runs[winner].next();
+
+        int k = this.runs.length;
+
+        // Leaves are nodes k .. 2k - 1, node n's parent is n / 2
+        for (int node = (winner + k) >>> 1; node >= 1; node >>>= 1) {
+            if (this.less(this.tree[node], winner)) {
+                int loser = winner;
+                winner = this.tree[node];
+                this.tree[node] = loser;
+            }
+        }
+
+        this.tree[0] = winner;
+    }
+
+    /**
+     * Plays the matches below a node
+     *
+     * @return winner of the subtree
+     */
+    private int build(int node) {
+        int k = this.runs.length;
+
+        if (node >= k) {
+            return node - k;
+        }
+
+        int left = this.build(2 * node);
+        int right = this.build(2 * node + 1);
+
+        if (this.less(right, left)) {
+            this.tree[node] = left;
+            return right;
+        }
+
+        this.tree[node] = right;
+        return left;
+    }
+
+    /**
+     * Exhausted runs lose to everything; equal keys go to the earlier run, so the merge is stable
+     */
+    private boolean less(int a, int b) {
+        RunReader x = this.runs[a];
+        RunReader y = this.runs[b];
+
+        if (x.exhausted || y.exhausted) {
+            return !x.exhausted;
+        }
+
+        int difference = UpiSortKey.compare(x.key, y.key);
+
+        return (difference != 0) ? difference < 0 : x.index < y.index;
+    }
+}
@@ -0,0 +1,60 @@
+package org.reso.upi.sort;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads a sorted run of `int key length, key, int line length, UTF-8 line` records
+ */
+final class RunReader implements AutoCloseable {
+    final int index;
+    private final DataInputStream in;
+    byte[] key;
+    String line;
+    boolean exhausted;
+
+    /**
+     * @param run        run file
+     * @param index      position of the run in input order, breaks ties between equal keys
+     * @param bufferSize read buffer size
+     */
+    RunReader(Path run, int index, int bufferSize) throws IOException {
+        this.index = index;
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), bufferSize));
+    }
+
+    /**
+     * @return false, and exhausted, at the end of the run
+     */
+    boolean next() throws IOException {
+        int keyLength;
+
+        try {
+            keyLength = this.in.readInt();
+        } catch (EOFException e) {
+            this.exhausted = true;
+            this.key = null;
+            this.line = null;
+
+            return false;
+        }
+
+        this.key = new byte[keyLength];
+        this.in.readFully(this.key);
+
+        byte[] line = new byte[this.in.readInt()];
+        this.in.readFully(line);
+        this.line = new String(line, StandardCharsets.UTF_8);
+
+        return true;
+    }
+
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
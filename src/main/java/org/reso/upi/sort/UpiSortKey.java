@@ -0,0 +1,274 @@
+package org.reso.upi.sort;
+
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+
+import java.util.Arrays;
+
+/**
+ * Binary sort keys for UPIs, whose unsigned byte order is the canonical segment order:
+ * country, sub country code, sub county code, property ID, property type, sub property.
+ *
+ * <p>
+ * Comparing UPI text sorts `US-4-...` after `US-36061-...` and `1234` after `10000`, because
+ * it compares characters across segment boundaries. Each segment is encoded on its own and
+ * ended by a 0 byte, so a shorter segment sorts first, and each run of digits is encoded as
+ * its number of significant digits and the digits, so digit runs compare by value. The
+ * leading zeros of each run follow the segment, to tell `10` from `010`. The key of a few
+ * leading segments is a prefix of the keys of all UPIs in them, which is what
+ * {@link #prefix(String...)} builds for range scans.
+ * </p>
+ *
+ * <p>
+ * An instance encodes into a reusable buffer; it is not thread-safe.
+ * </p>
+ */
+public final class UpiSortKey {
+    private static final int DIGIT_RUN = '0';
+
+    private byte[] bytes = new byte[64];
+    private int length;
+    private int[] leadingZeros = new int[8];
+    private int runs;
+
+    /**
+     * Encodes the UPI's segments into the buffer
+     *
+     * @param upi UPI, missing segments sort first
+     * @return key length, see {@link #getBytes()}
+     */
+    public int encode(UpiInterface upi) {
+        return this.encode(upi, 6);
+    }
+
+    /**
+     * Encodes the UPI's leading segments into the buffer, eg 5 for the parcel without its sub property
+     *
+     * @param upi      UPI, missing segments sort first
+     * @param segments number of leading segments, 1 to 6
+     * @return key length, see {@link #getBytes()}
+     */
+    public int encode(UpiInterface upi, int segments) {
+        if (segments < 1 || segments > 6) {
+            throw new IllegalArgumentException("A UPI has six segments");
+        }
+
+        this.length = 0;
+
+        CountryCode country = upi.getCountryCode();
+        this.appendSegment((country == null || country == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : country.getAlpha2());
+        if (segments > 1) {
+            this.appendSegment(upi.getSubCountryCode());
+        }
+        if (segments > 2) {
+            this.appendSegment(upi.getSubCountyCode());
+        }
+        if (segments > 3) {
+            this.appendSegment(upi.getPropertyId());
+        }
+        if (segments > 4) {
+            // The UPI's own text, NON_STANDARD's code is shared by every thread
+            this.appendSegment(upi.getPropertyTypeCodeText());
+        }
+        if (segments > 5) {
+            this.appendSegment(upi.getSubProperty());
+        }
+
+        return this.length;
+    }
+
+    /**
+     * @return the buffer, holding the last key in its first {@link #getLength()} bytes
+     */
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return length of the last key
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return copy of the last key
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    /**
+     * @param upi UPI
+     * @return its key
+     */
+    public static byte[] of(UpiInterface upi) {
+        UpiSortKey key = new UpiSortKey();
+        key.encode(upi);
+
+        return key.toByteArray();
+    }
+
+    /**
+     * Key prefix shared by every UPI whose leading segments are these, eg
+     * `prefix("US", "36061")` for a county
+     *
+     * @param segments leading segments in canonical order, at most six
+     * @return prefix
+     */
+    public static byte[] prefix(String... segments) {
+        if (segments.length > 6) {
+            throw new IllegalArgumentException("A UPI has six segments");
+        }
+
+        UpiSortKey key = new UpiSortKey();
+        for (String segment : segments) {
+            key.appendSegment(segment);
+        }
+
+        return key.toByteArray();
+    }
+
+    /**
+     * @param prefix key prefix
+     * @return smallest key above every key starting with the prefix, or null if there is none
+     */
+    public static byte[] successor(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xFF) {
+                byte[] successor = Arrays.copyOf(prefix, i + 1);
+                successor[i]++;
+
+                return successor;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Unsigned lexicographic comparison
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return UpiSortKey.compare(a, 0, a.length, b, 0, b.length);
+    }
+
+    /**
+     * Unsigned lexicographic comparison of two ranges
+     */
+    public static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        int length = Math.min(aLength, bLength);
+
+        for (int i = 0; i < length; i++) {
+            int difference = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return aLength - bLength;
+    }
+
+    private void appendSegment(String segment) {
+        this.runs = 0;
+
+        if (segment != null) {
+            int i = 0;
+            int length = segment.length();
+
+            while (i < length) {
+                char c = segment.charAt(i);
+
+                if (c >= '0' && c <= '9') {
+                    i = this.appendDigits(segment, i);
+                } else if (c < 0x80) {
+                    // 0 ends a segment and '0'..'9' only start digit runs, neither can be a plain char
+                    this.append((c == 0) ? 1 : c);
+                    i++;
+                } else {
+                    // UTF-8 keeps code point order, and its bytes are all above ASCII
+                    int codePoint = segment.codePointAt(i);
+                    this.appendUtf8(codePoint);
+                    i += Character.charCount(codePoint);
+                }
+            }
+        }
+
+        this.append(0);
+
+        // Leading zeros only break ties: `7` < `07` < `007`, and `010` < `10A`
+        for (int i = 0; i < this.runs; i++) {
+            this.appendCount(this.leadingZeros[i] + 1);
+        }
+
+        this.append(0);
+    }
+
+    /**
+     * @return index after the run
+     */
+    private int appendDigits(String segment, int start) {
+        int end = start;
+        while (end < segment.length() && segment.charAt(end) >= '0' && segment.charAt(end) <= '9') {
+            end++;
+        }
+
+        int significant = start;
+        while (significant < end && segment.charAt(significant) == '0') {
+            significant++;
+        }
+
+        this.append(DIGIT_RUN);
+        this.appendCount(end - significant);
+        for (int i = significant; i < end; i++) {
+            this.append(segment.charAt(i));
+        }
+
+        if (this.runs == this.leadingZeros.length) {
+            this.leadingZeros = Arrays.copyOf(this.leadingZeros, this.runs * 2);
+        }
+        this.leadingZeros[this.runs++] = significant - start;
+
+        return end;
+    }
+
+    /**
+     * One byte up to 254, else 255 and four bytes, order preserving
+     */
+    private void appendCount(int count) {
+        if (count < 0xFF) {
+            this.append(count);
+        } else {
+            this.append(0xFF);
+            this.append(count >>> 24);
+            this.append(count >>> 16);
+            this.append(count >>> 8);
+            this.append(count);
+        }
+    }
+
+    private void appendUtf8(int codePoint) {
+        if (codePoint < 0x800) {
+            this.append(0xC0 | (codePoint >>> 6));
+            this.append(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            this.append(0xE0 | (codePoint >>> 12));
+            this.append(0x80 | ((codePoint >>> 6) & 0x3F));
+            this.append(0x80 | (codePoint & 0x3F));
+        } else {
+            this.append(0xF0 | (codePoint >>> 18));
+            this.append(0x80 | ((codePoint >>> 12) & 0x3F));
+            this.append(0x80 | ((codePoint >>> 6) & 0x3F));
+            this.append(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void append(int b) {
+        if (this.length == this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, this.length * 2);
+        }
+
+        this.bytes[this.length++] = (byte) b;
+    }
+}
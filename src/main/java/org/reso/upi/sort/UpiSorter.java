@@ -0,0 +1,449 @@
+package org.reso.upi.sort;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.store.UpiSegmentWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sorts a UPI text file in canonical segment order ({@link UpiSortKey}), using a bounded
+ * amount of memory.
+ *
+ * <p>
+ * Each line holds a UPI, optionally followed by a tab and a description. The input is read
+ * in chunks of the memory budget split between the threads; each chunk is keyed, sorted
+ * and spilled to a run file on a worker thread while the next chunk is read. The runs are
+ * then merged through a {@link LoserTree}, at most {@value #MAX_FAN_IN} at a time. Keys are
+ * computed once per line and stored in the runs, so merging never parses a UPI.
+ * </p>
+ *
+ * <p>
+ * Lines whose UPI does not parse are kept and sort last, by text. Equal keys keep their
+ * input order, and with {@link #setCollapseDuplicates(boolean)} only the first line of each
+ * UPI is written.
+ * </p>
+ *
+ * <pre>
+ * UpiSorter sorter = new UpiSorter(temporaryDirectory, 1024L * 1024 * 1024);
+ * sorter.setThreads(8);
+ * sorter.setCollapseDuplicates(true);
+ * sorter.sort(input, output);
+ * </pre>
+ */
+public final class UpiSorter {
+    static final int MAX_FAN_IN = 256;
+
+    // Rough heap cost of a buffered line beyond its chars and key
+    private static final int RECORD_OVERHEAD = 96;
+    private static final int MAX_BUFFER = 64 * 1024;
+
+    private final Path temporaryDirectory;
+    private final long memoryBudget;
+    private int threads = 1;
+    private boolean collapseDuplicates;
+
+    /**
+     * @param temporaryDirectory where run files are written, and deleted once merged
+     * @param memoryBudget       bytes of heap for buffered lines, shared by the threads
+     */
+    public UpiSorter(Path temporaryDirectory, long memoryBudget) {
+        if (memoryBudget < 1024 * 1024) {
+            throw new IllegalArgumentException("Memory budget must be at least 1 MB");
+        }
+
+        this.temporaryDirectory = temporaryDirectory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param threads number of chunks keyed and sorted at once, default 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @param collapseDuplicates true to write only the first line of each UPI
+     */
+    public void setCollapseDuplicates(boolean collapseDuplicates) {
+        this.collapseDuplicates = collapseDuplicates;
+    }
+
+    public boolean isCollapseDuplicates() {
+        return this.collapseDuplicates;
+    }
+
+    /**
+     * @param input  UPI text file (UTF-8)
+     * @param output sorted text file to write
+     * @return number of lines written, blank lines are dropped
+     * @throws IOException if reading or writing fails
+     */
+    public long sort(Path input, Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return this.sort(input, (key, line) -> {
+                writer.write(line);
+                writer.write('\n');
+
+                return true;
+            }, this.collapseDuplicates);
+        }
+    }
+
+    /**
+     * Sorts into a binary {@link UpiSegmentWriter segment file}. Segments hold each UPI once,
+     * so duplicates are always collapsed, and lines whose UPI does not parse are left out.
+     *
+     * @param input   UPI text file (UTF-8)
+     * @param segment segment file to write
+     * @return number of UPIs written
+     * @throws IOException if reading or writing fails
+     */
+    public long sortToSegment(Path input, Path segment) throws IOException {
+        try (UpiSegmentWriter writer = new UpiSegmentWriter(segment)) {
+            return this.sort(input, (key, line) -> {
+                // No UPI key starts with 0xFF, only unparsable lines
+                if (key.length > 0 && key[0] == (byte) 0xFF) {
+                    return false;
+                }
+
+                int tab = line.indexOf('\t');
+                writer.add(key, key.length, (tab < 0) ? line : line.substring(0, tab), (tab < 0) ? null : line.substring(tab + 1));
+
+                return true;
+            }, true);
+        }
+    }
+
+    /**
+     * @param line UPI text line
+     * @param upi  reusable UPI
+     * @param key  reusable key encoder
+     * @return the line's sort key; unparsable lines get 0xFF and their text, after every UPI
+     */
+    static byte[] key(String line, Upi upi, UpiSortKey key) {
+        int tab = line.indexOf('\t');
+        String upiText = (tab < 0) ? line : line.substring(0, tab);
+
+        try {
+            upi.reset();
+            upi.parseUpi(upiText);
+            // Keyed by this parse's own property type text, chunks are keyed on several threads
+            key.encode(upi);
+
+            return key.toByteArray();
+        } catch (MalformedUpiTextException e) {
+            byte[] text = line.getBytes(StandardCharsets.UTF_8);
+            byte[] malformed = new byte[text.length + 1];
+            malformed[0] = (byte) 0xFF;
+            System.arraycopy(text, 0, malformed, 1, text.length);
+
+            return malformed;
+        }
+    }
+
+    private long sort(Path input, Sink sink, boolean collapse) throws IOException {
+        long chunkBudget = Math.max(64 * 1024, this.memoryBudget / (this.threads + 1));
+        ArrayList<Path> runs = new ArrayList<Path>();
+        ArrayList<Future<Path>> spills = new ArrayList<Future<Path>>();
+        ExecutorService executor = null;
+
+        // Bounds the chunks held by workers, so reading waits instead of overrunning the budget
+        final Semaphore inFlight = new Semaphore(this.threads);
+
+        try {
+            ArrayList<String> chunk = new ArrayList<String>();
+            long used = 0;
+
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+
+                    chunk.add(line);
+                    // The chars, and a key of about the same length
+                    used += RECORD_OVERHEAD + 3L * line.length();
+
+                    if (used >= chunkBudget) {
+                        if (executor == null) {
+                            executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+                                Thread thread = new Thread(runnable, "upi-sorter");
+                                thread.setDaemon(true);
+
+                                return thread;
+                            });
+                        }
+
+                        UpiSorter.acquire(inFlight);
+                        final ArrayList<String> full = chunk;
+                        spills.add(executor.submit(() -> {
+                            try {
+                                return this.spill(UpiSorter.sortChunk(full), collapse);
+                            } finally {
+                                inFlight.release();
+                            }
+                        }));
+
+                        chunk = new ArrayList<String>();
+                        used = 0;
+                    }
+                }
+            }
+
+            if (spills.isEmpty()) {
+                // Everything fit in one chunk, no runs needed
+                return UpiSorter.write(UpiSorter.sortChunk(chunk), sink, collapse);
+            }
+
+            if (!chunk.isEmpty()) {
+                final ArrayList<String> last = chunk;
+                spills.add(executor.submit(() -> this.spill(UpiSorter.sortChunk(last), collapse)));
+            }
+
+            // Runs in submission order, so earlier runs hold earlier lines
+            for (Future<Path> spill : spills) {
+                runs.add(UpiSorter.await(spill));
+            }
+
+            while (runs.size() > MAX_FAN_IN) {
+                runs = this.mergePass(runs, collapse);
+            }
+
+            return this.merge(runs, sink, collapse);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+
+            for (Future<Path> spill : spills) {
+                // Runs of a failed sort that were not collected yet
+                if (spill.isDone() && !spill.isCancelled()) {
+                    try {
+                        Files.deleteIfExists(spill.get());
+                    } catch (ExecutionException | InterruptedException e) {
+                        // Nothing was written
+                    }
+                }
+            }
+
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    /**
+     * Merges consecutive groups of runs into fewer, longer runs, keeping their order
+     */
+    private ArrayList<Path> mergePass(ArrayList<Path> runs, boolean collapse) throws IOException {
+        ArrayList<Path> merged = new ArrayList<Path>();
+
+        try {
+            for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+                List<Path> group = runs.subList(start, Math.min(runs.size(), start + MAX_FAN_IN));
+                Path run = Files.createTempFile(this.temporaryDirectory, "upi-run-", ".bin");
+                merged.add(run);
+
+                try (DataOutputStream out = UpiSorter.openRun(run)) {
+                    this.merge(group, (key, line) -> {
+                        UpiSorter.writeRecord(out, key, line);
+                        return true;
+                    }, collapse);
+                }
+
+                for (Path done : group) {
+                    Files.deleteIfExists(done);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Path run : merged) {
+                Files.deleteIfExists(run);
+            }
+            throw e;
+        }
+
+        return merged;
+    }
+
+    private long merge(List<Path> runs, Sink sink, boolean collapse) throws IOException {
+        int bufferSize = (int) Math.max(4096, Math.min(MAX_BUFFER, this.memoryBudget / 2 / Math.max(1, runs.size())));
+        RunReader[] readers = new RunReader[runs.size()];
+        long count = 0;
+
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new RunReader(runs.get(i), i, bufferSize);
+                readers[i].next();
+            }
+
+            LoserTree tree = new LoserTree(readers);
+            byte[] previous = null;
+            RunReader winner;
+
+            while ((winner = tree.peek()) != null) {
+                if (!collapse || previous == null || !Arrays.equals(previous, winner.key)) {
+                    if (sink.write(winner.key, winner.line)) {
+                        count++;
+                    }
+                    previous = winner.key;
+                }
+
+                tree.advance();
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private Path spill(Record[] records, boolean collapse) throws IOException {
+        Path run = Files.createTempFile(this.temporaryDirectory, "upi-run-", ".bin");
+
+        try (DataOutputStream out = UpiSorter.openRun(run)) {
+            UpiSorter.write(records, (key, line) -> {
+                UpiSorter.writeRecord(out, key, line);
+                return true;
+            }, collapse);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+
+        return run;
+    }
+
+    /**
+     * Keys a chunk of lines and sorts it, stably, so equal keys keep their input order
+     */
+    private static Record[] sortChunk(ArrayList<String> lines) {
+        Upi upi = new Upi();
+        upi.setReuseBuffers(true);
+        UpiSortKey key = new UpiSortKey();
+
+        Record[] records = new Record[lines.size()];
+        for (int i = 0; i < records.length; i++) {
+            String line = lines.get(i);
+            records[i] = new Record(UpiSorter.key(line, upi, key), line);
+        }
+
+        Arrays.sort(records, (a, b) -> UpiSortKey.compare(a.key, b.key));
+
+        return records;
+    }
+
+    private static long write(Record[] records, Sink sink, boolean collapse) throws IOException {
+        long count = 0;
+
+        for (int i = 0; i < records.length; i++) {
+            if (collapse && i > 0 && Arrays.equals(records[i - 1].key, records[i].key)) {
+                continue;
+            }
+
+            if (sink.write(records[i].key, records[i].line)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), MAX_BUFFER));
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] key, String line) throws IOException {
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(key.length);
+        out.write(key);
+        out.writeInt(text.length);
+        out.write(text);
+    }
+
+    private static void acquire(Semaphore semaphore) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private static Path await(Future<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Receives merged records in order
+     */
+    private interface Sink {
+        /**
+         * @return true if the record was written
+         */
+        boolean write(byte[] key, String line) throws IOException;
+    }
+
+    private static final class Record {
+        final byte[] key;
+        final String line;
+
+        Record(byte[] key, String line) {
+            this.key = key;
+            this.line = line;
+        }
+    }
+}
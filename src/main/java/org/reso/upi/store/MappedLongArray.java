@@ -0,0 +1,146 @@
+package org.reso.upi.store;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of longs, memory-mapped in chunks of 1 GB since one mapping cannot exceed 2 GB.
+ * {@link #close()} unmaps the chunks right away where the JVM allows it, so the file can be
+ * replaced or deleted; the array must not be used after that.
+ */
+final class MappedLongArray implements AutoCloseable {
+    private static final int CHUNK_SHIFT = 27; // 2^27 longs = 1 GB
+    private static final long CHUNK_LONGS = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_LONGS - 1;
+
+    private final FileChannel channel;
+    private static final Unmapper UNMAPPER = MappedLongArray.unmapper();
+
+    private final MappedByteBuffer[] chunks;
+    private final long length;
+
+    /**
+     * @param path   file to map, created or grown to the length
+     * @param length number of longs
+     */
+    MappedLongArray(Path path, long length) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.length = length;
+
+        long bytes = length * 8;
+        if (this.channel.size() < bytes) {
+            // Sparse on most file systems, so a big empty index costs no disk until used
+            this.channel.write(ByteBuffer.wrap(new byte[1]), bytes - 1);
+        }
+
+        int count = (int) ((length + CHUNK_LONGS - 1) >>> CHUNK_SHIFT);
+        this.chunks = new MappedByteBuffer[count];
+
+        for (int i = 0; i < count; i++) {
+            long start = (long) i << CHUNK_SHIFT;
+            long size = Math.min(CHUNK_LONGS, length - start) * 8;
+
+            this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, start * 8, size);
+        }
+    }
+
+    /**
+     * @param path existing file to map
+     * @return mapping of the whole file
+     */
+    static MappedLongArray open(Path path) throws IOException {
+        long bytes = Files.size(path);
+
+        return new MappedLongArray(path, bytes / 8);
+    }
+
+    long get(long index) {
+        return this.chunks[(int) (index >>> CHUNK_SHIFT)].getLong((int) (index & CHUNK_MASK) << 3);
+    }
+
+    void set(long index, long value) {
+        this.chunks[(int) (index >>> CHUNK_SHIFT)].putLong((int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    long length() {
+        return this.length;
+    }
+
+    /**
+     * Writes changed pages to disk
+     */
+    void force() {
+        for (MappedByteBuffer chunk : this.chunks) {
+            chunk.force();
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            this.channel.close();
+        } finally {
+            for (int i = 0; i < this.chunks.length; i++) {
+                MappedByteBuffer chunk = this.chunks[i];
+                // Dropped first, so a use after close fails on a null rather than unmapped memory
+                this.chunks[i] = null;
+
+                if (chunk != null && UNMAPPER != null) {
+                    UNMAPPER.unmap(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a mapping without waiting for the garbage collector
+     */
+    private interface Unmapper {
+        void unmap(MappedByteBuffer buffer);
+    }
+
+    /**
+     * @return the unmapper for this JVM, or null if there is none and mappings are left to the collector
+     */
+    private static Unmapper unmapper() {
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            final Object unsafe = field.get(null);
+
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (ReflectiveOperationException e) {
+                    // Left to the collector
+                }
+            };
+        } catch (NoSuchMethodException java8) {
+            // Java 8: DirectByteBuffer.cleaner().clean()
+            return buffer -> {
+                try {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    }
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // Left to the collector
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
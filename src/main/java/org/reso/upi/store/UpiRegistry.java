@@ -0,0 +1,766 @@
+package org.reso.upi.store;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.UpiInterface;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent map of UPI text to description, for registries of tens of millions of UPIs.
+ *
+ * <p>
+ * A registry is a directory holding two files. `upi.log` is an append-only log of
+ * checksummed put and remove records; it is the only source of truth. `upi.idx` is an
+ * open addressing hash table (linear probing) of 64-bit key hashes and log offsets,
+ * memory-mapped, so a lookup is one probe sequence in mapped memory plus one read of the
+ * matching log record, and reopening a large registry maps the table instead of
+ * rebuilding it.
+ * </p>
+ *
+ * <p>
+ * The index is marked dirty while the registry is open and clean once {@link #close()}
+ * has written it out. After a crash it is still dirty, and is rebuilt by replaying the
+ * log; a torn record at the end of the log is cut off, while a corrupt record with more
+ * data after it fails the open rather than losing the records behind it. Writes are not synced one by one,
+ * call {@link #flush()} to make them durable. Removed and overwritten records stay in
+ * the log until {@link #compact()}.
+ * </p>
+ *
+ * <pre>
+ * try (UpiRegistry registry = UpiRegistry.open(Paths.get("registry"))) {
+ *     registry.put(upi);
+ *     String description = registry.get("US-04013-N-1234567-R-N");
+ * }
+ * </pre>
+ *
+ * <p>
+ * Keys are compared as given, store canonical UPI text. Instances are thread-safe,
+ * operations are serialised.
+ * </p>
+ */
+public final class UpiRegistry implements Closeable {
+    static final String LOG_FILE = "upi.log";
+    static final String INDEX_FILE = "upi.idx";
+
+    private static final long LOG_MAGIC = 0x5550494C4F473031L; // "UPILOG01"
+    private static final long INDEX_MAGIC = 0x5550494944583031L; // "UPIIDX01"
+    private static final int LOG_HEADER = 8;
+    private static final int RECORD_HEADER = 8; // payload length, CRC32 of the payload
+    private static final int MAX_KEY_LENGTH = 64 * 1024;
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    // Index layout in longs: header, then two longs (hash, log offset) per slot
+    private static final int H_MAGIC = 0;
+    private static final int H_CLEAN = 1;
+    private static final int H_CAPACITY = 2;
+    private static final int H_SIZE = 3;
+    private static final int H_TOMBSTONES = 4;
+    private static final int H_LOG_LENGTH = 5;
+    private static final int HEADER_LONGS = 8;
+    private static final long TOMBSTONE = -1;
+    private static final long MIN_CAPACITY = 1024;
+
+    private final Path directory;
+    private FileChannel log;
+    private long logLength;
+    private MappedLongArray index;
+    private long capacity;
+    private long size;
+    private long tombstones;
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private final CRC32 crc = new CRC32();
+    private boolean closed;
+
+    private UpiRegistry(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the registry in a directory, creating it if needed. A dirty or missing index
+     * is rebuilt from the log.
+     *
+     * @param directory registry directory
+     * @return open registry
+     * @throws IOException if the files cannot be read, are not registry files, or a log
+     *                     record before the end of the log is corrupt
+     */
+    public static UpiRegistry open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        UpiRegistry registry = new UpiRegistry(directory);
+        try {
+            registry.openFiles();
+        } catch (IOException | RuntimeException e) {
+            registry.closeFiles();
+            throw e;
+        }
+
+        return registry;
+    }
+
+    /**
+     * @param upi UPI text
+     * @return description, or null if the UPI is not registered or has no description
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized String get(String upi) throws IOException {
+        this.ensureOpen();
+
+        long slot = this.find(upi.getBytes(StandardCharsets.UTF_8), UpiRegistry.hash(upi));
+
+        return (slot < 0) ? null : this.readRecord(this.index.get(UpiRegistry.offsetLong(slot))).value;
+    }
+
+    /**
+     * @param upi UPI text
+     * @return true if the UPI is registered
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized boolean contains(String upi) throws IOException {
+        this.ensureOpen();
+
+        return this.find(upi.getBytes(StandardCharsets.UTF_8), UpiRegistry.hash(upi)) >= 0;
+    }
+
+    /**
+     * Registers the UPI text of a UPI with its description
+     *
+     * @param upi UPI
+     * @throws IOException               if the log cannot be written
+     * @throws MalformedUpiTextException if the UPI is missing pieces
+     */
+    public void put(UpiInterface upi) throws IOException, MalformedUpiTextException {
+        this.put(upi.toUpi(), upi.getDescription());
+    }
+
+    /**
+     * Registers a UPI, replacing its description if it is already registered
+     *
+     * @param upi         UPI text
+     * @param description description, may be null
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void put(String upi, String description) throws IOException {
+        this.ensureOpen();
+
+        byte[] key = upi.getBytes(StandardCharsets.UTF_8);
+        byte[] value = (description == null) ? null : description.getBytes(StandardCharsets.UTF_8);
+
+        if (key.length > MAX_KEY_LENGTH || key.length + ((value == null) ? 0 : value.length) + 9 > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("UPI or description is too long");
+        }
+
+        long offset = this.append(PUT, key, value);
+        this.indexPut(key, UpiRegistry.hash(upi), offset);
+    }
+
+    /**
+     * @param upi UPI text
+     * @return true if the UPI was registered
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized boolean remove(String upi) throws IOException {
+        this.ensureOpen();
+
+        byte[] key = upi.getBytes(StandardCharsets.UTF_8);
+        long slot = this.find(key, UpiRegistry.hash(upi));
+
+        if (slot < 0) {
+            return false;
+        }
+
+        this.append(REMOVE, key, null);
+        this.index.set(UpiRegistry.offsetLong(slot), TOMBSTONE);
+        this.size--;
+        this.tombstones++;
+
+        return true;
+    }
+
+    /**
+     * @return number of registered UPIs
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * @return length of the log in bytes, including dead records
+     */
+    public synchronized long getLogLength() {
+        return this.logLength;
+    }
+
+    /**
+     * Writes the log and the index to disk
+     *
+     * @throws IOException if syncing fails
+     */
+    public synchronized void flush() throws IOException {
+        this.ensureOpen();
+
+        this.log.force(false);
+        this.writeHeader(false);
+        this.index.force();
+    }
+
+    /**
+     * Rewrites the log with only the live records, and a fresh index for it. The new files
+     * replace the old ones by rename, so a crash part way leaves a registry that opens.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        this.ensureOpen();
+
+        Path logPath = this.directory.resolve(LOG_FILE);
+        Path indexPath = this.directory.resolve(INDEX_FILE);
+        Path newLogPath = this.directory.resolve(LOG_FILE + ".compact");
+        Path newIndexPath = this.directory.resolve(INDEX_FILE + ".compact");
+        Files.deleteIfExists(newLogPath);
+        Files.deleteIfExists(newIndexPath);
+
+        // The old index is dirty on disk while open, so a crash between the renames rebuilds from the log
+        this.index.force();
+
+        long capacity = UpiRegistry.capacityFor(this.size);
+        FileChannel newLog = FileChannel.open(newLogPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedLongArray newIndex = null;
+
+        try {
+            newIndex = new MappedLongArray(newIndexPath, HEADER_LONGS + capacity * 2);
+            UpiRegistry.writeLogHeader(newLog);
+            long newLength = LOG_HEADER;
+
+            for (long slot = 0; slot < this.capacity; slot++) {
+                long hash = this.index.get(UpiRegistry.hashLong(slot));
+                long offset = this.index.get(UpiRegistry.offsetLong(slot));
+
+                if (hash == 0 || offset == TOMBSTONE) {
+                    continue;
+                }
+
+                int length = this.readRaw(offset);
+                ((Buffer) this.scratch).limit(length);
+                ((Buffer) this.scratch).position(0);
+                while (this.scratch.hasRemaining()) {
+                    newLog.write(this.scratch, newLength + this.scratch.position());
+                }
+
+                // Same hash, so the record lands in the slot it would get from a put
+                long target = hash & (capacity - 1);
+                while (newIndex.get(UpiRegistry.hashLong(target)) != 0) {
+                    target = (target + 1) & (capacity - 1);
+                }
+                newIndex.set(UpiRegistry.hashLong(target), hash);
+                newIndex.set(UpiRegistry.offsetLong(target), newLength);
+
+                newLength += length;
+            }
+
+            newLog.force(false);
+            newIndex.set(H_MAGIC, INDEX_MAGIC);
+            newIndex.set(H_CAPACITY, capacity);
+            newIndex.set(H_SIZE, this.size);
+            newIndex.set(H_TOMBSTONES, 0);
+            newIndex.set(H_LOG_LENGTH, newLength);
+            newIndex.set(H_CLEAN, 1);
+            newIndex.force();
+        } finally {
+            newLog.close();
+            if (newIndex != null) {
+                newIndex.close();
+            }
+        }
+
+        this.closeFiles();
+        Files.move(newLogPath, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(newIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.openFiles();
+    }
+
+    /**
+     * Writes everything out and marks the index clean, so the next open maps it as is
+     */
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        try {
+            this.log.force(false);
+            this.writeHeader(true);
+            this.index.force();
+        } finally {
+            this.closed = true;
+            this.closeFiles();
+        }
+    }
+
+    private void openFiles() throws IOException {
+        Path logPath = this.directory.resolve(LOG_FILE);
+        Path indexPath = this.directory.resolve(INDEX_FILE);
+
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (this.log.size() == 0) {
+            UpiRegistry.writeLogHeader(this.log);
+        } else {
+            ByteBuffer magic = ByteBuffer.allocate(LOG_HEADER);
+            while (magic.hasRemaining() && this.log.read(magic, magic.position()) > 0) {
+                // Read the whole header
+            }
+
+            if (magic.hasRemaining() || magic.getLong(0) != LOG_MAGIC) {
+                throw new IOException(logPath + " is not a UPI registry log");
+            }
+        }
+
+        this.logLength = this.log.size();
+
+        MappedLongArray index = Files.exists(indexPath) && Files.size(indexPath) >= HEADER_LONGS * 8
+                ? MappedLongArray.open(indexPath)
+                : null;
+        boolean usable = index != null
+                && index.get(H_MAGIC) == INDEX_MAGIC
+                && index.get(H_CLEAN) == 1
+                && index.get(H_LOG_LENGTH) <= this.logLength
+                && index.length() == HEADER_LONGS + index.get(H_CAPACITY) * 2;
+
+        if (usable) {
+            this.index = index;
+            this.capacity = index.get(H_CAPACITY);
+            this.size = index.get(H_SIZE);
+            this.tombstones = index.get(H_TOMBSTONES);
+            this.replay(index.get(H_LOG_LENGTH));
+        } else {
+            if (index != null) {
+                index.close();
+            }
+
+            Files.deleteIfExists(indexPath);
+            this.index = new MappedLongArray(indexPath, HEADER_LONGS + MIN_CAPACITY * 2);
+            this.capacity = MIN_CAPACITY;
+            this.size = 0;
+            this.tombstones = 0;
+            this.replay(LOG_HEADER);
+        }
+
+        // Dirty until a clean close
+        this.writeHeader(false);
+        this.index.force();
+    }
+
+    private void closeFiles() throws IOException {
+        try {
+            if (this.log != null) {
+                this.log.close();
+            }
+        } finally {
+            this.log = null;
+            if (this.index != null) {
+                this.index.close();
+                this.index = null;
+            }
+        }
+    }
+
+    /**
+     * Applies the log records from an offset to the index, cutting off a torn tail.
+     * A bad record followed by more data is not a torn write, and is not cut off.
+     *
+     * @throws IOException if a record before the end of the log is corrupt
+     */
+    private void replay(long from) throws IOException {
+        long offset = from;
+
+        while (offset < this.logLength) {
+            int length = this.tryReadRaw(offset);
+
+            if (length < 0) {
+                if (!this.isTornTail(offset)) {
+                    throw new IOException("Corrupt registry log record at offset " + offset + " of "
+                            + this.logLength + " in " + this.directory.resolve(LOG_FILE));
+                }
+
+                this.log.truncate(offset);
+                this.logLength = offset;
+                break;
+            }
+
+            Record record = UpiRegistry.decode(this.scratch, length);
+            long hash = UpiRegistry.hash(new String(record.key, StandardCharsets.UTF_8));
+
+            if (record.op == PUT) {
+                this.indexPut(record.key, hash, offset);
+            } else {
+                long slot = this.find(record.key, hash);
+
+                if (slot >= 0) {
+                    this.index.set(UpiRegistry.offsetLong(slot), TOMBSTONE);
+                    this.size--;
+                    this.tombstones++;
+                }
+            }
+
+            offset += length;
+        }
+    }
+
+    /**
+     * A write cut short by a crash leaves a record that runs to (or past) the end of the log,
+     * or zeroes where the file system extended the file but never wrote the data
+     *
+     * @param offset offset of a record that failed to read
+     * @return true if nothing after the record could be a complete one
+     */
+    private boolean isTornTail(long offset) throws IOException {
+        if (offset + RECORD_HEADER > this.logLength) {
+            return true;
+        }
+
+        ByteBuffer header = this.scratch(RECORD_HEADER);
+        this.readFully(header, offset);
+        int payload = header.getInt(0);
+
+        if (payload >= 9 && payload <= MAX_PAYLOAD) {
+            return offset + RECORD_HEADER + payload >= this.logLength;
+        }
+
+        // A garbage length: only a run of zeroes to the end is a torn write
+        ByteBuffer rest = this.scratch(4096);
+        for (long position = offset; position < this.logLength; position += rest.limit()) {
+            ((Buffer) rest).clear();
+            ((Buffer) rest).limit((int) Math.min(rest.capacity(), this.logLength - position));
+            this.readFully(rest, position);
+
+            for (int i = 0; i < rest.limit(); i++) {
+                if (rest.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void indexPut(byte[] key, long hash, long offset) throws IOException {
+        long slot = this.find(key, hash);
+
+        if (slot >= 0) {
+            this.index.set(UpiRegistry.offsetLong(slot), offset);
+            return;
+        }
+
+        if ((this.size + this.tombstones + 1) * 10 > this.capacity * 7) {
+            this.rehash();
+        }
+
+        long mask = this.capacity - 1;
+        slot = hash & mask;
+
+        while (this.index.get(UpiRegistry.hashLong(slot)) != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.index.set(UpiRegistry.hashLong(slot), hash);
+        this.index.set(UpiRegistry.offsetLong(slot), offset);
+        this.size++;
+    }
+
+    /**
+     * @return slot of the live entry with this key, or -1
+     */
+    private long find(byte[] key, long hash) throws IOException {
+        long mask = this.capacity - 1;
+        long slot = hash & mask;
+
+        while (true) {
+            long slotHash = this.index.get(UpiRegistry.hashLong(slot));
+
+            if (slotHash == 0) {
+                return -1;
+            }
+
+            if (slotHash == hash) {
+                long offset = this.index.get(UpiRegistry.offsetLong(slot));
+
+                // Full hashes rarely collide, so this read is almost always the match
+                if (offset != TOMBSTONE && this.keyEquals(offset, key)) {
+                    return slot;
+                }
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Moves the live entries to a table sized for them, dropping tombstones
+     */
+    private void rehash() throws IOException {
+        long capacity = UpiRegistry.capacityFor(this.size + 1);
+        Path indexPath = this.directory.resolve(INDEX_FILE);
+        Path newPath = this.directory.resolve(INDEX_FILE + ".rehash");
+        Files.deleteIfExists(newPath);
+
+        MappedLongArray resized = new MappedLongArray(newPath, HEADER_LONGS + capacity * 2);
+
+        try {
+            for (long slot = 0; slot < this.capacity; slot++) {
+                long hash = this.index.get(UpiRegistry.hashLong(slot));
+                long offset = this.index.get(UpiRegistry.offsetLong(slot));
+
+                if (hash == 0 || offset == TOMBSTONE) {
+                    continue;
+                }
+
+                long target = hash & (capacity - 1);
+                while (resized.get(UpiRegistry.hashLong(target)) != 0) {
+                    target = (target + 1) & (capacity - 1);
+                }
+                resized.set(UpiRegistry.hashLong(target), hash);
+                resized.set(UpiRegistry.offsetLong(target), offset);
+            }
+
+            resized.set(H_MAGIC, INDEX_MAGIC);
+            resized.force();
+        } finally {
+            resized.close();
+        }
+
+        // Unmap both before the rename: a mapped file cannot be replaced everywhere, and the
+        // old pages would otherwise stay mapped until the buffers are collected
+        this.index.close();
+        this.index = null;
+        Files.move(newPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.index = MappedLongArray.open(indexPath);
+        this.capacity = capacity;
+        this.tombstones = 0;
+        this.writeHeader(false);
+    }
+
+    private void writeHeader(boolean clean) {
+        this.index.set(H_MAGIC, INDEX_MAGIC);
+        this.index.set(H_CAPACITY, this.capacity);
+        this.index.set(H_SIZE, this.size);
+        this.index.set(H_TOMBSTONES, this.tombstones);
+        this.index.set(H_LOG_LENGTH, this.logLength);
+        this.index.set(H_CLEAN, clean ? 1 : 0);
+    }
+
+    /**
+     * @return offset of the new record
+     */
+    private long append(byte op, byte[] key, byte[] value) throws IOException {
+        int payload = 1 + 4 + key.length + 4 + ((value == null) ? 0 : value.length);
+        ByteBuffer buffer = this.scratch(RECORD_HEADER + payload);
+
+        buffer.putInt(payload);
+        buffer.putInt(0);
+        buffer.put(op);
+        buffer.putInt(key.length);
+        buffer.put(key);
+        buffer.putInt((value == null) ? -1 : value.length);
+        if (value != null) {
+            buffer.put(value);
+        }
+
+        this.crc.reset();
+        this.crc.update(buffer.array(), RECORD_HEADER, payload);
+        buffer.putInt(4, (int) this.crc.getValue());
+        // Through Buffer: compiled on a newer JDK, ByteBuffer.flip() would link its Java 9 override, missing on Java 8
+        ((Buffer) buffer).flip();
+
+        long offset = this.logLength;
+        while (buffer.hasRemaining()) {
+            this.log.write(buffer, offset + buffer.position());
+        }
+        this.logLength += buffer.limit();
+
+        return offset;
+    }
+
+    private Record readRecord(long offset) throws IOException {
+        return UpiRegistry.decode(this.scratch, this.readRaw(offset));
+    }
+
+    /**
+     * Compares the key of a log record in place, without decoding it
+     */
+    private boolean keyEquals(long offset, byte[] key) throws IOException {
+        int length = this.readRaw(offset);
+
+        if (this.scratch.getInt(RECORD_HEADER + 1) != key.length || RECORD_HEADER + 5 + key.length > length) {
+            return false;
+        }
+
+        byte[] array = this.scratch.array();
+        for (int i = 0; i < key.length; i++) {
+            if (array[RECORD_HEADER + 5 + i] != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a record the index points at into the scratch buffer
+     *
+     * @return record length including its header
+     */
+    private int readRaw(long offset) throws IOException {
+        int length = this.tryReadRaw(offset);
+
+        if (length < 0) {
+            throw new IOException("Corrupt registry log record at offset " + offset);
+        }
+
+        return length;
+    }
+
+    /**
+     * @return record length including its header, or -1 if it is torn or fails its checksum
+     */
+    private int tryReadRaw(long offset) throws IOException {
+        if (offset + RECORD_HEADER > this.logLength) {
+            return -1;
+        }
+
+        ByteBuffer header = this.scratch(RECORD_HEADER);
+        this.readFully(header, offset);
+        int payload = header.getInt(0);
+        int checksum = header.getInt(4);
+
+        if (payload < 9 || payload > MAX_PAYLOAD || offset + RECORD_HEADER + payload > this.logLength) {
+            return -1;
+        }
+
+        ByteBuffer buffer = this.scratch(RECORD_HEADER + payload);
+        this.readFully(buffer, offset);
+
+        this.crc.reset();
+        this.crc.update(buffer.array(), RECORD_HEADER, payload);
+
+        return ((int) this.crc.getValue() == checksum) ? RECORD_HEADER + payload : -1;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.log.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of registry log");
+            }
+        }
+    }
+
+    /**
+     * @return the scratch buffer, cleared and limited to the length, grown if needed
+     */
+    private ByteBuffer scratch(int length) {
+        if (this.scratch.capacity() < length) {
+            this.scratch = ByteBuffer.allocate(Math.max(length, this.scratch.capacity() * 2));
+        }
+
+        ((Buffer) this.scratch).clear();
+        ((Buffer) this.scratch).limit(length);
+
+        return this.scratch;
+    }
+
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Registry is closed");
+        }
+    }
+
+    private static Record decode(ByteBuffer buffer, int length) throws IOException {
+        int keyLength = buffer.getInt(RECORD_HEADER + 1);
+
+        if (keyLength < 0 || keyLength > length - RECORD_HEADER - 9) {
+            throw new IOException("Corrupt registry log record");
+        }
+
+        Record record = new Record();
+        record.op = buffer.get(RECORD_HEADER);
+        record.key = new byte[keyLength];
+        System.arraycopy(buffer.array(), RECORD_HEADER + 5, record.key, 0, keyLength);
+
+        int valueLength = buffer.getInt(RECORD_HEADER + 5 + keyLength);
+        if (valueLength >= 0) {
+            record.value = new String(buffer.array(), RECORD_HEADER + 9 + keyLength, valueLength, StandardCharsets.UTF_8);
+        }
+
+        return record;
+    }
+
+    private static void writeLogHeader(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(LOG_HEADER);
+        magic.putLong(0, LOG_MAGIC);
+
+        while (magic.hasRemaining()) {
+            channel.write(magic, magic.position());
+        }
+    }
+
+    /**
+     * Smallest power of two that keeps the table at most half full
+     */
+    private static long capacityFor(long entries) {
+        long capacity = MIN_CAPACITY;
+
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * 64-bit FNV-1a over the chars, then a murmur finaliser so the low bits spread well. Never 0, which marks an empty slot.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0, length = key.length(); i < length; i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return (hash == 0) ? 1 : hash;
+    }
+
+    private static long hashLong(long slot) {
+        return HEADER_LONGS + slot * 2;
+    }
+
+    private static long offsetLong(long slot) {
+        return HEADER_LONGS + slot * 2 + 1;
+    }
+
+    /**
+     * A decoded log record
+     */
+    private static final class Record {
+        byte op;
+        byte[] key;
+        String value;
+    }
+}
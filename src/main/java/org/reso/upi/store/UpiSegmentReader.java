@@ -0,0 +1,400 @@
+package org.reso.upi.store;
+
+import org.reso.upi.sort.UpiSortKey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads a segment file written by {@link UpiSegmentWriter}.
+ *
+ * <p>
+ * The file is memory-mapped, and only its sparse block index is read into memory. A scan
+ * finds its first block with a binary search over the blocks' first keys and stops at the
+ * first key past its range, so it reads just the blocks the range overlaps:
+ * </p>
+ *
+ * <pre>
+ * try (UpiSegmentReader segment = UpiSegmentReader.open(path)) {
+ *     UpiSegmentReader.Cursor cursor = segment.scanPrefix("US", "36061");
+ *     while (cursor.next()) {
+ *         upi.parseUpi(cursor.getUpiText(), cursor.getDescription());
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * Readers are thread-safe; each cursor belongs to one thread.
+ * </p>
+ */
+public final class UpiSegmentReader implements Closeable {
+    private static final long MAX_CHUNK = 1L << 30;
+
+    private final FileChannel channel;
+    private final long count;
+    private final byte[][] firstKeys;
+    private final int[] blockChunks;
+    private final int[] blockPositions;
+    private final int[] blockLengths;
+    private final MappedByteBuffer[] chunks;
+
+    private UpiSegmentReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < UpiSegmentWriter.HEADER_LENGTH + UpiSegmentWriter.FOOTER_LENGTH) {
+            throw new IOException("Not a UPI segment file");
+        }
+
+        ByteBuffer footer = UpiSegmentReader.read(channel, size - UpiSegmentWriter.FOOTER_LENGTH, UpiSegmentWriter.FOOTER_LENGTH);
+        long indexOffset = footer.getLong(0);
+        this.count = footer.getLong(8);
+        int blocks = footer.getInt(16);
+
+        if (footer.getLong(24) != UpiSegmentWriter.MAGIC || footer.getInt(20) != UpiSegmentWriter.VERSION
+                || indexOffset < UpiSegmentWriter.HEADER_LENGTH || indexOffset > size - UpiSegmentWriter.FOOTER_LENGTH) {
+            throw new IOException("Not a UPI segment file, or an unsupported version");
+        }
+
+        ByteBuffer index = UpiSegmentReader.read(channel, indexOffset, (int) (size - UpiSegmentWriter.FOOTER_LENGTH - indexOffset));
+        this.firstKeys = new byte[blocks][];
+        this.blockChunks = new int[blocks];
+        this.blockPositions = new int[blocks];
+        this.blockLengths = new int[blocks];
+        long[] offsets = new long[blocks];
+
+        for (int i = 0; i < blocks; i++) {
+            this.firstKeys[i] = new byte[UpiSegmentReader.getVarint(index)];
+            index.get(this.firstKeys[i]);
+            offsets[i] = UpiSegmentReader.getVarlong(index);
+            this.blockLengths[i] = UpiSegmentReader.getVarint(index);
+            UpiSegmentReader.getVarint(index); // entry count
+        }
+
+        // Map whole blocks in chunks of up to 1 GB, since one mapping cannot exceed 2 GB
+        ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+        int block = 0;
+
+        while (block < blocks) {
+            long start = offsets[block];
+            int end = block;
+
+            while (end < blocks && offsets[end] + this.blockLengths[end] - start <= MAX_CHUNK) {
+                this.blockChunks[end] = chunks.size();
+                this.blockPositions[end] = (int) (offsets[end] - start);
+                end++;
+            }
+
+            if (end == block) {
+                throw new IOException("Segment block is too large");
+            }
+
+            long length = offsets[end - 1] + this.blockLengths[end - 1] - start;
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            block = end;
+        }
+
+        this.chunks = chunks.toArray(new MappedByteBuffer[0]);
+    }
+
+    /**
+     * @param path segment file
+     * @return reader
+     * @throws IOException if the file cannot be read or is not a segment file
+     */
+    public static UpiSegmentReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            return new UpiSegmentReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of UPIs in the segment
+     */
+    public long size() {
+        return this.count;
+    }
+
+    /**
+     * @return number of blocks in the segment
+     */
+    public int getBlockCount() {
+        return this.firstKeys.length;
+    }
+
+    /**
+     * @return cursor over every UPI
+     */
+    public Cursor scan() {
+        return this.scan(null, null);
+    }
+
+    /**
+     * @param from first key, inclusive, or null to start at the beginning
+     * @param to   last key, exclusive, or null to run to the end
+     * @return cursor over the UPIs in the range, in key order
+     */
+    public Cursor scan(byte[] from, byte[] to) {
+        int first = 0;
+        int last = this.firstKeys.length;
+
+        if (from != null) {
+            // The last block starting at or before `from` may hold it
+            first = Math.max(0, this.blockStartingAfter(from) - 1);
+        }
+
+        if (to != null) {
+            // Blocks starting at or after `to` hold nothing in range
+            last = this.blockStartingAtOrAfter(to);
+        }
+
+        return new Cursor(first, last, from, to);
+    }
+
+    /**
+     * @param prefix key prefix, see {@link UpiSortKey#prefix(String...)}
+     * @return cursor over the UPIs whose keys start with the prefix
+     */
+    public Cursor scanPrefix(byte[] prefix) {
+        return this.scan(prefix, UpiSortKey.successor(prefix));
+    }
+
+    /**
+     * @param segments leading segments in canonical order, eg `"US", "36061"` for a county
+     * @return cursor over the UPIs with these leading segments
+     */
+    public Cursor scanPrefix(String... segments) {
+        return this.scanPrefix(UpiSortKey.prefix(segments));
+    }
+
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * @return first block whose first key is above the key
+     */
+    private int blockStartingAfter(byte[] key) {
+        int low = 0;
+        int high = this.firstKeys.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (UpiSortKey.compare(this.firstKeys[middle], key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return first block whose first key is at or above the key
+     */
+    private int blockStartingAtOrAfter(byte[] key) {
+        int low = 0;
+        int high = this.firstKeys.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (UpiSortKey.compare(this.firstKeys[middle], key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+
+        // Through Buffer: compiled on a newer JDK, ByteBuffer.flip() would link its Java 9 override, missing on Java 8
+        ((Buffer) buffer).flip();
+
+        return buffer;
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        return (int) UpiSegmentReader.getVarlong(buffer);
+    }
+
+    private static long getVarlong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+
+        while (true) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+
+            shift += 7;
+        }
+    }
+
+    /**
+     * Iterates over a key range, decoding one block at a time from the mapped file
+     */
+    public final class Cursor {
+        private final int lastBlock;
+        private final byte[] from;
+        private final byte[] to;
+        private int block;
+        private ByteBuffer buffer;
+        private int blocksRead;
+
+        private byte[] key = new byte[64];
+        private int keyLength;
+        private byte[] upi = new byte[64];
+        private int upiLength;
+        private String upiText;
+        private int descriptionPosition;
+        private int descriptionLength;
+        private boolean done;
+
+        private Cursor(int firstBlock, int lastBlock, byte[] from, byte[] to) {
+            this.block = firstBlock;
+            this.lastBlock = lastBlock;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return false once the range is exhausted
+         */
+        public boolean next() {
+            while (!this.done) {
+                if (this.buffer == null || !this.buffer.hasRemaining()) {
+                    if (this.block >= this.lastBlock) {
+                        this.done = true;
+                        return false;
+                    }
+
+                    this.openBlock(this.block++);
+                }
+
+                this.decodeEntry();
+
+                if (this.to != null && UpiSortKey.compare(this.key, 0, this.keyLength, this.to, 0, this.to.length) >= 0) {
+                    this.done = true;
+                    return false;
+                }
+
+                if (this.from == null || UpiSortKey.compare(this.key, 0, this.keyLength, this.from, 0, this.from.length) >= 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * @return UPI text of the current entry
+         */
+        public String getUpiText() {
+            if (this.upiText == null) {
+                this.upiText = new String(this.upi, 0, this.upiLength, StandardCharsets.UTF_8);
+            }
+
+            return this.upiText;
+        }
+
+        /**
+         * @return description of the current entry, or null
+         */
+        public String getDescription() {
+            if (this.descriptionLength < 0) {
+                return null;
+            }
+
+            byte[] bytes = new byte[this.descriptionLength];
+            ByteBuffer view = this.buffer.duplicate();
+            ((Buffer) view).position(this.descriptionPosition);
+            view.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return copy of the current entry's sort key
+         */
+        public byte[] getKey() {
+            return Arrays.copyOf(this.key, this.keyLength);
+        }
+
+        /**
+         * @return number of blocks this cursor has decoded
+         */
+        public int getBlocksRead() {
+            return this.blocksRead;
+        }
+
+        private void openBlock(int index) {
+            ByteBuffer chunk = UpiSegmentReader.this.chunks[UpiSegmentReader.this.blockChunks[index]].duplicate();
+            int position = UpiSegmentReader.this.blockPositions[index];
+
+            ((Buffer) chunk).limit(position + UpiSegmentReader.this.blockLengths[index]);
+            ((Buffer) chunk).position(position);
+
+            this.buffer = chunk;
+            this.keyLength = 0;
+            this.upiLength = 0;
+            this.blocksRead++;
+        }
+
+        private void decodeEntry() {
+            ByteBuffer buffer = this.buffer;
+
+            int shared = UpiSegmentReader.getVarint(buffer);
+            int suffix = UpiSegmentReader.getVarint(buffer);
+            if (this.key.length < shared + suffix) {
+                this.key = Arrays.copyOf(this.key, Math.max(shared + suffix, this.key.length * 2));
+            }
+            buffer.get(this.key, shared, suffix);
+            this.keyLength = shared + suffix;
+
+            shared = UpiSegmentReader.getVarint(buffer);
+            suffix = UpiSegmentReader.getVarint(buffer);
+            if (this.upi.length < shared + suffix) {
+                this.upi = Arrays.copyOf(this.upi, Math.max(shared + suffix, this.upi.length * 2));
+            }
+            buffer.get(this.upi, shared, suffix);
+            this.upiLength = shared + suffix;
+            this.upiText = null;
+
+            this.descriptionLength = UpiSegmentReader.getVarint(buffer) - 1;
+            this.descriptionPosition = buffer.position();
+            if (this.descriptionLength > 0) {
+                ((Buffer) buffer).position(buffer.position() + this.descriptionLength);
+            }
+        }
+    }
+}
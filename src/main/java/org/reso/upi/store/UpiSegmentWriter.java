@@ -0,0 +1,298 @@
+package org.reso.upi.store;
+
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.sort.UpiSortKey;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Writes a sorted, immutable UPI segment file, read back with {@link UpiSegmentReader}.
+ *
+ * <p>
+ * UPIs must be added in ascending {@link UpiSortKey} order, without duplicates. They are
+ * packed into blocks of about `blockSize` bytes; within a block each sort key and each UPI
+ * text is front-coded, stored as the length it shares with the one before and the rest.
+ * The first key of every block goes into a sparse index at the end of the file, which is
+ * all a reader keeps in memory.
+ * </p>
+ *
+ * <p>
+ * The file is written under a temporary name and renamed on {@link #close()}, so a reader
+ * never sees half a segment.
+ * </p>
+ */
+public final class UpiSegmentWriter implements Closeable {
+    static final long MAGIC = 0x5550495345473031L; // "UPISEG01"
+    static final int HEADER_LENGTH = 8;
+    static final int FOOTER_LENGTH = 32;
+    static final int VERSION = 1;
+    private static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+
+    private final Path path;
+    private final Path temporary;
+    private final OutputStream out;
+    private final int blockSize;
+    private final UpiSortKey sortKey = new UpiSortKey();
+
+    private long position;
+    private long count;
+    private boolean closed;
+
+    // The block being filled
+    private byte[] block;
+    private int blockLength;
+    private int blockCount;
+    private byte[] previousKey = new byte[64];
+    private int previousKeyLength = -1;
+    private byte[] previousUpi = new byte[64];
+    private int previousUpiLength;
+
+    // Sparse index: first key, offset, length and entry count of each block
+    private final ArrayList<byte[]> firstKeys = new ArrayList<byte[]>();
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+    private int[] counts = new int[64];
+
+    /**
+     * @param path segment file to create
+     * @throws IOException if the file cannot be created
+     */
+    public UpiSegmentWriter(Path path) throws IOException {
+        this(path, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param path      segment file to create
+     * @param blockSize target block size in bytes; smaller blocks make scans start closer to their range
+     * @throws IOException if the file cannot be created
+     */
+    public UpiSegmentWriter(Path path, int blockSize) throws IOException {
+        if (blockSize < 64) {
+            throw new IllegalArgumentException("Block size must be at least 64 bytes");
+        }
+
+        this.path = path;
+        this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize + 1024];
+        this.out = new BufferedOutputStream(Files.newOutputStream(this.temporary), 64 * 1024);
+
+        byte[] header = new byte[HEADER_LENGTH];
+        UpiSegmentWriter.putLong(header, 0, MAGIC);
+        this.out.write(header);
+        this.position = HEADER_LENGTH;
+    }
+
+    /**
+     * @param upi next UPI, with its description
+     * @throws IOException               if writing fails
+     * @throws MalformedUpiTextException if the UPI is missing pieces
+     * @throws IllegalArgumentException  if the UPI does not sort after the last one
+     */
+    public void add(UpiInterface upi) throws IOException, MalformedUpiTextException {
+        String upiText = upi.toUpi();
+        this.sortKey.encode(upi);
+
+        this.add(this.sortKey.getBytes(), this.sortKey.getLength(), upiText, upi.getDescription());
+    }
+
+    /**
+     * Adds an entry with a precomputed sort key
+     *
+     * @param key         {@link UpiSortKey} bytes
+     * @param keyLength   key length
+     * @param upiText     UPI text
+     * @param description description, may be null
+     * @throws IOException              if writing fails
+     * @throws IllegalArgumentException if the key does not sort after the last one
+     */
+    public void add(byte[] key, int keyLength, String upiText, String description) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("Writer is closed");
+        }
+
+        if (this.previousKeyLength >= 0
+                && UpiSortKey.compare(this.previousKey, 0, this.previousKeyLength, key, 0, keyLength) >= 0) {
+            throw new IllegalArgumentException("UPIs must be added in ascending sort key order without duplicates: " + upiText);
+        }
+
+        byte[] upi = upiText.getBytes(StandardCharsets.UTF_8);
+        byte[] value = (description == null) ? null : description.getBytes(StandardCharsets.UTF_8);
+
+        if (this.blockCount == 0) {
+            this.firstKeys.add(Arrays.copyOf(key, keyLength));
+            this.previousKeyLength = 0;
+            this.previousUpiLength = 0;
+        }
+
+        int sharedKey = UpiSegmentWriter.shared(this.previousKey, this.previousKeyLength, key, keyLength);
+        int sharedUpi = UpiSegmentWriter.shared(this.previousUpi, this.previousUpiLength, upi, upi.length);
+
+        this.ensureBlockCapacity(25 + keyLength + upi.length + ((value == null) ? 0 : value.length));
+        this.putVarint(sharedKey);
+        this.putVarint(keyLength - sharedKey);
+        this.putBytes(key, sharedKey, keyLength - sharedKey);
+        this.putVarint(sharedUpi);
+        this.putVarint(upi.length - sharedUpi);
+        this.putBytes(upi, sharedUpi, upi.length - sharedUpi);
+
+        // Description length + 1, 0 for none
+        this.putVarint((value == null) ? 0 : value.length + 1);
+        if (value != null) {
+            this.putBytes(value, 0, value.length);
+        }
+
+        if (this.previousKey.length < keyLength) {
+            this.previousKey = new byte[Math.max(keyLength, this.previousKey.length * 2)];
+        }
+        System.arraycopy(key, 0, this.previousKey, 0, keyLength);
+        this.previousKeyLength = keyLength;
+
+        if (this.previousUpi.length < upi.length) {
+            this.previousUpi = new byte[Math.max(upi.length, this.previousUpi.length * 2)];
+        }
+        System.arraycopy(upi, 0, this.previousUpi, 0, upi.length);
+        this.previousUpiLength = upi.length;
+
+        this.blockCount++;
+        this.count++;
+
+        if (this.blockLength >= this.blockSize) {
+            this.finishBlock();
+        }
+    }
+
+    /**
+     * @return number of UPIs added
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Writes the index and footer, and moves the file to its name
+     */
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        try {
+            if (this.blockCount > 0) {
+                this.finishBlock();
+            }
+
+            long indexOffset = this.position;
+            int blocks = this.firstKeys.size();
+
+            for (int i = 0; i < blocks; i++) {
+                byte[] firstKey = this.firstKeys.get(i);
+
+                this.blockLength = 0;
+                this.ensureBlockCapacity(firstKey.length + 30);
+                this.putVarint(firstKey.length);
+                this.putBytes(firstKey, 0, firstKey.length);
+                this.putVarlong(this.offsets[i]);
+                this.putVarint(this.lengths[i]);
+                this.putVarint(this.counts[i]);
+                this.writeBlockBuffer();
+            }
+
+            byte[] footer = new byte[FOOTER_LENGTH];
+            UpiSegmentWriter.putLong(footer, 0, indexOffset);
+            UpiSegmentWriter.putLong(footer, 8, this.count);
+            UpiSegmentWriter.putInt(footer, 16, blocks);
+            UpiSegmentWriter.putInt(footer, 20, VERSION);
+            UpiSegmentWriter.putLong(footer, 24, MAGIC);
+            this.out.write(footer);
+        } finally {
+            this.out.close();
+        }
+
+        Files.move(this.temporary, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void finishBlock() throws IOException {
+        int index = this.firstKeys.size() - 1;
+
+        if (index == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, index * 2);
+            this.lengths = Arrays.copyOf(this.lengths, index * 2);
+            this.counts = Arrays.copyOf(this.counts, index * 2);
+        }
+
+        this.offsets[index] = this.position;
+        this.lengths[index] = this.blockLength;
+        this.counts[index] = this.blockCount;
+
+        this.writeBlockBuffer();
+        this.blockCount = 0;
+    }
+
+    private void writeBlockBuffer() throws IOException {
+        this.out.write(this.block, 0, this.blockLength);
+        this.position += this.blockLength;
+        this.blockLength = 0;
+    }
+
+    private void ensureBlockCapacity(int extra) {
+        if (this.blockLength + extra > this.block.length) {
+            this.block = Arrays.copyOf(this.block, Math.max(this.blockLength + extra, this.block.length * 2));
+        }
+    }
+
+    private void putVarint(int value) {
+        this.putVarlong(value & 0xFFFFFFFFL);
+    }
+
+    private void putVarlong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.block[this.blockLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        this.block[this.blockLength++] = (byte) value;
+    }
+
+    private void putBytes(byte[] bytes, int offset, int length) {
+        System.arraycopy(bytes, offset, this.block, this.blockLength, length);
+        this.blockLength += length;
+    }
+
+    private static int shared(byte[] a, int aLength, byte[] b, int bLength) {
+        int length = Math.min(aLength, bLength);
+        int i = 0;
+
+        while (i < length && a[i] == b[i]) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
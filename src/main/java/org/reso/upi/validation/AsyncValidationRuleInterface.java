@@ -0,0 +1,47 @@
+package org.reso.upi.validation;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A rule that checks many UPIs at once, usually against an external store such as a
+ * parcel database. Wrap it in a {@link BatchingValidationRule} to use it in a rule set.
+ */
+public interface AsyncValidationRuleInterface {
+    /**
+     * @param upis   UPIs to validate, not changed by anyone while the batch runs
+     * @param strict strict mode
+     * @return future holding one message list per UPI, in the same order
+     */
+    CompletableFuture<List<ArrayList<ValidationMessage>>> validate(List<UpiInterface> upis, boolean strict);
+
+    /**
+     * @param strict strict mode
+     * @return false if the rule is a no-op in this mode
+     * @see ValidationRuleInterface#appliesTo(boolean)
+     */
+    default boolean appliesTo(boolean strict) {
+        return true;
+    }
+
+    /**
+     * @return fields read by this rule
+     * @see ValidationRuleInterface#getDependencies()
+     */
+    default EnumSet<UpiField> getDependencies() {
+        return EnumSet.allOf(UpiField.class);
+    }
+
+    /**
+     * @return bits of the fields read by this rule
+     * @see ValidationRuleInterface#getDependencyMask()
+     */
+    default int getDependencyMask() {
+        return UpiField.mask(this.getDependencies());
+    }
+}
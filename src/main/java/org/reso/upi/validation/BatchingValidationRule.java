@@ -0,0 +1,291 @@
+package org.reso.upi.validation;
+
+import org.reso.upi.Upi;
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups single UPI lookups into batches for an {@link AsyncValidationRuleInterface}.
+ *
+ * <p>
+ * {@link #submit(UpiInterface, boolean)} queues a copy of the UPI and returns a future for
+ * its messages. A batch is sent once it holds `maxBatchSize` UPIs, or `maxDelayMillis`
+ * after its first UPI was queued, whichever comes first. {@link Upi#validateAsync(boolean, ArrayList)}
+ * submits to every batching rule in a rule set, so validating a stream of UPIs turns
+ * thousands of lookups into a few bulk queries:
+ * </p>
+ *
+ * <pre>
+ * BatchingValidationRule parcels = new BatchingValidationRule(new ParcelLookupRule(db), 500, 20);
+ * ruleSet.add(parcels);
+ *
+ * for (String line : lines) {
+ *     futures.add(new Upi(line).validateAsync(true, ruleSet));
+ * }
+ * </pre>
+ *
+ * <p>
+ * Used through the synchronous {@link #validate(UpiInterface, boolean)}, the pending batch is
+ * sent right away, so a plain rule set still works, one lookup at a time. Close the rule to
+ * send what is left. All rules share one daemon timer thread, so the wrapped rule's
+ * {@code validate} should start its lookup and return without waiting for it.
+ * </p>
+ */
+public class BatchingValidationRule extends AbstractValidationRule implements AutoCloseable {
+    private final AsyncValidationRuleInterface rule;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final int dependencyMask;
+
+    // One pending batch per strict mode, guarded by this
+    private Batch looseBatch;
+    private Batch strictBatch;
+    private boolean closed;
+
+    /**
+     * @param rule           rule to send batches to
+     * @param maxBatchSize   send a batch once it holds this many UPIs
+     * @param maxDelayMillis send a batch at the latest this long after its first UPI
+     */
+    public BatchingValidationRule(AsyncValidationRuleInterface rule, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay not negative");
+        }
+
+        this.rule = rule;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.dependencyMask = rule.getDependencyMask();
+    }
+
+    /**
+     * Queues a copy of the UPI for the next batch
+     *
+     * @param upi    UPI to validate
+     * @param strict strict mode
+     * @return future holding the rule's messages for this UPI
+     * @throws IllegalStateException if the rule was closed
+     */
+    public CompletableFuture<ArrayList<ValidationMessage>> submit(UpiInterface upi, boolean strict) {
+        CompletableFuture<ArrayList<ValidationMessage>> future = new CompletableFuture<ArrayList<ValidationMessage>>();
+        Batch full = null;
+
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("Rule is closed");
+            }
+
+            Batch batch = strict ? this.strictBatch : this.looseBatch;
+
+            if (batch == null) {
+                batch = new Batch(strict);
+                this.setBatch(strict, batch);
+
+                final Batch scheduled = batch;
+                batch.timeout = TimerHolder.TIMER.schedule(() -> this.flush(scheduled), this.maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            batch.upis.add(BatchingValidationRule.copy(upi));
+            batch.futures.add(future);
+
+            if (batch.upis.size() >= this.maxBatchSize) {
+                full = this.take(batch);
+            }
+        }
+
+        // Sent outside the lock, the rule may take a while to start its lookup
+        if (full != null) {
+            this.send(full);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends the pending batches now
+     */
+    public void flush() {
+        Batch loose;
+        Batch strict;
+
+        synchronized (this) {
+            loose = this.take(this.looseBatch);
+            strict = this.take(this.strictBatch);
+        }
+
+        if (loose != null) {
+            this.send(loose);
+        }
+
+        if (strict != null) {
+            this.send(strict);
+        }
+    }
+
+    /**
+     * Sends the pending batches and refuses new ones. Batches already sent still complete.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+
+        this.flush();
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        CompletableFuture<ArrayList<ValidationMessage>> future = this.submit(upi, strict);
+        this.flush();
+
+        return new ArrayList<ValidationMessage>(future.join());
+    }
+
+    public boolean appliesTo(boolean strict) {
+        return this.rule.appliesTo(strict);
+    }
+
+    public EnumSet<UpiField> getDependencies() {
+        return this.rule.getDependencies();
+    }
+
+    public int getDependencyMask() {
+        return this.dependencyMask;
+    }
+
+    /**
+     * @return the wrapped rule
+     */
+    public AsyncValidationRuleInterface getRule() {
+        return this.rule;
+    }
+
+    private void flush(Batch batch) {
+        Batch expired;
+
+        synchronized (this) {
+            // The batch may have filled up and been sent already
+            expired = ((batch.strict ? this.strictBatch : this.looseBatch) == batch) ? this.take(batch) : null;
+        }
+
+        if (expired != null) {
+            this.send(expired);
+        }
+    }
+
+    /**
+     * Detaches a batch from the queue, caller holds the lock
+     */
+    private Batch take(Batch batch) {
+        if (batch == null) {
+            return null;
+        }
+
+        this.setBatch(batch.strict, null);
+
+        if (batch.timeout != null) {
+            batch.timeout.cancel(false);
+        }
+
+        return batch;
+    }
+
+    private void setBatch(boolean strict, Batch batch) {
+        if (strict) {
+            this.strictBatch = batch;
+        } else {
+            this.looseBatch = batch;
+        }
+    }
+
+    private void send(final Batch batch) {
+        CompletableFuture<List<ArrayList<ValidationMessage>>> result;
+
+        try {
+            result = this.rule.validate(batch.upis, batch.strict);
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<List<ArrayList<ValidationMessage>>>();
+            result.completeExceptionally(e);
+        }
+
+        result.whenComplete((messages, error) -> {
+            if (error == null && (messages == null || messages.size() != batch.futures.size())) {
+                error = new IllegalStateException("Rule returned " + ((messages == null) ? 0 : messages.size())
+                        + " results for " + batch.futures.size() + " UPIs");
+            }
+
+            for (int i = 0; i < batch.futures.size(); i++) {
+                if (error != null) {
+                    batch.futures.get(i).completeExceptionally(error);
+                } else {
+                    ArrayList<ValidationMessage> upiMessages = messages.get(i);
+                    batch.futures.get(i).complete((upiMessages == null) ? new ArrayList<ValidationMessage>() : upiMessages);
+                }
+            }
+        });
+    }
+
+    /**
+     * Snapshot of the pieces, so the caller may reuse or change the UPI while the batch is pending
+     */
+    private static UpiInterface copy(UpiInterface upi) {
+        Upi copy = new Upi(
+                upi.getCountryCode(),
+                upi.getSubCountryCode(),
+                upi.getSubCountyCode(),
+                upi.getPropertyId(),
+                null,
+                upi.getSubProperty(),
+                upi.getDescription()
+        );
+        copy.setUndefinedCountryCode(upi.getUndefinedCountryCode());
+        // The text, not the enum: NON_STANDARD's code changes with the next parse on any thread
+        copy.setPropertyTypeCode(upi.getPropertyTypeCodeText());
+        copy.setUpiText(upi.getRawUpiText());
+
+        return copy;
+    }
+
+    /**
+     * Starts the timer shared by every rule on first use
+     */
+    private static final class TimerHolder {
+        static final ScheduledExecutorService TIMER = TimerHolder.create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "upi-batching-rule");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
+            // Most timeouts are cancelled by a full batch, do not keep them queued until they expire
+            timer.setRemoveOnCancelPolicy(true);
+
+            return timer;
+        }
+    }
+
+    /**
+     * UPIs queued for one strict mode, with their futures
+     */
+    private static final class Batch {
+        final boolean strict;
+        final ArrayList<UpiInterface> upis = new ArrayList<UpiInterface>();
+        final ArrayList<CompletableFuture<ArrayList<ValidationMessage>>> futures = new ArrayList<CompletableFuture<ArrayList<ValidationMessage>>>();
+        ScheduledFuture<?> timeout;
+
+        Batch(boolean strict) {
+            this.strict = strict;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.reso.upi.validation;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.jfr.RuleEvent;
+import org.reso.upi.jfr.UpiEvents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * A rule set flattened into one rule by {@link RuleSetCompiler}.
+ *
+ * <p>
+ * Each strict mode has its own array of rules, without the rules that are no-ops in
+ * that mode. Validation is a single call that walks the array, optionally stopping at
+ * the first rule that reports a message. Use it on its own, or pass {@link #asRuleSet()}
+ * wherever a rule set is expected:
+ * </p>
+ *
+ * <pre>
+ * CompiledRuleSet compiled = RuleSetCompiler.compile(ruleSet, true);
+ * upi.isValid(true, compiled.asRuleSet());
+ * </pre>
+ */
+public final class CompiledRuleSet implements ValidationRuleInterface {
+    private final ValidationRuleInterface[] looseRules;
+    private final ValidationRuleInterface[] strictRules;
+    private final boolean failFast;
+    private final EnumSet<UpiField> dependencies = EnumSet.noneOf(UpiField.class);
+    private final int dependencyMask;
+
+    private final ArrayList<ValidationRuleInterface> ruleSet;
+
+    /**
+     * @param looseRules  rules to run in non-strict mode, in order
+     * @param strictRules rules to run in strict mode, in order
+     * @param failFast    stop at the first rule that reports a message
+     */
+    CompiledRuleSet(ValidationRuleInterface[] looseRules, ValidationRuleInterface[] strictRules, boolean failFast) {
+        this.looseRules = looseRules;
+        this.strictRules = strictRules;
+        this.failFast = failFast;
+
+        for (ValidationRuleInterface rule : looseRules) {
+            this.dependencies.addAll(rule.getDependencies());
+        }
+
+        for (ValidationRuleInterface rule : strictRules) {
+            this.dependencies.addAll(rule.getDependencies());
+        }
+
+        this.dependencyMask = UpiField.mask(this.dependencies);
+
+        this.ruleSet = new ArrayList<ValidationRuleInterface>(1);
+        this.ruleSet.add(this);
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
+        ValidationRuleInterface[] rules = strict ? this.strictRules : this.looseRules;
+        int before = errors.size();
+
+        for (ValidationRuleInterface rule : rules) {
+            RuleEvent event = UpiEvents.AVAILABLE ? new RuleEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            int ruleBefore = errors.size();
+
+            rule.validate(upi, strict, errors);
+
+            if (event != null && event.shouldCommit()) {
+                event.ruleClass = rule.getClass();
+                event.country = UpiEvents.country(upi);
+                event.strict = strict;
+                event.messageCount = errors.size() - ruleBefore;
+                event.passed = errors.size() == ruleBefore;
+                event.commit();
+            }
+
+            if (this.failFast && errors.size() > before) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pass/fail without keeping messages. Always stops at the first failing rule.
+     *
+     * @param upi    UPI to validate
+     * @param strict strict mode
+     * @param buffer scratch list, cleared before use
+     * @return true if no rule reported a message
+     */
+    public boolean isValid(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> buffer) {
+        ValidationRuleInterface[] rules = strict ? this.strictRules : this.looseRules;
+        buffer.clear();
+
+        for (ValidationRuleInterface rule : rules) {
+            rule.validate(upi, strict, buffer);
+
+            if (buffer.size() > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean appliesTo(boolean strict) {
+        return (strict ? this.strictRules : this.looseRules).length > 0;
+    }
+
+    /**
+     * @return every field read by any of the compiled rules
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(this.dependencies);
+    }
+
+    public int getDependencyMask() {
+        return this.dependencyMask;
+    }
+
+    /**
+     * The same list is returned every time, so {@link org.reso.upi.Upi} can remember results for it.
+     *
+     * @return a rule set holding only this compiled rule
+     */
+    public ArrayList<ValidationRuleInterface> asRuleSet() {
+        return this.ruleSet;
+    }
+
+    /**
+     * @param strict strict mode
+     * @return the rules run in that mode, in execution order
+     */
+    public ArrayList<ValidationRuleInterface> getRules(boolean strict) {
+        return new ArrayList<ValidationRuleInterface>(Arrays.asList(strict ? this.strictRules : this.looseRules));
+    }
+
+    /**
+     * @return true if validation stops at the first failing rule
+     */
+    public boolean isFailFast() {
+        return this.failFast;
+    }
+}
@@ -0,0 +1,148 @@
+package org.reso.upi.validation;
+
+import org.reso.upi.UpiInterface;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compiles a list of rules into a {@link CompiledRuleSet}.
+ *
+ * <p>
+ * Rules that are no-ops in a mode (see {@link ValidationRuleInterface#appliesTo(boolean)})
+ * are dropped from that mode. Given sample UPIs, the rules are also profiled and ordered
+ * so that cheap and often failing rules run first, which pays off with fail-fast.
+ * Messages are reported in execution order, so reordering changes their order too.
+ * </p>
+ */
+public final class RuleSetCompiler {
+    private static final int PROFILE_ROUNDS = 3;
+
+    private RuleSetCompiler() {
+    }
+
+    /**
+     * Keeps the given order and runs every rule
+     *
+     * @param ruleSet rules to compile
+     * @return compiled rule set
+     */
+    public static CompiledRuleSet compile(List<ValidationRuleInterface> ruleSet) {
+        return RuleSetCompiler.compile(ruleSet, false);
+    }
+
+    /**
+     * Keeps the given order
+     *
+     * @param ruleSet  rules to compile
+     * @param failFast stop at the first rule that reports a message
+     * @return compiled rule set
+     */
+    public static CompiledRuleSet compile(List<ValidationRuleInterface> ruleSet, boolean failFast) {
+        return new CompiledRuleSet(
+                RuleSetCompiler.applicable(ruleSet, false),
+                RuleSetCompiler.applicable(ruleSet, true),
+                failFast
+        );
+    }
+
+    /**
+     * Orders each mode by the profile measured over the samples
+     *
+     * @param ruleSet  rules to compile
+     * @param failFast stop at the first rule that reports a message
+     * @param samples  representative UPIs, ideally including failing ones
+     * @return compiled rule set
+     */
+    public static CompiledRuleSet compile(List<ValidationRuleInterface> ruleSet, boolean failFast, List<? extends UpiInterface> samples) {
+        return new CompiledRuleSet(
+                RuleSetCompiler.ordered(RuleSetCompiler.profile(ruleSet, false, samples)),
+                RuleSetCompiler.ordered(RuleSetCompiler.profile(ruleSet, true, samples)),
+                failFast
+        );
+    }
+
+    /**
+     * Measures each rule that applies to the mode over the samples.
+     * Every rule is timed over the whole sample list, after a warm-up round.
+     *
+     * @param ruleSet rules to profile
+     * @param strict  strict mode
+     * @param samples representative UPIs
+     * @return one profile per applicable rule, in the given order
+     */
+    public static ArrayList<RuleProfile> profile(List<ValidationRuleInterface> ruleSet, boolean strict, List<? extends UpiInterface> samples) {
+        ArrayList<RuleProfile> profiles = new ArrayList<RuleProfile>();
+        ArrayList<ValidationMessage> scratch = new ArrayList<ValidationMessage>();
+
+        for (ValidationRuleInterface rule : RuleSetCompiler.applicable(ruleSet, strict)) {
+            long nanos = 0;
+            int failures = 0;
+
+            for (int round = 0; round <= PROFILE_ROUNDS; round++) {
+                long start = System.nanoTime();
+
+                for (UpiInterface sample : samples) {
+                    scratch.clear();
+                    rule.validate(sample, strict, scratch);
+
+                    if (round == 0 && scratch.size() > 0) {
+                        failures++;
+                    }
+                }
+
+                // Round 0 only warms up and counts failures
+                if (round > 0) {
+                    nanos += System.nanoTime() - start;
+                }
+            }
+
+            double calls = Math.max(1, samples.size()) * (double) PROFILE_ROUNDS;
+            double failureRate = samples.isEmpty() ? 0 : failures / (double) samples.size();
+
+            profiles.add(new RuleProfile(rule, nanos / calls, failureRate));
+        }
+
+        return profiles;
+    }
+
+    /**
+     * @param ruleSet rules to filter
+     * @param strict  strict mode
+     * @return the rules that apply to the mode, in the given order
+     */
+    private static ValidationRuleInterface[] applicable(List<ValidationRuleInterface> ruleSet, boolean strict) {
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>(ruleSet.size());
+
+        for (ValidationRuleInterface rule : ruleSet) {
+            if (rule.appliesTo(strict)) {
+                rules.add(rule);
+            }
+        }
+
+        return rules.toArray(new ValidationRuleInterface[0]);
+    }
+
+    /**
+     * @param profiles profiled rules
+     * @return the rules by ascending score, ties kept in the given order
+     */
+    private static ValidationRuleInterface[] ordered(ArrayList<RuleProfile> profiles) {
+        ArrayList<RuleProfile> sorted = new ArrayList<RuleProfile>(profiles);
+        Collections.sort(sorted, new Comparator<RuleProfile>() {
+            public int compare(RuleProfile a, RuleProfile b) {
+                int byScore = Double.compare(a.getScore(), b.getScore());
+                return (byScore != 0) ? byScore : Double.compare(a.getNanosPerCall(), b.getNanosPerCall());
+            }
+        });
+
+        ValidationRuleInterface[] rules = new ValidationRuleInterface[sorted.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = sorted.get(i).getRule();
+        }
+
+        return rules;
+    }
+}
@@ -1,9 +1,55 @@
 package org.reso.upi.validation;
 
+import org.reso.upi.UpiField;
 import org.reso.upi.UpiInterface;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 public interface ValidationRuleInterface {
     ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict);
+
+    /**
+     * Appends any messages to the given list instead of returning a new one.
+     * Rules on the hot path should override this so that passing UPIs allocate nothing.
+     *
+     * @param upi      UPI to validate
+     * @param strict   strict mode
+     * @param messages list to append messages to
+     */
+    default void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> messages) {
+        messages.addAll(this.validate(upi, strict));
+    }
+
+    /**
+     * Rules that can never produce a message in one mode should say so here,
+     * so they can be left out of that mode entirely.
+     *
+     * @param strict strict mode
+     * @return false if the rule is a no-op in this mode
+     */
+    default boolean appliesTo(boolean strict) {
+        return true;
+    }
+
+    /**
+     * The UPI fields this rule reads. After a setter changes a field, only the rules
+     * that depend on it run again. Rules that do not say are assumed to read everything;
+     * a rule that reads nothing still runs once for each new record or rule set.
+     *
+     * @return fields read by this rule
+     */
+    default EnumSet<UpiField> getDependencies() {
+        return EnumSet.allOf(UpiField.class);
+    }
+
+    /**
+     * {@link #getDependencies()} as {@link UpiField#mask(java.util.Set)}, read once for each
+     * rule set a UPI validates against. Override it with a constant to skip building the set.
+     *
+     * @return bits of the fields read by this rule
+     */
+    default int getDependencyMask() {
+        return UpiField.mask(this.getDependencies());
+    }
 }
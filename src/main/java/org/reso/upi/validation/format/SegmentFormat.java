@@ -0,0 +1,120 @@
+package org.reso.upi.validation.format;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+
+/**
+ * One declared segment format: in a country, optionally only for one sub country code,
+ * a UPI segment must match a pattern.
+ */
+public final class SegmentFormat {
+    private final CountryCode countryCode;
+    private final String region;
+    private final UpiField field;
+    private final SegmentPattern pattern;
+    private final String message;
+
+    /**
+     * @param countryCode country the format applies to
+     * @param region      sub country code the format applies to, or null for the whole country
+     * @param field       one of the six UPI pieces
+     * @param pattern     pattern the segment must match
+     */
+    public SegmentFormat(CountryCode countryCode, String region, UpiField field, SegmentPattern pattern) {
+        if (field == UpiField.DESCRIPTION || field == UpiField.UPI_TEXT) {
+            throw new IllegalArgumentException("Only the six UPI pieces can have a format, not " + field);
+        }
+
+        this.countryCode = countryCode;
+        this.region = region;
+        this.field = field;
+        this.pattern = pattern;
+        this.message = "The " + field + " does not match the format `" + pattern + "` for "
+                + countryCode.getAlpha2() + ((region == null) ? "" : " " + region);
+    }
+
+    /**
+     * @param upi UPI to check
+     * @return true if the segment matches, or is missing (that is another rule's job)
+     */
+    public boolean matches(UpiInterface upi) {
+        String segment = SegmentFormat.getSegment(upi, this.field);
+
+        return segment == null || this.pattern.matches(segment);
+    }
+
+    /**
+     * @param upi   UPI to read from
+     * @param field one of the six UPI pieces
+     * @return the segment text as used in the UPI, or null if missing
+     */
+    static String getSegment(UpiInterface upi, UpiField field) {
+        switch (field) {
+            case COUNTRY_CODE:
+                CountryCode countryCode = upi.getCountryCode();
+                if (countryCode == null) {
+                    return null;
+                }
+                return (countryCode == CountryCode.UNDEFINED) ? upi.getUndefinedCountryCode() : countryCode.getAlpha2();
+
+            case SUB_COUNTRY_CODE:
+                return upi.getSubCountryCode();
+
+            case SUB_COUNTY_CODE:
+                return upi.getSubCountyCode();
+
+            case PROPERTY_ID:
+                return upi.getPropertyId();
+
+            case PROPERTY_TYPE_CODE:
+                return upi.getPropertyTypeCodeText();
+
+            case SUB_PROPERTY:
+                return upi.getSubProperty();
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return country the format applies to
+     */
+    public CountryCode getCountryCode() {
+        return this.countryCode;
+    }
+
+    /**
+     * @return sub country code the format applies to, or null for the whole country
+     */
+    public String getRegion() {
+        return this.region;
+    }
+
+    /**
+     * @return checked field
+     */
+    public UpiField getField() {
+        return this.field;
+    }
+
+    /**
+     * @return compiled pattern
+     */
+    public SegmentPattern getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * @return english error message for a mismatch
+     */
+    public String getMessage() {
+        return this.message;
+    }
+
+    @Override
+    public String toString() {
+        return this.countryCode.getAlpha2() + " " + ((this.region == null) ? "*" : this.region) + " " + this.field + " " + this.pattern;
+    }
+}
@@ -0,0 +1,273 @@
+package org.reso.upi.validation.format;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.validation.AbstractValidationRule;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks UPI segments against declared per-country and per-region formats (strict).
+ *
+ * <p>
+ * Formats are usually loaded from a local file with one format per line:
+ * </p>
+ *
+ * <pre>
+ * # COUNTRY  REGION  FIELD             PATTERN
+ * US         *       SUB_COUNTRY_CODE  \d{5}
+ * US         04013   PROPERTY_ID       [A-Z0-9]{8,9}
+ * </pre>
+ *
+ * <p>
+ * REGION is a sub country code, or {@code *} for the whole country. FIELD is one of the six
+ * pieces of {@link UpiField}. The pattern is the rest of the line, see {@link SegmentPattern}.
+ * Blank lines and lines starting with {@code #} are ignored.
+ * Every pattern is compiled once, when the rule is built.
+ * </p>
+ */
+public class SegmentFormatRule extends AbstractValidationRule {
+    public static final int FORMAT_MISMATCH_CODE = 420;
+
+    private final EnumMap<CountryCode, CountryFormats> formats = new EnumMap<CountryCode, CountryFormats>(CountryCode.class);
+    private final EnumSet<UpiField> dependencies = EnumSet.of(UpiField.COUNTRY_CODE, UpiField.SUB_COUNTRY_CODE);
+    private final int dependencyMask;
+
+    /**
+     * @param formats formats to check
+     */
+    public SegmentFormatRule(List<SegmentFormat> formats) {
+        HashMap<CountryCode, ArrayList<SegmentFormat>> anyRegion = new HashMap<CountryCode, ArrayList<SegmentFormat>>();
+        HashMap<CountryCode, HashMap<String, ArrayList<SegmentFormat>>> byRegion = new HashMap<CountryCode, HashMap<String, ArrayList<SegmentFormat>>>();
+
+        for (SegmentFormat format : formats) {
+            this.dependencies.add(format.getField());
+
+            if (format.getRegion() == null) {
+                SegmentFormatRule.listFor(anyRegion, format.getCountryCode()).add(format);
+            } else {
+                HashMap<String, ArrayList<SegmentFormat>> regions = byRegion.get(format.getCountryCode());
+                if (regions == null) {
+                    regions = new HashMap<String, ArrayList<SegmentFormat>>();
+                    byRegion.put(format.getCountryCode(), regions);
+                }
+
+                SegmentFormatRule.listFor(regions, format.getRegion()).add(format);
+            }
+        }
+
+        this.dependencyMask = UpiField.mask(this.dependencies);
+
+        // Freeze into arrays, so validation walks arrays only
+        for (SegmentFormat format : formats) {
+            CountryCode countryCode = format.getCountryCode();
+
+            if (!this.formats.containsKey(countryCode)) {
+                HashMap<String, SegmentFormat[]> regions = new HashMap<String, SegmentFormat[]>();
+
+                if (byRegion.containsKey(countryCode)) {
+                    for (Map.Entry<String, ArrayList<SegmentFormat>> entry : byRegion.get(countryCode).entrySet()) {
+                        regions.put(entry.getKey(), entry.getValue().toArray(new SegmentFormat[0]));
+                    }
+                }
+
+                ArrayList<SegmentFormat> countryWide = anyRegion.get(countryCode);
+                this.formats.put(countryCode, new CountryFormats(
+                        (countryWide == null) ? new SegmentFormat[0] : countryWide.toArray(new SegmentFormat[0]),
+                        regions
+                ));
+            }
+        }
+    }
+
+    /**
+     * @param path local format file (UTF-8)
+     * @return rule checking the formats in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static SegmentFormatRule load(Path path) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+
+        try {
+            return SegmentFormatRule.load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param resource class path resource, eg `/upi-formats.txt`
+     * @return rule checking the formats in the resource
+     * @throws IOException if the resource is missing or cannot be read
+     */
+    public static SegmentFormatRule loadResource(String resource) throws IOException {
+        InputStream stream = SegmentFormatRule.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new IOException("Missing resource " + resource);
+        }
+
+        Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+
+        try {
+            return SegmentFormatRule.load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param reader format lines, closed by the caller
+     * @return rule checking the formats read
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static SegmentFormatRule load(Reader reader) throws IOException {
+        return new SegmentFormatRule(SegmentFormatRule.parse(reader));
+    }
+
+    /**
+     * @param reader format lines, closed by the caller
+     * @return the formats read
+     * @throws IOException              if reading fails
+     * @throws IllegalArgumentException if a line is invalid
+     */
+    public static ArrayList<SegmentFormat> parse(Reader reader) throws IOException {
+        BufferedReader lines = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+        ArrayList<SegmentFormat> formats = new ArrayList<SegmentFormat>();
+        int lineNumber = 0;
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] columns = line.split("\\s+", 4);
+            if (columns.length < 4) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected COUNTRY REGION FIELD PATTERN");
+            }
+
+            CountryCode countryCode = CountryCode.getByCodeIgnoreCase(columns[0]);
+            if (countryCode == null || countryCode == CountryCode.UNDEFINED) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unknown country code " + columns[0]);
+            }
+
+            UpiField field;
+            try {
+                field = UpiField.valueOf(columns[2].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unknown field " + columns[2]);
+            }
+
+            try {
+                formats.add(new SegmentFormat(
+                        countryCode,
+                        "*".equals(columns[1]) ? null : columns[1],
+                        field,
+                        SegmentPattern.compile(columns[3])
+                ));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        return formats;
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
+        if (!strict || upi.getCountryCode() == null) {
+            return;
+        }
+
+        CountryFormats countryFormats = this.formats.get(upi.getCountryCode());
+        if (countryFormats == null) {
+            return;
+        }
+
+        SegmentFormatRule.check(upi, countryFormats.anyRegion, errors);
+
+        String subCountryCode = upi.getSubCountryCode();
+        if (subCountryCode != null && !countryFormats.byRegion.isEmpty()) {
+            SegmentFormat[] regionFormats = countryFormats.byRegion.get(subCountryCode);
+
+            if (regionFormats != null) {
+                SegmentFormatRule.check(upi, regionFormats, errors);
+            }
+        }
+    }
+
+    /**
+     * Only checks anything in strict mode
+     */
+    public boolean appliesTo(boolean strict) {
+        return strict;
+    }
+
+    /**
+     * Reads the country, the sub country code and every field that has a format
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(this.dependencies);
+    }
+
+    public int getDependencyMask() {
+        return this.dependencyMask;
+    }
+
+    private static void check(UpiInterface upi, SegmentFormat[] formats, ArrayList<ValidationMessage> errors) {
+        for (SegmentFormat format : formats) {
+            if (!format.matches(upi)) {
+                errors.add(new ValidationMessage(FORMAT_MISMATCH_CODE, format.getMessage()));
+            }
+        }
+    }
+
+    private static <K> ArrayList<SegmentFormat> listFor(HashMap<K, ArrayList<SegmentFormat>> map, K key) {
+        ArrayList<SegmentFormat> list = map.get(key);
+
+        if (list == null) {
+            list = new ArrayList<SegmentFormat>();
+            map.put(key, list);
+        }
+
+        return list;
+    }
+
+    /**
+     * Formats of one country, split by region
+     */
+    private static final class CountryFormats {
+        final SegmentFormat[] anyRegion;
+        final HashMap<String, SegmentFormat[]> byRegion;
+
+        CountryFormats(SegmentFormat[] anyRegion, HashMap<String, SegmentFormat[]> byRegion) {
+            this.anyRegion = anyRegion;
+            this.byRegion = byRegion;
+        }
+    }
+}
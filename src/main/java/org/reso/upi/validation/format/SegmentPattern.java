@@ -0,0 +1,685 @@
+package org.reso.upi.validation.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A segment format pattern compiled to a deterministic automaton.
+ *
+ * <p>
+ * The pattern syntax is a small subset of regular expressions, enough to describe
+ * UPI segments: literals, {@code .}, character classes such as {@code [A-Z0-9]} or
+ * {@code [^-]}, the escapes {@code \d \w \s \D \W \S}, grouping, alternation with
+ * {@code |} and the quantifiers {@code * + ?} and {@code {n}}, {@code {n,}}, {@code {n,m}}.
+ * Patterns always match the whole segment, and literals must be ASCII. Repeat counts
+ * are limited to 1000.
+ * </p>
+ *
+ * <p>
+ * Matching walks a transition table one character at a time: there is no backtracking
+ * and nothing is allocated, unlike {@code java.util.regex}. Instances are immutable and
+ * can be shared between threads.
+ * </p>
+ */
+public final class SegmentPattern {
+    private static final int MAX_STATES = 10000;
+
+    // Counted repeats are expanded into copies, so both are bounded before they can exhaust memory
+    private static final int MAX_REPEAT = 1000;
+    private static final int MAX_NFA_STATES = 100000;
+
+    // Index used for every non-ASCII character
+    private static final int OTHER = 128;
+
+    private final String pattern;
+    private final int[] charClasses;
+    private final int classCount;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private SegmentPattern(String pattern, int[] charClasses, int classCount, int[] transitions, boolean[] accepting) {
+        this.pattern = pattern;
+        this.charClasses = charClasses;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * @param pattern segment pattern
+     * @return compiled pattern
+     * @throws IllegalArgumentException if the pattern is invalid or too large
+     */
+    public static SegmentPattern compile(String pattern) {
+        Parser parser = new Parser(pattern);
+        Node root = parser.parse();
+
+        // Thompson construction, then subset construction over character classes
+        ArrayList<boolean[]> sets = new ArrayList<boolean[]>();
+        NfaBuilder nfa = new NfaBuilder(pattern, sets);
+        Fragment fragment = nfa.build(root);
+
+        int[] charClasses = new int[OTHER + 1];
+        int classCount = SegmentPattern.partition(sets, charClasses);
+
+        return SegmentPattern.determinize(pattern, nfa.states, fragment, charClasses, classCount);
+    }
+
+    /**
+     * @param segment segment text, may be null
+     * @return true if the whole segment matches
+     */
+    public boolean matches(CharSequence segment) {
+        if (segment == null) {
+            return false;
+        }
+
+        int state = 0;
+
+        for (int i = 0, length = segment.length(); i < length; i++) {
+            char c = segment.charAt(i);
+            int charClass = this.charClasses[(c < OTHER) ? c : OTHER];
+
+            state = this.transitions[state * this.classCount + charClass];
+            if (state < 0) {
+                return false;
+            }
+        }
+
+        return this.accepting[state];
+    }
+
+    /**
+     * Stepping API, for callers that feed characters one at a time (eg while normalising)
+     *
+     * @return the start state
+     */
+    public int start() {
+        return 0;
+    }
+
+    /**
+     * @param state current state, from {@link #start()} or a previous step
+     * @param c     next character
+     * @return the next state, or -1 if no match is possible any more
+     */
+    public int step(int state, char c) {
+        if (state < 0) {
+            return -1;
+        }
+
+        return this.transitions[state * this.classCount + this.charClasses[(c < OTHER) ? c : OTHER]];
+    }
+
+    /**
+     * @param state state after the last character
+     * @return true if the characters fed so far match
+     */
+    public boolean isAccepting(int state) {
+        return state >= 0 && this.accepting[state];
+    }
+
+    /**
+     * @return the pattern this was compiled from
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * @return number of automaton states
+     */
+    public int getStateCount() {
+        return this.accepting.length;
+    }
+
+    @Override
+    public String toString() {
+        return this.pattern;
+    }
+
+
+    /* Compilation */
+
+    /**
+     * Groups characters that belong to exactly the same sets, so the table
+     * needs one column per group instead of one per character
+     *
+     * @return number of groups
+     */
+    private static int partition(ArrayList<boolean[]> sets, int[] charClasses) {
+        HashMap<BitSet, Integer> groups = new HashMap<BitSet, Integer>();
+
+        for (int c = 0; c <= OTHER; c++) {
+            BitSet signature = new BitSet(sets.size());
+
+            for (int i = 0; i < sets.size(); i++) {
+                if (sets.get(i)[c]) {
+                    signature.set(i);
+                }
+            }
+
+            Integer group = groups.get(signature);
+            if (group == null) {
+                group = groups.size();
+                groups.put(signature, group);
+            }
+
+            charClasses[c] = group;
+        }
+
+        return groups.size();
+    }
+
+    private static SegmentPattern determinize(String pattern, ArrayList<NfaState> nfaStates, Fragment fragment, int[] charClasses, int classCount) {
+        // One representative character per class
+        int[] representatives = new int[classCount];
+        for (int c = OTHER; c >= 0; c--) {
+            representatives[charClasses[c]] = c;
+        }
+
+        HashMap<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+        ArrayList<BitSet> states = new ArrayList<BitSet>();
+
+        BitSet start = new BitSet();
+        SegmentPattern.closure(fragment.start, start);
+        ids.put(start, 0);
+        states.add(start);
+
+        int[] transitions = new int[16 * classCount];
+
+        for (int id = 0; id < states.size(); id++) {
+            BitSet current = states.get(id);
+
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                int c = representatives[charClass];
+                BitSet next = new BitSet();
+
+                for (int n = current.nextSetBit(0); n >= 0; n = current.nextSetBit(n + 1)) {
+                    NfaState state = nfaStates.get(n);
+
+                    if (state.set != null && state.set[c]) {
+                        SegmentPattern.closure(state.next, next);
+                    }
+                }
+
+                int target = -1;
+                if (!next.isEmpty()) {
+                    Integer existing = ids.get(next);
+
+                    if (existing == null) {
+                        if (states.size() >= MAX_STATES) {
+                            throw new IllegalArgumentException("The pattern `" + pattern + "` needs more than " + MAX_STATES + " states");
+                        }
+
+                        existing = states.size();
+                        ids.put(next, existing);
+                        states.add(next);
+                    }
+
+                    target = existing;
+                }
+
+                int index = id * classCount + charClass;
+                if (index >= transitions.length) {
+                    int[] grown = new int[transitions.length * 2];
+                    System.arraycopy(transitions, 0, grown, 0, transitions.length);
+                    transitions = grown;
+                }
+
+                transitions[index] = target;
+            }
+        }
+
+        int[] table = new int[states.size() * classCount];
+        System.arraycopy(transitions, 0, table, 0, table.length);
+
+        boolean[] accepting = new boolean[states.size()];
+        for (int id = 0; id < accepting.length; id++) {
+            accepting[id] = states.get(id).get(fragment.end.id);
+        }
+
+        return new SegmentPattern(pattern, charClasses, classCount, table, accepting);
+    }
+
+    private static void closure(NfaState state, BitSet into) {
+        ArrayList<NfaState> pending = new ArrayList<NfaState>();
+        pending.add(state);
+
+        while (!pending.isEmpty()) {
+            NfaState current = pending.remove(pending.size() - 1);
+
+            if (!into.get(current.id)) {
+                into.set(current.id);
+                pending.addAll(current.epsilons);
+            }
+        }
+    }
+
+
+    /* Syntax tree */
+
+    private static final class Node {
+        static final int CHARS = 0;
+        static final int CONCAT = 1;
+        static final int ALTERNATE = 2;
+        static final int REPEAT = 3;
+
+        final int kind;
+        final boolean[] set;
+        final ArrayList<Node> children = new ArrayList<Node>();
+        final int min;
+        final int max;
+
+        Node(int kind, boolean[] set, int min, int max) {
+            this.kind = kind;
+            this.set = set;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private static final class Parser {
+        private final String pattern;
+        private int position;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Node parse() {
+            Node node = this.alternation();
+
+            if (this.position < this.pattern.length()) {
+                throw this.error("Unexpected `" + this.pattern.charAt(this.position) + "`");
+            }
+
+            return node;
+        }
+
+        private Node alternation() {
+            Node first = this.concatenation();
+
+            if (!this.peek('|')) {
+                return first;
+            }
+
+            Node node = new Node(Node.ALTERNATE, null, 0, 0);
+            node.children.add(first);
+
+            while (this.peek('|')) {
+                this.position++;
+                node.children.add(this.concatenation());
+            }
+
+            return node;
+        }
+
+        private Node concatenation() {
+            Node node = new Node(Node.CONCAT, null, 0, 0);
+
+            while (this.position < this.pattern.length() && !this.peek('|') && !this.peek(')')) {
+                node.children.add(this.repetition());
+            }
+
+            return node;
+        }
+
+        private Node repetition() {
+            Node node = this.atom();
+
+            while (this.position < this.pattern.length()) {
+                char c = this.pattern.charAt(this.position);
+                int min;
+                int max;
+
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    this.position++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    this.position++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    this.position++;
+                } else if (c == '{') {
+                    this.position++;
+                    min = this.number();
+                    max = min;
+
+                    if (this.peek(',')) {
+                        this.position++;
+                        max = this.peek('}') ? -1 : this.number();
+                    }
+
+                    this.expect('}');
+
+                    if (max != -1 && max < min) {
+                        throw this.error("Bad repetition {" + min + "," + max + "}");
+                    }
+                } else {
+                    break;
+                }
+
+                Node repeat = new Node(Node.REPEAT, null, min, max);
+                repeat.children.add(node);
+                node = repeat;
+            }
+
+            return node;
+        }
+
+        private Node atom() {
+            char c = this.pattern.charAt(this.position++);
+
+            switch (c) {
+                case '(':
+                    Node group = this.alternation();
+                    this.expect(')');
+                    return group;
+
+                case '[':
+                    return new Node(Node.CHARS, this.characterClass(), 0, 0);
+
+                case '.':
+                    boolean[] any = new boolean[OTHER + 1];
+                    Arrays.fill(any, true);
+                    return new Node(Node.CHARS, any, 0, 0);
+
+                case '\\':
+                    return new Node(Node.CHARS, this.escape(), 0, 0);
+
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                    throw this.error("Unexpected `" + c + "`");
+
+                default:
+                    return new Node(Node.CHARS, this.literal(c), 0, 0);
+            }
+        }
+
+        private boolean[] characterClass() {
+            boolean[] set = new boolean[OTHER + 1];
+            boolean negate = this.peek('^');
+
+            if (negate) {
+                this.position++;
+            }
+
+            while (!this.peek(']')) {
+                if (this.position >= this.pattern.length()) {
+                    throw this.error("Unclosed character class");
+                }
+
+                char c = this.pattern.charAt(this.position++);
+
+                if (c == '\\') {
+                    boolean[] escaped = this.escape();
+                    for (int i = 0; i <= OTHER; i++) {
+                        set[i] |= escaped[i];
+                    }
+                    continue;
+                }
+
+                this.checkAscii(c);
+                char last = c;
+
+                // A range, unless the dash is the last thing in the class
+                if (this.peek('-') && this.position + 1 < this.pattern.length() && this.pattern.charAt(this.position + 1) != ']') {
+                    this.position++;
+                    last = this.pattern.charAt(this.position++);
+                    this.checkAscii(last);
+
+                    if (last < c) {
+                        throw this.error("Bad range " + c + "-" + last);
+                    }
+                }
+
+                for (int i = c; i <= last; i++) {
+                    set[i] = true;
+                }
+            }
+
+            this.position++;
+
+            if (negate) {
+                for (int i = 0; i <= OTHER; i++) {
+                    set[i] = !set[i];
+                }
+            }
+
+            return set;
+        }
+
+        private boolean[] escape() {
+            if (this.position >= this.pattern.length()) {
+                throw this.error("Trailing backslash");
+            }
+
+            char c = this.pattern.charAt(this.position++);
+            boolean[] set = new boolean[OTHER + 1];
+
+            switch (Character.toLowerCase(c)) {
+                case 'd':
+                    fill(set, '0', '9');
+                    break;
+
+                case 'w':
+                    fill(set, '0', '9');
+                    fill(set, 'A', 'Z');
+                    fill(set, 'a', 'z');
+                    set['_'] = true;
+                    break;
+
+                case 's':
+                    set[' '] = true;
+                    set['\t'] = true;
+                    set['\n'] = true;
+                    set['\r'] = true;
+                    set['\f'] = true;
+                    set[0x0B] = true;
+                    break;
+
+                default:
+                    return this.literal(c);
+            }
+
+            // Upper case escapes are the negation
+            if (Character.isUpperCase(c)) {
+                for (int i = 0; i <= OTHER; i++) {
+                    set[i] = !set[i];
+                }
+            }
+
+            return set;
+        }
+
+        private boolean[] literal(char c) {
+            this.checkAscii(c);
+
+            boolean[] set = new boolean[OTHER + 1];
+            set[c] = true;
+            return set;
+        }
+
+        private int number() {
+            int start = this.position;
+            int value = 0;
+
+            while (this.position < this.pattern.length() && Character.isDigit(this.pattern.charAt(this.position))) {
+                value = value * 10 + (this.pattern.charAt(this.position) - '0');
+                this.position++;
+
+                // Checked per digit, so a long count cannot overflow
+                if (value > MAX_REPEAT) {
+                    this.position = start;
+                    throw this.error("Repeat count above " + MAX_REPEAT);
+                }
+            }
+
+            if (start == this.position) {
+                throw this.error("Expected a number");
+            }
+
+            return value;
+        }
+
+        private boolean peek(char c) {
+            return this.position < this.pattern.length() && this.pattern.charAt(this.position) == c;
+        }
+
+        private void expect(char c) {
+            if (!this.peek(c)) {
+                throw this.error("Expected `" + c + "`");
+            }
+
+            this.position++;
+        }
+
+        private void checkAscii(char c) {
+            if (c >= OTHER) {
+                throw this.error("Only ASCII literals are supported");
+            }
+        }
+
+        private static void fill(boolean[] set, char from, char to) {
+            for (int i = from; i <= to; i++) {
+                set[i] = true;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + this.position + " in `" + this.pattern + "`");
+        }
+    }
+
+
+    /* Non-deterministic automaton */
+
+    private static final class NfaState {
+        final int id;
+        final ArrayList<NfaState> epsilons = new ArrayList<NfaState>(2);
+        boolean[] set;
+        NfaState next;
+
+        NfaState(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Fragment {
+        final NfaState start;
+        final NfaState end;
+
+        Fragment(NfaState start, NfaState end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class NfaBuilder {
+        final ArrayList<NfaState> states = new ArrayList<NfaState>();
+        final String pattern;
+        final ArrayList<boolean[]> sets;
+
+        NfaBuilder(String pattern, ArrayList<boolean[]> sets) {
+            this.pattern = pattern;
+            this.sets = sets;
+        }
+
+        Fragment build(Node node) {
+            switch (node.kind) {
+                case Node.CHARS: {
+                    Fragment fragment = this.empty();
+                    fragment.start.epsilons.clear();
+                    fragment.start.set = node.set;
+                    fragment.start.next = fragment.end;
+                    this.sets.add(node.set);
+                    return fragment;
+                }
+
+                case Node.CONCAT: {
+                    Fragment fragment = this.empty();
+                    for (Node child : node.children) {
+                        fragment = this.append(fragment, this.build(child));
+                    }
+                    return fragment;
+                }
+
+                case Node.ALTERNATE: {
+                    NfaState start = this.state();
+                    NfaState end = this.state();
+                    for (Node child : node.children) {
+                        Fragment branch = this.build(child);
+                        start.epsilons.add(branch.start);
+                        branch.end.epsilons.add(end);
+                    }
+                    return new Fragment(start, end);
+                }
+
+                default: {
+                    Node child = node.children.get(0);
+                    Fragment fragment = this.empty();
+
+                    for (int i = 0; i < node.min; i++) {
+                        fragment = this.append(fragment, this.build(child));
+                    }
+
+                    if (node.max == -1) {
+                        Fragment loop = this.build(child);
+                        NfaState start = this.state();
+                        NfaState end = this.state();
+                        start.epsilons.add(loop.start);
+                        start.epsilons.add(end);
+                        loop.end.epsilons.add(loop.start);
+                        loop.end.epsilons.add(end);
+                        fragment = this.append(fragment, new Fragment(start, end));
+                    } else {
+                        for (int i = node.min; i < node.max; i++) {
+                            Fragment optional = this.build(child);
+                            NfaState start = this.state();
+                            NfaState end = this.state();
+                            start.epsilons.add(optional.start);
+                            start.epsilons.add(end);
+                            optional.end.epsilons.add(end);
+                            fragment = this.append(fragment, new Fragment(start, end));
+                        }
+                    }
+
+                    return fragment;
+                }
+            }
+        }
+
+        private Fragment empty() {
+            NfaState start = this.state();
+            NfaState end = this.state();
+            start.epsilons.add(end);
+            return new Fragment(start, end);
+        }
+
+        private Fragment append(Fragment first, Fragment second) {
+            first.end.epsilons.add(second.start);
+            return new Fragment(first.start, second.end);
+        }
+
+        private NfaState state() {
+            // Nested counted repeats multiply, e.g. (\d{1000}){1000}
+            if (this.states.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("The pattern `" + this.pattern + "` needs more than " + MAX_NFA_STATES + " NFA states");
+            }
+
+            NfaState state = new NfaState(this.states.size());
+            this.states.add(state);
+            return state;
+        }
+    }
+}
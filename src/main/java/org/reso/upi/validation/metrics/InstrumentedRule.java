@@ -0,0 +1,155 @@
+package org.reso.upi.validation.metrics;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.validation.AbstractValidationRule;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times a rule and counts its failures, created by {@link RuleMetrics#instrument(java.util.List)}.
+ * When the metrics are disabled it only adds one volatile read per call.
+ */
+public final class InstrumentedRule extends AbstractValidationRule {
+    // Codes below this have their own counter, the rest share a map
+    private static final int INDEXED_CODES = 1000;
+
+    private final ValidationRuleInterface rule;
+    private final RuleMetrics metrics;
+    private final int dependencyMask;
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicReferenceArray<LongAdder> codeCounts = new AtomicReferenceArray<LongAdder>(INDEXED_CODES);
+    private final ConcurrentHashMap<Integer, LongAdder> otherCodeCounts = new ConcurrentHashMap<Integer, LongAdder>();
+
+    InstrumentedRule(ValidationRuleInterface rule, RuleMetrics metrics) {
+        this.rule = rule;
+        this.metrics = metrics;
+        this.dependencyMask = rule.getDependencyMask();
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
+        if (!this.metrics.isEnabled()) {
+            this.rule.validate(upi, strict, errors);
+            return;
+        }
+
+        int before = errors.size();
+        long start = System.nanoTime();
+
+        this.rule.validate(upi, strict, errors);
+
+        long nanos = System.nanoTime() - start;
+
+        this.invocations.increment();
+        this.totalNanos.add(nanos);
+        this.latencies.record(nanos);
+
+        if (errors.size() > before) {
+            this.failures.increment();
+
+            for (int i = before, size = errors.size(); i < size; i++) {
+                this.countCode(errors.get(i).getCode());
+            }
+        }
+    }
+
+    public boolean appliesTo(boolean strict) {
+        return this.rule.appliesTo(strict);
+    }
+
+    public EnumSet<UpiField> getDependencies() {
+        return this.rule.getDependencies();
+    }
+
+    public int getDependencyMask() {
+        return this.dependencyMask;
+    }
+
+    /**
+     * @return the timed rule
+     */
+    public ValidationRuleInterface getRule() {
+        return this.rule;
+    }
+
+    RuleStats snapshot() {
+        TreeMap<Integer, Long> byCode = new TreeMap<Integer, Long>();
+
+        for (int code = 0; code < INDEXED_CODES; code++) {
+            LongAdder count = this.codeCounts.get(code);
+
+            if (count != null && count.sum() > 0) {
+                byCode.put(code, count.sum());
+            }
+        }
+
+        for (Map.Entry<Integer, LongAdder> entry : this.otherCodeCounts.entrySet()) {
+            if (entry.getValue().sum() > 0) {
+                byCode.put(entry.getKey(), entry.getValue().sum());
+            }
+        }
+
+        return new RuleStats(
+                this.rule.getClass().getName(),
+                this.invocations.sum(),
+                this.totalNanos.sum(),
+                this.failures.sum(),
+                byCode,
+                this.latencies.counts()
+        );
+    }
+
+    void reset() {
+        this.invocations.reset();
+        this.totalNanos.reset();
+        this.failures.reset();
+        this.latencies.reset();
+
+        for (int code = 0; code < INDEXED_CODES; code++) {
+            LongAdder count = this.codeCounts.get(code);
+
+            if (count != null) {
+                count.reset();
+            }
+        }
+
+        for (LongAdder count : this.otherCodeCounts.values()) {
+            count.reset();
+        }
+    }
+
+    private void countCode(int code) {
+        if (code < 0 || code >= INDEXED_CODES) {
+            this.otherCodeCounts.computeIfAbsent(code, key -> new LongAdder()).increment();
+            return;
+        }
+
+        LongAdder count = this.codeCounts.get(code);
+
+        if (count == null) {
+            this.codeCounts.compareAndSet(code, null, new LongAdder());
+            count = this.codeCounts.get(code);
+        }
+
+        count.increment();
+    }
+}
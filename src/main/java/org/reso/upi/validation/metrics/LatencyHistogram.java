@@ -0,0 +1,107 @@
+package org.reso.upi.validation.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram on {@link LongAdder}s: exact below 16 ns, then eight
+ * buckets per power of two, so percentiles are within 12.5%. Recording is lock-free.
+ */
+public final class LatencyHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = LINEAR + (64 - 4) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos latency of one call
+     */
+    public void record(long nanos) {
+        this.buckets[LatencyHistogram.bucket(Math.max(0, nanos))].increment();
+    }
+
+    /**
+     * @return bucket counts, read one by one while recording may go on
+     */
+    public long[] counts() {
+        long[] counts = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+
+        return counts;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : this.buckets) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * @param counts     bucket counts from {@link #counts()}, or the difference of two of them
+     * @param percentile 0 to 100, eg 99.9
+     * @return latency below which that share of calls fell, within 12.5%, in nanoseconds
+     */
+    public static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+
+            if (seen >= Math.max(1, rank)) {
+                return LatencyHistogram.upperBound(bucket);
+            }
+        }
+
+        return LatencyHistogram.upperBound(counts.length - 1);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < LINEAR) {
+            return (int) nanos;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return LINEAR + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return largest value that falls into the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        if (exponent >= 63) {
+            return Long.MAX_VALUE;
+        }
+
+        long subBucket = (bucket - LINEAR) % SUB_BUCKETS;
+        long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,130 @@
+package org.reso.upi.validation.metrics;
+
+import org.reso.upi.validation.BatchingValidationRule;
+import org.reso.upi.validation.ValidationRuleInterface;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Per-rule timing and failure counts.
+ *
+ * <p>
+ * {@link #instrument(List)} wraps each rule of a rule set in an {@link InstrumentedRule}.
+ * Validate with the returned rule set as usual; the counters are {@link java.util.concurrent.atomic.LongAdder}s,
+ * so parallel validation does not contend on them. {@link #setEnabled(boolean)} turns recording
+ * off and on without rebuilding the rule set.
+ * </p>
+ *
+ * <pre>
+ * RuleMetrics metrics = new RuleMetrics();
+ * ArrayList&lt;ValidationRuleInterface&gt; timed = metrics.instrument(ruleSet);
+ *
+ * upi.validate(true, timed);
+ *
+ * for (RuleStats stats : metrics.snapshot()) {
+ *     System.out.println(stats);
+ * }
+ * </pre>
+ *
+ * <p>
+ * {@link BatchingValidationRule}s are left as they are, so that
+ * {@link org.reso.upi.Upi#validateAsync(boolean, ArrayList)} still batches them.
+ * </p>
+ */
+public final class RuleMetrics {
+    private volatile boolean enabled;
+
+    // Wrappers by wrapped rule, so instrumenting a rule twice shares its counters
+    private final IdentityHashMap<ValidationRuleInterface, InstrumentedRule> rules = new IdentityHashMap<ValidationRuleInterface, InstrumentedRule>();
+    private final ArrayList<InstrumentedRule> instrumentedRules = new ArrayList<InstrumentedRule>();
+
+    /**
+     * Creates enabled metrics
+     */
+    public RuleMetrics() {
+        this(true);
+    }
+
+    /**
+     * @param enabled record from the start
+     */
+    public RuleMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param ruleSet rules to time
+     * @return a new rule set with each rule wrapped, in the same order
+     */
+    public ArrayList<ValidationRuleInterface> instrument(List<ValidationRuleInterface> ruleSet) {
+        ArrayList<ValidationRuleInterface> instrumented = new ArrayList<ValidationRuleInterface>(ruleSet.size());
+
+        synchronized (this.rules) {
+            for (ValidationRuleInterface rule : ruleSet) {
+                if (rule instanceof InstrumentedRule || rule instanceof BatchingValidationRule) {
+                    instrumented.add(rule);
+                    continue;
+                }
+
+                InstrumentedRule wrapper = this.rules.get(rule);
+
+                if (wrapper == null) {
+                    wrapper = new InstrumentedRule(rule, this);
+                    this.rules.put(rule, wrapper);
+                    this.instrumentedRules.add(wrapper);
+                }
+
+                instrumented.add(wrapper);
+            }
+        }
+
+        return instrumented;
+    }
+
+    /**
+     * Reads the counters while validation may go on, so the numbers of one rule
+     * may be a few calls apart
+     *
+     * @return one entry per instrumented rule, in the order they were first instrumented
+     */
+    public ArrayList<RuleStats> snapshot() {
+        ArrayList<RuleStats> stats = new ArrayList<RuleStats>();
+
+        for (InstrumentedRule rule : this.getInstrumentedRules()) {
+            stats.add(rule.snapshot());
+        }
+
+        return stats;
+    }
+
+    /**
+     * Zeroes all counters
+     */
+    public void reset() {
+        for (InstrumentedRule rule : this.getInstrumentedRules()) {
+            rule.reset();
+        }
+    }
+
+    /**
+     * @return true if validations are recorded
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param enabled false to make the wrappers call straight through
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private ArrayList<InstrumentedRule> getInstrumentedRules() {
+        synchronized (this.rules) {
+            return new ArrayList<InstrumentedRule>(this.instrumentedRules);
+        }
+    }
+}
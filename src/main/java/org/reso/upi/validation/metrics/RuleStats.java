@@ -0,0 +1,84 @@
+package org.reso.upi.validation.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Snapshot of one rule's counters, taken by {@link RuleMetrics#snapshot()}
+ */
+public final class RuleStats {
+    private final String ruleName;
+    private final long invocations;
+    private final long totalNanos;
+    private final long failures;
+    private final Map<Integer, Long> failuresByCode;
+    private final long[] latencyCounts;
+
+    RuleStats(String ruleName, long invocations, long totalNanos, long failures, TreeMap<Integer, Long> failuresByCode, long[] latencyCounts) {
+        this.ruleName = ruleName;
+        this.invocations = invocations;
+        this.totalNanos = totalNanos;
+        this.failures = failures;
+        this.failuresByCode = Collections.unmodifiableMap(failuresByCode);
+        this.latencyCounts = latencyCounts;
+    }
+
+    /**
+     * @return class name of the rule
+     */
+    public String getRuleName() {
+        return this.ruleName;
+    }
+
+    /**
+     * @return number of validations
+     */
+    public long getInvocations() {
+        return this.invocations;
+    }
+
+    /**
+     * @return time spent in the rule, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return this.totalNanos;
+    }
+
+    /**
+     * @return average time per validation, in nanoseconds
+     */
+    public double getMeanNanos() {
+        return (this.invocations == 0) ? 0 : (double) this.totalNanos / this.invocations;
+    }
+
+    /**
+     * @param percentile 0 to 100, eg 99.9
+     * @return latency below which that share of validations fell, within 12.5%, in nanoseconds
+     */
+    public long getPercentileNanos(double percentile) {
+        return LatencyHistogram.percentile(this.latencyCounts, percentile);
+    }
+
+    /**
+     * @return number of validations that reported at least one message
+     */
+    public long getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * @return number of messages reported, by message code
+     */
+    public Map<Integer, Long> getFailuresByCode() {
+        return this.failuresByCode;
+    }
+
+    @Override
+    public String toString() {
+        return this.ruleName + ": " + this.invocations + " calls, "
+                + String.format("%.0f", this.getMeanNanos()) + " ns mean, "
+                + this.getPercentileNanos(99) + " ns p99, "
+                + this.failures + " failures " + this.failuresByCode;
+    }
+}
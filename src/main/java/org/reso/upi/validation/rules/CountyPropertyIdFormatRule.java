@@ -0,0 +1,78 @@
+package org.reso.upi.validation.rules;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.property_id.PropertyIdFormat;
+import org.reso.upi.property_id.PropertyIdFormatRegistry;
+import org.reso.upi.validation.AbstractValidationRule;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+/**
+ * Ensures that the PROPERTY_ID matches the format of its county (strict).
+ * Counties without a registered format are left alone.
+ */
+public class CountyPropertyIdFormatRule extends AbstractValidationRule {
+    private static final EnumSet<UpiField> DEPENDENCIES = EnumSet.of(UpiField.COUNTRY_CODE, UpiField.SUB_COUNTRY_CODE, UpiField.PROPERTY_ID);
+    private static final int DEPENDENCY_MASK = UpiField.mask(DEPENDENCIES);
+
+    private final PropertyIdFormatRegistry registry;
+
+    /**
+     * Uses the bundled property ID formats
+     */
+    public CountyPropertyIdFormatRule() {
+        this(PropertyIdFormatRegistry.getDefault());
+    }
+
+    /**
+     * @param registry property ID formats to check against
+     */
+    public CountyPropertyIdFormatRule(PropertyIdFormatRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static ValidationMessage getPropertyIdFormatMessage() {
+        return new ValidationMessage(440, "The PROPERTY_ID does not match the county format");
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
+        // Missing pieces are ResoAllPiecesRequiredRule's job
+        if (!strict || upi.getPropertyId() == null) {
+            return;
+        }
+
+        PropertyIdFormat format = this.registry.getFormat(upi.getCountryCode(), upi.getSubCountryCode());
+
+        if (format != null && !format.isValid(upi.getPropertyId())) {
+            errors.add(CountyPropertyIdFormatRule.getPropertyIdFormatMessage());
+        }
+    }
+
+    /**
+     * Only checks anything in strict mode
+     */
+    public boolean appliesTo(boolean strict) {
+        return strict;
+    }
+
+    /**
+     * Reads the country and sub country codes and the property ID
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(DEPENDENCIES);
+    }
+
+    public int getDependencyMask() {
+        return DEPENDENCY_MASK;
+    }
+}
@@ -0,0 +1,74 @@
+package org.reso.upi.validation.rules;
+
+import org.reso.upi.UpiField;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.fips.FipsRegistry;
+import org.reso.upi.validation.AbstractValidationRule;
+import org.reso.upi.validation.ValidationMessage;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+/**
+ * Ensures that the SUB_COUNTRY_CODE of a US UPI is a known FIPS county code (strict).
+ * Other countries are left alone.
+ */
+public class FipsSubCountryCodeRule extends AbstractValidationRule {
+    private static final EnumSet<UpiField> DEPENDENCIES = EnumSet.of(UpiField.COUNTRY_CODE, UpiField.SUB_COUNTRY_CODE);
+    private static final int DEPENDENCY_MASK = UpiField.mask(DEPENDENCIES);
+
+    private final FipsRegistry registry;
+
+    /**
+     * Uses the bundled FIPS registry
+     */
+    public FipsSubCountryCodeRule() {
+        this(FipsRegistry.getDefault());
+    }
+
+    /**
+     * @param registry FIPS registry to check against
+     */
+    public FipsSubCountryCodeRule(FipsRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static ValidationMessage getUnknownFipsCodeMessage() {
+        return new ValidationMessage(430, "The SUB_COUNTRY_CODE is not a known FIPS county code");
+    }
+
+    public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+        ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
+        // Missing pieces are ResoAllPiecesRequiredRule's job
+        if (strict && upi.getCountryCode() == CountryCode.US && upi.getSubCountryCode() != null) {
+            if (!this.registry.isValidSubCountryCode(upi.getSubCountryCode())) {
+                errors.add(FipsSubCountryCodeRule.getUnknownFipsCodeMessage());
+            }
+        }
+    }
+
+    /**
+     * Only checks anything in strict mode
+     */
+    public boolean appliesTo(boolean strict) {
+        return strict;
+    }
+
+    /**
+     * Reads the country and sub country codes
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(DEPENDENCIES);
+    }
+
+    public int getDependencyMask() {
+        return DEPENDENCY_MASK;
+    }
+}
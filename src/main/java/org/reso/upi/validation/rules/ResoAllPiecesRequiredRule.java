@@ -1,12 +1,24 @@
 package org.reso.upi.validation.rules;
 
+import org.reso.upi.UpiField;
 import org.reso.upi.UpiInterface;
 import org.reso.upi.validation.AbstractValidationRule;
 import org.reso.upi.validation.ValidationMessage;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 public class ResoAllPiecesRequiredRule extends AbstractValidationRule {
+    private static final EnumSet<UpiField> DEPENDENCIES = EnumSet.of(
+            UpiField.COUNTRY_CODE,
+            UpiField.SUB_COUNTRY_CODE,
+            UpiField.SUB_COUNTY_CODE,
+            UpiField.PROPERTY_ID,
+            UpiField.PROPERTY_TYPE_CODE,
+            UpiField.SUB_PROPERTY
+    );
+    private static final int DEPENDENCY_MASK = UpiField.mask(DEPENDENCIES);
+
     public static ValidationMessage getMissingCountryCodeMessage() {
         return new ValidationMessage(310, "The COUNTRY_CODE is not defined");
     }
@@ -36,7 +48,12 @@ public class ResoAllPiecesRequiredRule extends AbstractValidationRule {
 
         // Create the local errors bag
         ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
+
+        return errors;
+    }
 
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
         // Non Strict Checking
         if (upi.getCountryCode() == null) {
             errors.add(ResoAllPiecesRequiredRule.getMissingCountryCodeMessage());
@@ -61,7 +78,16 @@ public class ResoAllPiecesRequiredRule extends AbstractValidationRule {
         if (upi.getSubProperty() == null) {
             errors.add(ResoAllPiecesRequiredRule.getMissingSubPropertyMessage());
         }
+    }
 
-        return errors;
+    /**
+     * Reads the six pieces
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(DEPENDENCIES);
+    }
+
+    public int getDependencyMask() {
+        return DEPENDENCY_MASK;
     }
 }
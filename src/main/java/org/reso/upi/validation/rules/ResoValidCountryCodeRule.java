@@ -1,23 +1,49 @@
 package org.reso.upi.validation.rules;
 
+import org.reso.upi.UpiField;
 import org.reso.upi.UpiInterface;
 import org.reso.upi.country_code.CountryCode;
 import org.reso.upi.validation.AbstractValidationRule;
 import org.reso.upi.validation.ValidationMessage;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 public class ResoValidCountryCodeRule extends AbstractValidationRule {
+    private static final EnumSet<UpiField> DEPENDENCIES = EnumSet.of(UpiField.COUNTRY_CODE);
+    private static final int DEPENDENCY_MASK = UpiField.mask(DEPENDENCIES);
+
     public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
         ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
 
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
         // If we are in strict mode, check for non standard enumerations
         if (strict) {
             if (upi.getCountryCode() == CountryCode.UNDEFINED) {
                 errors.add(new ValidationMessage(400, "The Country Code is not recognized."));
             }
         }
+    }
 
-        return errors;
+    /**
+     * Only checks anything in strict mode
+     */
+    public boolean appliesTo(boolean strict) {
+        return strict;
+    }
+
+    /**
+     * Only reads the country code
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(DEPENDENCIES);
+    }
+
+    public int getDependencyMask() {
+        return DEPENDENCY_MASK;
     }
 }
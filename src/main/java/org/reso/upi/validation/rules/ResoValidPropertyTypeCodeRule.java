@@ -1,23 +1,49 @@
 package org.reso.upi.validation.rules;
 
+import org.reso.upi.UpiField;
 import org.reso.upi.UpiInterface;
 import org.reso.upi.property_type_code.PropertyTypeCode;
 import org.reso.upi.validation.AbstractValidationRule;
 import org.reso.upi.validation.ValidationMessage;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 public class ResoValidPropertyTypeCodeRule extends AbstractValidationRule {
+    private static final EnumSet<UpiField> DEPENDENCIES = EnumSet.of(UpiField.PROPERTY_TYPE_CODE);
+    private static final int DEPENDENCY_MASK = UpiField.mask(DEPENDENCIES);
+
     public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
         ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+        this.validate(upi, strict, errors);
 
+        return errors;
+    }
+
+    public void validate(UpiInterface upi, boolean strict, ArrayList<ValidationMessage> errors) {
         // If we are in strict mode, check for non standard enumerations
         if (strict) {
             if (upi.getPropertyTypeCode() == PropertyTypeCode.NON_STANDARD) {
                 errors.add(new ValidationMessage(410, "The Property Type Code is non standard"));
             }
         }
+    }
 
-        return errors;
+    /**
+     * Only checks anything in strict mode
+     */
+    public boolean appliesTo(boolean strict) {
+        return strict;
+    }
+
+    /**
+     * Only reads the property type code
+     */
+    public EnumSet<UpiField> getDependencies() {
+        return EnumSet.copyOf(DEPENDENCIES);
+    }
+
+    public int getDependencyMask() {
+        return DEPENDENCY_MASK;
     }
 }
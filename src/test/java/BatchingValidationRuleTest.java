@@ -0,0 +1,136 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.UpiInterface;
+import org.reso.upi.validation.AsyncValidationRuleInterface;
+import org.reso.upi.validation.BatchingValidationRule;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingValidationRuleTest {
+    /**
+     * Pretends to look up parcels in bulk: property IDs starting with 9 are unknown
+     */
+    static class ParcelLookupRule implements AsyncValidationRuleInterface {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<Integer>();
+
+        public CompletableFuture<List<ArrayList<ValidationMessage>>> validate(List<UpiInterface> upis, boolean strict) {
+            this.batchSizes.add(upis.size());
+
+            return CompletableFuture.supplyAsync(() -> {
+                List<ArrayList<ValidationMessage>> results = new ArrayList<ArrayList<ValidationMessage>>();
+
+                for (UpiInterface upi : upis) {
+                    ArrayList<ValidationMessage> messages = new ArrayList<ValidationMessage>();
+                    if (upi.getPropertyId().startsWith("9")) {
+                        messages.add(new ValidationMessage(900, "Unknown parcel"));
+                    }
+                    results.add(messages);
+                }
+
+                return results;
+            });
+        }
+    }
+
+    @Test
+    void sendsFullBatchesAndFlushesTheRestOnTimeout() throws MalformedUpiTextException {
+        ParcelLookupRule lookup = new ParcelLookupRule();
+        BatchingValidationRule rule = new BatchingValidationRule(lookup, 4, 20);
+
+        try {
+            ArrayList<CompletableFuture<ArrayList<ValidationMessage>>> futures = new ArrayList<CompletableFuture<ArrayList<ValidationMessage>>>();
+            Upi upi = new Upi();
+
+            for (int i = 0; i < 10; i++) {
+                upi.reset();
+                upi.parseUpi("US-04015-N-" + (i % 2 == 0 ? "1" : "9") + "102233" + i + "-R-N");
+                futures.add(rule.submit(upi, true));
+            }
+
+            for (int i = 0; i < 10; i++) {
+                ArrayList<ValidationMessage> messages = futures.get(i).join();
+                assertEquals(i % 2 == 0 ? 0 : 1, messages.size());
+            }
+
+            assertEquals(3, lookup.batchSizes.size());
+            assertEquals(4, (int) lookup.batchSizes.get(0));
+            assertEquals(4, (int) lookup.batchSizes.get(1));
+            assertEquals(2, (int) lookup.batchSizes.get(2));
+        } finally {
+            rule.close();
+        }
+    }
+
+    @Test
+    void mergesSyncAndAsyncRulesInOrder() throws MalformedUpiTextException {
+        BatchingValidationRule rule = new BatchingValidationRule(new ParcelLookupRule(), 100, 5);
+
+        try {
+            ArrayList<ValidationRuleInterface> ruleSet = new ArrayList<ValidationRuleInterface>();
+            ruleSet.add(rule);
+            ruleSet.add(new ResoAllPiecesRequiredRule());
+
+            Upi upi = new Upi("US-04015-N-91022331-R-N");
+            upi.setSubProperty(null);
+
+            ArrayList<ValidationMessage> messages = upi.validateAsync(true, ruleSet).join();
+            assertEquals(2, messages.size());
+            assertEquals(900, messages.get(0).getCode());
+
+            // Synchronous use still works
+            assertEquals(1, rule.validate(upi, true).size());
+        } finally {
+            rule.close();
+        }
+    }
+
+    @Test
+    void snapshotsNonStandardCodesAndSharesOneTimer() throws MalformedUpiTextException {
+        final List<String> codes = new CopyOnWriteArrayList<String>();
+        ArrayList<BatchingValidationRule> rules = new ArrayList<BatchingValidationRule>();
+
+        try {
+            for (int i = 0; i < 20; i++) {
+                rules.add(new BatchingValidationRule((upis, strict) -> {
+                    List<ArrayList<ValidationMessage>> results = new ArrayList<ArrayList<ValidationMessage>>();
+                    for (UpiInterface upi : upis) {
+                        codes.add(upi.getPropertyTypeCode() + "/" + upi.getPropertyTypeCodeText());
+                        results.add(new ArrayList<ValidationMessage>());
+                    }
+                    return CompletableFuture.completedFuture(results);
+                }, 100, 1000));
+            }
+
+            CompletableFuture<ArrayList<ValidationMessage>> future = rules.get(0).submit(new Upi("US-04015-N-11022331-XY-N"), true);
+            for (BatchingValidationRule rule : rules.subList(1, rules.size())) {
+                rule.submit(new Upi("US-04015-N-11022331-R-N"), false);
+            }
+
+            // Overwrites the shared NON_STANDARD code while the batch is pending
+            new Upi("US-04015-N-11022331-ZZ-N");
+            rules.get(0).flush();
+            future.join();
+
+            assertEquals("ZZ/XY", codes.get(0));
+
+            int timers = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                timers += "upi-batching-rule".equals(thread.getName()) ? 1 : 0;
+            }
+            assertEquals(1, timers);
+        } finally {
+            for (BatchingValidationRule rule : rules) {
+                rule.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.cli.BulkValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkValidatorTest {
+    @TempDir
+    Path directory;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void writesFailuresInInputOrderAcrossThreads() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add((i % 7 == 0) ? "XX-04015-N-" + i + "-R-N" : "US-04015-N-" + i + "-R-N");
+        }
+        lines.add("");
+        lines.add("US-04015");
+        Path input = this.directory.resolve("upis.txt");
+        Files.write(input, lines, StandardCharsets.UTF_8);
+
+        assertEquals(BulkValidator.EXIT_INVALID, this.run("--threads", "4", "--progress", "0", input.toString()));
+
+        String[] results = this.out().split("\n");
+        assertEquals(5000 / 7 + 2, results.length);
+        assertEquals("XX-04015-N-0-R-N\t400", results[0]);
+        assertEquals("XX-04015-N-7-R-N\t400", results[1]);
+        assertEquals("XX-04015-N-4998-R-N\t400", results[results.length - 2]);
+        assertEquals("US-04015\t500", results[results.length - 1]);
+
+        assertTrue(this.err().startsWith("done: 5001 records, 716 invalid, 1 malformed"), this.err());
+    }
+
+    @Test
+    void validatesCsvColumnWithReport() throws IOException {
+        Path input = this.directory.resolve("listings.csv");
+        Files.write(input, Arrays.asList("Id,UPI", "1,US-04015-N-11022331-R-N", "2,\"XX-04015-N-1,2-R-N\"", "3,US"), StandardCharsets.UTF_8);
+        Path report = this.directory.resolve("report.csv");
+
+        assertEquals(BulkValidator.EXIT_INVALID, this.run("--all", "--quiet", "--threads", "2", "--report", report.toString(), input.toString()));
+
+        assertEquals("Id,UPI,UPI_VALIDATION\n"
+                + "1,US-04015-N-11022331-R-N,VALID\n"
+                + "2,\"XX-04015-N-1,2-R-N\",400\n"
+                + "3,US,500\n", this.out());
+        assertEquals("", this.err());
+
+        List<String> rows = Files.readAllLines(report, StandardCharsets.UTF_8);
+        assertEquals(5, rows.size());
+        assertTrue(rows.get(1).startsWith("400,"), rows.get(1));
+        assertTrue(rows.get(2).startsWith("500,"), rows.get(2));
+        assertEquals("# invalid,2", rows.get(4));
+    }
+
+    @Test
+    void readsNdjsonFromStdin() {
+        String input = "{\"upi\":\"US-04015-N-11022331-R-N\"}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"upi\":\"XX-04015-N-11022331-R-N\"}\n";
+
+        assertEquals(BulkValidator.EXIT_INVALID, this.runWithInput(input, "--format", "ndjson", "--quiet", "--all"));
+
+        String[] results = this.out().split("\n");
+        assertEquals(3, results.length);
+        assertEquals("{\"upi\":\"US-04015-N-11022331-R-N\"}\tVALID", results[0]);
+        assertEquals("not json\t500", results[1]);
+        assertEquals("{\"upi\":\"XX-04015-N-11022331-R-N\"}\t400", results[2]);
+    }
+
+    @Test
+    void readsTheUpiBeforeATabInText() {
+        String input = "US-04015-N-11022331-R-N\tLot 1-A, north half\n"
+                + "XX-04015-N-11022331-R-N\tParcel 2\n"
+                + "US-04015-N-11022332-R-N\n"
+                + "US-04015-N-11022333-R\tLot 3-B\n";
+
+        assertEquals(BulkValidator.EXIT_INVALID, this.runWithInput(input, "--quiet", "--all"));
+
+        String[] results = this.out().split("\n");
+        assertEquals(4, results.length);
+        assertEquals("US-04015-N-11022331-R-N\tLot 1-A, north half\tVALID", results[0]);
+        assertEquals("XX-04015-N-11022331-R-N\tParcel 2\t400", results[1]);
+        assertEquals("US-04015-N-11022332-R-N\tVALID", results[2]);
+        // The description's hyphen does not complete a UPI missing its last segment
+        assertEquals("US-04015-N-11022333-R\tLot 3-B\t500", results[3]);
+    }
+
+    @Test
+    void recoversFromRunsOfBadNdjsonLines() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            input.append((i % 3 == 2) ? "{\"upi\":\"US-04015-N-" + i + "-R-N\"}" : "[" + i + ", {\"upi\":").append('\n');
+        }
+
+        assertEquals(BulkValidator.EXIT_INVALID, this.runWithInput(input.toString(), "--format", "ndjson", "--quiet", "--all", "--threads", "2"));
+
+        String[] results = this.out().split("\n");
+        assertEquals(3000, results.length);
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(results[i].endsWith((i % 3 == 2) ? "\tVALID" : "\t500"), results[i]);
+        }
+    }
+
+    @Test
+    void reportsFailuresOutsideTheInputAsErrors() {
+        InputStream failing = new InputStream() {
+            public int read() {
+                throw new UncheckedIOException(new IOException("device gone"));
+            }
+        };
+
+        this.out.reset();
+        this.err.reset();
+        int exit = BulkValidator.run(new String[]{"--quiet", "-"}, failing, new PrintStream(this.out, true), new PrintStream(this.err, true));
+
+        assertEquals(BulkValidator.EXIT_ERROR, exit);
+        assertTrue(this.err().startsWith("upi: -: java.io.IOException: device gone"), this.err());
+    }
+
+    @Test
+    void reportsUsageErrors() {
+        assertEquals(BulkValidator.EXIT_ERROR, this.run("--threads", "0"));
+        assertTrue(this.err().contains("--threads must be at least 1"));
+        assertTrue(this.err().contains("Usage:"));
+
+        assertEquals(BulkValidator.EXIT_ERROR, this.run("--quiet", this.directory.resolve("missing.txt").toString()));
+        assertEquals(BulkValidator.EXIT_VALID, this.runWithInput("US-04015-N-11022331-R-N\n", "--quiet", "-"));
+    }
+
+    private int run(String... args) {
+        return this.runWithInput("", args);
+    }
+
+    private int runWithInput(String stdin, String... args) {
+        this.out.reset();
+        this.err.reset();
+
+        return BulkValidator.run(args, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(this.out, true), new PrintStream(this.err, true));
+    }
+
+    private String out() {
+        return new String(this.out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String err() {
+        return new String(this.err.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
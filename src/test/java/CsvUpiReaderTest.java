@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.csv.CsvColumnMapping;
+import org.reso.upi.csv.CsvUpiReader;
+import org.reso.upi.csv.CsvUpiValidator;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
+import org.reso.upi.validation.rules.ResoValidCountryCodeRule;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvUpiReaderTest {
+    @Test
+    void readsQuotedFieldsAndWholeUpiColumn() throws IOException, MalformedUpiTextException {
+        String csv = "Id,UPI,Address\r\n"
+                + "1,US-04015-N-11022331-R-N,\"12 Main St, Kingman\"\r\n"
+                + "\r\n"
+                + "2,\"US-36061-N-010237502R1-S-113\",\"The \"\"Dakota\"\"\nNew York\"\n"
+                + "3,US-04015";
+        CsvUpiReader reader = new CsvUpiReader(new StringReader(csv), CsvColumnMapping.upiColumn("UPI").withDescription("Address"));
+        Upi upi = new Upi();
+
+        assertTrue(reader.next());
+        reader.parseInto(upi);
+        assertEquals("11022331", upi.getPropertyId());
+        assertEquals("12 Main St, Kingman", upi.getDescription());
+        assertEquals(2, reader.getLineNumber());
+
+        assertTrue(reader.next());
+        reader.parseInto(upi);
+        assertEquals("36061", upi.getSubCountryCode());
+        assertEquals("The \"Dakota\"\nNew York", upi.getDescription());
+        assertEquals(4, reader.getLineNumber());
+
+        assertTrue(reader.next());
+        assertEquals(6, reader.getLineNumber());
+        assertThrows(MalformedUpiTextException.class, () -> reader.parseInto(upi));
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void readsSegmentColumnsAcrossBufferRefills() throws IOException, MalformedUpiTextException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            csv.append("US\t04015\tN\t").append(i).append("\tR\tN\n");
+        }
+
+        CsvUpiReader reader = new CsvUpiReader(new StringReader(csv.toString()), CsvColumnMapping.segmentColumns(0, 1, 2, 3, 4, 5), '\t', false);
+        Upi upi = new Upi();
+        int count = 0;
+
+        while (reader.next()) {
+            reader.parseInto(upi);
+            assertEquals(String.valueOf(count), upi.getPropertyId());
+            assertTrue(upi.isValid());
+            count++;
+        }
+
+        assertEquals(20000, count);
+    }
+
+    @Test
+    void writesRecordsWithResultColumn() throws IOException {
+        ArrayList<ValidationRuleInterface> ruleSet = new ArrayList<ValidationRuleInterface>();
+        ruleSet.add(new ResoAllPiecesRequiredRule());
+        ruleSet.add(new ResoValidCountryCodeRule());
+
+        String csv = "UPI,Note\n"
+                + "US-04015-N-11022331-R-N,\"a, b\"\n"
+                + "XX-04015-N-11022331-R-N,c\n"
+                + "garbage,d\n";
+        StringWriter out = new StringWriter();
+
+        long invalid = new CsvUpiValidator(CsvColumnMapping.upiColumn("UPI"), true, ruleSet).validate(new StringReader(csv), out);
+
+        assertEquals(2, invalid);
+        assertEquals("UPI,Note,UPI_VALIDATION\n"
+                + "US-04015-N-11022331-R-N,\"a, b\",VALID\n"
+                + "XX-04015-N-11022331-R-N,c,400\n"
+                + "garbage,d,500\n", out.toString());
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.fips.FipsRegistry;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.FipsSubCountryCodeRule;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FipsRegistryTest {
+    @Test
+    void looksUpBundledCodes() {
+        FipsRegistry registry = FipsRegistry.getDefault();
+
+        assertEquals("Arizona", registry.getStateName(4));
+        assertEquals("AZ", registry.getStateAbbreviation(4));
+        assertEquals("Maricopa County", registry.getCountyName(4013));
+        assertEquals("New York County", registry.getCountyName(36061));
+        assertEquals("Miami-Dade County", registry.getCountyName(12086));
+        assertNull(registry.getCountyName(12025));
+
+        assertTrue(registry.isValidSubCountryCode("04015"));
+        assertFalse(registry.isValidSubCountryCode("04099"));
+        assertFalse(registry.isValidSubCountryCode("03001"));
+        assertFalse(registry.isValidSubCountryCode("4015"));
+
+        // Georgia's counties are not bundled, so only the state is checked
+        assertFalse(registry.hasCounties(13));
+        assertTrue(registry.isValidSubCountryCode("13051"));
+    }
+
+    @Test
+    void namesFollowCodeOrder() {
+        FipsRegistry registry = FipsRegistry.getDefault();
+        int[] codes = registry.getCountyCodes();
+
+        assertEquals(registry.getCountyCount(), codes.length);
+        for (int i = 1; i < codes.length; i++) {
+            assertTrue(codes[i - 1] < codes[i]);
+            assertNotNull(registry.getCountyName(codes[i]));
+        }
+    }
+
+    @Test
+    void readsCensusCountyFile() throws IOException {
+        FipsRegistry registry = FipsRegistry.load(new StringReader(""
+                + "STATE|STATEFP|COUNTYFP|COUNTYNS|COUNTYNAME|CLASSFP|FUNCSTAT\n"
+                + "GA|13|051|00350261|Chatham County|H1|A\n"));
+
+        assertTrue(registry.hasCounties(13));
+        assertEquals("Chatham County", registry.getCountyName(13051));
+        assertFalse(registry.isValidSubCountryCode("13053"));
+        assertFalse(registry.isState(4));
+    }
+
+    @Test
+    void rejectsUnknownUsCountiesWhenStrict() throws MalformedUpiTextException {
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(new FipsSubCountryCodeRule());
+
+        assertTrue(new Upi("US-36061-N-010237502R1-S-113").isValid(true, rules));
+        assertTrue(new Upi("FI-99999-N-1-R-N").isValid(true, rules));
+
+        Upi upi = new Upi("US-36999-N-010237502R1-S-113");
+        assertTrue(upi.isValid(false, rules));
+
+        ArrayList<ValidationMessage> messages = upi.validate(true, rules);
+        assertEquals(1, messages.size());
+        assertEquals(430, messages.get(0).getCode());
+    }
+}
@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.json.JsonUpiExtractor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonUpiExtractorTest {
+    @Test
+    void extractsUpisFromWebApiPayload() throws IOException {
+        StringBuilder payload = new StringBuilder("{\"@odata.context\":\"$metadata#Property\",\"value\":[");
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append("{\"ListingKey\":\"").append(i).append("\",")
+                    .append("\"Media\":[{\"UniversalPropertyId\":\"ignored\"}],")
+                    .append("\"UniversalPropertyId\":\"US-04015-N-").append(i).append("-R-N\"}");
+        }
+        payload.append("],\"@odata.nextLink\":\"next\"}");
+
+        final ArrayList<String> propertyIds = new ArrayList<String>();
+        long found = JsonUpiExtractor.reso().extract(new StringReader(payload.toString()), new JsonUpiExtractor.Handler() {
+            public void upi(Upi upi, int path) {
+                assertTrue(upi.isValid(true));
+                propertyIds.add(upi.getPropertyId());
+            }
+        });
+
+        assertEquals(1000, found);
+        assertEquals(1000, propertyIds.size());
+        assertEquals("999", propertyIds.get(999));
+    }
+
+    @Test
+    void matchesSeveralPathsAndReportsMalformedUpis() throws IOException {
+        String json = "[{\"a\":{\"upi\":\"US-04015-N-1-R-N\"},\"b\":[[\"US-36061-N-2-S-113\"]]},"
+                + "{\"x\":{\"upi\":\"US-04015\"}}]";
+        final ArrayList<String> results = new ArrayList<String>();
+
+        new JsonUpiExtractor("[].*.upi", "[].b[][]").extract(new StringReader(json), new JsonUpiExtractor.Handler() {
+            public void upi(Upi upi, int path) {
+                results.add(path + ":" + upi.getPropertyId());
+            }
+
+            public void malformed(String upiText, int path, MalformedUpiTextException e) {
+                results.add(path + ":malformed " + upiText);
+            }
+        });
+
+        assertEquals(3, results.size());
+        assertEquals("0:1", results.get(0));
+        assertEquals("1:2", results.get(1));
+        assertEquals("0:malformed US-04015", results.get(2));
+    }
+}
@@ -0,0 +1,204 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.similarity.DeletionIndex;
+import org.reso.upi.similarity.NearDuplicateFinder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearDuplicateFinderTest {
+    @Test
+    void searchesWithinARadius() {
+        DeletionIndex index = new DeletionIndex(1);
+        String[] terms = {"11022331", "11022332", "11023231", "1102233", "99999999", "11022331"};
+
+        for (String term : terms) {
+            index.add(term);
+        }
+        index.build();
+        assertEquals(5, index.size());
+
+        // A swap of adjacent characters is one edit
+        List<String> found = new ArrayList<String>();
+        index.search("11022331", 1, (at, term, distance) -> found.add(term + ":" + distance));
+        Collections.sort(found);
+
+        assertEquals("[11022331:0, 11022332:1, 1102233:1, 11023231:1]", found.toString());
+    }
+
+    @Test
+    void deletionIndexFindsWhatAScanFinds() {
+        DeletionIndex index = new DeletionIndex(2);
+        List<String> terms = new ArrayList<String>();
+        Random random = new Random(8);
+
+        for (int i = 0; i < 3000; i++) {
+            String term = Integer.toString(1000 + random.nextInt(9000)) + ((i % 3 == 0) ? "" : Integer.toString(random.nextInt(100)));
+            if (index.add(term) == terms.size()) {
+                terms.add(term);
+            }
+        }
+        index.build();
+
+        for (int i = 0; i < 300; i++) {
+            String query = index.get(random.nextInt(index.size()));
+            if (i % 2 == 0) {
+                query = query.substring(1) + query.charAt(0);
+            }
+
+            for (int radius = 1; radius <= 2; radius++) {
+                List<String> expected = new ArrayList<String>();
+                List<String> actual = new ArrayList<String>();
+                for (String term : terms) {
+                    int distance = NearDuplicateFinderTest.damerauLevenshtein(query, term);
+                    if (distance <= radius) {
+                        expected.add(term + ":" + distance);
+                    }
+                }
+                index.search(query, radius, (found, term, distance) -> actual.add(term + ":" + distance));
+                Collections.sort(expected);
+                Collections.sort(actual);
+
+                assertEquals(expected, actual, query);
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> index.search("1234", 3, (found, term, distance) -> {
+        }));
+    }
+
+    @Test
+    void selfJoinKeepsUpOnDenseIds() throws MalformedUpiTextException, InterruptedException {
+        // Consecutive parcel numbers, where every ID is a few edits from thousands of others
+        NearDuplicateFinder small = new NearDuplicateFinder(1);
+        for (int i = 0; i < 2000; i++) {
+            small.add(new Upi("US-36061-N-" + (10000000 + i) + "-R-N"));
+        }
+
+        long brute = 0;
+        for (int i = 0; i < 2000; i++) {
+            for (int j = i + 1; j < 2000; j++) {
+                brute += NearDuplicateFinderTest.oneEdit(Integer.toString(10000000 + i), Integer.toString(10000000 + j)) ? 1 : 0;
+            }
+        }
+        assertEquals(brute, small.findAll(match -> {
+        }));
+
+        NearDuplicateFinder large = new NearDuplicateFinder(1);
+        large.setThreads(2);
+        for (int i = 0; i < 100000; i++) {
+            large.add(new Upi("US-36061-N-" + (10000000 + i) + "-R-N"));
+        }
+
+        AtomicLong reported = new AtomicLong();
+        long pairs = assertTimeout(Duration.ofSeconds(30), () -> large.findAll(match -> reported.incrementAndGet()));
+        assertEquals(reported.get(), pairs);
+        assertTrue(pairs > 100000 * 20, "pairs " + pairs);
+    }
+
+    @Test
+    void findsTyposWithinEachCounty() throws MalformedUpiTextException, InterruptedException {
+        NearDuplicateFinder finder = new NearDuplicateFinder(1);
+        finder.setThreads(4);
+
+        Random random = new Random(6);
+        for (int i = 0; i < 4000; i++) {
+            String county = (i % 2 == 0) ? "04013" : "06037";
+            finder.add(new Upi("US-" + county + "-N-" + (100000000L + (long) (random.nextDouble() * 899999999L)) + "-R-N"));
+        }
+
+        // Planted typos: transposed, dropped, and the same ID in another county
+        finder.add(new Upi("US-36061-N-11022331-R-N"));
+        finder.add(new Upi("US-36061-N-11023231-R-N"));
+        finder.add(new Upi("US-36061-N-1102231-R-1"));
+        finder.add(new Upi("US-17031-N-11022331-R-N"));
+        finder.add(new Upi("US-36061-N-11022331-S-2"));
+
+        List<String> matches = Collections.synchronizedList(new ArrayList<String>());
+        finder.findAll(match -> {
+            if (match.getSubCountryCode().equals("36061") || match.getSubCountryCode().equals("17031")) {
+                matches.add(match.getPropertyId() + "~" + match.getOtherPropertyId() + ":" + match.getDistance());
+            }
+        });
+        Collections.sort(matches);
+
+        assertEquals("[11022331~1102231:1, 11022331~11023231:1, 11023231~1102231:1]", matches.toString());
+
+        List<NearDuplicateFinder.Match> single = finder.find(new Upi("US-36061-N-11023231-R-N"));
+        Collections.sort(single, (a, b) -> a.getOtherUpiText().compareTo(b.getOtherUpiText()));
+        assertEquals(2, single.size());
+        assertEquals("US-36061-N-1102231-R-1", single.get(0).getOtherUpiText());
+        assertEquals("US-36061-N-11022331-R-N", single.get(1).getOtherUpiText());
+
+        // Without transpositions the swap is two edits, the dropped digit is still one
+        finder.setTranspositions(false);
+        single = finder.find(new Upi("US-36061-N-11023231-R-N"));
+        assertEquals(1, single.size());
+        assertEquals("1102231", single.get(0).getOtherPropertyId());
+    }
+
+    /**
+     * Same length IDs one substitution or one adjacent swap apart
+     */
+    private static boolean oneEdit(String a, String b) {
+        int first = 0;
+        while (a.charAt(first) == b.charAt(first)) {
+            first++;
+        }
+
+        int last = a.length() - 1;
+        while (a.charAt(last) == b.charAt(last)) {
+            last--;
+        }
+
+        return first == last || (last == first + 1 && a.charAt(first) == b.charAt(last) && a.charAt(last) == b.charAt(first));
+    }
+
+    /**
+     * Unbounded Damerau-Levenshtein distance (Lowrance-Wagner), the full matrix
+     */
+    private static int damerauLevenshtein(String a, String b) {
+        int infinity = a.length() + b.length();
+        int[][] d = new int[a.length() + 2][b.length() + 2];
+        Map<Character, Integer> lastRows = new HashMap<Character, Integer>();
+
+        d[0][0] = infinity;
+        for (int i = 0; i <= a.length(); i++) {
+            d[i + 1][0] = infinity;
+            d[i + 1][1] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j + 1] = infinity;
+            d[1][j + 1] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            int lastColumn = 0;
+
+            for (int j = 1; j <= b.length(); j++) {
+                int lastRow = lastRows.getOrDefault(b.charAt(j - 1), 0);
+                int cost = (a.charAt(i - 1) == b.charAt(j - 1)) ? 0 : 1;
+
+                d[i + 1][j + 1] = Math.min(Math.min(d[i][j] + cost, d[i + 1][j] + 1), Math.min(d[i][j + 1] + 1,
+                        d[lastRow][lastColumn] + (i - lastRow - 1) + 1 + (j - lastColumn - 1)));
+
+                if (cost == 0) {
+                    lastColumn = j;
+                }
+            }
+
+            lastRows.put(a.charAt(i - 1), i);
+        }
+
+        return d[a.length() + 1][b.length() + 1];
+    }
+}
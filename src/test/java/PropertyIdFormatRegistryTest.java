@@ -0,0 +1,123 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.property_id.PropertyIdFormat;
+import org.reso.upi.property_id.PropertyIdFormatRegistry;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.CountyPropertyIdFormatRule;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyIdFormatRegistryTest {
+    @Test
+    void normalizesAndChecksPropertyIds() throws IOException {
+        PropertyIdFormat format = PropertyIdFormat.parse(new StringReader(""
+                + "# Test county\n"
+                + "strip=-. \n"
+                + "pad=8\n"
+                + "length=8-9\n"
+                + "pattern=\\d{8}[A-Z]?\n"));
+
+        assertEquals("Test county", format.getDescription());
+        assertEquals("12345678A", format.normalize("123-45-678a"));
+        assertEquals("00045678", format.normalize("45 678"));
+
+        String normal = "12345678";
+        assertSame(normal, format.normalize(normal));
+
+        assertTrue(format.isValid("123-45-678a"));
+        assertTrue(format.isValid("45.678"));
+        assertFalse(format.isValid("123-45-678-9A"));
+        assertFalse(format.isValid("123-45-67AA"));
+        assertFalse(format.isValid("--"));
+    }
+
+    @Test
+    void findsBundledCounties() {
+        PropertyIdFormatRegistry registry = PropertyIdFormatRegistry.getDefault();
+
+        assertTrue(registry.hasFormat(CountryCode.US, "04013"));
+        assertFalse(registry.hasFormat(CountryCode.US, "4013"));
+        assertFalse(registry.hasFormat(CountryCode.CA, "04013"));
+        assertNull(registry.getFormat(CountryCode.US, "36061"));
+        assertNull(registry.getFormat(CountryCode.US, "N"));
+
+        PropertyIdFormat maricopa = registry.getFormat(CountryCode.US, "04013");
+        assertSame(maricopa, registry.getFormat(CountryCode.US, "04013"));
+        assertTrue(maricopa.isValid("123-45-678A"));
+
+        assertTrue(registry.getFormat(CountryCode.US, "17031").isValid("17-03-200-001-0000"));
+        assertFalse(registry.getFormat(CountryCode.US, "06037").isValid("4306-012-03"));
+    }
+
+    @Test
+    void loadsFormatsFromDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("apn-formats");
+
+        try {
+            Files.write(directory.resolve("formats.txt"), "US 13051\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("US-13051.txt"), "strip=-\nlength=5\npattern=[A-Z]\\d{4}\n".getBytes(StandardCharsets.UTF_8));
+
+            PropertyIdFormatRegistry registry = PropertyIdFormatRegistry.load(directory);
+
+            assertEquals(1, registry.size());
+            assertTrue(registry.getFormat(CountryCode.US, "13051").isValid("a-1234"));
+            assertNull(registry.getFormat(CountryCode.US, "04013"));
+        } finally {
+            Files.delete(directory.resolve("US-13051.txt"));
+            Files.delete(directory.resolve("formats.txt"));
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void readsAFailedCountyOnlyOnce() throws IOException {
+        Path directory = Files.createTempDirectory("apn-formats");
+
+        try {
+            Files.write(directory.resolve("formats.txt"), "US 13051\n".getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("US-13051.txt"), "pattern=[A-Z\n".getBytes(StandardCharsets.UTF_8));
+
+            PropertyIdFormatRegistry registry = PropertyIdFormatRegistry.load(directory);
+
+            IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                    () -> registry.getFormat(CountryCode.US, "13051"));
+            assertSame(exception, registry.getFailure(CountryCode.US, "13051"));
+
+            // Fixing the file does not matter any more, the county is not read again
+            Files.write(directory.resolve("US-13051.txt"), "pattern=[A-Z]\n".getBytes(StandardCharsets.UTF_8));
+            assertNull(registry.getFormat(CountryCode.US, "13051"));
+            assertNull(registry.getFailure(CountryCode.US, "04013"));
+        } finally {
+            Files.delete(directory.resolve("US-13051.txt"));
+            Files.delete(directory.resolve("formats.txt"));
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void rejectsBadPropertyIdsWhenStrict() throws MalformedUpiTextException {
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(new CountyPropertyIdFormatRule());
+
+        assertTrue(new Upi("US-04015-N-11022331-R-N").isValid(true, rules));
+        assertTrue(new Upi("US-06075-N-40010333-T-10").isValid(true, rules));
+        assertTrue(new Upi("US-36061-N-010237502R1-S-113").isValid(true, rules));
+
+        Upi upi = new Upi("US-04015-N-1102233X1-R-N");
+        assertTrue(upi.isValid(false, rules));
+
+        ArrayList<ValidationMessage> messages = upi.validate(true, rules);
+        assertEquals(1, messages.size());
+        assertEquals(440, messages.get(0).getCode());
+    }
+}
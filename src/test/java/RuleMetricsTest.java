@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.metrics.RuleMetrics;
+import org.reso.upi.validation.metrics.RuleStats;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
+import org.reso.upi.validation.rules.ResoValidCountryCodeRule;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleMetricsTest {
+    @Test
+    void countsCallsAndFailuresPerRule() throws MalformedUpiTextException {
+        ArrayList<ValidationRuleInterface> ruleSet = new ArrayList<ValidationRuleInterface>();
+        ruleSet.add(new ResoAllPiecesRequiredRule());
+        ruleSet.add(new ResoValidCountryCodeRule());
+
+        RuleMetrics metrics = new RuleMetrics();
+        ArrayList<ValidationRuleInterface> timed = metrics.instrument(ruleSet);
+
+        for (int i = 0; i < 10; i++) {
+            new Upi("US-04015-N-11022331-R-N").validate(true, timed);
+            new Upi("XX-04015-N-11022331-R-N").validate(true, timed);
+        }
+
+        ArrayList<RuleStats> stats = metrics.snapshot();
+        assertEquals(2, stats.size());
+
+        RuleStats pieces = stats.get(0);
+        assertEquals(ResoAllPiecesRequiredRule.class.getName(), pieces.getRuleName());
+        assertEquals(20, pieces.getInvocations());
+        assertEquals(0, pieces.getFailures());
+
+        RuleStats country = stats.get(1);
+        assertEquals(20, country.getInvocations());
+        assertEquals(10, country.getFailures());
+        assertEquals(Long.valueOf(10), country.getFailuresByCode().get(400));
+        assertTrue(country.getPercentileNanos(50) <= country.getPercentileNanos(99));
+        assertTrue(country.getTotalNanos() > 0);
+
+        // Instrumenting again shares the counters
+        metrics.instrument(ruleSet);
+        assertEquals(2, metrics.snapshot().size());
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot().get(1).getInvocations());
+    }
+
+    @Test
+    void recordsNothingWhenDisabled() throws MalformedUpiTextException {
+        ArrayList<ValidationRuleInterface> ruleSet = new ArrayList<ValidationRuleInterface>();
+        ruleSet.add(new ResoValidCountryCodeRule());
+
+        RuleMetrics metrics = new RuleMetrics(false);
+        Upi upi = new Upi("XX-04015-N-11022331-R-N");
+
+        assertEquals(1, upi.validate(true, metrics.instrument(ruleSet)).size());
+        assertEquals(0, metrics.snapshot().get(0).getInvocations());
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.validation.CompiledRuleSet;
+import org.reso.upi.validation.RuleSetCompiler;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
+import org.reso.upi.validation.rules.ResoValidCountryCodeRule;
+import org.reso.upi.validation.rules.ResoValidPropertyTypeCodeRule;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetCompilerTest {
+    private ArrayList<ValidationRuleInterface> getResoRules() {
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(new ResoAllPiecesRequiredRule());
+        rules.add(new ResoValidCountryCodeRule());
+        rules.add(new ResoValidPropertyTypeCodeRule());
+        return rules;
+    }
+
+    @Test
+    void dropsStrictOnlyRulesFromNonStrictMode() {
+        CompiledRuleSet compiled = RuleSetCompiler.compile(this.getResoRules());
+
+        assertEquals(1, compiled.getRules(false).size());
+        assertEquals(3, compiled.getRules(true).size());
+    }
+
+    @Test
+    void matchesUncompiledValidation() throws MalformedUpiTextException {
+        CompiledRuleSet compiled = RuleSetCompiler.compile(this.getResoRules());
+        Upi upi = new Upi("XX-123331-N-N-99798987-99");
+
+        ArrayList<ValidationMessage> messages = upi.validate(true, compiled.asRuleSet());
+        assertEquals(2, messages.size());
+        assertEquals(400, messages.get(0).getCode());
+        assertEquals(410, messages.get(1).getCode());
+
+        assertTrue(upi.isValid(false, compiled.asRuleSet()));
+    }
+
+    @Test
+    void failFastStopsAtFirstFailure() throws MalformedUpiTextException {
+        CompiledRuleSet compiled = RuleSetCompiler.compile(this.getResoRules(), true);
+        Upi upi = new Upi("XX-123331-N-N-99798987-99");
+
+        assertEquals(1, compiled.validate(upi, true).size());
+        assertFalse(compiled.isValid(upi, true, new ArrayList<ValidationMessage>()));
+    }
+
+    @Test
+    void ordersFrequentlyFailingRulesFirst() throws MalformedUpiTextException {
+        ArrayList<Upi> samples = new ArrayList<Upi>();
+        for (int i = 0; i < 50; i++) {
+            samples.add(new Upi("US-04019-N-12401001H-B-65A"));
+        }
+
+        CompiledRuleSet compiled = RuleSetCompiler.compile(this.getResoRules(), true, samples);
+        ArrayList<ValidationRuleInterface> strictRules = compiled.getRules(true);
+
+        assertTrue(strictRules.get(0) instanceof ResoValidPropertyTypeCodeRule);
+    }
+}
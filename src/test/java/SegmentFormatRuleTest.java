@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.format.SegmentFormatRule;
+import org.reso.upi.validation.format.SegmentPattern;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentFormatRuleTest {
+    private static final String FORMATS = ""
+            + "# COUNTRY REGION FIELD PATTERN\n"
+            + "US * SUB_COUNTRY_CODE \\d{5}\n"
+            + "\n"
+            + "US 04013 PROPERTY_ID [A-Z0-9]{8,9}\n";
+
+    @Test
+    void matchesLikeJavaRegex() {
+        String[] patterns = {
+                "\\d{5}",
+                "[A-Z0-9]{8,9}",
+                "(N|\\d+)",
+                "[^-]+",
+                "a(b|c)*d?",
+                "[0-9A-C]{2,}X?",
+                "",
+        };
+
+        Random random = new Random(42);
+        String alphabet = "0123456789ABCDNXabcd-\u00e9";
+
+        for (String pattern : patterns) {
+            SegmentPattern compiled = SegmentPattern.compile(pattern);
+            Pattern regex = Pattern.compile(pattern);
+
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(12);
+
+                for (int j = 0; j < length; j++) {
+                    text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+
+                assertEquals(regex.matcher(text).matches(), compiled.matches(text), pattern + " on " + text);
+            }
+        }
+    }
+
+    @Test
+    void rejectsBadPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("[A-Z"));
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("(AB"));
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("A{3,1}"));
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("*A"));
+    }
+
+    @Test
+    void rejectsHugeRepeatsBeforeExpanding() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> SegmentPattern.compile("\\d{100000000}"));
+        assertTrue(exception.getMessage().startsWith("Repeat count above 1000"), exception.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("A{1,99999999999}"));
+        assertThrows(IllegalArgumentException.class, () -> SegmentPattern.compile("((\\d{1000}){1000}){1000}"));
+        assertTrue(SegmentPattern.compile("\\d{1000}").matches(new String(new char[1000]).replace('\0', '7')));
+    }
+
+    @Test
+    void checksCountryAndRegionFormatsWhenStrict() throws IOException, MalformedUpiTextException {
+        SegmentFormatRule rule = SegmentFormatRule.load(new StringReader(FORMATS));
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(rule);
+
+        assertTrue(new Upi("US-04015-N-11022331-R-N").isValid(true, rules));
+        assertTrue(new Upi("US-04013-N-1102233A-R-N").isValid(true, rules));
+        assertTrue(new Upi("FI-1-N-X-R-N").isValid(true, rules));
+
+        Upi badRegion = new Upi("US-04013-N-110-R-N");
+        assertFalse(badRegion.isValid(true, rules));
+        assertTrue(badRegion.isValid(false, rules));
+
+        ArrayList<ValidationMessage> messages = new Upi("US-4013-N-1-R-N").validate(true, rules);
+        assertEquals(1, messages.size());
+        assertEquals(SegmentFormatRule.FORMAT_MISMATCH_CODE, messages.get(0).getCode());
+    }
+
+    @Test
+    void checksEachUpisOwnNonStandardType() throws IOException, MalformedUpiTextException {
+        SegmentFormatRule rule = SegmentFormatRule.load(new StringReader("US * PROPERTY_TYPE_CODE Q\\d\n"));
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(rule);
+
+        // Parsing another non-standard type rewrites the shared NON_STANDARD code, not this UPI's
+        Upi upi = new Upi("US-04015-N-11022331-Q1-N");
+        new Upi("US-04015-N-11022331-ZZ-N");
+
+        assertTrue(upi.isValid(true, rules));
+        assertFalse(new Upi("US-04015-N-11022331-ZZ-N").isValid(true, rules));
+    }
+
+    @Test
+    void reportsTheLineOfABadFormat() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> SegmentFormatRule.load(new StringReader("US * PROPERTY_ID [A-Z\n")));
+
+        assertTrue(exception.getMessage().startsWith("Line 1"));
+    }
+}
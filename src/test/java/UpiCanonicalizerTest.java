@@ -0,0 +1,60 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.UpiCanonicalizer;
+import org.reso.upi.UpiValue;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.property_type_code.PropertyTypeCode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiCanonicalizerTest {
+    private final UpiCanonicalizer canonicalizer = UpiCanonicalizer.standard().withSubCountryCodeLength(CountryCode.US, 5);
+
+    @Test
+    void rewritesVendorText() {
+        assertEquals("US-04015-n-11022331-R-N", this.canonicalizer.canonicalize("us-4015-n-11022331-r-N"));
+        assertEquals("US-04015-N-11022331-R-N", this.canonicalizer.canonicalize("  US - 04015 -N-11022331- R -N \t"));
+        assertEquals("CA-4015-N-1-R-N", this.canonicalizer.canonicalize("ca-4015-N-1-R-N"), "no padding configured for CA");
+        assertEquals("US-40A-N-1-R-N", this.canonicalizer.canonicalize("US-40A-N-1-R-N"), "only numeric codes are padded");
+        assertEquals("US-4015-N-1-R-N", UpiCanonicalizer.standard().canonicalize("us-4015-N-1-R-N"));
+        assertEquals("US-04015", this.canonicalizer.canonicalize("us-4015"), "malformed text is left to the parser");
+    }
+
+    @Test
+    void returnsCanonicalTextAsIs() {
+        String canonical = "US-04015-N-11022331-R-N";
+
+        assertTrue(this.canonicalizer.isCanonical(canonical));
+        assertSame(canonical, this.canonicalizer.canonicalize(canonical));
+        assertFalse(this.canonicalizer.isCanonical(canonical + " "));
+        assertFalse(this.canonicalizer.isCanonical("US-4015-N-11022331-R-N"));
+
+        String type = "S";
+        assertSame(type, this.canonicalizer.canonicalizePropertyTypeCode(type));
+        assertEquals("S", this.canonicalizer.canonicalizePropertyTypeCode(" s"));
+        assertEquals("06037", this.canonicalizer.canonicalizeSubCountryCode("us", "6037"));
+        assertEquals("MX", this.canonicalizer.canonicalizeCountryCode("mx "));
+    }
+
+    @Test
+    void parsesCanonicalPieces() throws MalformedUpiTextException {
+        Upi upi = new Upi();
+        upi.setCanonicalizer(this.canonicalizer);
+        upi.parseUpi(" zz-4015-N-11022331-x-N");
+
+        assertEquals("ZZ-4015-N-11022331-X-N", upi.getRawUpiText());
+        assertEquals("ZZ", upi.getUndefinedCountryCode());
+        assertEquals(PropertyTypeCode.NON_STANDARD, upi.getPropertyTypeCode());
+
+        upi.reset();
+        upi.parseUpi("us-4015-N-11022331-r-N");
+        assertEquals("04015", upi.getSubCountryCode());
+        assertSame(this.canonicalizer, upi.getCanonicalizer());
+
+        assertEquals(
+                UpiValue.parse("US-04015-N-11022331-R-N"),
+                UpiValue.parse(" us-4015-N-11022331-r-N", this.canonicalizer)
+        );
+    }
+}
@@ -0,0 +1,113 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.corpus.UpiCorpusGenerator;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.property_type_code.PropertyTypeCode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiCorpusGeneratorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesTheSameCorpusOnAnyThreadCount() throws IOException {
+        UpiCorpusGenerator generator = new UpiCorpusGenerator(42);
+        generator.setMalformedRatio(0.05);
+        generator.setLowercaseRatio(0.05);
+
+        Path single = this.directory.resolve("single.txt");
+        long bytes = generator.write(single, 150000);
+
+        generator.setThreads(3);
+        Path parallel = this.directory.resolve("parallel.txt");
+        assertEquals(bytes, generator.write(parallel, 150000));
+        assertEquals(bytes, Files.size(single));
+        assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(parallel));
+
+        List<String> lines = Files.readAllLines(single, StandardCharsets.US_ASCII);
+        assertEquals(150000, lines.size());
+        assertEquals(generator.get(0), lines.get(0));
+        assertEquals(generator.get(149999), lines.get(149999));
+
+        assertNotEquals(lines.get(0), new UpiCorpusGenerator(43).get(0));
+    }
+
+    @Test
+    void wellFormedByDefault() throws MalformedUpiTextException {
+        UpiCorpusGenerator generator = new UpiCorpusGenerator(1);
+        Upi upi = new Upi();
+        int us = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            upi.reset();
+            upi.parseUpi(generator.get(i));
+
+            assertTrue(upi.isValid(true), upi.getRawUpiText());
+            us += (upi.getCountryCode() == CountryCode.US) ? 1 : 0;
+        }
+
+        assertTrue(us > 17000 && us < 19000, "US share " + us);
+    }
+
+    @Test
+    void mixesInBadInputByRatio() throws MalformedUpiTextException {
+        UpiCorpusGenerator generator = new UpiCorpusGenerator(1);
+        generator.setMalformedRatio(0.2);
+        int malformed = 0;
+
+        for (int i = 0; i < 20000; i++) {
+            try {
+                new Upi(generator.get(i));
+            } catch (MalformedUpiTextException e) {
+                malformed++;
+            }
+        }
+
+        // Three in four malformed records are missing segments
+        assertTrue(malformed > 2700 && malformed < 3300, "malformed " + malformed);
+
+        generator = new UpiCorpusGenerator(1);
+        generator.setUndefinedCountryRatio(1);
+        generator.setNonStandardPropertyTypeRatio(1);
+        generator.setLongPropertyIdRatio(1);
+
+        for (int i = 0; i < 1000; i++) {
+            Upi upi = new Upi(generator.get(i));
+
+            assertEquals(CountryCode.UNDEFINED, upi.getCountryCode());
+            assertEquals(PropertyTypeCode.NON_STANDARD, upi.getPropertyTypeCode());
+            assertTrue(upi.getPropertyId().length() >= 40);
+        }
+    }
+
+    @Test
+    void changingOneRatioOnlyChangesItsRecords() {
+        UpiCorpusGenerator plain = new UpiCorpusGenerator(7);
+        UpiCorpusGenerator lowercase = new UpiCorpusGenerator(7);
+        lowercase.setLowercaseRatio(0.5);
+        int lowered = 0;
+
+        for (int i = 0; i < 10000; i++) {
+            String text = plain.get(i);
+            String other = lowercase.get(i);
+
+            if (!other.equals(text)) {
+                assertEquals(text.toLowerCase(Locale.ROOT), other);
+                lowered++;
+            }
+        }
+
+        assertTrue(lowered > 4500 && lowered < 5500, "lowered " + lowered);
+        assertThrows(IllegalArgumentException.class, () -> plain.setLowercaseRatio(1.5));
+    }
+}
@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.diff.UpiDiff;
+import org.reso.upi.sort.UpiSorter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiDiffTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsAddedRemovedAndChangedParcels() throws IOException {
+        List<String> before = new ArrayList<String>();
+        List<String> after = new ArrayList<String>();
+
+        for (int i = 0; i < 2000; i++) {
+            String county = (i % 2 == 0) ? "36061" : "06037";
+            before.add("US-" + county + "-N-" + i + "-R-N\tParcel " + i);
+
+            if (i == 10) {
+                continue; // removed
+            }
+
+            if (i == 11) {
+                after.add("US-" + county + "-N-" + i + "-R-N\tRenamed");
+            } else if (i == 12) {
+                after.add("US-" + county + "-N-" + i + "-R-1\tParcel " + i);
+            } else {
+                after.add("US-" + county + "-N-" + i + "-R-N\tParcel " + i);
+            }
+        }
+
+        after.add("US-17031-N-1-R-N\tNew");
+        after.add("not a upi");
+
+        Collections.shuffle(before, new Random(1));
+        Collections.shuffle(after, new Random(2));
+
+        Path oldPath = this.write("old.txt", before);
+        Path newPath = this.write("new.txt", after);
+
+        List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+        UpiDiff.Handler handler = new UpiDiff.Handler() {
+            public void added(String upiText, String description) {
+                changes.add("+ " + upiText);
+            }
+
+            public void removed(String upiText, String description) {
+                changes.add("- " + upiText);
+            }
+
+            public void changed(String oldUpiText, String oldDescription, String newUpiText, String newDescription) {
+                changes.add("~ " + oldUpiText + " " + newUpiText + " " + newDescription);
+            }
+        };
+
+        UpiDiff diff = new UpiDiff(this.directory, 1024 * 1024, 4);
+        UpiDiff.Summary summary = diff.diff(oldPath, newPath, handler);
+
+        assertEquals(1, summary.getAdded());
+        assertEquals(1, summary.getRemoved());
+        assertEquals(2, summary.getChanged());
+        assertEquals(1997, summary.getUnchanged());
+        assertEquals(1, summary.getMalformed());
+
+        Collections.sort(changes);
+        assertEquals(Arrays.asList(
+                "+ US-17031-N-1-R-N",
+                "- US-36061-N-10-R-N",
+                "~ US-06037-N-11-R-N US-06037-N-11-R-N Renamed",
+                "~ US-36061-N-12-R-N US-36061-N-12-R-1 Parcel 12"
+        ), changes);
+
+        // Presorted snapshots give the same answer in one pass
+        UpiSorter sorter = new UpiSorter(this.directory, 1024 * 1024);
+        Path oldSorted = this.directory.resolve("old.sorted");
+        Path newSorted = this.directory.resolve("new.sorted");
+        sorter.sort(oldPath, oldSorted);
+        sorter.sort(newPath, newSorted);
+
+        diff.setSorted(true);
+        changes.clear();
+        summary = diff.diff(oldSorted, newSorted, handler);
+        assertEquals(4, changes.size());
+        assertEquals(1997, summary.getUnchanged());
+
+        assertThrows(IOException.class, () -> diff.diff(oldPath, newPath, handler));
+    }
+
+    @Test
+    void findsNoChangesBetweenASnapshotAndItselfWithNonStandardTypes() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            String county = (i % 2 == 0) ? "36061" : "06037";
+            lines.add("US-" + county + "-N-" + (i / 8) + "-T" + (i % 8) + "-N\tParcel " + i);
+        }
+        Collections.shuffle(lines, new Random(4));
+        Path path = this.write("same.txt", lines);
+
+        final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+        UpiDiff.Handler handler = new UpiDiff.Handler() {
+            public void added(String upiText, String description) {
+                changes.add("+ " + upiText);
+            }
+
+            public void removed(String upiText, String description) {
+                changes.add("- " + upiText);
+            }
+
+            public void changed(String oldUpiText, String oldDescription, String newUpiText, String newDescription) {
+                changes.add("~ " + oldUpiText + " " + newUpiText);
+            }
+        };
+
+        UpiDiff.Summary summary = new UpiDiff(this.directory, 1024 * 1024, 8).diff(path, path, handler);
+
+        assertEquals(Collections.emptyList(), changes);
+        assertEquals(0, summary.getAdded());
+        assertEquals(0, summary.getRemoved());
+        assertEquals(0, summary.getChanged());
+        assertEquals(20000, summary.getUnchanged());
+    }
+
+    @Test
+    void sortsBySegmentsAcrossRuns() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add("US-36061-N-" + i + "-R-N\tA description long enough to spill runs " + i);
+        }
+        Collections.shuffle(lines, new Random(3));
+
+        Path sorted = this.directory.resolve("sorted.txt");
+        assertEquals(20000, new UpiSorter(this.directory, 1024 * 1024).sort(this.write("in.txt", lines), sorted));
+
+        List<String> result = Files.readAllLines(sorted, StandardCharsets.UTF_8);
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(result.get(i).startsWith("US-36061-N-" + i + "-R-N\t"), result.get(i));
+        }
+    }
+
+    private Path write(String name, List<String> lines) throws IOException {
+        return Files.write(this.directory.resolve(name), lines, StandardCharsets.UTF_8);
+    }
+}
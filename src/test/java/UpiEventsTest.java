@@ -0,0 +1,92 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.validation.CompiledRuleSet;
+import org.reso.upi.validation.RuleSetCompiler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiEventsTest {
+    @Test
+    void recordsParseValidateRuleAndBuildEvents() throws IOException, MalformedUpiTextException {
+        Path file = Files.createTempFile("upi", ".jfr");
+
+        try {
+            Recording recording = new Recording();
+            recording.enable("org.reso.upi.Parse");
+            recording.enable("org.reso.upi.Validate");
+            recording.enable("org.reso.upi.Rule");
+            recording.enable("org.reso.upi.ToUpi");
+            recording.start();
+
+            Upi upi = new Upi("XX-04015-N-11022331-R-N");
+            upi.validate(true);
+            upi.validate(true);
+            upi.toUpi();
+            assertThrows(MalformedUpiTextException.class, () -> new Upi("US-04015"));
+
+            recording.stop();
+            recording.dump(file);
+            recording.close();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+
+            for (RecordedEvent event : events) {
+                counts.merge(event.getEventType().getName(), 1, Integer::sum);
+
+                if ("org.reso.upi.Validate".equals(event.getEventType().getName())) {
+                    assertEquals("XX", event.getString("country"));
+                    assertFalse(event.getBoolean("valid"));
+                }
+            }
+
+            assertEquals(Integer.valueOf(2), counts.get("org.reso.upi.Parse"));
+            assertEquals(Integer.valueOf(2), counts.get("org.reso.upi.Validate"));
+            assertEquals(Integer.valueOf(3), counts.get("org.reso.upi.Rule"));
+            assertEquals(Integer.valueOf(1), counts.get("org.reso.upi.ToUpi"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void recordsCompiledRulesOnce() throws IOException, MalformedUpiTextException {
+        Path file = Files.createTempFile("upi", ".jfr");
+
+        try {
+            Upi upi = new Upi("XX-04015-N-11022331-R-N");
+            CompiledRuleSet compiled = RuleSetCompiler.compile(upi.getValidationRules(), false);
+
+            Recording recording = new Recording();
+            recording.enable("org.reso.upi.Rule");
+            recording.start();
+
+            upi.validate(true, compiled.asRuleSet());
+
+            recording.stop();
+            recording.dump(file);
+            recording.close();
+
+            int rules = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                assertNotEquals(CompiledRuleSet.class.getName(), event.getClass("ruleClass").getName());
+                rules++;
+            }
+
+            assertEquals(compiled.getRules(true).size(), rules);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
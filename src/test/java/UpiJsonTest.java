@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.json.JsonTokenizer;
+import org.reso.upi.json.UpiJsonReader;
+import org.reso.upi.json.UpiJsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiJsonTest {
+    @Test
+    void roundTripsUpisWithMessages() throws IOException, MalformedUpiTextException {
+        StringWriter out = new StringWriter();
+        UpiJsonWriter writer = new UpiJsonWriter(out);
+
+        Upi good = new Upi("US-04015-N-11022331-R-N", "12 \"Main\" St\n\u00e9");
+        good.validate(true);
+        writer.write(good);
+
+        Upi bad = new Upi("XX-04015-N-11022331-Q-N");
+        bad.validate(true);
+        writer.write(bad);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"description\":\"12 \\\"Main\\\" St\\n\u00e9\""));
+
+        UpiJsonReader reader = new UpiJsonReader(new StringReader(out.toString()));
+        Upi upi = new Upi();
+
+        assertTrue(reader.read(upi));
+        assertEquals("US-04015-N-11022331-R-N", upi.getRawUpiText());
+        assertEquals(CountryCode.US, upi.getCountryCode());
+        assertEquals("11022331", upi.getPropertyId());
+        assertEquals(good.getDescription(), upi.getDescription());
+        assertTrue(reader.hasValidation());
+        assertTrue(reader.isValid());
+        assertEquals(0, reader.getMessages().size());
+
+        assertTrue(reader.read(upi));
+        assertEquals(CountryCode.UNDEFINED, upi.getCountryCode());
+        assertEquals("XX", upi.getUndefinedCountryCode());
+        assertEquals("Q", upi.getPropertyTypeCode().getCode());
+        assertFalse(reader.isValid());
+        assertEquals(2, reader.getMessages().size());
+        assertEquals(400, reader.getMessages().get(0).getCode());
+        assertEquals(bad.getValidationMessages().get(1).getMessage(), reader.getMessages().get(1).getMessage());
+
+        assertFalse(reader.read(upi));
+    }
+
+    @Test
+    void writesEachUpisOwnNonStandardType() throws IOException, MalformedUpiTextException {
+        StringWriter out = new StringWriter();
+        UpiJsonWriter writer = new UpiJsonWriter(out);
+
+        // Parsing another non-standard type rewrites the shared NON_STANDARD code, not this UPI's
+        Upi upi = new Upi("US-04015-N-11022331-Q1-N");
+        new Upi("US-04015-N-11022331-ZZ-N");
+        writer.write(upi);
+
+        assertTrue(out.toString().contains("\"propertyTypeCode\":\"Q1\""), out.toString());
+    }
+
+    @Test
+    void parsesUpiTextAndSkipsUnknownFields() throws IOException, MalformedUpiTextException {
+        String json = "{\"extra\":{\"a\":[1,2,{\"b\":null}]},\"upi\":\"US-36061-N-010237502R1-S-113\",\"n\":-12.5e3}\n"
+                + "{\"upi\":\"US-04015\"}\n"
+                + "{\"upi\":\"US-04015-N-11022331-R-N\",\"description\":\"\\u0041pt\"}";
+        UpiJsonReader reader = new UpiJsonReader(new StringReader(json));
+        Upi upi = new Upi();
+
+        assertTrue(reader.read(upi));
+        assertEquals("36061", upi.getSubCountryCode());
+        assertFalse(reader.hasValidation());
+
+        assertThrows(MalformedUpiTextException.class, () -> reader.read(upi));
+
+        assertTrue(reader.read(upi));
+        assertEquals("11022331", upi.getPropertyId());
+        assertEquals("Apt", upi.getDescription());
+        assertFalse(reader.read(upi));
+    }
+
+    @Test
+    void tokenizesAcrossSmallBuffers() throws IOException {
+        JsonTokenizer json = new JsonTokenizer(new StringReader("[{\"key\":\"a long string value\"}, true, false, null, 42]"), 16);
+
+        assertEquals(JsonTokenizer.START_ARRAY, json.next());
+        assertEquals(JsonTokenizer.START_OBJECT, json.next());
+        assertEquals(JsonTokenizer.FIELD_NAME, json.next());
+        assertTrue(json.textEquals("key"));
+        assertEquals(JsonTokenizer.STRING, json.next());
+        assertEquals("a long string value", json.getText());
+        assertEquals(JsonTokenizer.END_OBJECT, json.next());
+        assertEquals(JsonTokenizer.TRUE, json.next());
+        assertEquals(JsonTokenizer.FALSE, json.next());
+        assertEquals(JsonTokenizer.NULL, json.next());
+        assertEquals(JsonTokenizer.NUMBER, json.next());
+        assertEquals(42, json.getInt());
+        assertEquals(JsonTokenizer.END_ARRAY, json.next());
+        assertEquals(JsonTokenizer.END, json.next());
+    }
+}
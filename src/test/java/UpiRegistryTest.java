@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.store.UpiRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiRegistryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void growsAndReopensFromTheMappedIndex() throws IOException {
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            for (int i = 0; i < 5000; i++) {
+                registry.put("US-04013-N-" + i + "-R-N", "Parcel " + i);
+            }
+
+            registry.put("US-04013-N-7-R-N", "Replaced");
+            registry.put("US-04013-N-8-R-N", null);
+            assertTrue(registry.remove("US-04013-N-9-R-N"));
+            assertFalse(registry.remove("US-04013-N-9-R-N"));
+        }
+
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            assertEquals(4999, registry.size());
+            assertEquals("Parcel 4999", registry.get("US-04013-N-4999-R-N"));
+            assertEquals("Replaced", registry.get("US-04013-N-7-R-N"));
+            assertNull(registry.get("US-04013-N-8-R-N"));
+            assertTrue(registry.contains("US-04013-N-8-R-N"));
+            assertFalse(registry.contains("US-04013-N-9-R-N"));
+            assertFalse(registry.contains("US-04013-N-5000-R-N"));
+        }
+    }
+
+    @Test
+    void rebuildsADirtyIndexAndCutsATornRecord() throws IOException {
+        UpiRegistry registry = UpiRegistry.open(this.directory);
+        registry.put("US-06037-N-1-R-N", "One");
+        registry.put("US-06037-N-2-R-N", "Two");
+        registry.flush();
+
+        // A crash: never closed, and half a record at the end of the log
+        long length = registry.getLogLength();
+        try (FileChannel log = FileChannel.open(this.directory.resolve("upi.log"), StandardOpenOption.WRITE)) {
+            log.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3}), length);
+        }
+
+        try (UpiRegistry reopened = UpiRegistry.open(this.directory)) {
+            assertEquals(2, reopened.size());
+            assertEquals("Two", reopened.get("US-06037-N-2-R-N"));
+            assertEquals(length, reopened.getLogLength());
+
+            reopened.put("US-06037-N-3-R-N", "Three");
+        }
+
+        try (UpiRegistry reopened = UpiRegistry.open(this.directory)) {
+            assertEquals("Three", reopened.get("US-06037-N-3-R-N"));
+        }
+    }
+
+    @Test
+    void refusesToCutACorruptRecordInTheMiddle() throws IOException {
+        UpiRegistry registry = UpiRegistry.open(this.directory);
+        registry.put("US-06037-N-1-R-N", "One");
+        long second = registry.getLogLength();
+        registry.put("US-06037-N-2-R-N", "Two");
+        registry.put("US-06037-N-3-R-N", "Three");
+        registry.flush();
+        long length = registry.getLogLength();
+
+        // A crash, then a flipped byte in the key of the second record
+        try (FileChannel log = FileChannel.open(this.directory.resolve("upi.log"), StandardOpenOption.WRITE)) {
+            log.write(ByteBuffer.wrap(new byte[]{'X'}), second + 8 + 5);
+        }
+
+        IOException exception = assertThrows(IOException.class, () -> UpiRegistry.open(this.directory));
+        assertTrue(exception.getMessage().contains("offset " + second), exception.getMessage());
+        assertEquals(length, Files.size(this.directory.resolve("upi.log")));
+    }
+
+    @Test
+    void unmapsTheOldIndexWhenGrowing() throws IOException {
+        Path maps = Paths.get("/proc/self/maps");
+
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            for (int i = 0; i < 3000; i++) {
+                registry.put("US-04013-N-" + i + "-R-N", null);
+            }
+
+            if (Files.isReadable(maps)) {
+                for (String line : Files.readAllLines(maps)) {
+                    assertFalse(line.contains(this.directory.toString()) && line.contains("(deleted)"), line);
+                }
+            }
+
+            assertEquals(3000, registry.size());
+        }
+
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            assertTrue(registry.contains("US-04013-N-2999-R-N"));
+        }
+    }
+
+    @Test
+    void compactsToTheLiveRecords() throws IOException {
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            for (int i = 0; i < 100; i++) {
+                registry.put("US-17031-N-" + i + "-R-N", "First " + i);
+                registry.put("US-17031-N-" + i + "-R-N", "Second " + i);
+            }
+            for (int i = 0; i < 50; i++) {
+                registry.remove("US-17031-N-" + i + "-R-N");
+            }
+
+            long before = registry.getLogLength();
+            registry.compact();
+
+            assertTrue(registry.getLogLength() < before / 3);
+            assertEquals(50, registry.size());
+            assertEquals("Second 99", registry.get("US-17031-N-99-R-N"));
+            assertFalse(registry.contains("US-17031-N-0-R-N"));
+
+            registry.put("US-17031-N-0-R-N", "Back");
+        }
+
+        try (UpiRegistry registry = UpiRegistry.open(this.directory)) {
+            assertEquals(51, registry.size());
+            assertEquals("Back", registry.get("US-17031-N-0-R-N"));
+            assertFalse(Files.exists(this.directory.resolve("upi.log.compact")));
+        }
+    }
+}
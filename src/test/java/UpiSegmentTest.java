@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.sort.UpiSortKey;
+import org.reso.upi.store.UpiSegmentReader;
+import org.reso.upi.store.UpiSegmentWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiSegmentTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sortKeysFollowSegmentsAndNumbers() throws MalformedUpiTextException {
+        List<String> sorted = Arrays.asList(
+                "US-4013-N-9-R-N",
+                "US-04013-N-9-R-N",
+                "US-36061-N-9-R-N",
+                "US-36061-N-10-R-N",
+                "US-36061-N-010-R-N",
+                "US-36061-N-10A-R-N",
+                "US-36061-N-10A-S-N",
+                "US-36061-N-1234-R-N",
+                "US-36061-N-10000-R-N"
+        );
+
+        for (int i = 1; i < sorted.size(); i++) {
+            assertTrue(UpiSortKey.compare(UpiSegmentTest.key(sorted.get(i - 1)), UpiSegmentTest.key(sorted.get(i))) < 0,
+                    sorted.get(i - 1) + " < " + sorted.get(i));
+        }
+
+        byte[] county = UpiSortKey.prefix("US", "36061");
+        byte[] key = UpiSegmentTest.key("US-36061-N-10-R-N");
+        assertArrayEquals(county, Arrays.copyOf(key, county.length));
+        assertTrue(UpiSortKey.compare(key, UpiSortKey.successor(county)) < 0);
+    }
+
+    @Test
+    void sortKeysUseEachUpisOwnNonStandardType() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 4; t++) {
+                final String type = "T" + t;
+                futures.add(pool.submit(() -> {
+                    byte[] expected = UpiSortKey.prefix("US", "36061", "N", "10", type, "N");
+                    UpiSortKey key = new UpiSortKey();
+                    Upi upi = new Upi();
+                    int wrong = 0;
+
+                    for (int i = 0; i < 20000; i++) {
+                        upi.reset();
+                        upi.parseUpi("US-36061-N-10-" + type + "-N");
+                        key.encode(upi);
+                        wrong += (UpiSortKey.compare(expected, 0, expected.length, key.getBytes(), 0, key.getLength()) == 0) ? 0 : 1;
+                    }
+
+                    return wrong;
+                }));
+            }
+
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get().intValue());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void scansOnlyTheBlocksOfAPrefix() throws IOException, MalformedUpiTextException {
+        Path path = this.directory.resolve("parcels.seg");
+        String[] counties = {"06037", "17031", "36061"};
+        Upi upi = new Upi();
+
+        try (UpiSegmentWriter writer = new UpiSegmentWriter(path, 256)) {
+            for (String county : counties) {
+                for (int i = 0; i < 300; i++) {
+                    upi.parseUpi("US-" + county + "-N-" + i + "-" + ((i % 3 == 0) ? "S" : "R") + "-N", (i % 2 == 0) ? null : "Parcel " + i);
+                    writer.add(upi);
+                }
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> {
+                upi.parseUpi("US-06037-N-1-R-N");
+                writer.add(upi);
+            });
+        }
+
+        try (UpiSegmentReader segment = UpiSegmentReader.open(path)) {
+            assertEquals(900, segment.size());
+
+            UpiSegmentReader.Cursor cursor = segment.scanPrefix("US", "36061");
+            List<String> condos = new ArrayList<String>();
+            int count = 0;
+
+            while (cursor.next()) {
+                count++;
+                upi.parseUpi(cursor.getUpiText(), cursor.getDescription());
+
+                if (upi.getPropertyTypeCode().getCode().equals("S")) {
+                    condos.add(upi.getRawUpiText());
+                }
+            }
+
+            assertEquals(300, count);
+            assertEquals(100, condos.size());
+            assertEquals("US-36061-N-0-S-N", condos.get(0));
+            assertEquals("US-36061-N-297-S-N", condos.get(99));
+            assertTrue(cursor.getBlocksRead() <= segment.getBlockCount() / 3 + 2, cursor.getBlocksRead() + " of " + segment.getBlockCount());
+
+            cursor = segment.scan(UpiSegmentTest.key("US-17031-N-41-R-N"), UpiSegmentTest.key("US-17031-N-44-R-N"));
+            assertTrue(cursor.next());
+            assertEquals("US-17031-N-41-R-N", cursor.getUpiText());
+            assertEquals("Parcel 41", cursor.getDescription());
+            assertTrue(cursor.next());
+            assertNull(cursor.getDescription());
+            assertTrue(cursor.next());
+            assertEquals("US-17031-N-43-R-N", cursor.getUpiText());
+            assertFalse(cursor.next());
+
+            cursor = segment.scanPrefix("US", "99999");
+            assertFalse(cursor.next());
+        }
+    }
+
+    private static byte[] key(String upiText) throws MalformedUpiTextException {
+        return UpiSortKey.of(new Upi(upiText));
+    }
+}
@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reso.upi.sort.UpiSorter;
+import org.reso.upi.store.UpiSegmentReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiSorterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sortsInParallelAndCollapsesDuplicates() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 30000; i++) {
+            lines.add("US-" + ((i % 3 == 0) ? "4013" : "36061") + "-N-" + i + "-R-N\tFirst " + i);
+            if (i % 10 == 0) {
+                lines.add("US-" + ((i % 3 == 0) ? "4013" : "36061") + "-N-" + i + "-R-N\tSecond " + i);
+            }
+        }
+        lines.add("garbage");
+        Collections.shuffle(lines, new Random(4));
+
+        // Keep each duplicate after its first line, so collapse has a defined winner
+        List<String> input = new ArrayList<String>();
+        for (String line : lines) {
+            if (!line.contains("Second")) {
+                input.add(line);
+            }
+        }
+        for (String line : lines) {
+            if (line.contains("Second")) {
+                input.add(line);
+            }
+        }
+
+        Path in = Files.write(this.directory.resolve("in.txt"), input, StandardCharsets.UTF_8);
+        Path out = this.directory.resolve("out.txt");
+
+        UpiSorter sorter = new UpiSorter(this.directory, 2 * 1024 * 1024);
+        sorter.setThreads(4);
+        sorter.setCollapseDuplicates(true);
+        assertEquals(30001, sorter.sort(in, out));
+
+        List<String> sorted = Files.readAllLines(out, StandardCharsets.UTF_8);
+        assertEquals("US-4013-N-0-R-N\tFirst 0", sorted.get(0));
+        assertEquals("US-4013-N-3-R-N\tFirst 3", sorted.get(1));
+        assertEquals("US-36061-N-1-R-N\tFirst 1", sorted.get(10000));
+        assertEquals("garbage", sorted.get(30000));
+
+        sorter.setCollapseDuplicates(false);
+        assertEquals(33001, sorter.sort(in, out));
+        sorted = Files.readAllLines(out, StandardCharsets.UTF_8);
+        assertEquals("US-4013-N-0-R-N\tFirst 0", sorted.get(0));
+        assertEquals("US-4013-N-0-R-N\tSecond 0", sorted.get(1));
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            assertEquals(2, files.count(), "run files are deleted");
+        }
+    }
+
+    @Test
+    void sortsNonStandardTypesTheSameOnAnyThreadCount() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 40000; i++) {
+            lines.add("US-36061-N-" + (i / 8) + "-T" + (i % 8) + "-N\tParcel " + i);
+        }
+        Collections.shuffle(lines, new Random(6));
+        Path in = Files.write(this.directory.resolve("in.txt"), lines, StandardCharsets.UTF_8);
+
+        for (boolean collapse : new boolean[]{false, true}) {
+            UpiSorter single = new UpiSorter(this.directory, 1024 * 1024);
+            single.setCollapseDuplicates(collapse);
+            Path expected = this.directory.resolve("single.txt");
+            assertEquals(40000, single.sort(in, expected));
+
+            UpiSorter parallel = new UpiSorter(this.directory, 1024 * 1024);
+            parallel.setThreads(8);
+            parallel.setCollapseDuplicates(collapse);
+            Path actual = this.directory.resolve("parallel.txt");
+            assertEquals(40000, parallel.sort(in, actual));
+
+            assertEquals(Files.readAllLines(expected, StandardCharsets.UTF_8), Files.readAllLines(actual, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void sortsIntoASegmentFile() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            lines.add("US-06037-N-" + i + "-S-N\tUnit " + i);
+        }
+        lines.add("US-06037-N-7-S-N\tDuplicate");
+        lines.add("not a upi");
+        Collections.shuffle(lines.subList(0, 5000), new Random(5));
+
+        Path segment = this.directory.resolve("units.seg");
+        assertEquals(5000, new UpiSorter(this.directory, 1024 * 1024).sortToSegment(Files.write(this.directory.resolve("in.txt"), lines, StandardCharsets.UTF_8), segment));
+
+        try (UpiSegmentReader reader = UpiSegmentReader.open(segment)) {
+            UpiSegmentReader.Cursor cursor = reader.scanPrefix("US", "06037", "N", "7");
+            assertTrue(cursor.next());
+            assertEquals("US-06037-N-7-S-N", cursor.getUpiText());
+            assertEquals("Unit 7", cursor.getDescription());
+            assertFalse(cursor.next());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.jmx.UpiStats;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiStatsTest {
+    @Test
+    void countsParsesAndStrictFailures() throws Exception {
+        UpiStats stats = UpiStats.install();
+
+        try {
+            stats.reset();
+
+            Upi upi = new Upi("XX-04015-N-11022331-Q-N");
+            upi.validate(true);
+            upi.validate(true);
+            new Upi("XX-04015-N-11022331-R-N");
+            assertThrows(MalformedUpiTextException.class, () -> new Upi("US-04015"));
+
+            assertEquals(3, stats.getRecordsParsed());
+            assertEquals(1, stats.getMalformedCount());
+            assertEquals(1, stats.getRecordsValidated());
+            assertEquals(1, stats.getCacheHits());
+            assertEquals(1, stats.getCacheMisses());
+            assertEquals(0.5, stats.getCacheHitRate());
+            assertEquals(Long.valueOf(1), stats.getStrictFailuresByCode().get(400));
+            assertEquals(Long.valueOf(1), stats.getStrictFailuresByCode().get(410));
+            assertEquals(Long.valueOf(2), stats.getTopUndefinedCountryCodes().get("XX"));
+            assertEquals(Long.valueOf(1), stats.getTopNonStandardPropertyTypes().get("Q"));
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(3L, server.getAttribute(new ObjectName(UpiStats.OBJECT_NAME), "RecordsParsed"));
+        } finally {
+            UpiStats.uninstall();
+        }
+
+        assertNull(UpiStats.current());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(UpiStats.OBJECT_NAME)));
+    }
+
+    @Test
+    void readingTheRateDoesNotResetIt() throws Exception {
+        UpiStats stats = UpiStats.install();
+
+        try {
+            stats.reset();
+
+            for (int i = 0; i < 1000; i++) {
+                new Upi("US-04015-N-" + i + "-R-N");
+            }
+
+            double first = stats.getParsedPerSecond();
+            double second = stats.getParsedPerSecond();
+
+            assertTrue(first > 0, "first " + first);
+            assertTrue(second > 0 && second <= first, "second " + second);
+        } finally {
+            UpiStats.uninstall();
+        }
+    }
+}
@@ -1,12 +1,17 @@
 import org.junit.jupiter.api.Test;
 import org.reso.upi.MalformedUpiTextException;
 import org.reso.upi.Upi;
+import org.reso.upi.UpiField;
 import org.reso.upi.UpiInterface;
 import org.reso.upi.country_code.CountryCode;
 import org.reso.upi.property_type_code.PropertyTypeCode;
+import org.reso.upi.validation.AbstractValidationRule;
 import org.reso.upi.validation.ValidationMessage;
+import org.reso.upi.validation.ValidationRuleInterface;
+import org.reso.upi.validation.rules.ResoAllPiecesRequiredRule;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -281,4 +286,225 @@ class UpiTest {
 
         assertTrue(exceptionThrown);
     }
+
+    /* Reuse Tests */
+    @Test
+    void resetKeepsRulesAndRecyclesMessages() throws MalformedUpiTextException {
+        Upi upi = new Upi();
+        upi.setReuseBuffers(true);
+
+        ArrayList<ValidationRuleInterface> rules = upi.getValidationRules();
+
+        upi.parseUpi(this.badValueUpis[0][0], "Some description");
+        ArrayList<ValidationMessage> messages = upi.validate(true);
+        assertEquals(2, messages.size());
+
+        upi.reset();
+        assertSame(rules, upi.getValidationRules());
+        assertNull(upi.getCountryCode());
+        assertNull(upi.getDescription());
+        assertTrue(messages.isEmpty());
+
+        upi.parseUpi(this.goodUpis[0]);
+        assertTrue(upi.isValid(true));
+        assertSame(messages, upi.getValidationMessages());
+    }
+
+    @Test
+    void parseKeepsSplitSemanticsForEmptyPieces() throws MalformedUpiTextException {
+        Upi upi = new Upi("US-04015-N-11022331-R--X");
+        assertEquals("", upi.getSubProperty());
+
+        upi = new Upi("US-04015-N-11022331-R-N-EXTRA");
+        assertEquals("N", upi.getSubProperty());
+
+        assertThrows(MalformedUpiTextException.class, () -> new Upi("US-04015-N-11022331-R-"));
+        assertThrows(MalformedUpiTextException.class, () -> new Upi("US-04015-N-11022331-R---"));
+    }
+
+    /* Validation Cache Tests */
+    @Test
+    void remembersValidationUntilASetterRuns() throws MalformedUpiTextException {
+        final int[] calls = {0};
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add((upi, strict) -> {
+            calls[0]++;
+            return new ArrayList<ValidationMessage>();
+        });
+
+        Upi upi = new Upi(this.goodUpis[0]);
+        upi.setValidationRules(rules);
+
+        ArrayList<ValidationMessage> messages = upi.validate(true);
+        assertTrue(upi.isValid(true));
+        messages.add(new ValidationMessage(900, "Added by the caller"));
+        assertTrue(upi.validate(true).isEmpty());
+        assertTrue(upi.isValid(true));
+        assertEquals(1, calls[0]);
+
+        // The other strict mode is remembered separately
+        assertTrue(upi.isValid(false));
+        assertTrue(upi.isValid(false));
+        assertEquals(2, calls[0]);
+
+        upi.setSubProperty("12");
+        assertTrue(upi.isValid(true));
+        assertEquals(3, calls[0]);
+
+        upi.invalidateValidation();
+        assertTrue(upi.isValid(true));
+        assertEquals(4, calls[0]);
+    }
+
+    @Test
+    void onlyRerunsRulesThatReadAChangedField() throws MalformedUpiTextException {
+        final int[] calls = {0, 0};
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(new ResoAllPiecesRequiredRule());
+        rules.add(new AbstractValidationRule() {
+            public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+                calls[0]++;
+                ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+                if (!"N".equals(upi.getSubProperty())) {
+                    errors.add(new ValidationMessage(900, "Sub property must be N"));
+                }
+                return errors;
+            }
+
+            public EnumSet<UpiField> getDependencies() {
+                return EnumSet.of(UpiField.SUB_PROPERTY);
+            }
+        });
+        rules.add(new AbstractValidationRule() {
+            public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+                calls[1]++;
+                ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+                errors.add(new ValidationMessage(901, "Always fails"));
+                return errors;
+            }
+
+            public EnumSet<UpiField> getDependencies() {
+                return EnumSet.of(UpiField.PROPERTY_ID);
+            }
+        });
+
+        Upi upi = new Upi(this.goodUpis[0]);
+        assertEquals(1, upi.validate(false, rules).size());
+
+        upi.setSubProperty("12");
+        ArrayList<ValidationMessage> messages = upi.validate(false, rules);
+
+        assertEquals(2, calls[0]);
+        assertEquals(1, calls[1]);
+        assertEquals(2, messages.size());
+        assertEquals(900, messages.get(0).getCode());
+        assertEquals(901, messages.get(1).getCode());
+    }
+
+    @Test
+    void runsRulesThatReadNoFieldOncePerRuleSet() throws MalformedUpiTextException {
+        final int[] calls = {0};
+        ArrayList<ValidationRuleInterface> failing = new ArrayList<ValidationRuleInterface>();
+        failing.add(new AbstractValidationRule() {
+            public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+                calls[0]++;
+                ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+                errors.add(new ValidationMessage(902, "Always fails"));
+                return errors;
+            }
+
+            public EnumSet<UpiField> getDependencies() {
+                return EnumSet.noneOf(UpiField.class);
+            }
+        });
+
+        Upi upi = new Upi(this.goodUpis[0]);
+        ArrayList<ValidationMessage> messages = upi.validate(false, failing);
+        assertEquals(1, messages.size());
+        assertEquals(902, messages.get(0).getCode());
+
+        // It reads no field, so a setter does not run it again
+        upi.setSubProperty("12");
+        assertFalse(upi.isValid(false, failing));
+        assertEquals(1, calls[0]);
+
+        // A passing rule that reads nothing does not inherit the failure left in its slot
+        ArrayList<ValidationRuleInterface> passing = new ArrayList<ValidationRuleInterface>();
+        passing.add(new AbstractValidationRule() {
+            public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+                return new ArrayList<ValidationMessage>();
+            }
+
+            public EnumSet<UpiField> getDependencies() {
+                return EnumSet.noneOf(UpiField.class);
+            }
+        });
+        assertTrue(upi.isValid(false, passing));
+
+        upi.reset();
+        upi.parseUpi(this.goodUpis[0]);
+        assertFalse(upi.isValid(false, failing));
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    void sharesDefaultRulesUntilAskedForThem() throws MalformedUpiTextException {
+        Upi first = new Upi(this.badValueUpis[0][0]);
+        Upi second = new Upi(this.badValueUpis[0][0]);
+        assertEquals(2, first.validate(true).size());
+
+        ArrayList<ValidationRuleInterface> rules = first.getValidationRules();
+        assertNotSame(rules, second.getValidationRules());
+
+        rules.clear();
+        assertTrue(first.isValid(true));
+        assertEquals(2, second.validate(true).size());
+
+        first.clear();
+        first.parseUpi(this.badValueUpis[0][0]);
+        assertEquals(2, first.validate(true).size());
+    }
+
+    @Test
+    void dependencyMasksMatchDependencies() throws MalformedUpiTextException {
+        Upi upi = new Upi(this.goodUpis[0]);
+
+        for (ValidationRuleInterface rule : upi.getValidationRules()) {
+            assertEquals(UpiField.mask(rule.getDependencies()), rule.getDependencyMask(), rule.getClass().getName());
+        }
+
+        assertEquals(UpiField.mask(EnumSet.allOf(UpiField.class)), ((ValidationRuleInterface) (u, strict) -> null).getDependencyMask());
+    }
+
+    @Test
+    void skipsStrictOnlyRulesInNonStrictMode() throws MalformedUpiTextException {
+        final int[] calls = {0};
+        ArrayList<ValidationRuleInterface> rules = new ArrayList<ValidationRuleInterface>();
+        rules.add(new ResoAllPiecesRequiredRule());
+        rules.add(new AbstractValidationRule() {
+            public ArrayList<ValidationMessage> validate(UpiInterface upi, boolean strict) {
+                calls[0]++;
+                ArrayList<ValidationMessage> errors = new ArrayList<ValidationMessage>();
+                errors.add(new ValidationMessage(901, "Fails when strict"));
+                return errors;
+            }
+
+            public boolean appliesTo(boolean strict) {
+                return strict;
+            }
+        });
+
+        Upi upi = new Upi(this.goodUpis[0]);
+        assertTrue(upi.isValid(false, rules));
+        assertEquals(0, calls[0]);
+
+        assertFalse(upi.isValid(true, rules));
+        assertEquals(1, calls[0]);
+
+        // Growing the rule set in place is noticed, and the new rule applies to both modes
+        rules.add(new ResoAllPiecesRequiredRule());
+        upi.setSubProperty("12");
+        assertTrue(upi.isValid(false, rules));
+        assertEquals(1, calls[0]);
+    }
 }
@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.UpiValue;
+import org.reso.upi.country_code.CountryCode;
+import org.reso.upi.property_type_code.PropertyTypeCode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpiValueTest {
+    @Test
+    void parsesAndCachesCanonicalText() throws MalformedUpiTextException {
+        UpiValue value = UpiValue.parse("us-04015-N-11022331-r-N");
+
+        assertEquals(CountryCode.US, value.getCountryCode());
+        assertEquals("US-04015-N-11022331-R-N", value.toUpi());
+        assertSame(value.toUpi(), value.toString());
+    }
+
+    @Test
+    void equalValuesWorkAsMapKeys() throws MalformedUpiTextException {
+        UpiValue parsed = UpiValue.parse("US-36061-N-010237502R1-S-113");
+        UpiValue built = new UpiValue.Builder()
+                .countryCode(CountryCode.US)
+                .subCountryCode("36061")
+                .subCountyCode("N")
+                .propertyId("010237502R1")
+                .propertyTypeCode("S")
+                .subProperty("113")
+                .description("Ignored for equality")
+                .build();
+
+        assertEquals(parsed, built);
+        assertEquals(parsed.hashCode(), built.hashCode());
+
+        HashMap<UpiValue, String> map = new HashMap<UpiValue, String>();
+        map.put(parsed, "found");
+        assertEquals("found", map.get(built));
+    }
+
+    @Test
+    void convertsToAndFromUpi() throws MalformedUpiTextException {
+        Upi upi = new Upi("XX-123331-N-N-99798987-99", "Somewhere");
+        UpiValue value = UpiValue.of(upi);
+
+        assertEquals(CountryCode.UNDEFINED, value.getCountryCode());
+        assertEquals(upi.toUpi(), value.toUpi());
+
+        Upi copy = value.toMutable();
+        assertEquals(upi.toUpi(), copy.toUpi());
+        assertEquals("Somewhere", copy.getDescription());
+        assertEquals(PropertyTypeCode.NON_STANDARD, copy.getPropertyTypeCode());
+    }
+
+    @Test
+    void keepsNonStandardCodeFromItsOwnParse() throws Exception {
+        Upi first = new Upi("US-04015-N-11022331-XY-N");
+        new Upi("US-04015-N-11022331-ZZ-N");
+
+        assertEquals("XY", first.getPropertyTypeCodeText());
+        assertEquals("US-04015-N-11022331-XY-N", UpiValue.of(first).toUpi());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < 4; t++) {
+                final String code = "T" + t;
+                futures.add(pool.submit(() -> {
+                    int wrong = 0;
+                    for (int i = 0; i < 20000; i++) {
+                        UpiValue value = UpiValue.parse("US-04015-N-" + i + "-" + code + "-N");
+                        wrong += value.getPropertyTypeCodeText().equals(code) ? 0 : 1;
+                    }
+                    return wrong;
+                }));
+            }
+
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get().intValue());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void failsToBuildIncompleteValue() {
+        MalformedUpiTextException exception = assertThrows(MalformedUpiTextException.class,
+                () -> new UpiValue.Builder().countryCode(CountryCode.US).build());
+
+        assertEquals(5, exception.getValidationMessages().size());
+    }
+}
@@ -0,0 +1,120 @@
+import org.junit.jupiter.api.Test;
+import org.reso.upi.MalformedUpiTextException;
+import org.reso.upi.Upi;
+import org.reso.upi.report.ReportCollector;
+import org.reso.upi.report.ValidationReport;
+import org.reso.upi.report.ValidationReportWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationReportTest {
+    @Test
+    void mergesPerThreadCountsAndCapsSamples() throws InterruptedException {
+        final ReportCollector collector = new ReportCollector(2, 1000);
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                Upi upi = new Upi();
+                upi.setReuseBuffers(true);
+
+                for (int i = 0; i < 1000; i++) {
+                    String line = ((i % 2 == 0) ? "XX" : "US") + "-04015-N-" + i + "-R-N";
+
+                    try {
+                        upi.reset();
+                        upi.parseUpi(line);
+                        collector.add(upi, upi.validate(true), line);
+                    } catch (MalformedUpiTextException e) {
+                        fail(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ValidationReport report = collector.merge();
+        assertEquals(4000, report.getRecords());
+        assertEquals(2000, report.getInvalidRecords());
+
+        List<ValidationReport.Bucket> buckets = report.getBuckets();
+        assertEquals(1, buckets.size());
+
+        ValidationReport.Bucket bucket = buckets.get(0);
+        assertEquals(400, bucket.getCode());
+        assertEquals("XX", bucket.getCountry());
+        assertEquals("04015", bucket.getSubCountryCode());
+        assertEquals("R", bucket.getPropertyTypeCode());
+        assertEquals(2000, bucket.getCount());
+        assertEquals(2, bucket.getSamples().size());
+    }
+
+    @Test
+    void bucketsNonStandardTypesByEachRecordsOwnCode() throws InterruptedException {
+        final ReportCollector collector = new ReportCollector(1, 1000);
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            final String type = "Q" + t;
+            threads[t] = new Thread(() -> {
+                Upi upi = new Upi();
+
+                for (int i = 0; i < 5000; i++) {
+                    String line = "US-04015-N-" + i + "-" + type + "-N";
+
+                    try {
+                        upi.reset();
+                        upi.parseUpi(line);
+                        collector.add(upi, upi.validate(true), line);
+                    } catch (MalformedUpiTextException e) {
+                        fail(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<ValidationReport.Bucket> buckets = collector.merge().getBuckets();
+        assertEquals(threads.length, buckets.size());
+
+        for (ValidationReport.Bucket bucket : buckets) {
+            assertEquals(5000, bucket.getCount(), bucket.getPropertyTypeCode());
+            assertTrue(bucket.getSamples().get(0).contains("-" + bucket.getPropertyTypeCode() + "-"), bucket.getSamples().get(0));
+        }
+    }
+
+    @Test
+    void overflowsPastMaxBucketsAndWritesCsv() throws IOException, MalformedUpiTextException {
+        ValidationReport report = new ValidationReport(1, 2);
+
+        for (String country : new String[]{"XA", "XB", "XC", "XD"}) {
+            Upi upi = new Upi(country + "-04015-N-1-R-N");
+            report.add(upi, upi.validate(true), country + ",line");
+        }
+
+        List<ValidationReport.Bucket> buckets = report.getBuckets();
+        assertEquals(3, buckets.size());
+        assertEquals(ValidationReport.OVERFLOW, buckets.get(0).getCountry());
+        assertEquals(2, buckets.get(0).getCount());
+
+        StringWriter out = new StringWriter();
+        new ValidationReportWriter(out).write(report);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(ValidationReportWriter.HEADER, lines[0]);
+        assertEquals("400,The Country Code is not recognized.,XA,04015,R,1,\"XA,line\"", lines[2]);
+        assertEquals("# records,4", lines[4]);
+    }
+}